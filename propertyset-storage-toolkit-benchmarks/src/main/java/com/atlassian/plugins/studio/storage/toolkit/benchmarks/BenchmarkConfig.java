@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.benchmarks;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plugin configuration DTO of the typical size: a handful of scalar settings, a user list and a mapping table.
+ */
+public class BenchmarkConfig implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+    private Long projectId;
+    private boolean enabled;
+    private Date updated;
+    private BigDecimal threshold;
+    private List<String> watchers;
+    private Map<String, String> mappings;
+
+    public BenchmarkConfig()
+    {
+    }
+
+    /**
+     * @param size number of watchers and mappings
+     * @return populated configuration
+     */
+    public static BenchmarkConfig sample(int size)
+    {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.setName("Issue escalation rules");
+        config.setProjectId(10010L);
+        config.setEnabled(true);
+        config.setUpdated(new Date(1292000000000L));
+        config.setThreshold(new BigDecimal("0.75"));
+
+        List<String> watchers = new ArrayList<String>(size);
+        Map<String, String> mappings = new LinkedHashMap<String, String>();
+        for (int i = 0; i < size; i++) {
+            watchers.add("user" + i);
+            mappings.put("customfield_" + (10000 + i), "Escalation level " + i);
+        }
+        config.setWatchers(watchers);
+        config.setMappings(mappings);
+        return config;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    public Long getProjectId()
+    {
+        return projectId;
+    }
+
+    public void setProjectId(Long projectId)
+    {
+        this.projectId = projectId;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public Date getUpdated()
+    {
+        return updated;
+    }
+
+    public void setUpdated(Date updated)
+    {
+        this.updated = updated;
+    }
+
+    public BigDecimal getThreshold()
+    {
+        return threshold;
+    }
+
+    public void setThreshold(BigDecimal threshold)
+    {
+        this.threshold = threshold;
+    }
+
+    public List<String> getWatchers()
+    {
+        return watchers;
+    }
+
+    public void setWatchers(List<String> watchers)
+    {
+        this.watchers = watchers;
+    }
+
+    public Map<String, String> getMappings()
+    {
+        return mappings;
+    }
+
+    public void setMappings(Map<String, String> mappings)
+    {
+        this.mappings = mappings;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.benchmarks;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Set-based removals and paged key listing against the embedded database. Removal benchmarks repopulate the
+ * storage before every invocation, so those run as single shots.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = 1)
+@Measurement(iterations = 30, batchSize = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class EmbeddedDatabaseBenchmark
+{
+    static final String ENTITY_NAME = "FacadeStorageBench";
+    static final String KEY_PREFIX = "bench-";
+
+    @State(Scope.Thread)
+    public static class Populated
+    {
+        @Param({"10", "100"})
+        public int entities;
+
+        @Param({"10", "100"})
+        public int keysPerEntity;
+
+        EmbeddedEntryStore store;
+        List<Long> entityIds;
+
+        @Setup(Level.Trial)
+        public void createStore()
+        {
+            store = new EmbeddedEntryStore("remove");
+            entityIds = new ArrayList<Long>(entities);
+            for (long id = 1; id <= entities; id++) {
+                entityIds.add(id);
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void populate()
+        {
+            store.createSchema();
+            store.populate(ENTITY_NAME, entities, KEY_PREFIX, keysPerEntity);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Listed
+    {
+        @Param({"1000"})
+        public int keysPerEntity;
+
+        @Param({"50", "500"})
+        public int pageSize;
+
+        EmbeddedEntryStore store;
+
+        @Setup(Level.Trial)
+        public void populate()
+        {
+            store = new EmbeddedEntryStore("keys");
+            store.createSchema();
+            store.populate(ENTITY_NAME, 1, KEY_PREFIX, keysPerEntity);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class InMemoryPopulated
+    {
+        @Param({"10", "100"})
+        public int entities;
+
+        @Param({"10", "100"})
+        public int keysPerEntity;
+
+        InMemoryScopeOperations operations;
+
+        @Setup(Level.Invocation)
+        public void populate()
+        {
+            operations = new InMemoryScopeOperations();
+            for (long id = 1; id <= entities; id++) {
+                PropertySet propertySet = operations.loadDelegate(new InstanceId(id, ENTITY_NAME, KEY_PREFIX));
+                for (int key = 0; key < keysPerEntity; key++) {
+                    propertySet.setString(KEY_PREFIX + "key." + key, "value " + key);
+                }
+            }
+        }
+    }
+
+    /**
+     * What {@link com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations#removeByFilter(Long, String, String)}
+     * does for the scope wide removal
+     */
+    @Benchmark
+    public int removeByFilter(Populated state)
+    {
+        return state.store.remove(ENTITY_NAME, null, KEY_PREFIX);
+    }
+
+    @Benchmark
+    public int removeEntities(Populated state)
+    {
+        return state.store.remove(ENTITY_NAME, state.entityIds, null);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 10, time = 1)
+    public void keys(Listed state, Blackhole blackhole)
+    {
+        CloseableIterator<String> keys = state.store.keys(ENTITY_NAME, 1L, KEY_PREFIX, KEY_PREFIX.length(), state.pageSize);
+        try {
+            while (keys.hasNext()) {
+                blackhole.consume(keys.next());
+            }
+        } finally {
+            keys.close();
+        }
+    }
+
+    /**
+     * The same removal over the in-memory backend, the baseline of the database cost
+     */
+    @Benchmark
+    public void inMemoryRemoveByFilter(InMemoryPopulated state)
+    {
+        state.operations.removeByFilter(null, ENTITY_NAME, KEY_PREFIX);
+    }
+}
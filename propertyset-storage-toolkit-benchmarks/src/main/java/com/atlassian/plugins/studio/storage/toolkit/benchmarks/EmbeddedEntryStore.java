@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.benchmarks;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.PropertyEntryStore;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.ofbiz.core.entity.GenericDelegator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * {@link PropertyEntryStore} over the embedded H2 database laid out as the JIRA PropertySet tables, the table and
+ * column names are fixed instead of being looked up through the OfBiz entity model.
+ */
+public class EmbeddedEntryStore extends PropertyEntryStore
+{
+    private static final Map<String, String> TABLES = ImmutableMap.<String, String>builder()
+            .put("OSPropertyEntry", "propertyentry")
+            .put("OSPropertyNumber", "propertynumber")
+            .put("OSPropertyDecimal", "propertydecimal")
+            .put("OSPropertyString", "propertystring")
+            .put("OSPropertyText", "propertytext")
+            .put("OSPropertyDate", "propertydate")
+            .put("OSPropertyData", "propertydata")
+            .build();
+
+    private static final Map<String, String> COLUMNS = ImmutableMap.<String, String>builder()
+            .put("id", "ID")
+            .put("entityName", "ENTITY_NAME")
+            .put("entityId", "ENTITY_ID")
+            .put("propertyKey", "PROPERTY_KEY")
+            .put("type", "propertytype")
+            .put("value", "propertyvalue")
+            .build();
+
+    private final String url;
+    private long nextId = 1;
+
+    /**
+     * @param name in-memory database name, the database lives until the JVM exits
+     */
+    public EmbeddedEntryStore(String name)
+    {
+        super(new Supplier<GenericDelegator>()
+        {
+            public GenericDelegator get()
+            {
+                throw new UnsupportedOperationException("No entity engine in the embedded store");
+            }
+        });
+        this.url = "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+
+    @Override
+    protected Connection getConnection() throws SQLException
+    {
+        return DriverManager.getConnection(url);
+    }
+
+    @Override
+    protected synchronized long nextId(String entity)
+    {
+        return nextId++;
+    }
+
+    @Override
+    protected String table(String entity)
+    {
+        return TABLES.get(entity);
+    }
+
+    @Override
+    protected String column(String entity, String field)
+    {
+        return COLUMNS.get(field);
+    }
+
+    /**
+     * Drops and creates the tables
+     *
+     * @throws StorageException database failure
+     */
+    public void createSchema() throws StorageException
+    {
+        execute("DROP ALL OBJECTS",
+                "CREATE TABLE propertyentry (ID BIGINT PRIMARY KEY, ENTITY_NAME VARCHAR(255), ENTITY_ID BIGINT,"
+                        + " PROPERTY_KEY VARCHAR(255), propertytype INT)",
+                "CREATE INDEX osproperty_entityName ON propertyentry (ENTITY_NAME)",
+                "CREATE INDEX osproperty_all ON propertyentry (ENTITY_NAME, ENTITY_ID, PROPERTY_KEY)",
+                "CREATE TABLE propertynumber (ID BIGINT PRIMARY KEY, propertyvalue BIGINT)",
+                "CREATE TABLE propertydecimal (ID BIGINT PRIMARY KEY, propertyvalue DOUBLE)",
+                "CREATE TABLE propertystring (ID BIGINT PRIMARY KEY, propertyvalue VARCHAR(255))",
+                "CREATE TABLE propertytext (ID BIGINT PRIMARY KEY, propertyvalue CLOB)",
+                "CREATE TABLE propertydate (ID BIGINT PRIMARY KEY, propertyvalue TIMESTAMP)",
+                "CREATE TABLE propertydata (ID BIGINT PRIMARY KEY, propertyvalue BLOB)");
+        nextId = 1;
+    }
+
+    /**
+     * Stores <code>keysPerEntity</code> entries per entity, every other entry is a string, the rest are longs
+     *
+     * @param entityName entity name
+     * @param entities   number of entities, ids start from 1
+     * @param keyPrefix  property key prefix
+     * @param keysPerEntity entries per entity
+     * @throws StorageException database failure
+     */
+    public void populate(String entityName, int entities, String keyPrefix, int keysPerEntity) throws StorageException
+    {
+        try {
+            Connection connection = getConnection();
+            try {
+                connection.setAutoCommit(false);
+                PreparedStatement entry = connection.prepareStatement("INSERT INTO propertyentry VALUES (?, ?, ?, ?, ?)");
+                PreparedStatement number = connection.prepareStatement("INSERT INTO propertynumber VALUES (?, ?)");
+                PreparedStatement string = connection.prepareStatement("INSERT INTO propertystring VALUES (?, ?)");
+                try {
+                    for (long entityId = 1; entityId <= entities; entityId++) {
+                        for (int key = 0; key < keysPerEntity; key++) {
+                            long id = nextId("OSPropertyEntry");
+                            boolean isString = key % 2 == 0;
+                            entry.setLong(1, id);
+                            entry.setString(2, entityName);
+                            entry.setLong(3, entityId);
+                            entry.setString(4, keyPrefix + "key." + key);
+                            entry.setInt(5, isString ? PropertySet.STRING : PropertySet.LONG);
+                            entry.addBatch();
+
+                            PreparedStatement value = isString ? string : number;
+                            value.setLong(1, id);
+                            value.setObject(2, isString ? (Object) ("value " + key) : (Object) (long) key);
+                            value.addBatch();
+                        }
+                    }
+                    entry.executeBatch();
+                    number.executeBatch();
+                    string.executeBatch();
+                    connection.commit();
+                } finally {
+                    entry.close();
+                    number.close();
+                    string.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private void execute(String... statements) throws StorageException
+    {
+        try {
+            Connection connection = getConnection();
+            try {
+                Statement statement = connection.createStatement();
+                try {
+                    for (String sql : statements) {
+                        statement.execute(sql);
+                    }
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.benchmarks;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.Scopes;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.cache.StorageCache;
+import com.atlassian.plugins.studio.storage.toolkit.impl.filter.KeyFilter;
+import com.atlassian.plugins.studio.storage.toolkit.impl.index.KeyIndex;
+import com.atlassian.plugins.studio.storage.toolkit.impl.metrics.StorageMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link StorageFacade} operation over the in-memory backend, bare and with each of the decorators.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class FacadeBenchmark
+{
+    private static final int KEYS = 100;
+
+    @Param({"plain", "cache", "index", "filter", "metrics"})
+    public String decorator;
+
+    private StorageFacade facade;
+    private Collection<String> someKeys;
+    private Map<String, Object> batch;
+    private byte[] data;
+    private Date date;
+    private Properties properties;
+    private BenchmarkConfig object;
+
+    @Setup
+    @SuppressWarnings({"unchecked"})
+    public void setUp()
+    {
+        Scopes.Builder<Long> builder = new Scopes.Builder<Long>(new Scopes.LongIdEntity("FacadeStorageBench", "bench-"),
+                new Scopes.DeleteByNamePrefix("FacadeStorageBench", "bench-"));
+        builder.withBridge(new InMemoryScopeOperations());
+        if ("cache".equals(decorator)) {
+            builder.withCache(new StorageCache());
+        } else if ("index".equals(decorator)) {
+            builder.withKeyIndex(new KeyIndex());
+        } else if ("filter".equals(decorator)) {
+            builder.withKeyFilter(new KeyFilter());
+        } else if ("metrics".equals(decorator)) {
+            builder.withMetrics(new StorageMetrics());
+        }
+        com.atlassian.plugins.studio.storage.toolkit.Scope<Long> scope = builder.build();
+        facade = scope.load(1L);
+
+        for (int i = 0; i < KEYS; i++) {
+            facade.setString("key." + i, "value " + i);
+        }
+        data = new byte[256];
+        date = new Date();
+        properties = new Properties();
+        properties.setProperty("a", "1");
+        properties.setProperty("b", "2");
+        object = BenchmarkConfig.sample(10);
+
+        facade.setBoolean("boolean", true);
+        facade.setData("data", data);
+        facade.setDate("date", date);
+        facade.setDouble("double", new BigDecimal("12.5"));
+        facade.setLong("long", 42L);
+        facade.setObject("object", object);
+        facade.setProperties("properties", properties);
+        facade.setString("string", "value");
+        facade.setText("text", "long text value");
+
+        someKeys = Arrays.asList("boolean", "long", "string", "date", "missing");
+        batch = new LinkedHashMap<String, Object>();
+        batch.put("batch.boolean", true);
+        batch.put("batch.long", 7L);
+        batch.put("batch.string", "value");
+        batch.put("batch.date", date);
+    }
+
+    @Benchmark
+    public void setBoolean()
+    {
+        facade.setBoolean("boolean", true);
+    }
+
+    @Benchmark
+    public boolean getBoolean()
+    {
+        return facade.getBoolean("boolean");
+    }
+
+    @Benchmark
+    public void setData()
+    {
+        facade.setData("data", data);
+    }
+
+    @Benchmark
+    public byte[] getData()
+    {
+        return facade.getData("data");
+    }
+
+    @Benchmark
+    public void setDate()
+    {
+        facade.setDate("date", date);
+    }
+
+    @Benchmark
+    public Date getDate()
+    {
+        return facade.getDate("date");
+    }
+
+    @Benchmark
+    public void setDouble()
+    {
+        facade.setDouble("double", BigDecimal.TEN);
+    }
+
+    @Benchmark
+    public BigDecimal getDouble()
+    {
+        return facade.getDouble("double");
+    }
+
+    @Benchmark
+    public void setLong()
+    {
+        facade.setLong("long", 42L);
+    }
+
+    @Benchmark
+    public Long getLong()
+    {
+        return facade.getLong("long");
+    }
+
+    @Benchmark
+    public void setObject()
+    {
+        facade.setObject("object", object);
+    }
+
+    @Benchmark
+    public Object getObject()
+    {
+        return facade.getObject("object");
+    }
+
+    @Benchmark
+    public void setProperties()
+    {
+        facade.setProperties("properties", properties);
+    }
+
+    @Benchmark
+    public Properties getProperties()
+    {
+        return facade.getProperties("properties");
+    }
+
+    @Benchmark
+    public void setString()
+    {
+        facade.setString("string", "value");
+    }
+
+    @Benchmark
+    public String getString()
+    {
+        return facade.getString("string");
+    }
+
+    @Benchmark
+    public String getStringMissing()
+    {
+        return facade.getString("missing");
+    }
+
+    @Benchmark
+    public void setText()
+    {
+        facade.setText("text", "long text value");
+    }
+
+    @Benchmark
+    public String getText()
+    {
+        return facade.getText("text");
+    }
+
+    @Benchmark
+    public boolean exists()
+    {
+        return facade.exists("string");
+    }
+
+    @Benchmark
+    public boolean existsMissing()
+    {
+        return facade.exists("missing");
+    }
+
+    @Benchmark
+    public void setAll()
+    {
+        facade.setAll(batch);
+    }
+
+    @Benchmark
+    public Map<String, Object> getAll()
+    {
+        return facade.getAll(someKeys);
+    }
+
+    @Benchmark
+    public Collection<String> getKeys()
+    {
+        return facade.getKeys();
+    }
+
+    @Benchmark
+    public Collection<String> getKeysPrefixed()
+    {
+        return facade.getKeys("key.1");
+    }
+
+    @Benchmark
+    public int countKeys()
+    {
+        return facade.countKeys("key.");
+    }
+
+    @Benchmark
+    public Collection<String> getKeyRange()
+    {
+        return facade.getKeyRange("key.1", "key.5");
+    }
+
+    @Benchmark
+    public void keys(Blackhole blackhole)
+    {
+        CloseableIterator<String> keys = facade.keys("key.", 20);
+        try {
+            while (keys.hasNext()) {
+                blackhole.consume(keys.next());
+            }
+        } finally {
+            keys.close();
+        }
+    }
+
+    @Benchmark
+    public boolean setAndRemove()
+    {
+        facade.setLong("removed", 1L);
+        return facade.remove("removed");
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.benchmarks;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultScopeOperationsImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.StoredText;
+import com.opensymphony.module.propertyset.PropertySet;
+import com.opensymphony.module.propertyset.memory.MemoryPropertySet;
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory stand-in of the OfBiz backed operations: every entity gets its own {@link MemoryPropertySet}, the
+ * value serialization is left to {@link DefaultScopeOperationsImpl}.
+ */
+public class InMemoryScopeOperations extends ForwardingScopeOperations
+{
+    private final ConcurrentMap<List<Object>, PropertySet> entities = new ConcurrentHashMap<List<Object>, PropertySet>();
+
+    public InMemoryScopeOperations()
+    {
+        super(new DefaultScopeOperationsImpl());
+    }
+
+    @Override
+    public PropertySet loadDelegate(InstanceId descriptor) throws StorageException
+    {
+        List<Object> entity = Arrays.<Object>asList(descriptor.getEntityName(), descriptor.getEntityId());
+        PropertySet propertySet = entities.get(entity);
+        if (propertySet == null) {
+            MemoryPropertySet created = new MemoryPropertySet();
+            created.init(new HashMap(), new HashMap());
+            propertySet = entities.putIfAbsent(entity, created);
+            if (propertySet == null) {
+                propertySet = created;
+            }
+        }
+        return propertySet;
+    }
+
+    @Override
+    public Map<InstanceId, Map<String, Object>> getValues(Collection<InstanceId> descriptors, Collection<String> keys)
+            throws StorageException
+    {
+        Map<InstanceId, Map<String, Object>> values = new LinkedHashMap<InstanceId, Map<String, Object>>();
+        for (InstanceId descriptor : descriptors) {
+            PropertySet propertySet = loadDelegate(descriptor);
+            String prefix = StringUtils.defaultString(descriptor.getKeyPrefix());
+
+            Map<String, Object> stored = new HashMap<String, Object>();
+            for (String key : keys) {
+                if (!propertySet.exists(prefix + key)) {
+                    continue;
+                }
+                stored.put(key, propertySet.getType(prefix + key) == PropertySet.TEXT
+                        ? new StoredText(propertySet.getText(prefix + key))
+                        : propertySet.getAsActualType(prefix + key));
+            }
+            values.put(descriptor, stored);
+        }
+        return values;
+    }
+
+    @Override
+    public void setValues(InstanceId descriptor, Map<String, Object> values) throws StorageException
+    {
+        PropertySet propertySet = loadDelegate(descriptor);
+        String prefix = StringUtils.defaultString(descriptor.getKeyPrefix());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Boolean) {
+                propertySet.setBoolean(prefix + entry.getKey(), (Boolean) value);
+            } else if (value instanceof Long) {
+                propertySet.setLong(prefix + entry.getKey(), (Long) value);
+            } else if (value instanceof Date) {
+                propertySet.setDate(prefix + entry.getKey(), (Date) value);
+            } else {
+                propertySet.setString(prefix + entry.getKey(), (String) value);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public CloseableIterator<String> keys(InstanceId descriptor, String keyPrefix, int pageSize) throws StorageException
+    {
+        final String prefix = StringUtils.defaultString(descriptor.getKeyPrefix());
+        final Iterator<String> keys = new TreeSet<String>(loadDelegate(descriptor)
+                .getKeys(prefix + StringUtils.defaultString(keyPrefix))).iterator();
+        return new CloseableIterator<String>()
+        {
+            private boolean closed;
+
+            public boolean hasNext()
+            {
+                return !closed && keys.hasNext();
+            }
+
+            public String next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys.next().substring(prefix.length());
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public void close()
+            {
+                closed = true;
+            }
+        };
+    }
+
+    @Override
+    public void inTransaction(Runnable work) throws StorageException
+    {
+        work.run();
+    }
+
+    @Override
+    public void removeByFilter(Long entityId, String entityName, String keyPrefix) throws StorageException
+    {
+        for (Map.Entry<List<Object>, PropertySet> entity : entities.entrySet()) {
+            if (ObjectUtils.equals(entityName, entity.getKey().get(0))
+                    && (entityId == null || entityId.equals(entity.getKey().get(1)))) {
+                removeKeys(entity.getValue(), keyPrefix);
+            }
+        }
+    }
+
+    @Override
+    public void removeEntities(String entityName, Collection<Long> entityIds) throws StorageException
+    {
+        for (Long entityId : entityIds) {
+            PropertySet propertySet = entities.get(Arrays.<Object>asList(entityName, entityId));
+            if (propertySet != null) {
+                removeKeys(propertySet, null);
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static void removeKeys(PropertySet propertySet, String keyPrefix)
+    {
+        for (String key : new ArrayList<String>(propertySet.getKeys(keyPrefix))) {
+            propertySet.remove(key);
+        }
+    }
+}
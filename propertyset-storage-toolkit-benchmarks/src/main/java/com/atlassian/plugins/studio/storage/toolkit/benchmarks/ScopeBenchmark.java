@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.benchmarks;
+
+import com.atlassian.plugins.studio.storage.toolkit.Facades;
+import com.atlassian.plugins.studio.storage.toolkit.Scopes;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.cache.StorageCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction costs: scope lookup and build, facade load with and without decorators, bulk preloading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ScopeBenchmark
+{
+    private static final int CONTEXTS = 100;
+
+    private InMemoryScopeOperations bridge;
+    private com.atlassian.plugins.studio.storage.toolkit.Scope<Long> plainScope;
+    private com.atlassian.plugins.studio.storage.toolkit.Scope<Long> cachedScope;
+    private List<Long> contexts;
+    private Collection<String> keys;
+
+    @Setup
+    public void setUp()
+    {
+        bridge = new InMemoryScopeOperations();
+        plainScope = build(false);
+        cachedScope = build(true);
+
+        contexts = new ArrayList<Long>(CONTEXTS);
+        for (long context = 1; context <= CONTEXTS; context++) {
+            contexts.add(context);
+            StorageFacade facade = plainScope.load(context);
+            facade.setBoolean("enabled", true);
+            facade.setString("name", "name " + context);
+            facade.setLong("limit", context);
+        }
+        keys = Arrays.asList("enabled", "name", "limit", "missing");
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private com.atlassian.plugins.studio.storage.toolkit.Scope<Long> build(boolean cached)
+    {
+        Scopes.Builder<Long> builder = new Scopes.Builder<Long>(new Scopes.LongIdEntity("FacadeStorageBench", "bench-"),
+                new Scopes.DeleteByNamePrefix("FacadeStorageBench", "bench-"));
+        builder.withBridge(bridge);
+        if (cached) {
+            builder.withCache(new StorageCache());
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public Object constantNameScope()
+    {
+        return Scopes.constantName("benchmark");
+    }
+
+    @Benchmark
+    public Object buildScope()
+    {
+        return build(false);
+    }
+
+    @Benchmark
+    public StorageFacade loadFacade()
+    {
+        return Facades.storage(plainScope, 1L);
+    }
+
+    @Benchmark
+    public StorageFacade loadCachedFacade()
+    {
+        return Facades.storage(cachedScope, 1L);
+    }
+
+    @Benchmark
+    public Map<Long, StorageFacade> loadAll()
+    {
+        return Facades.storages(plainScope, contexts, keys);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.benchmarks;
+
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultScopeOperationsImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.BinaryValueCodec;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.CodecScopeOperations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ScopeOperations#serialize(Object)} and {@link ScopeOperations#deserialize(String)} of the configuration
+ * DTOs, XStream XML against the binary codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class SerializationBenchmark
+{
+    @Param({"xstream", "binary"})
+    public String format;
+
+    @Param({"5", "50"})
+    public int size;
+
+    private ScopeOperations operations;
+    private BenchmarkConfig config;
+    private String serialized;
+
+    @Setup
+    public void setUp()
+    {
+        ScopeOperations xstream = new DefaultScopeOperationsImpl();
+        operations = "binary".equals(format) ? new CodecScopeOperations(xstream, new BinaryValueCodec()) : xstream;
+        config = BenchmarkConfig.sample(size);
+        serialized = operations.serialize(config);
+    }
+
+    @Benchmark
+    public String serialize()
+    {
+        return operations.serialize(config);
+    }
+
+    @Benchmark
+    public Object deserialize()
+    {
+        return operations.deserialize(serialized);
+    }
+}
@@ -17,13 +17,18 @@
 
 package com.atlassian.plugins.studio.storage.examples;
 
+import com.atlassian.jira.config.util.JiraHome;
+import com.atlassian.plugins.studio.storage.toolkit.Scopes;
 import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
 import com.atlassian.plugins.studio.storage.toolkit.StorageService;
+import com.atlassian.plugins.studio.storage.toolkit.impl.snapshot.SnapshotStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
+import java.io.File;
+
 /**
  * User: leonidmaslov
  * Date: 12/10/10
@@ -33,10 +38,13 @@ public class ExampleManagerImpl implements ExampleManager, InitializingBean, Dis
 {
     private static final Logger logger = LoggerFactory.getLogger(ExampleManagerImpl.class);
     private final StorageService storageService;
+    private final JiraHome jiraHome;
+    private SnapshotStore snapshots;
 
-    public ExampleManagerImpl(StorageService storageService)
+    public ExampleManagerImpl(StorageService storageService, JiraHome jiraHome)
     {
         this.storageService = storageService;
+        this.jiraHome = jiraHome;
     }
 
     @Override
@@ -58,6 +66,9 @@ public class ExampleManagerImpl implements ExampleManager, InitializingBean, Dis
     @Override
     public void afterPropertiesSet() throws Exception
     {
+        // the startup reads of the sample constant scope are served from the local snapshot after the restart
+        snapshots = new SnapshotStore(new File(jiraHome.getDataDirectory(), "storage-snapshots"));
+        Scopes.enableSnapshots(snapshots, "storageName");
         setup();
     }
 
@@ -65,5 +76,8 @@ public class ExampleManagerImpl implements ExampleManager, InitializingBean, Dis
     public void destroy() throws Exception
     {
         logger.error("destroy");
+        if (snapshots != null) {
+            snapshots.shutdown();
+        }
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.examples;
+
+import com.atlassian.plugins.studio.storage.toolkit.impl.trace.Recording;
+import com.atlassian.plugins.studio.storage.toolkit.impl.trace.RequestRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Records the storage calls made while handling the request, logs the summary (repeated loads, reads to batch,
+ * N+1 reads across the scope instances) of the requests making more calls than the <code>threshold</code>
+ * init parameter allows.
+ */
+public class StorageRequestFilter implements Filter
+{
+    private static final Logger logger = LoggerFactory.getLogger(StorageRequestFilter.class);
+    private static final int DEFAULT_THRESHOLD = 20;
+
+    private int threshold = DEFAULT_THRESHOLD;
+
+    public void init(FilterConfig filterConfig) throws ServletException
+    {
+        String value = filterConfig.getInitParameter("threshold");
+        if (value != null) {
+            try {
+                threshold = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new ServletException("Invalid storage call threshold: " + value, e);
+            }
+        }
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException
+    {
+        if (RequestRecorder.current() != null) {
+            // forward or include, recorded by the outer request
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Recording recording = RequestRecorder.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestRecorder.stop();
+            if (recording.getCallCount() > threshold) {
+                logger.warn(describe(request) + ": " + recording.summary());
+            }
+        }
+    }
+
+    public void destroy()
+    {
+    }
+
+    private static String describe(ServletRequest request)
+    {
+        if (request instanceof HttpServletRequest) {
+            HttpServletRequest http = (HttpServletRequest) request;
+            return http.getMethod() + " " + http.getRequestURI();
+        }
+        return String.valueOf(request);
+    }
+}
@@ -22,6 +22,10 @@ import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
 import com.atlassian.plugins.studio.storage.toolkit.StorageService;
 import org.apache.commons.lang.StringUtils;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * User: leonidmaslov
  * Date: 12/11/10
@@ -102,15 +106,18 @@ public class PropertySetConfigurableActionExample extends JiraWebActionSupport
 
     private void loadConfig(StorageFacade storage)
     {
-        setAdminOnly(storage.getBoolean(ADMIN_ONLY));
-        setHelloText(StringUtils.defaultString(storage.getString(HELLO_TEXT), "Hello, "));
-        setWelcomeText(StringUtils.defaultString(storage.getString(WELCOME_TEXT), "World"));
+        Map<String, Object> values = storage.getAll(Arrays.asList(ADMIN_ONLY, HELLO_TEXT, WELCOME_TEXT));
+        setAdminOnly(Boolean.TRUE.equals(values.get(ADMIN_ONLY)));
+        setHelloText(StringUtils.defaultString((String) values.get(HELLO_TEXT), "Hello, "));
+        setWelcomeText(StringUtils.defaultString((String) values.get(WELCOME_TEXT), "World"));
     }
 
     private void saveConfig(StorageFacade storage)
     {
-        storage.setBoolean(ADMIN_ONLY, isAdminOnly());
-        storage.setString(HELLO_TEXT, getHelloText());
-        storage.setString(WELCOME_TEXT, getWelcomeText());
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put(ADMIN_ONLY, isAdminOnly());
+        values.put(HELLO_TEXT, getHelloText());
+        values.put(WELCOME_TEXT, getWelcomeText());
+        storage.setAll(values);
     }
 }
@@ -28,6 +28,8 @@ import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 
+import java.io.DataInputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.Calendar;
@@ -316,4 +318,34 @@ class TestSuite
         stateTrue("delete text should work", facade.remove("data"));
         not("text key should NOT exist now", facade.exists("data"));
     }
+
+    @ToolkitTest
+    protected void constantScopeSaveReadDeleteForStream() throws Exception
+    {
+        String name = getClass().getName() + "-saveDeleteCycle";
+        StorageFacade facade = storageService.constantNameStorage(name);
+        facade.remove("stream");
+
+        byte[] data = new byte[100 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        stateTrue("First stream access should be null", facade.openInputStream("stream") == null);
+        OutputStream out = facade.openOutputStream("stream");
+        out.write(data);
+        out.close();
+        stateTrue("stream key should exist now", facade.exists("stream"));
+        stateTrue("chunk keys should not be listed, got: " + facade.getKeys("stream"),
+                ImmutableSet.copyOf(facade.getKeys("stream")).equals(ImmutableSet.of("stream")));
+
+        byte[] range = new byte[1000];
+        DataInputStream in = new DataInputStream(facade.openInputStream("stream", 50000, range.length));
+        in.readFully(range);
+        not("range should end", in.read() != -1);
+        in.close();
+        stateTrue("range should match", ArrayUtils.isEquals(range, ArrayUtils.subarray(data, 50000, 51000)));
+
+        stateTrue("delete stream should work", facade.remove("stream"));
+        not("stream key should NOT exist now", facade.exists("stream"));
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Non-blocking counterpart of the {@link StorageFacade}: every operation runs on the storage executor and its
+ * result, or the {@link StorageException} it failed with, is delivered by the returned future.
+ * <p/>
+ * Operations of the same facade may run in parallel and in any order; wait for the write to complete before the
+ * reads relying on it. The paged {@link StorageFacade#keys(String, int)} iteration has no asynchronous
+ * counterpart, use it on the loaded {@link #facade()}.
+ */
+public interface AsyncStorageFacade
+{
+    /**
+     * @return the synchronous facade once it is loaded
+     */
+    StorageFuture<StorageFacade> facade();
+
+
+    StorageFuture<Void> setBoolean(String key, boolean value);
+
+    StorageFuture<Boolean> getBoolean(String key);
+
+
+    StorageFuture<Void> setData(String key, byte[] bytes);
+
+    StorageFuture<byte[]> getData(String key);
+
+
+    StorageFuture<Void> setDate(String key, Date date);
+
+    StorageFuture<Date> getDate(String key);
+
+
+    StorageFuture<Void> setDouble(String key, BigDecimal value);
+
+    StorageFuture<BigDecimal> getDouble(String key);
+
+
+    StorageFuture<Collection<String>> getKeys();
+
+    StorageFuture<Collection<String>> getKeys(String keyPrefix);
+
+    StorageFuture<Integer> countKeys(String keyPrefix);
+
+    StorageFuture<Collection<String>> getKeyRange(String fromKey, String toKey);
+
+
+    StorageFuture<Void> setLong(String key, Long value);
+
+    StorageFuture<Long> getLong(String key);
+
+
+    StorageFuture<Void> setObject(String key, Object objectValue);
+
+    StorageFuture<Object> getObject(String key);
+
+
+    StorageFuture<Void> setProperties(String key, Properties properties);
+
+    StorageFuture<Properties> getProperties(String key);
+
+
+    StorageFuture<Void> setString(String key, String string);
+
+    StorageFuture<String> getString(String key);
+
+
+    StorageFuture<Void> setText(String key, String text);
+
+    StorageFuture<String> getText(String key);
+
+
+    StorageFuture<Void> setAll(Map<String, ?> values);
+
+    StorageFuture<Map<String, Object>> getAll(Collection<String> keys);
+
+    <T> StorageFuture<Map<String, T>> getAll(Collection<String> keys, Class<T> type);
+
+
+    StorageFuture<Boolean> exists(String key);
+
+    StorageFuture<Boolean> remove(String key);
+
+    StorageFuture<Void> removeAll();
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit;
+
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.project.Project;
+import org.ofbiz.core.entity.GenericValue;
+import webwork.action.Action;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Non-blocking counterpart of the {@link StorageService}.
+ * <p/>
+ * Facades start loading as soon as they are requested, so the storages of several scopes are read in parallel:
+ * <pre>
+ *     StorageFuture&lt;String&gt; title = asyncStorageService.projectStorage(project).getString("title");
+ *     StorageFuture&lt;Map&lt;Issue, StorageFacade&gt;&gt; issues = asyncStorageService.issueStorages(issues, keys);
+ *     StorageFuture&lt;Boolean&gt; enabled = asyncStorageService.constantNameStorage("gadget").getBoolean("enabled");
+ *     ...
+ *     render(title.checkedGet(), issues.checkedGet(), enabled.checkedGet());
+ * </pre>
+ */
+public interface AsyncStorageService
+{
+
+    AsyncStorageFacade projectStorage(Project project);
+
+
+    AsyncStorageFacade issueStorage(Issue issue);
+
+
+    /**
+     * Reads the keys of many projects at once
+     *
+     * @param projects projects
+     * @param keys     keys to preload
+     * @return read-only facades by project
+     */
+    StorageFuture<Map<Project, StorageFacade>> projectStorages(Collection<Project> projects, Collection<String> keys);
+
+    /**
+     * Reads the keys of many issues at once
+     *
+     * @param issues issues
+     * @param keys   keys to preload
+     * @return read-only facades by issue
+     */
+    StorageFuture<Map<Issue, StorageFacade>> issueStorages(Collection<Issue> issues, Collection<String> keys);
+
+
+    AsyncStorageFacade gvStorage(GenericValue gv);
+
+
+    AsyncStorageFacade constantNameStorage(String name);
+
+
+    AsyncStorageFacade actionStorage(Action action);
+
+    <T extends Action> AsyncStorageFacade actionStorage(Class<T> actionClazz);
+
+
+    <U> AsyncStorageFacade storage(Scope<U> scope, U context);
+
+}
@@ -22,6 +22,9 @@ import com.atlassian.jira.project.Project;
 import org.ofbiz.core.entity.GenericValue;
 import webwork.action.Action;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * User: leonidmaslov
  * Date: 12/10/10
@@ -40,6 +43,13 @@ public class Facades
     }
 
 
+    public static <U> Map<U, StorageFacade> storages(Scope<U> scope, Collection<U> contexts, Collection<String> keys)
+            throws StorageException
+    {
+        return scope.loadAll(contexts, keys);
+    }
+
+
     public static StorageFacade projectStorage(Project project) throws StorageException
     {
         return storage(Scopes.projectScope(project), project);
@@ -52,6 +62,20 @@ public class Facades
     }
 
 
+    public static Map<Project, StorageFacade> projectStorages(Collection<Project> projects, Collection<String> keys)
+            throws StorageException
+    {
+        return storages(Scopes.projectScope(), projects, keys);
+    }
+
+
+    public static Map<Issue, StorageFacade> issueStorages(Collection<Issue> issues, Collection<String> keys)
+            throws StorageException
+    {
+        return storages(Scopes.issueScope(), issues, keys);
+    }
+
+
     public static StorageFacade gvStorage(GenericValue gv) throws StorageException
     {
         return storage(Scopes.gvScope(gv), gv);
@@ -19,11 +19,12 @@ package com.atlassian.plugins.studio.storage.toolkit;
 
 import com.atlassian.gzipfilter.org.apache.commons.lang.builder.ToStringBuilder;
 import com.atlassian.gzipfilter.org.apache.commons.lang.builder.ToStringStyle;
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 
 /**
  * storage instance id
+ * <p/>
+ * Instances are immutable and the hash code is computed once, the built-in scopes hand out canonical
+ * instances so the lookups keyed by instance id mostly end up with the reference comparison.
  */
 public class InstanceId
 {
@@ -32,6 +33,12 @@ public class InstanceId
         this.keyPrefix = keyPrefix;
         this.entityName = entityName;
         this.entityId = entityId;
+
+        int h = 17;
+        h = 37 * h + (keyPrefix == null ? 0 : keyPrefix.hashCode());
+        h = 37 * h + (entityName == null ? 0 : entityName.hashCode());
+        h = 37 * h + (entityId == null ? 0 : entityId.hashCode());
+        this.hash = h;
     }
 
     public String getKeyPrefix()
@@ -52,15 +59,12 @@ public class InstanceId
     private final String keyPrefix;
     private final Long entityId;
     private final String entityName;
+    private final int hash;
 
 
     public int hashCode()
     {
-        return new HashCodeBuilder(17, 37)
-                .append(getKeyPrefix())
-                .append(getEntityName())
-                .append(getEntityId())
-                .toHashCode();
+        return hash;
     }
 
     public boolean equals(Object o)
@@ -72,16 +76,20 @@ public class InstanceId
         } else if (o instanceof InstanceId) {
             InstanceId other = (InstanceId) o;
 
-            result = new EqualsBuilder()
-                    .append(getKeyPrefix(), other.getKeyPrefix())
-                    .append(getEntityName(), other.getEntityName())
-                    .append(getEntityId(), other.getEntityId())
-                    .isEquals();
+            result = hash == other.hash
+                    && eq(getEntityId(), other.getEntityId())
+                    && eq(getEntityName(), other.getEntityName())
+                    && eq(getKeyPrefix(), other.getKeyPrefix());
         }
 
         return result;
     }
 
+    private static boolean eq(Object a, Object b)
+    {
+        return a == null ? b == null : a.equals(b);
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit;
+
+import java.util.Date;
+
+/**
+ * Codec bound to a {@link StorageKey}, converts the typed values to one of the PropertySet value types and back
+ * without reflection. See {@link KeyCodecs} for the built-in ones.
+ *
+ * @param <T> value type
+ */
+public interface KeyCodec<T>
+{
+    /**
+     * PropertySet value types the codecs store to
+     */
+    enum Storage
+    {
+        BOOLEAN(Boolean.class),
+        LONG(Long.class),
+        /**
+         * up to 255 characters
+         */
+        STRING(String.class),
+        TEXT(String.class),
+        DATE(Date.class),
+        DATA(byte[].class);
+
+        private final Class<?> storedType;
+
+        Storage(Class<?> storedType)
+        {
+            this.storedType = storedType;
+        }
+
+        public Class<?> getStoredType()
+        {
+            return storedType;
+        }
+    }
+
+    Class<T> getType();
+
+    Storage getStorage();
+
+    /**
+     * @return <code>true</code> if the decoded values are immutable and might be cached and shared
+     */
+    boolean isImmutable();
+
+    /**
+     * @param value value, never <code>null</code>
+     * @return stored value of the {@link #getStorage()} type
+     * @throws StorageException encoding failure
+     */
+    Object encode(T value) throws StorageException;
+
+    /**
+     * @param stored stored value of the {@link #getStorage()} type, never <code>null</code>
+     * @return decoded value
+     * @throws StorageException decoding failure
+     */
+    T decode(Object stored) throws StorageException;
+}
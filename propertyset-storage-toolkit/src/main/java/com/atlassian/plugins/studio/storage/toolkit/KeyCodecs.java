@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit;
+
+import com.atlassian.jira.util.dbc.Assertions;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Built-in {@link KeyCodec}s. The decimal codec stores the values the way <code>setDouble</code> does, the others
+ * the way the setters of their types do, so the typed keys read the values stored by the untyped API and back.
+ */
+public final class KeyCodecs
+{
+    public static final KeyCodec<Boolean> BOOLEAN = new StoredAsIs<Boolean>(Boolean.class, KeyCodec.Storage.BOOLEAN);
+
+    public static final KeyCodec<Long> LONG = new StoredAsIs<Long>(Long.class, KeyCodec.Storage.LONG);
+
+    public static final KeyCodec<String> STRING = new StoredAsIs<String>(String.class, KeyCodec.Storage.STRING);
+
+    public static final KeyCodec<String> TEXT = new StoredAsIs<String>(String.class, KeyCodec.Storage.TEXT);
+
+    /**
+     * Dates are mutable, never shared by the cache
+     */
+    public static final KeyCodec<Date> DATE = new BaseCodec<Date>(Date.class, KeyCodec.Storage.DATE, false)
+    {
+        public Object encode(Date value)
+        {
+            return value;
+        }
+
+        public Date decode(Object stored)
+        {
+            return (Date) stored;
+        }
+    };
+
+    public static final KeyCodec<byte[]> DATA = new BaseCodec<byte[]>(byte[].class, KeyCodec.Storage.DATA, false)
+    {
+        public Object encode(byte[] value)
+        {
+            return value;
+        }
+
+        public byte[] decode(Object stored)
+        {
+            return (byte[]) stored;
+        }
+    };
+
+    public static final KeyCodec<Integer> INTEGER = new BaseCodec<Integer>(Integer.class, KeyCodec.Storage.LONG, true)
+    {
+        public Object encode(Integer value)
+        {
+            return value.longValue();
+        }
+
+        public Integer decode(Object stored) throws StorageException
+        {
+            long value = (Long) stored;
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new StorageException("Stored value " + value + " does not fit into Integer");
+            }
+            return (int) value;
+        }
+    };
+
+    public static final KeyCodec<BigDecimal> DECIMAL
+            = new BaseCodec<BigDecimal>(BigDecimal.class, KeyCodec.Storage.STRING, true)
+    {
+        public Object encode(BigDecimal value)
+        {
+            return value.toString();
+        }
+
+        public BigDecimal decode(Object stored) throws StorageException
+        {
+            try {
+                return new BigDecimal((String) stored);
+            } catch (NumberFormatException e) {
+                throw new StorageException("Not a decimal: " + stored, e);
+            }
+        }
+    };
+
+    private KeyCodecs()
+    {
+    }
+
+    /**
+     * @param type enum type
+     * @param <E>  enum type
+     * @return codec storing the constant names
+     */
+    public static <E extends Enum<E>> KeyCodec<E> enumCodec(final Class<E> type)
+    {
+        Assertions.notNull("Enum type is null", type);
+        return new BaseCodec<E>(type, KeyCodec.Storage.STRING, true)
+        {
+            public Object encode(E value)
+            {
+                return value.name();
+            }
+
+            public E decode(Object stored) throws StorageException
+            {
+                try {
+                    return Enum.valueOf(type, (String) stored);
+                } catch (IllegalArgumentException e) {
+                    throw new StorageException("Not a " + type.getName() + " constant: " + stored, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Base class of the codecs
+     *
+     * @param <T> value type
+     */
+    public abstract static class BaseCodec<T> implements KeyCodec<T>
+    {
+        private final Class<T> type;
+        private final Storage storage;
+        private final boolean immutable;
+
+        protected BaseCodec(Class<T> type, Storage storage, boolean immutable)
+        {
+            this.type = type;
+            this.storage = storage;
+            this.immutable = immutable;
+        }
+
+        public Class<T> getType()
+        {
+            return type;
+        }
+
+        public Storage getStorage()
+        {
+            return storage;
+        }
+
+        public boolean isImmutable()
+        {
+            return immutable;
+        }
+
+        @Override
+        public String toString()
+        {
+            return type.getSimpleName() + " as " + storage;
+        }
+    }
+
+    private static final class StoredAsIs<T> extends BaseCodec<T>
+    {
+        StoredAsIs(Class<T> type, Storage storage)
+        {
+            super(type, storage, true);
+        }
+
+        public Object encode(T value)
+        {
+            return value;
+        }
+
+        public T decode(Object stored)
+        {
+            return getType().cast(stored);
+        }
+    }
+}
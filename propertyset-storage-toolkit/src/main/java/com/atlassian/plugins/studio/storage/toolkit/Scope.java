@@ -17,6 +17,9 @@
 
 package com.atlassian.plugins.studio.storage.toolkit;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Scope Bridge
  * <p/>
@@ -36,9 +39,27 @@ public interface Scope<U>
      */
     StorageFacade load(U context) throws StorageException;
 
+    /**
+     * Reads the keys for many contexts at once
+     *
+     * @param contexts scope contexts
+     * @param keys     keys to preload
+     * @return read-only facades by context, only the keys preloaded could be read
+     * @throws StorageException
+     */
+    Map<U, StorageFacade> loadAll(Collection<U> contexts, Collection<String> keys) throws StorageException;
+
 
     void remove(U context) throws StorageException;
 
+    /**
+     * Removes the data of many contexts at once
+     *
+     * @param contexts scope contexts
+     * @throws StorageException
+     */
+    void removeAll(Collection<U> contexts) throws StorageException;
+
     /**
      * removes    all the scope instances - like all Project configurations
      * <p/>
@@ -20,16 +20,36 @@ package com.atlassian.plugins.studio.storage.toolkit;
 import com.atlassian.jira.issue.Issue;
 import com.atlassian.jira.project.Project;
 import com.atlassian.jira.util.dbc.Assertions;
-import com.atlassian.jira.util.ofbiz.GenericValueUtils;
 import com.atlassian.plugins.studio.storage.toolkit.impl.AbstractDefaultScopeImpl;
 import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultScopeOperationsImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.FacadeDecorator;
 import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.bus.InvalidationBus;
+import com.atlassian.plugins.studio.storage.toolkit.impl.bus.InvalidationEndpoint;
+import com.atlassian.plugins.studio.storage.toolkit.impl.bus.PollingInvalidationTransport;
+import com.atlassian.plugins.studio.storage.toolkit.impl.cache.StorageCache;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.CodecScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.ValueCodec;
+import com.atlassian.plugins.studio.storage.toolkit.impl.compress.ValueCompression;
+import com.atlassian.plugins.studio.storage.toolkit.impl.filter.KeyFilter;
+import com.atlassian.plugins.studio.storage.toolkit.impl.index.KeyIndex;
+import com.atlassian.plugins.studio.storage.toolkit.impl.metrics.StorageMetrics;
+import com.atlassian.plugins.studio.storage.toolkit.impl.snapshot.SnapshotStore;
+import com.atlassian.plugins.studio.storage.toolkit.impl.trace.RequestRecorder;
+import com.atlassian.plugins.studio.storage.toolkit.impl.writebehind.WriteBehindBuffer;
 import com.google.common.base.Function;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import org.ofbiz.core.entity.GenericValue;
 import webwork.action.Action;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * User: leonidmaslov
@@ -39,18 +59,172 @@ import javax.annotation.Nullable;
 public class Scopes
 {
     private static final DefaultScopeOperationsImpl DEFAULT_OPERATIONS_IMPL_BRIDGE = new DefaultScopeOperationsImpl();
+    private static final StorageMetrics METRICS = new StorageMetrics();
+    private static final RequestRecorder RECORDER = new RequestRecorder();
+    private static final Set<WriteBehindBuffer> WRITE_BEHIND_BUFFERS = new CopyOnWriteArraySet<WriteBehindBuffer>();
+    private static final Set<InvalidationBus> INVALIDATION_BUSES = new CopyOnWriteArraySet<InvalidationBus>();
+    private static final Set<SnapshotStore> SNAPSHOT_STORES = new CopyOnWriteArraySet<SnapshotStore>();
+    private static final ConcurrentMap<String, SnapshotStore> SNAPSHOT_ENTITIES = new MapMaker().makeMap();
     private static final long CONSTANT_ENTITY_ID = 2L;
     private static final long ACTION_ENTITY_ID = 3L;
 
+    private static final Scope<Project> PROJECT_SCOPE = makeLongIdBuilder("FacadeStorageProject", "project-")
+            .as(new Function<Project, Long>()
+            {
+                public Long apply(@Nullable Project from)
+                {
+                    return from.getId();
+                }
+            }).build();
+
+    private static final Scope<Issue> ISSUE_SCOPE = makeLongIdBuilder("FacadeStorageIssue", "issue-")
+            .as(new Function<Issue, Long>()
+            {
+                public Long apply(@Nullable Issue from)
+                {
+                    return from.getId();
+                }
+            }).build();
+
+    private static final Scope<GenericValue> GV_SCOPE = new Builder<GenericValue>(
+            new GenericValueIdEntity("FacadeStorageGv", "gv-"), new DeleteByNamePrefix("FacadeStorageGv", "gv-"))
+            .withMetrics(METRICS)
+            .withRequestRecorder(RECORDER)
+            .build();
+
+    private static final ConcurrentMap<String, Scope<String>> CONSTANT_SCOPES = new MapMaker().softValues().makeMap();
+
+    private static final ConcurrentMap<Class<?>, Scope<?>> ACTION_SCOPES = new MapMaker().weakKeys().makeMap();
+
     private Scopes()
     {
     }
 
+    /**
+     * @return operations shared by the scopes built without explicit bridge
+     */
+    public static DefaultScopeOperationsImpl defaultOperations()
+    {
+        return DEFAULT_OPERATIONS_IMPL_BRIDGE;
+    }
+
+    /**
+     * @return metrics shared by the built-in scopes
+     */
+    public static StorageMetrics metrics()
+    {
+        return METRICS;
+    }
+
+    /**
+     * @return write-behind buffers of the scopes built, to be shut down with the plugin
+     */
+    public static Collection<WriteBehindBuffer> writeBehindBuffers()
+    {
+        return Collections.unmodifiableSet(WRITE_BEHIND_BUFFERS);
+    }
+
+    /**
+     * @return invalidation buses of the scopes built, to be shut down with the plugin
+     */
+    public static Collection<InvalidationBus> invalidationBuses()
+    {
+        return Collections.unmodifiableSet(INVALIDATION_BUSES);
+    }
+
+    /**
+     * @return snapshot stores of the scopes built, to be shut down with the plugin
+     */
+    public static Collection<SnapshotStore> snapshotStores()
+    {
+        return Collections.unmodifiableSet(SNAPSHOT_STORES);
+    }
+
+    /**
+     * Serves the given constant name scopes from the local snapshots, see {@link SnapshotStore}. Affects the scopes
+     * built afterwards, so it is meant to be called on plugin start before the scopes are used.
+     *
+     * @param store         snapshot store
+     * @param constantNames read-mostly constant name scopes, the invalidation bus scope is never snapshotted
+     * @throws IllegalStateException a scope is already built without the store
+     */
+    public static void enableSnapshots(SnapshotStore store, String... constantNames)
+    {
+        Assertions.notNull("Snapshot store is null", store);
+        for (String name : constantNames) {
+            Assertions.stateTrue("The invalidation bus messages scope could not be snapshotted",
+                    !PollingInvalidationTransport.DEFAULT_NAME.equals(name));
+            assertNotBuilt(store, constantEntityName(name), CONSTANT_SCOPES.containsKey(name));
+        }
+        for (String name : constantNames) {
+            SNAPSHOT_ENTITIES.put(constantEntityName(name), store);
+        }
+        SNAPSHOT_STORES.add(store);
+    }
+
+    /**
+     * Serves the given action configuration scopes from the local snapshots, see {@link SnapshotStore}. Affects the
+     * scopes built afterwards, so it is meant to be called on plugin start before the scopes are used.
+     *
+     * @param store         snapshot store
+     * @param actionClasses read-mostly action configurations
+     * @throws IllegalStateException a scope is already built without the store
+     */
+    public static void enableActionSnapshots(SnapshotStore store,
+                                             Collection<? extends Class<? extends Action>> actionClasses)
+    {
+        Assertions.notNull("Snapshot store is null", store);
+        Assertions.notNull("Action classes are null", actionClasses);
+        for (Class<? extends Action> actionClass : actionClasses) {
+            assertNotBuilt(store, actionEntityName(actionClass), ACTION_SCOPES.containsKey(actionClass));
+        }
+        for (Class<? extends Action> actionClass : actionClasses) {
+            SNAPSHOT_ENTITIES.put(actionEntityName(actionClass), store);
+        }
+        SNAPSHOT_STORES.add(store);
+    }
+
+    private static void assertNotBuilt(SnapshotStore store, String entityName, boolean built)
+    {
+        Assertions.stateTrue("Scope " + entityName + " is already built, enable the snapshots before using it",
+                !built || SNAPSHOT_ENTITIES.get(entityName) == store);
+    }
+
+    private static <T> Builder<T> withSnapshots(Builder<T> builder, String entityName)
+    {
+        SnapshotStore store = SNAPSHOT_ENTITIES.get(entityName);
+        return store == null ? builder : builder.withSnapshot(store);
+    }
+
+    private static String constantEntityName(String name)
+    {
+        return "FacadeStorageConstant-" + name;
+    }
+
+    private static String actionEntityName(Class<? extends Action> actionClass)
+    {
+        return "FacadeStorageAction-" + actionClass.getName();
+    }
+
+    private static Builder<Long> makeLongIdBuilder(String entityName, String keyPrefix)
+    {
+        return new Builder<Long>(new LongIdEntity(entityName, keyPrefix), new DeleteByNamePrefix(entityName, keyPrefix))
+                .withMetrics(METRICS)
+                .withRequestRecorder(RECORDER);
+    }
+
     public static final class Builder<T>
     {
         private Function<T, InstanceId> instanceIdProvider;
         private Function<ScopeOperations, Void> deleteAllFunctions;
         private ScopeOperations bridge = null;
+        private ValueCodec codec = null;
+        private StorageMetrics metrics = null;
+        private ValueCompression compression = null;
+        private RequestRecorder recorder = null;
+        private InvalidationBus bus = null;
+        private String busChannel = null;
+        private final List<FacadeDecorator> decorators = Lists.newArrayList();
 
 
         public Builder(Function<T, InstanceId> instanceIdProvider, Function<ScopeOperations, Void> deleteAllFunctions)
@@ -59,6 +233,19 @@ public class Scopes
             this.deleteAllFunctions = deleteAllFunctions;
         }
 
+        private Builder(Function<T, InstanceId> instanceIdProvider, Builder<?> other)
+        {
+            this(instanceIdProvider, other.deleteAllFunctions);
+            this.bridge = other.bridge;
+            this.codec = other.codec;
+            this.metrics = other.metrics;
+            this.compression = other.compression;
+            this.recorder = other.recorder;
+            this.bus = other.bus;
+            this.busChannel = other.busChannel;
+            this.decorators.addAll(other.decorators);
+        }
+
         public Builder()
         {
         }
@@ -82,6 +269,150 @@ public class Scopes
             return this;
         }
 
+        /**
+         * Wraps every facade loaded by the scope, decorators are applied in the order added
+         *
+         * @param decorator facade decorator
+         * @return builder
+         */
+        public Builder<T> decorateWith(FacadeDecorator decorator)
+        {
+            Assertions.notNull("Facade decorator is null", decorator);
+            this.decorators.add(decorator);
+            return this;
+        }
+
+        /**
+         * Enables read-through caching of the scope data
+         *
+         * @param cache cache instance, might be shared between the scopes
+         * @return builder
+         */
+        public Builder<T> withCache(StorageCache cache)
+        {
+            return decorateWith(cache);
+        }
+
+        /**
+         * Keeps the scope keys in memory to answer the key listing and range queries
+         *
+         * @param index key index, might be shared between the scopes
+         * @return builder
+         */
+        public Builder<T> withKeyIndex(KeyIndex index)
+        {
+            return decorateWith(index);
+        }
+
+        /**
+         * Stores the large text, object and properties values compressed, the decorators and the cache keep the
+         * values uncompressed
+         *
+         * @param compression value compression, might be shared between the scopes
+         * @return builder
+         */
+        public Builder<T> withCompression(ValueCompression compression)
+        {
+            this.compression = Assertions.notNull("Value compression is null", compression);
+            return this;
+        }
+
+        /**
+         * Answers the reads of the keys never stored without the database round trip
+         *
+         * @param filter key filter, might be shared between the scopes
+         * @return builder
+         */
+        public Builder<T> withKeyFilter(KeyFilter filter)
+        {
+            return decorateWith(filter);
+        }
+
+        /**
+         * Serves the reads from the local memory-mapped snapshots of the scope instances, meant for the read-mostly
+         * scopes. The store is shut down by the storage service <code>destroy()</code>.
+         *
+         * @param store snapshot store, might be shared between the scopes
+         * @return builder
+         */
+        public Builder<T> withSnapshot(SnapshotStore store)
+        {
+            decorateWith(store);
+            SNAPSHOT_STORES.add(store);
+            return this;
+        }
+
+        /**
+         * Buffers the small value writes of the scope and stores them in batches in background; add it after the
+         * other decorators. The buffer is shut down, storing the pending values, by the storage service
+         * <code>destroy()</code>.
+         *
+         * @param buffer write-behind buffer, one per scope
+         * @return builder
+         */
+        public Builder<T> withWriteBehind(WriteBehindBuffer buffer)
+        {
+            decorateWith(buffer);
+            WRITE_BEHIND_BUFFERS.add(buffer);
+            return this;
+        }
+
+        /**
+         * Publishes the scope changes to the other cluster nodes and evicts the data cached by the scope on
+         * their changes. The bus is shut down by the storage service <code>destroy()</code>.
+         *
+         * @param bus     invalidation bus, might be shared between the scopes
+         * @param channel scope name on the bus, the same on all the nodes
+         * @return builder
+         */
+        public Builder<T> withInvalidationBus(InvalidationBus bus, String channel)
+        {
+            this.bus = Assertions.notNull("Invalidation bus is null", bus);
+            Assertions.notBlank("Channel", channel);
+            this.busChannel = channel;
+            INVALIDATION_BUSES.add(bus);
+            return this;
+        }
+
+        /**
+         * Stores the objects and properties of the scope using the given codec, the values written before in
+         * other formats stay readable
+         *
+         * @param codec value codec, e.g. {@link com.atlassian.plugins.studio.storage.toolkit.impl.codec.BinaryValueCodec}
+         * @return builder
+         */
+        public Builder<T> withCodec(ValueCodec codec)
+        {
+            this.codec = Assertions.notNull("Value codec is null", codec);
+            return this;
+        }
+
+        /**
+         * Records the call counts, errors, value bytes and latencies of the scope operations, the outermost
+         * facade decorator
+         *
+         * @param metrics metrics, might be shared between the scopes
+         * @return builder
+         */
+        public Builder<T> withMetrics(StorageMetrics metrics)
+        {
+            this.metrics = Assertions.notNull("Metrics is null", metrics);
+            return this;
+        }
+
+        /**
+         * Counts the scope calls into the {@link com.atlassian.plugins.studio.storage.toolkit.impl.trace.Recording}
+         * of the current request, if any
+         *
+         * @param recorder request recorder
+         * @return builder
+         */
+        public Builder<T> withRequestRecorder(RequestRecorder recorder)
+        {
+            this.recorder = Assertions.notNull("Request recorder is null", recorder);
+            return this;
+        }
+
         public <U> Builder<U> as(final Function<U, T> transformer)
         {
             Function<U, InstanceId> newIdProvider = new Function<U, InstanceId>()
@@ -94,7 +425,7 @@ public class Scopes
                 }
             };
 
-            return new Builder<U>(newIdProvider, this.deleteAllFunctions);
+            return new Builder<U>(newIdProvider, this);
         }
 
         public Scope<T> build()
@@ -102,9 +433,27 @@ public class Scopes
             Assertions.notNull("InstanceId provider is not specified", instanceIdProvider);
             Assertions.notNull("DeleteALL functionality is not provided", deleteAllFunctions);
 
-            final ScopeOperations bridgeImpl = this.bridge == null ? DEFAULT_OPERATIONS_IMPL_BRIDGE : bridge;
-
-            return new AbstractDefaultScopeImpl<T>(bridgeImpl)
+            final ScopeOperations baseBridge = this.bridge == null ? DEFAULT_OPERATIONS_IMPL_BRIDGE : bridge;
+            ScopeOperations instrumented = codec == null ? baseBridge : new CodecScopeOperations(baseBridge, codec);
+            if (compression != null) {
+                instrumented = compression.instrument(instrumented);
+            }
+            List<FacadeDecorator> scopeDecorators = Lists.newArrayList(decorators);
+            InvalidationEndpoint endpoint = bus == null ? null : bus.join(busChannel);
+            if (endpoint != null) {
+                scopeDecorators.add(endpoint);
+            }
+            if (recorder != null) {
+                instrumented = recorder.instrument(instrumented);
+                scopeDecorators.add(recorder);
+            }
+            if (metrics != null) {
+                instrumented = metrics.instrument(instrumented);
+                scopeDecorators.add(metrics);
+            }
+            final ScopeOperations bridgeImpl = instrumented;
+
+            AbstractDefaultScopeImpl<T> scope = new AbstractDefaultScopeImpl<T>(bridgeImpl, scopeDecorators)
             {
                 @Override
                 public InstanceId getInstanceId(T context)
@@ -115,44 +464,45 @@ public class Scopes
                 @Override
                 public void removeAll() throws StorageException
                 {
-                    deleteAllFunctions.apply(bridgeImpl);
+                    try {
+                        deleteAllFunctions.apply(bridgeImpl);
+                    } finally {
+                        invalidateAll();
+                    }
                 }
             };
+            if (endpoint != null) {
+                endpoint.bind(scope);
+            }
+
+            return scope;
         }
     }
 
 
+    public static Scope<Project> projectScope()
+    {
+        return PROJECT_SCOPE;
+    }
+
     public static Scope<Project> projectScope(Project project)
     {
         Assertions.notNull("Project scope parameter is null", project);
 
-        String entityName = "FacadeStorageProject";
-        String keyPrefix = "project-";
-        return new Builder<Long>(new LongIdEntity(entityName, keyPrefix), new DeleteByNamePrefix(entityName, keyPrefix))
-                .as(new Function<Project, Long>()
-                {
-                    public Long apply(@Nullable Project from)
-                    {
-                        return from.getId();
-                    }
-                }).build();
+        return PROJECT_SCOPE;
     }
 
 
+    public static Scope<Issue> issueScope()
+    {
+        return ISSUE_SCOPE;
+    }
+
     public static Scope<Issue> issueScope(Issue issue)
     {
         Assertions.notNull("Issue scope parameter is null", issue);
 
-        String entityName = "FacadeStorageIssue";
-        String keyPrefix = "issue-";
-        return new Builder<Long>(new LongIdEntity(entityName, keyPrefix), new DeleteByNamePrefix(entityName, keyPrefix))
-                .as(new Function<Issue, Long>()
-                {
-                    public Long apply(@Nullable Issue from)
-                    {
-                        return from.getId();
-                    }
-                }).build();
+        return ISSUE_SCOPE;
     }
 
 
@@ -160,49 +510,77 @@ public class Scopes
     {
         Assertions.notNull("Gv scope parameter is null", gv);
 
-        String entityName = "FacadeStorageGv";
-        String keyPrefix = "gv-";
-        return new Builder<GenericValue>(new GenericValueIdEntity(entityName, keyPrefix), new DeleteByNamePrefix(entityName, keyPrefix))
-                .build();
+        return GV_SCOPE;
     }
 
     public static Scope<String> constantName(String name)
     {
         Assertions.notNull("Constant name parameter is null", name);
 
-        String entityName = "FacadeStorageConstant-" + name;
-        String keyPrefix = "constant-";
-        Long entryId = CONSTANT_ENTITY_ID;
-        return new Builder<String>(new ConstantIdEntity<String>(entryId, entityName, keyPrefix),
-                new DeleteByConstantId(entryId, entityName, keyPrefix))
-                .build();
+        Scope<String> scope = CONSTANT_SCOPES.get(name);
+        if (scope == null) {
+            String entityName = constantEntityName(name);
+            String keyPrefix = "constant-";
+            Long entryId = CONSTANT_ENTITY_ID;
+            scope = putIfAbsent(CONSTANT_SCOPES, name, withSnapshots(new Builder<String>(new ConstantIdEntity<String>(entryId, entityName, keyPrefix),
+                    new DeleteByConstantId(entryId, entityName, keyPrefix)), entityName)
+                    .withMetrics(METRICS)
+                    .withRequestRecorder(RECORDER)
+                    .build());
+        }
+
+        return scope;
     }
 
     private static <T extends Action> Builder<String> makeActionBuilder(Class<T> actionClass)
     {
-        String entityName = "FacadeStorageAction-" + actionClass.getName();
+        String entityName = actionEntityName(actionClass);
         String keyPrefix = "class-";
         Long entryId = ACTION_ENTITY_ID;
-        return new Builder<String>(new Scopes.ConstantIdEntity<String>(entryId, entityName, keyPrefix),
-                new DeleteByConstantId(entryId, entityName, keyPrefix));
+        return withSnapshots(new Builder<String>(new Scopes.ConstantIdEntity<String>(entryId, entityName, keyPrefix),
+                new DeleteByConstantId(entryId, entityName, keyPrefix)), entityName)
+                .withMetrics(METRICS)
+                .withRequestRecorder(RECORDER);
+    }
+
+    /**
+     * Action scope does not depend on the context passed, so one scope instance per action class
+     * serves both the class and the action instance flavours.
+     *
+     * @param actionClass action class
+     * @return scope
+     */
+    @SuppressWarnings({"unchecked"})
+    private static <U> Scope<U> actionScope(Class<? extends Action> actionClass)
+    {
+        Scope<?> scope = ACTION_SCOPES.get(actionClass);
+        if (scope == null) {
+            scope = putIfAbsent(ACTION_SCOPES, actionClass, makeActionBuilder(actionClass)
+                    .as(new NoOpFun<Object, String>())
+                    .build());
+        }
+
+        return (Scope<U>) scope;
     }
 
     public static <T extends Action> Scope<Class<T>> actionConfiguration(Class<T> actionClass)
     {
         Assertions.notNull("Action class parameter is null", actionClass);
 
-        return makeActionBuilder(actionClass)
-                .as(new NoOpFun<Class<T>, String>())
-                .build();
+        return actionScope(actionClass);
     }
 
     public static Scope<Action> actionConfiguration(Action action)
     {
         Assertions.notNull("Action parameter is null", action);
 
-        return makeActionBuilder(action.getClass())
-                .as(new NoOpFun<Action, String>())
-                .build();
+        return actionScope(action.getClass());
+    }
+
+    private static <K, V> V putIfAbsent(ConcurrentMap<K, V> map, K key, V value)
+    {
+        V existing = map.putIfAbsent(key, value);
+        return existing == null ? value : existing;
     }
 
     private static class NoOpFun<F, T> implements Function<F, T>
@@ -216,31 +594,31 @@ public class Scopes
 
     public static class ConstantIdEntity<U> implements Function<U, InstanceId>
     {
-        private final Long entryId;
-
-        private final String entityName;
-
-        private final String keyPrefix;
+        private final InstanceId instanceId;
 
         public ConstantIdEntity(Long entryId, String entityName, String keyPrefix)
         {
-            this.entryId = entryId;
-            this.entityName = entityName;
-            this.keyPrefix = keyPrefix;
+            this.instanceId = new InstanceId(entryId, entityName, keyPrefix);
         }
 
         public InstanceId apply(@Nullable U from)
         {
-            return new InstanceId(entryId, entityName, keyPrefix);
+            return instanceId;
         }
     }
 
+    /**
+     * Hands out canonical instance ids per entity id, the ids are softly referenced and reclaimed under
+     * memory pressure.
+     */
     public static class LongIdEntity implements Function<Long, InstanceId>
     {
         private final String entityName;
 
         private final String keyPrefix;
 
+        private final ConcurrentMap<Long, InstanceId> instanceIds = new MapMaker().softValues().makeMap();
+
         public LongIdEntity(String name, String prefix)
         {
             this.entityName = name;
@@ -249,26 +627,32 @@ public class Scopes
 
         public InstanceId apply(@Nullable Long from)
         {
-            return new InstanceId(from, entityName, keyPrefix);
+            if (from == null) {
+                return new InstanceId(null, entityName, keyPrefix);
+            }
+
+            InstanceId instanceId = instanceIds.get(from);
+            if (instanceId == null) {
+                instanceId = putIfAbsent(instanceIds, from, new InstanceId(from, entityName, keyPrefix));
+            }
+
+            return instanceId;
         }
 
     }
 
     public static class GenericValueIdEntity implements Function<GenericValue, InstanceId>
     {
-        private final String entityName;
-
-        private final String keyPrefix;
+        private final LongIdEntity ids;
 
         public GenericValueIdEntity(String name, String prefix)
         {
-            this.entityName = name;
-            this.keyPrefix = prefix;
+            this.ids = new LongIdEntity(name, prefix);
         }
 
         public InstanceId apply(@Nullable GenericValue from)
         {
-            return new InstanceId(GenericValueUtils.transformToLongIds(ImmutableList.of(from))[0], entityName, keyPrefix);
+            return ids.apply(from.getLong("id"));
         }
 
     }
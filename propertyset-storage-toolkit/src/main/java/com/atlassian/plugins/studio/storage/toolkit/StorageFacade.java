@@ -17,9 +17,12 @@
 
 package com.atlassian.plugins.studio.storage.toolkit;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -42,6 +45,34 @@ public interface StorageFacade
 
     byte[] getData(String key) throws StorageException;
 
+    /**
+     * Opens the stream storing a large binary value in chunks, without keeping it whole in memory. The value is
+     * stored once the stream is closed and replaces the one stored under the key before.
+     *
+     * @param key key
+     * @return stream to write the value to, to be closed
+     * @throws StorageException storage failure
+     */
+    OutputStream openOutputStream(String key) throws StorageException;
+
+    /**
+     * @param key key of the value stored by {@link #openOutputStream(String)} or {@link #setData(String, byte[])}
+     * @return stream reading the value chunk by chunk, <code>null</code> if the key does not exist
+     * @throws StorageException storage failure or value is not binary
+     */
+    InputStream openInputStream(String key) throws StorageException;
+
+    /**
+     * Reads the range of the binary value, the chunks outside of the range are not loaded
+     *
+     * @param key    key of the value stored by {@link #openOutputStream(String)} or {@link #setData(String, byte[])}
+     * @param offset first byte read
+     * @param length bytes to read at most
+     * @return stream reading the range, <code>null</code> if the key does not exist
+     * @throws StorageException storage failure or value is not binary
+     */
+    InputStream openInputStream(String key, long offset, long length) throws StorageException;
+
 
     void setDate(String key, Date date) throws StorageException;
 
@@ -57,6 +88,31 @@ public interface StorageFacade
 
     Collection<String> getKeys(String keyPrefix) throws StorageException;
 
+    /**
+     * @param keyPrefix key prefix, <code>null</code> for all the keys
+     * @return number of keys starting with the prefix
+     * @throws StorageException storage failure
+     */
+    int countKeys(String keyPrefix) throws StorageException;
+
+    /**
+     * @param fromKey lowest key, inclusive; <code>null</code> for unbounded
+     * @param toKey   highest key, exclusive; <code>null</code> for unbounded
+     * @return keys of the range in the key order
+     * @throws StorageException storage failure
+     */
+    Collection<String> getKeyRange(String fromKey, String toKey) throws StorageException;
+
+    /**
+     * Streams the keys in pages instead of loading them all at once
+     *
+     * @param keyPrefix key prefix, <code>null</code> for all the keys
+     * @param pageSize  number of keys read from the storage at once
+     * @return keys iterator in the key order, to be closed if abandoned
+     * @throws StorageException storage failure
+     */
+    CloseableIterator<String> keys(String keyPrefix, int pageSize) throws StorageException;
+
 
     void setLong(String key, Long value) throws StorageException;
 
@@ -83,6 +139,68 @@ public interface StorageFacade
     java.lang.String getText(String key) throws StorageException;
 
 
+    /**
+     * Writes all the values in a single transaction, either all of them are stored or none.
+     * <p/>
+     * The setter is chosen by the value type: <code>null</code> removes the key, Boolean, byte[], Date,
+     * BigDecimal, Long (and other integral numbers), String and Properties are stored as by their dedicated
+     * setters, anything else is stored as object. Use {@link #setText(String, String)} for long strings.
+     *
+     * @param values values by key
+     * @throws StorageException storage failure, nothing is stored
+     */
+    void setAll(Map<String, ?> values) throws StorageException;
+
+
+    /**
+     * Reads many keys at once.
+     *
+     * @param keys keys to read
+     * @return values by key as stored: Boolean, Long, String, Date, byte[] (objects, properties and doubles are
+     *         stored as strings); missing keys are absent
+     * @throws StorageException storage failure
+     */
+    Map<String, Object> getAll(Collection<String> keys) throws StorageException;
+
+    /**
+     * Reads many keys of the same type at once.
+     *
+     * @param keys keys to read
+     * @param type Boolean, byte[], Date, BigDecimal, Long, String, Properties or the object class
+     * @param <T>  value type
+     * @return values by key, missing keys are absent
+     * @throws StorageException storage failure or value is not of the type requested
+     */
+    <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) throws StorageException;
+
+
+    /**
+     * @param key typed key
+     * @param <T> value type
+     * @return value decoded by the key codec, <code>null</code> if the key is not set (<code>false</code> for the
+     *         boolean keys)
+     * @throws StorageException storage failure or the value stored is not of the key type
+     */
+    <T> T get(StorageKey<T> key) throws StorageException;
+
+    /**
+     * @param key   typed key
+     * @param value value, <code>null</code> removes the key
+     * @param <T>   value type
+     * @throws StorageException storage failure
+     */
+    <T> void set(StorageKey<T> key, T value) throws StorageException;
+
+    /**
+     * Reads many typed keys at once, see {@link StorageKey#valueIn(Map)}.
+     *
+     * @param keys typed keys
+     * @return decoded values by key, missing keys are absent
+     * @throws StorageException storage failure or a value stored is not of the key type
+     */
+    Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException;
+
+
     boolean exists(String key) throws StorageException;
 
     boolean remove(String key) throws StorageException;
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of an asynchronous storage operation.
+ * <p/>
+ * A failed operation completes the future with the {@link StorageException} the synchronous call would throw, it
+ * is the cause of the {@link java.util.concurrent.ExecutionException} thrown by {@link #get()} and is rethrown
+ * as is by {@link #checkedGet()}.
+ *
+ * @param <V> result type
+ */
+public interface StorageFuture<V> extends Future<V>
+{
+    /**
+     * Runs the listener once the future is done, right away if it is done already
+     *
+     * @param listener listener
+     * @param executor executor to run the listener with
+     */
+    void addListener(Runnable listener, Executor executor);
+
+    /**
+     * Waits for the result
+     *
+     * @return result
+     * @throws StorageException operation failure, interruption or cancellation
+     */
+    V checkedGet() throws StorageException;
+
+    /**
+     * Waits for the result at most the given time
+     *
+     * @param timeout maximum time to wait
+     * @param unit    time unit of the timeout
+     * @return result
+     * @throws StorageException operation failure, interruption, cancellation or timeout
+     */
+    V checkedGet(long timeout, TimeUnit unit) throws StorageException;
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit;
+
+import com.atlassian.plugins.studio.storage.toolkit.impl.async.ListenableStorageTask;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helpers combining the {@link StorageFuture}s
+ */
+public class StorageFutures
+{
+    private static final Executor DIRECT = new Executor()
+    {
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
+    private StorageFutures()
+    {
+    }
+
+    /**
+     * Combines the futures started in parallel, for instance the reads of several scopes.
+     * <p/>
+     * No thread waits while the futures run, the combined future is completed by the last one done.
+     *
+     * @param futures futures
+     * @param <V>     result type
+     * @return results in the order of the futures, fails with the first failure in that order
+     */
+    public static <V> StorageFuture<List<V>> allAsList(Collection<? extends StorageFuture<? extends V>> futures)
+    {
+        final List<StorageFuture<? extends V>> parts = new ArrayList<StorageFuture<? extends V>>(futures);
+        final ListenableStorageTask<List<V>> combined = new ListenableStorageTask<List<V>>(new Callable<List<V>>()
+        {
+            public List<V> call() throws Exception
+            {
+                List<V> results = new ArrayList<V>(parts.size());
+                for (StorageFuture<? extends V> part : parts) {
+                    results.add(part.checkedGet());
+                }
+                return results;
+            }
+        });
+        if (parts.isEmpty()) {
+            combined.run();
+            return combined;
+        }
+
+        final AtomicInteger pending = new AtomicInteger(parts.size());
+        Runnable countDown = new Runnable()
+        {
+            public void run()
+            {
+                if (pending.decrementAndGet() == 0) {
+                    combined.run();
+                }
+            }
+        };
+        for (StorageFuture<? extends V> part : parts) {
+            part.addListener(countDown, DIRECT);
+        }
+        return combined;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit;
+
+import com.atlassian.jira.util.dbc.Assertions;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Typed storage key, binds the key name to the codec of its values once:
+ * <pre>
+ *     static final StorageKey&lt;Integer&gt; PAGE_SIZE = StorageKey.intKey("page-size");
+ *     ...
+ *     facade.set(PAGE_SIZE, 50);
+ *     int pageSize = facade.get(PAGE_SIZE);
+ * </pre>
+ * Keys are immutable and meant to be kept in constants; equal by name and codec.
+ *
+ * @param <T> value type
+ */
+public final class StorageKey<T>
+{
+    private final String name;
+    private final KeyCodec<T> codec;
+
+    private volatile Prefixed prefixed; // name prefixed with the scope key prefix used last
+
+    private StorageKey(String name, KeyCodec<T> codec)
+    {
+        Assertions.notBlank("Key name", name);
+        Assertions.notNull("Key codec is null", codec);
+        this.name = name;
+        this.codec = codec;
+        this.prefixed = new Prefixed("", name);
+    }
+
+    public static <T> StorageKey<T> of(String name, KeyCodec<T> codec)
+    {
+        return new StorageKey<T>(name, codec);
+    }
+
+    /**
+     * Boolean keys read <code>false</code> if the key is not set, as {@link StorageFacade#getBoolean(String)} does
+     */
+    public static StorageKey<Boolean> booleanKey(String name)
+    {
+        return of(name, KeyCodecs.BOOLEAN);
+    }
+
+    public static StorageKey<Long> longKey(String name)
+    {
+        return of(name, KeyCodecs.LONG);
+    }
+
+    public static StorageKey<Integer> intKey(String name)
+    {
+        return of(name, KeyCodecs.INTEGER);
+    }
+
+    public static StorageKey<BigDecimal> decimalKey(String name)
+    {
+        return of(name, KeyCodecs.DECIMAL);
+    }
+
+    /**
+     * Strings up to 255 characters, see {@link #textKey(String)}
+     */
+    public static StorageKey<String> stringKey(String name)
+    {
+        return of(name, KeyCodecs.STRING);
+    }
+
+    public static StorageKey<String> textKey(String name)
+    {
+        return of(name, KeyCodecs.TEXT);
+    }
+
+    public static StorageKey<Date> dateKey(String name)
+    {
+        return of(name, KeyCodecs.DATE);
+    }
+
+    public static StorageKey<byte[]> dataKey(String name)
+    {
+        return of(name, KeyCodecs.DATA);
+    }
+
+    public static <E extends Enum<E>> StorageKey<E> enumKey(String name, Class<E> type)
+    {
+        return of(name, KeyCodecs.enumCodec(type));
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public KeyCodec<T> getCodec()
+    {
+        return codec;
+    }
+
+    /**
+     * @param keyPrefix scope key prefix, might be <code>null</code>
+     * @return stored key name, kept for the prefix used last
+     */
+    public String prefixedName(String keyPrefix)
+    {
+        String prefix = keyPrefix == null ? "" : keyPrefix;
+        Prefixed last = prefixed;
+        if (last.prefix != prefix && !last.prefix.equals(prefix)) {
+            last = new Prefixed(prefix, prefix.concat(name));
+            prefixed = last;
+        }
+        return last.name;
+    }
+
+    /**
+     * @param values values read by {@link StorageFacade#getAll(StorageKey[])}
+     * @return value of the key, <code>null</code> if absent
+     */
+    public T valueIn(Map<StorageKey<?>, ?> values)
+    {
+        return codec.getType().cast(values.get(this));
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StorageKey)) {
+            return false;
+        }
+
+        StorageKey other = (StorageKey) o;
+        return name.equals(other.name) && codec.equals(other.codec);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * name.hashCode() + codec.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + " (" + codec + ")";
+    }
+
+    private static final class Prefixed
+    {
+        final String prefix;
+        final String name;
+
+        Prefixed(String prefix, String name)
+        {
+            this.prefix = prefix;
+            this.name = name;
+        }
+    }
+}
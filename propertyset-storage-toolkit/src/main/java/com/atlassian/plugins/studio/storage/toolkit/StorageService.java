@@ -22,6 +22,9 @@ import com.atlassian.jira.project.Project;
 import org.ofbiz.core.entity.GenericValue;
 import webwork.action.Action;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * User: leonidmaslov
  * Date: 12/10/10
@@ -36,6 +39,29 @@ public interface StorageService
     StorageFacade issueStorage(Issue issue) throws StorageException;
 
 
+    /**
+     * Reads the keys of many projects at once
+     *
+     * @param projects projects
+     * @param keys     keys to preload
+     * @return read-only facades by project
+     * @throws StorageException storage failure
+     */
+    Map<Project, StorageFacade> projectStorages(Collection<Project> projects, Collection<String> keys)
+            throws StorageException;
+
+    /**
+     * Reads the keys of many issues at once
+     *
+     * @param issues issues
+     * @param keys   keys to preload
+     * @return read-only facades by issue
+     * @throws StorageException storage failure
+     */
+    Map<Issue, StorageFacade> issueStorages(Collection<Issue> issues, Collection<String> keys)
+            throws StorageException;
+
+
     StorageFacade gvStorage(GenericValue gv) throws StorageException;
 
 
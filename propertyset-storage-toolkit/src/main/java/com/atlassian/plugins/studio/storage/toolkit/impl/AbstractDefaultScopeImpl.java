@@ -21,6 +21,17 @@ import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
 import com.atlassian.plugins.studio.storage.toolkit.Scope;
 import com.atlassian.plugins.studio.storage.toolkit.StorageException;
 import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * User: leonidmaslov
@@ -30,10 +41,17 @@ import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
 public abstract class AbstractDefaultScopeImpl<U> implements Scope<U>
 {
     private final ScopeOperations bridge;
+    private final FacadeDecorator[] decorators;
 
     public AbstractDefaultScopeImpl(ScopeOperations bridge)
+    {
+        this(bridge, Collections.<FacadeDecorator>emptyList());
+    }
+
+    public AbstractDefaultScopeImpl(ScopeOperations bridge, List<FacadeDecorator> decorators)
     {
         this.bridge = bridge;
+        this.decorators = decorators.toArray(new FacadeDecorator[decorators.size()]);
     }
 
     public abstract InstanceId getInstanceId(U context);
@@ -50,13 +68,125 @@ public abstract class AbstractDefaultScopeImpl<U> implements Scope<U>
     public StorageFacade load(U context) throws StorageException
     {
         InstanceId instanceId = getInstanceId(context);
-        return new DefaultStorageFacadeImpl(instanceId, bridge, bridge.loadDelegate(instanceId));
+
+        StorageFacade facade = new DefaultStorageFacadeImpl(instanceId, bridge, bridge.loadDelegate(instanceId));
+        for (FacadeDecorator decorator : decorators) {
+            facade = decorator.decorate(instanceId, bridge, facade);
+        }
+
+        return facade;
+    }
+
+
+    /**
+     * Reads the keys of all the contexts in bulk. The pending writes of the contexts are stored first, the
+     * preloaded facades are wrapped by the {@link ObservingDecorator}s only.
+     */
+    public Map<U, StorageFacade> loadAll(Collection<U> contexts, Collection<String> keys) throws StorageException
+    {
+        Map<U, InstanceId> instanceIds = new LinkedHashMap<U, InstanceId>();
+        for (U context : contexts) {
+            InstanceId instanceId = getInstanceId(context);
+            instanceIds.put(context, instanceId);
+            for (FacadeDecorator decorator : decorators) {
+                if (decorator instanceof WriteBufferingDecorator) {
+                    ((WriteBufferingDecorator) decorator).flush(instanceId);
+                }
+            }
+        }
+
+        Set<String> preloaded = ImmutableSet.copyOf(keys);
+        Map<InstanceId, Map<String, Object>> values = bridge.getValues(instanceIds.values(), preloaded);
+
+        Map<U, StorageFacade> facades = new LinkedHashMap<U, StorageFacade>();
+        for (Map.Entry<U, InstanceId> entry : instanceIds.entrySet()) {
+            InstanceId instanceId = entry.getValue();
+            StorageFacade facade = new PreloadedStorageFacade(bridge, preloaded,
+                    StoredValues.decodeTexts(bridge, instanceId, values.get(instanceId)));
+            for (FacadeDecorator decorator : decorators) {
+                if (decorator instanceof ObservingDecorator) {
+                    facade = decorator.decorate(instanceId, bridge, facade);
+                }
+            }
+            facades.put(entry.getKey(), facade);
+        }
+
+        return facades;
     }
 
 
     public void remove(U context) throws StorageException
     {
-        bridge.remove(bridge.loadDelegate(getInstanceId(context)));
+        removeAll(Collections.singleton(context));
+    }
+
+    public void removeAll(Collection<U> contexts) throws StorageException
+    {
+        ListMultimap<String, InstanceId> byEntityName = ArrayListMultimap.create();
+        for (U context : contexts) {
+            InstanceId instanceId = getInstanceId(context);
+            byEntityName.put(instanceId.getEntityName(), instanceId);
+        }
+
+        try {
+            for (String entityName : byEntityName.keySet()) {
+                List<Long> entityIds = new ArrayList<Long>();
+                for (InstanceId instanceId : byEntityName.get(entityName)) {
+                    entityIds.add(instanceId.getEntityId());
+                }
+                bridge.removeEntities(entityName, entityIds);
+            }
+        } finally {
+            for (InstanceId instanceId : byEntityName.values()) {
+                for (FacadeDecorator decorator : decorators) {
+                    decorator.invalidate(instanceId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the data of the instance cached by the scope without touching the storage, e.g. once another
+     * cluster node has changed it. The {@link WriteBufferingDecorator}s keep their pending writes, the
+     * {@link StoredStateDecorator}s drop their local copies only.
+     *
+     * @param instanceId storage instance id
+     */
+    public void evict(InstanceId instanceId)
+    {
+        bridge.invalidate(instanceId);
+        for (FacadeDecorator decorator : decorators) {
+            if (decorator instanceof StoredStateDecorator) {
+                ((StoredStateDecorator) decorator).evict(instanceId);
+            } else if (!(decorator instanceof WriteBufferingDecorator)) {
+                decorator.invalidate(instanceId);
+            }
+        }
+    }
+
+    /**
+     * Drops all the data cached by the scope without touching the storage
+     */
+    public void evictAll()
+    {
+        bridge.invalidateAll();
+        for (FacadeDecorator decorator : decorators) {
+            if (decorator instanceof StoredStateDecorator) {
+                ((StoredStateDecorator) decorator).evictAll();
+            } else if (!(decorator instanceof WriteBufferingDecorator)) {
+                decorator.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Notifies the decorators all the scope instances data is gone, to be called by {@link #removeAll()}
+     */
+    protected void invalidateAll()
+    {
+        for (FacadeDecorator decorator : decorators) {
+            decorator.invalidateAll();
+        }
     }
 
     /**
@@ -17,19 +17,30 @@
 
 package com.atlassian.plugins.studio.storage.toolkit.impl;
 
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
 import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
 import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.ValueCodecs;
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
 import com.opensymphony.module.propertyset.PropertyException;
 import com.opensymphony.module.propertyset.PropertySet;
 import com.opensymphony.module.propertyset.PropertySetManager;
 import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.XStreamException;
 import org.apache.commons.lang.StringUtils;
 import org.ofbiz.core.entity.*;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -40,10 +51,42 @@ import java.util.Map;
  */
 public class DefaultScopeOperationsImpl implements ScopeOperations
 {
-    private static final String STORAGE_ENTITY = "OSPropertyEntry";
     private static final String STORAGE_IMPL = "ofbiz";
     private static final String DELEGATOR_NAME = "default";
 
+    private final DelegateRegistry delegates;
+
+    private final XStreamSerializer serializer = new XStreamSerializer(new Supplier<XStream>()
+    {
+        public XStream get()
+        {
+            return makeXstream();
+        }
+    });
+
+    private final PropertyEntryStore entries = new PropertyEntryStore(new Supplier<GenericDelegator>()
+    {
+        public GenericDelegator get()
+        {
+            return getGenericDelegator();
+        }
+    });
+
+    public DefaultScopeOperationsImpl()
+    {
+        this(DelegateRegistry.DEFAULT_MAX_SIZE, DelegateRegistry.DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    public DefaultScopeOperationsImpl(int maxDelegates, long maxDelegateIdleMillis)
+    {
+        this.delegates = new DelegateRegistry(new Function<InstanceId, PropertySet>()
+        {
+            public PropertySet apply(@Nullable InstanceId from)
+            {
+                return loadPropertySet(from.getEntityName(), from.getEntityId());
+            }
+        }, maxDelegates, maxDelegateIdleMillis);
+    }
 
     /**
      * Provides underlying PropertySet to delegate actual work to
@@ -55,7 +98,17 @@ public class DefaultScopeOperationsImpl implements ScopeOperations
      */
     public PropertySet loadDelegate(InstanceId instanceId) throws StorageException
     {
-        return loadPropertySet(instanceId.getEntityName(), instanceId.getEntityId());
+        return delegates.get(instanceId);
+    }
+
+    public void invalidate(InstanceId instanceId)
+    {
+        delegates.invalidate(instanceId);
+    }
+
+    public void invalidateAll()
+    {
+        delegates.invalidateAll();
     }
 
     private PropertySet loadPropertySet(String entityName, Long entityId)
@@ -67,58 +120,135 @@ public class DefaultScopeOperationsImpl implements ScopeOperations
         return PropertySetManager.getInstance(STORAGE_IMPL, props);
     }
 
-    public void remove(PropertySet underlyingStorage) throws StorageException
+    public Map<InstanceId, Map<String, Object>> getValues(Collection<InstanceId> instanceIds, Collection<String> keys)
+            throws StorageException
     {
+        // instances sharing the entity name and the key prefix are read together
+        ListMultimap<List<String>, InstanceId> groups = ArrayListMultimap.create();
+        for (InstanceId instanceId : instanceIds) {
+            groups.put(Arrays.asList(instanceId.getEntityName(), StringUtils.defaultString(instanceId.getKeyPrefix())),
+                    instanceId);
+        }
+
+        Map<InstanceId, Map<String, Object>> values = new HashMap<InstanceId, Map<String, Object>>();
         try {
+            for (List<String> group : groups.keySet()) {
+                String prefix = group.get(1);
+                Map<String, String> entryKeys = new HashMap<String, String>();
+                for (String key : keys) {
+                    entryKeys.put(prefix + key, key);
+                }
 
-            @SuppressWarnings({"unchecked"})
-            Collection<String> allKeys = underlyingStorage.getKeys("");
-            if (allKeys != null) {
-                for (String key : allKeys) {
-                    underlyingStorage.remove(key);
+                Map<Long, InstanceId> byEntityId = new HashMap<Long, InstanceId>();
+                for (InstanceId instanceId : groups.get(group)) {
+                    byEntityId.put(instanceId.getEntityId(), instanceId);
                 }
-            }
 
+                Map<Long, Map<String, Object>> loaded = entries.load(group.get(0), byEntityId.keySet(), entryKeys.keySet());
+                for (Map.Entry<Long, Map<String, Object>> entity : loaded.entrySet()) {
+                    InstanceId instanceId = byEntityId.get(entity.getKey());
+                    PropertySet delegate = null;
+
+                    Map<String, Object> instanceValues = new HashMap<String, Object>();
+                    for (Map.Entry<String, Object> entry : entity.getValue().entrySet()) {
+                        Object value = entry.getValue();
+                        if (value == PropertyEntryStore.UNRESOLVED) {
+                            if (delegate == null) {
+                                delegate = loadDelegate(instanceId);
+                            }
+                            value = delegate.getAsActualType(entry.getKey());
+                        }
+                        instanceValues.put(entryKeys.get(entry.getKey()), value);
+                    }
+                    values.put(instanceId, instanceValues);
+                }
+            }
         } catch (PropertyException e) {
             throw new StorageException(e);
         }
+
+        return values;
     }
 
-    public void removeByFilter(Long entityId, String entityName, String keyPrefix) throws StorageException
+    public void setValues(InstanceId instanceId, Map<String, Object> values) throws StorageException
     {
-
-        try {
-            final List<EntityExpr> likeExpressions = new LinkedList<EntityExpr>();
-
-            if (entityId != null) {
-                likeExpressions.add(new EntityExpr("entityId", EntityOperator.EQUALS, entityId));
-            }
-
-            if (StringUtils.isNotBlank(entityName)) {
-                likeExpressions.add(new EntityExpr("entityName", EntityOperator.EQUALS, entityName));
-            }
-
-            if (StringUtils.isNotBlank(keyPrefix)) {
-                likeExpressions.add(new EntityExpr("propertyKey", EntityOperator.LIKE, keyPrefix + "%"));
+        String prefix = StringUtils.defaultString(instanceId.getKeyPrefix());
+        List<PropertyEntry> stored = new ArrayList<PropertyEntry>(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            int type;
+            if (value instanceof Boolean) {
+                type = PropertySet.BOOLEAN;
+                value = (Boolean) value ? 1L : 0L;
+            } else if (value instanceof Long) {
+                type = PropertySet.LONG;
+            } else if (value instanceof Date) {
+                type = PropertySet.DATE;
+            } else if (value instanceof String) {
+                type = PropertySet.STRING;
+            } else {
+                throw new StorageException("Not a small value: " + entry.getKey());
             }
+            stored.add(new PropertyEntry(instanceId.getEntityName(), instanceId.getEntityId(), prefix + entry.getKey(),
+                    type, value));
+        }
+        entries.store(instanceId.getEntityName(), stored);
+    }
 
-            final EntityConditionList ecl = new EntityConditionList(likeExpressions, EntityOperator.AND);
-
-            @SuppressWarnings({"unchecked"})
-            List<GenericValue> entries = getGenericDelegator().findByCondition(STORAGE_ENTITY, ecl, null, null);
+    public CloseableIterator<String> keys(InstanceId instanceId, String keyPrefix, int pageSize) throws StorageException
+    {
+        String instancePrefix = StringUtils.defaultString(instanceId.getKeyPrefix());
+        return entries.keys(instanceId.getEntityName(), instanceId.getEntityId(),
+                instancePrefix + StringUtils.defaultString(keyPrefix), instancePrefix.length(), pageSize);
+    }
 
-            if (entries != null) {
-                for (GenericValue gv : entries) {
-                    //getGenericDelegator().removeValue(gv);
-                    if (gv != null) {
+    public void inTransaction(Runnable work) throws StorageException
+    {
+        final boolean began;
+        try {
+            began = TransactionUtil.begin();
+        } catch (GenericTransactionException e) {
+            throw new StorageException(e);
+        }
 
-                        gv.remove();
-                    }
+        boolean committed = false;
+        try {
+            work.run();
+            TransactionUtil.commit(began);
+            committed = true;
+        } catch (GenericTransactionException e) {
+            throw new StorageException(e);
+        } finally {
+            if (!committed) {
+                try {
+                    // marks the outer transaction rollback-only when joined
+                    TransactionUtil.rollback(began);
+                } catch (GenericTransactionException ignored) {
+                    // the original failure is propagated
                 }
             }
+        }
+    }
 
-        } catch (final GenericEntityException e) {
-            throw new StorageException(e);
+    public void removeByFilter(Long entityId, String entityName, String keyPrefix) throws StorageException
+    {
+        try {
+            entries.remove(StringUtils.isNotBlank(entityName) ? entityName : null,
+                    entityId != null ? Collections.singleton(entityId) : null,
+                    StringUtils.isNotBlank(keyPrefix) ? keyPrefix : null);
+        } finally {
+            delegates.invalidate(entityId, StringUtils.isNotBlank(entityName) ? entityName : null);
+        }
+    }
+
+    public void removeEntities(String entityName, Collection<Long> entityIds) throws StorageException
+    {
+        Assertions.notBlank("Entity name", entityName);
+
+        try {
+            entries.remove(entityName, entityIds, null);
+        } finally {
+            delegates.invalidate(entityName, entityIds);
         }
     }
 
@@ -128,11 +258,7 @@ public class DefaultScopeOperationsImpl implements ScopeOperations
             return null;
         }
 
-        try {
-            return makeXstream().toXML(instance);
-        } catch (XStreamException e) {
-            throw new StorageException(e);
-        }
+        return serializer.toXML(instance);
     }
 
     public Object deserialize(String input) throws StorageException
@@ -141,13 +267,57 @@ public class DefaultScopeOperationsImpl implements ScopeOperations
             return null;
         }
 
-        try {
-            return makeXstream().fromXML(input);
-        } catch (XStreamException e) {
-            throw new StorageException(e);
+        if (ValueCodecs.isTagged(input)) {
+            return ValueCodecs.decodeTagged(input);
         }
+        return serializer.fromXML(input);
+    }
+
+    /**
+     * @return <code>null</code>, the texts are stored uncompressed
+     */
+    public String compress(String text) throws StorageException
+    {
+        return null;
     }
 
+    /**
+     * @return the text itself, the texts are stored as written
+     */
+    public String escape(String text)
+    {
+        return text;
+    }
+
+    /**
+     * @return the stored text itself
+     */
+    public String decodeText(InstanceId descriptor, String stored) throws StorageException
+    {
+        return stored;
+    }
+
+    /**
+     * Primes the shared serializer, meant to be called on plugin start
+     */
+    public void warmUp()
+    {
+        serializer.warmUp();
+    }
+
+    /**
+     * @return direct entry store over the PropertySet tables
+     */
+    public PropertyEntryStore entryStore()
+    {
+        return entries;
+    }
+
+    /**
+     * Creates XStream instance, called once per shared serializer instance
+     *
+     * @return configured XStream
+     */
     @SuppressWarnings({"WeakerAccess"})
     protected XStream makeXstream()
     {
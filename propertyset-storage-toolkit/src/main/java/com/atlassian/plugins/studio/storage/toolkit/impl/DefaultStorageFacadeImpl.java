@@ -17,16 +17,19 @@
 
 package com.atlassian.plugins.studio.storage.toolkit.impl;
 
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
 import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
 import com.atlassian.plugins.studio.storage.toolkit.StorageException;
 import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
-import com.google.common.base.Function;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.blob.ChunkedBlobs;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.opensymphony.module.propertyset.PropertyException;
 import com.opensymphony.module.propertyset.PropertySet;
 import org.apache.commons.lang.StringUtils;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.*;
 
@@ -40,20 +43,39 @@ public class DefaultStorageFacadeImpl implements StorageFacade
     private final InstanceId instanceId;
     private final ScopeOperations bridge;
     private final PropertySet delegate;
+    private final PrefixedKeys prefixedKeys;
 
     public DefaultStorageFacadeImpl(InstanceId instanceId, ScopeOperations bridge, PropertySet delegate)
     {
         this.instanceId = instanceId;
         this.bridge = bridge;
         this.delegate = delegate;
+        this.prefixedKeys = PrefixedKeys.forPrefix(instanceId.getKeyPrefix());
     }
 
 
     private String getKey(String key)
     {
-        return new StringBuilder()
-                .append(StringUtils.defaultIfEmpty(instanceId.getKeyPrefix(), ""))
-                .append(key).toString();
+        return prefixedKeys.prefix(key);
+    }
+
+    /**
+     * Reads the stored text back, see {@link ScopeOperations#decodeText}
+     */
+    private String readText(String entryKey)
+    {
+        return bridge.decodeText(instanceId, delegate.getText(entryKey));
+    }
+
+    private void writeText(String entryKey, String text)
+    {
+        delegate.setText(entryKey, compressed(bridge.escape(text)));
+    }
+
+    private String compressed(String text)
+    {
+        String compressed = text == null ? null : bridge.compress(text);
+        return compressed == null ? text : compressed;
     }
 
 
@@ -93,6 +115,21 @@ public class DefaultStorageFacadeImpl implements StorageFacade
         }
     }
 
+    public OutputStream openOutputStream(String key) throws StorageException
+    {
+        return ChunkedBlobs.openOutputStream(delegate, bridge, getKey(key));
+    }
+
+    public InputStream openInputStream(String key) throws StorageException
+    {
+        return openInputStream(key, 0, Long.MAX_VALUE);
+    }
+
+    public InputStream openInputStream(String key, long offset, long length) throws StorageException
+    {
+        return ChunkedBlobs.openInputStream(delegate, getKey(key), offset, length);
+    }
+
     public void setDate(String key, Date date) throws StorageException
     {
         try {
@@ -148,21 +185,34 @@ public class DefaultStorageFacadeImpl implements StorageFacade
 
     private Collection<String> cleanKeys(Collection<String> keys)
     {
-        if (keys == null) return keys;
-
-        return ImmutableList.copyOf(Iterables.transform(keys, new Function<String, String>()
-        {
-            public String apply(String from)
-            {
-                return StringUtils.removeStart(from, instanceId.getKeyPrefix());
-            }
-        }));
+        return ChunkedBlobs.withoutChunkKeys(prefixedKeys.strip(keys));
     }
 
     @SuppressWarnings({"unchecked"})
     public Collection<String> getKeys(String keyPrefix) throws StorageException
     {
-        return cleanKeys(delegate.getKeys(keyPrefix));
+        return cleanKeys(delegate.getKeys(getKey(StringUtils.defaultString(keyPrefix))));
+    }
+
+    public int countKeys(String keyPrefix) throws StorageException
+    {
+        Collection<String> keys = getKeys(keyPrefix);
+        return keys == null ? 0 : keys.size();
+    }
+
+    public Collection<String> getKeyRange(String fromKey, String toKey) throws StorageException
+    {
+        Collection<String> keys = getKeys();
+        if (keys == null) {
+            return ImmutableList.of();
+        }
+
+        return ImmutableList.copyOf(KeyRanges.range(new TreeSet<String>(keys), fromKey, toKey));
+    }
+
+    public CloseableIterator<String> keys(String keyPrefix, int pageSize) throws StorageException
+    {
+        return ChunkedBlobs.withoutChunkKeys(bridge.keys(instanceId, keyPrefix, pageSize));
     }
 
     public void setLong(String key, Long value) throws StorageException
@@ -200,7 +250,7 @@ public class DefaultStorageFacadeImpl implements StorageFacade
             String entryKey = getKey(key);
 
             if (objectValue != null)
-                delegate.setText(entryKey, bridge.serialize(objectValue));
+                delegate.setText(entryKey, compressed(bridge.serialize(objectValue)));
             else
                 delegate.remove(entryKey);
 
@@ -213,7 +263,7 @@ public class DefaultStorageFacadeImpl implements StorageFacade
     {
         try {
 
-            String text = delegate.getText(getKey(key));
+            String text = readText(getKey(key));
 
             if (text == null) {
                 return null;
@@ -235,7 +285,7 @@ public class DefaultStorageFacadeImpl implements StorageFacade
 
             if (properties != null)
                 //noinspection unchecked
-                delegate.setText(entryKey, bridge.serialize(new HashMap(properties)));
+                delegate.setText(entryKey, compressed(bridge.serialize(new HashMap(properties))));
             else
                 delegate.remove(entryKey);
 
@@ -248,21 +298,13 @@ public class DefaultStorageFacadeImpl implements StorageFacade
     {
         try {
 
-            String text = delegate.getText(getKey(key));
+            String text = readText(getKey(key));
 
             if (text == null) {
                 return null;
             }
 
-            @SuppressWarnings({"unchecked"})
-            Map<Object, Object> map = (Map) bridge.deserialize(text);
-
-            Properties properties = new Properties();
-            for (Map.Entry<Object, Object> entry : map.entrySet()) {
-                properties.put(entry.getKey(), entry.getValue());
-            }
-
-            return properties;
+            return StoredValues.toProperties(bridge.deserialize(text));
 
         } catch (PropertyException e) {
             throw new StorageException(e);
@@ -290,7 +332,7 @@ public class DefaultStorageFacadeImpl implements StorageFacade
     public void setText(String key, String text) throws StorageException
     {
         try {
-            delegate.setText(getKey(key), text);
+            writeText(getKey(key), text);
         } catch (PropertyException e) {
             throw new StorageException(e);
         }
@@ -299,12 +341,175 @@ public class DefaultStorageFacadeImpl implements StorageFacade
     public String getText(String key) throws StorageException
     {
         try {
-            return delegate.getText(getKey(key));
+            return readText(getKey(key));
+        } catch (PropertyException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    public void setAll(final Map<String, ?> values) throws StorageException
+    {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+
+        bridge.inTransaction(new Runnable()
+        {
+            public void run()
+            {
+                Map<String, Object> small = new LinkedHashMap<String, Object>();
+                for (Map.Entry<String, ?> entry : values.entrySet()) {
+                    Object value = small(entry.getValue());
+                    if (value != null) {
+                        small.put(entry.getKey(), value);
+                    } else {
+                        set(entry.getKey(), entry.getValue());
+                    }
+                }
+                if (!small.isEmpty()) {
+                    bridge.setValues(instanceId, small);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param value value to store
+     * @return value as written by {@link ScopeOperations#setValues}, <code>null</code> if it is not a small value
+     */
+    private static Object small(Object value)
+    {
+        if (value instanceof Boolean || value instanceof Date || value instanceof Long || value instanceof String) {
+            return value;
+        } else if (value instanceof BigDecimal) {
+            return value.toString();
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return null;
+    }
+
+    private void set(String key, Object value) throws StorageException
+    {
+        if (value == null) {
+            remove(key);
+        } else if (value instanceof Boolean) {
+            setBoolean(key, (Boolean) value);
+        } else if (value instanceof byte[]) {
+            setData(key, (byte[]) value);
+        } else if (value instanceof Date) {
+            setDate(key, (Date) value);
+        } else if (value instanceof BigDecimal) {
+            setDouble(key, (BigDecimal) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            setLong(key, ((Number) value).longValue());
+        } else if (value instanceof String) {
+            setString(key, (String) value);
+        } else if (value instanceof Properties) {
+            setProperties(key, (Properties) value);
+        } else {
+            setObject(key, value);
+        }
+    }
+
+    public Map<String, Object> getAll(Collection<String> keys) throws StorageException
+    {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        if (keys == null || keys.isEmpty()) {
+            return values;
+        }
+
+        Map<String, Object> stored = StoredValues.decodeTexts(bridge, instanceId,
+                bridge.getValues(Collections.singleton(instanceId), keys).get(instanceId));
+        for (String key : keys) {
+            if (stored.containsKey(key)) {
+                values.put(key, stored.get(key));
+            }
+        }
+
+        return values;
+    }
+
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) throws StorageException
+    {
+        Map<String, T> values = new LinkedHashMap<String, T>();
+        for (Map.Entry<String, Object> entry : getAll(keys).entrySet()) {
+            values.put(entry.getKey(), StoredValues.convert(bridge, entry.getKey(), entry.getValue(), type));
+        }
+        return values;
+    }
+
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        String entryKey = key.prefixedName(instanceId.getKeyPrefix());
+        try {
+            Object stored;
+            switch (key.getCodec().getStorage()) {
+                case BOOLEAN:
+                    stored = delegate.getBoolean(entryKey);
+                    break;
+                case LONG:
+                    stored = delegate.exists(entryKey) ? delegate.getLong(entryKey) : null;
+                    break;
+                case STRING:
+                    stored = delegate.getString(entryKey);
+                    break;
+                case TEXT:
+                    stored = readText(entryKey);
+                    break;
+                case DATE:
+                    stored = delegate.getDate(entryKey);
+                    break;
+                default:
+                    stored = delegate.getData(entryKey);
+            }
+            return TypedKeys.decode(key, stored);
+        } catch (PropertyException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        String entryKey = key.prefixedName(instanceId.getKeyPrefix());
+        try {
+            if (value == null) {
+                if (delegate.exists(entryKey)) {
+                    delegate.remove(entryKey);
+                }
+                return;
+            }
+
+            Object stored = TypedKeys.encode(key, value);
+            switch (key.getCodec().getStorage()) {
+                case BOOLEAN:
+                    delegate.setBoolean(entryKey, (Boolean) stored);
+                    break;
+                case LONG:
+                    delegate.setLong(entryKey, (Long) stored);
+                    break;
+                case STRING:
+                    delegate.setString(entryKey, (String) stored);
+                    break;
+                case TEXT:
+                    writeText(entryKey, (String) stored);
+                    break;
+                case DATE:
+                    delegate.setDate(entryKey, (Date) stored);
+                    break;
+                default:
+                    delegate.setData(entryKey, (byte[]) stored);
+            }
         } catch (PropertyException e) {
             throw new StorageException(e);
         }
     }
 
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        return TypedKeys.getAll(this, keys);
+    }
+
     public boolean exists(String key) throws StorageException
     {
         try {
@@ -318,11 +523,16 @@ public class DefaultStorageFacadeImpl implements StorageFacade
     {
         try {
             String entryKey = getKey(key);
-            if (delegate.exists(entryKey)) {
-                delegate.remove(entryKey);
-                return true;
+            // the type is 0 for the missing keys
+            int type = delegate.getType(entryKey);
+            if (type == 0) {
+                return false;
+            }
+            if (type == PropertySet.TEXT) {
+                ChunkedBlobs.removeChunks(delegate, bridge, instanceId, entryKey);
             }
-            return false;
+            delegate.remove(entryKey);
+            return true;
         } catch (PropertyException e) {
             throw new StorageException(e);
         }
@@ -330,6 +540,6 @@ public class DefaultStorageFacadeImpl implements StorageFacade
 
     public void removeAll() throws StorageException
     {
-        bridge.remove(delegate);
+        bridge.removeEntities(instanceId.getEntityName(), Collections.singleton(instanceId.getEntityId()));
     }
 }
@@ -20,19 +20,49 @@ package com.atlassian.plugins.studio.storage.toolkit.impl;
 import com.atlassian.jira.issue.Issue;
 import com.atlassian.jira.project.Project;
 import com.atlassian.plugins.studio.storage.toolkit.Facades;
+import com.atlassian.plugins.studio.storage.toolkit.Scopes;
 import com.atlassian.plugins.studio.storage.toolkit.StorageException;
 import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
 import com.atlassian.plugins.studio.storage.toolkit.StorageService;
+import com.atlassian.plugins.studio.storage.toolkit.impl.bus.InvalidationBus;
+import com.atlassian.plugins.studio.storage.toolkit.impl.snapshot.SnapshotStore;
+import com.atlassian.plugins.studio.storage.toolkit.impl.writebehind.WriteBehindBuffer;
 import org.ofbiz.core.entity.GenericValue;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import webwork.action.Action;
 
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * User: leonidmaslov
  * Date: 12/10/10
  * Time: 5:40 AM
  */
-public class DefaultStorageServiceImpl implements StorageService
+public class DefaultStorageServiceImpl implements StorageService, InitializingBean, DisposableBean
 {
+    public void afterPropertiesSet() throws Exception
+    {
+        Scopes.defaultOperations().warmUp();
+        Scopes.metrics().register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public void destroy() throws Exception
+    {
+        for (WriteBehindBuffer buffer : Scopes.writeBehindBuffers()) {
+            buffer.shutdown();
+        }
+        for (InvalidationBus bus : Scopes.invalidationBuses()) {
+            bus.shutdown();
+        }
+        for (SnapshotStore store : Scopes.snapshotStores()) {
+            store.shutdown();
+        }
+        Scopes.metrics().unregister();
+    }
+
     public StorageFacade projectStorage(Project project) throws StorageException
     {
         return Facades.projectStorage(project);
@@ -43,6 +73,18 @@ public class DefaultStorageServiceImpl implements StorageService
         return Facades.issueStorage(issue);
     }
 
+    public Map<Project, StorageFacade> projectStorages(Collection<Project> projects, Collection<String> keys)
+            throws StorageException
+    {
+        return Facades.projectStorages(projects, keys);
+    }
+
+    public Map<Issue, StorageFacade> issueStorages(Collection<Issue> issues, Collection<String> keys)
+            throws StorageException
+    {
+        return Facades.issueStorages(issues, keys);
+    }
+
     public StorageFacade gvStorage(GenericValue gv) throws StorageException
     {
         return Facades.gvStorage(gv);
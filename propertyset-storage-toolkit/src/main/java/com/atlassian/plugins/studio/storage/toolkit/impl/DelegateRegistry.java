@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.opensymphony.module.propertyset.PropertySet;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent bounded registry of the initialised PropertySet delegates.
+ * <p/>
+ * PropertySet construction goes through reflective <code>PropertySetManager</code> lookup and configuration,
+ * while the OfBiz PropertySet itself is a stateless (entityName, entityId) handle and is safe to share between
+ * threads. The registry hands out the existing delegate, evicts the ones not used for <code>maxIdle</code>
+ * and, once <code>maxSize</code> is exceeded, the least recently used ones down to the low-water mark of
+ * {@link #LOW_WATER_PERCENT} of <code>maxSize</code>, so the eviction cost is shared by many lookups. The clean-up
+ * runs on the calling thread, by one thread at a time, every {@link #SWEEP_INTERVAL} lookups or on overflow.
+ */
+public class DelegateRegistry
+{
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_MAX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    static final int SWEEP_INTERVAL = 256;
+    static final int LOW_WATER_PERCENT = 75;
+
+    private final Function<InstanceId, PropertySet> factory;
+    private final int maxSize;
+    private final int lowWater;
+    private final long maxIdleNanos;
+
+    private final ConcurrentMap<InstanceId, Holder> delegates = new ConcurrentHashMap<InstanceId, Holder>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    public DelegateRegistry(Function<InstanceId, PropertySet> factory)
+    {
+        this(factory, DEFAULT_MAX_SIZE, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    public DelegateRegistry(Function<InstanceId, PropertySet> factory, int maxSize, long maxIdleMillis)
+    {
+        Assertions.notNull("PropertySet factory is null", factory);
+        Assertions.stateTrue("maxSize should be positive", maxSize > 0);
+        Assertions.stateTrue("maxIdleMillis should be positive", maxIdleMillis > 0);
+
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.lowWater = (int) ((long) maxSize * LOW_WATER_PERCENT / 100);
+        this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+    }
+
+    /**
+     * @param instanceId storage instance id
+     * @return initialised delegate, created on first access
+     */
+    public PropertySet get(InstanceId instanceId)
+    {
+        long now = System.nanoTime();
+
+        Holder holder = delegates.get(instanceId);
+        if (holder == null) {
+            Holder created = new Holder(factory.apply(instanceId), now);
+            holder = delegates.putIfAbsent(instanceId, created);
+            if (holder == null) {
+                holder = created;
+            }
+        } else {
+            holder.lastAccess = now;
+        }
+
+        if (lookups.incrementAndGet() % SWEEP_INTERVAL == 0 || delegates.size() > maxSize) {
+            sweep(now);
+        }
+
+        return holder.delegate;
+    }
+
+    public void invalidate(InstanceId instanceId)
+    {
+        delegates.remove(instanceId);
+    }
+
+    /**
+     * Drops the delegates of the entity
+     *
+     * @param entityId   entity id, <code>null</code> stands for any
+     * @param entityName entity name, <code>null</code> stands for any
+     */
+    public void invalidate(Long entityId, String entityName)
+    {
+        for (Iterator<InstanceId> it = delegates.keySet().iterator(); it.hasNext();) {
+            InstanceId instanceId = it.next();
+            if ((entityId == null || entityId.equals(instanceId.getEntityId()))
+                    && (entityName == null || entityName.equals(instanceId.getEntityName()))) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the delegates of the entities in one pass over the registry
+     *
+     * @param entityName entity name
+     * @param entityIds  entity ids
+     */
+    public void invalidate(String entityName, Collection<Long> entityIds)
+    {
+        Set<Long> ids = new HashSet<Long>(entityIds);
+        for (Iterator<InstanceId> it = delegates.keySet().iterator(); it.hasNext();) {
+            InstanceId instanceId = it.next();
+            if (entityName.equals(instanceId.getEntityName()) && ids.contains(instanceId.getEntityId())) {
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidateAll()
+    {
+        delegates.clear();
+    }
+
+    public int size()
+    {
+        return delegates.size();
+    }
+
+    private void sweep(long now)
+    {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            for (Iterator<Holder> it = delegates.values().iterator(); it.hasNext();) {
+                if (now - it.next().lastAccess > maxIdleNanos) {
+                    it.remove();
+                }
+            }
+
+            if (delegates.size() > maxSize) {
+                int overflow = delegates.size() - lowWater;
+                List<Candidate> candidates = Lists.newArrayListWithCapacity(delegates.size());
+                for (Map.Entry<InstanceId, Holder> entry : delegates.entrySet()) {
+                    candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+                }
+
+                Collections.sort(candidates);
+                for (int i = 0; i < overflow && i < candidates.size(); i++) {
+                    Candidate candidate = candidates.get(i);
+                    delegates.remove(candidate.instanceId, candidate.holder);
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private static final class Holder
+    {
+        final PropertySet delegate;
+        volatile long lastAccess;
+
+        Holder(PropertySet delegate, long lastAccess)
+        {
+            this.delegate = delegate;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Eviction candidate, snapshots the last access time so the ordering stays stable while sorting
+     */
+    private static final class Candidate implements Comparable<Candidate>
+    {
+        final InstanceId instanceId;
+        final Holder holder;
+        final long lastAccess;
+
+        Candidate(InstanceId instanceId, Holder holder)
+        {
+            this.instanceId = instanceId;
+            this.holder = holder;
+            this.lastAccess = holder.lastAccess;
+        }
+
+        public int compareTo(Candidate o)
+        {
+            long diff = lastAccess - o.lastAccess;
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+}
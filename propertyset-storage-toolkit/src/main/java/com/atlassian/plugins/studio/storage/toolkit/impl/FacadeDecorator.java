@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+
+/**
+ * Extension point to wrap the facades produced by a scope (caching, instrumentation etc.).
+ * <p/>
+ * The decorator is shared by all the facades of the scope, the scope notifies it whenever
+ * the scope data is removed bypassing the facade.
+ */
+public interface FacadeDecorator
+{
+    /**
+     * Wraps facade loaded by the scope
+     *
+     * @param instanceId storage instance id
+     * @param bridge     scope operations used by the facade
+     * @param facade     facade to wrap
+     * @return decorated facade
+     */
+    StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade);
+
+    /**
+     * Scope instance data was removed
+     *
+     * @param instanceId storage instance id
+     */
+    void invalidate(InstanceId instanceId);
+
+    /**
+     * All the scope instances data was removed
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.opensymphony.module.propertyset.PropertySet;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Base class for the {@link ScopeOperations} decorators, forwards every call to the wrapped operations.
+ */
+public abstract class ForwardingScopeOperations implements ScopeOperations
+{
+    private final ScopeOperations delegate;
+
+    protected ForwardingScopeOperations(ScopeOperations delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    protected ScopeOperations delegate()
+    {
+        return delegate;
+    }
+
+    public PropertySet loadDelegate(InstanceId descriptor) throws StorageException
+    {
+        return delegate.loadDelegate(descriptor);
+    }
+
+    public void invalidate(InstanceId descriptor)
+    {
+        delegate.invalidate(descriptor);
+    }
+
+    public void invalidateAll()
+    {
+        delegate.invalidateAll();
+    }
+
+    public Map<InstanceId, Map<String, Object>> getValues(Collection<InstanceId> descriptors, Collection<String> keys)
+            throws StorageException
+    {
+        return delegate.getValues(descriptors, keys);
+    }
+
+    public void setValues(InstanceId descriptor, Map<String, Object> values) throws StorageException
+    {
+        delegate.setValues(descriptor, values);
+    }
+
+    public CloseableIterator<String> keys(InstanceId descriptor, String keyPrefix, int pageSize) throws StorageException
+    {
+        return delegate.keys(descriptor, keyPrefix, pageSize);
+    }
+
+    public void inTransaction(Runnable work) throws StorageException
+    {
+        delegate.inTransaction(work);
+    }
+
+    public void removeByFilter(Long entityId, String entityName, String keyPrefix) throws StorageException
+    {
+        delegate.removeByFilter(entityId, entityName, keyPrefix);
+    }
+
+    public void removeEntities(String entityName, Collection<Long> entityIds) throws StorageException
+    {
+        delegate.removeEntities(entityName, entityIds);
+    }
+
+    public String serialize(Object instance) throws StorageException
+    {
+        return delegate.serialize(instance);
+    }
+
+    public Object deserialize(String input) throws StorageException
+    {
+        return delegate.deserialize(input);
+    }
+
+    public String compress(String text) throws StorageException
+    {
+        return delegate.compress(text);
+    }
+
+    public String escape(String text)
+    {
+        return delegate.escape(text);
+    }
+
+    public String decodeText(InstanceId descriptor, String stored) throws StorageException
+    {
+        return delegate.decodeText(descriptor, stored);
+    }
+}
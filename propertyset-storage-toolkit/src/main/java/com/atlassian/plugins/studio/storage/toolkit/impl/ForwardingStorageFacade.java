@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Base class for the {@link StorageFacade} decorators, forwards every call to the wrapped facade.
+ * Subclasses override only the operations they are interested in.
+ */
+public abstract class ForwardingStorageFacade implements StorageFacade
+{
+    private final StorageFacade delegate;
+
+    protected ForwardingStorageFacade(StorageFacade delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    protected StorageFacade delegate()
+    {
+        return delegate;
+    }
+
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        delegate.setBoolean(key, value);
+    }
+
+    public boolean getBoolean(String key) throws StorageException
+    {
+        return delegate.getBoolean(key);
+    }
+
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        delegate.setData(key, bytes);
+    }
+
+    public byte[] getData(String key) throws StorageException
+    {
+        return delegate.getData(key);
+    }
+
+    public OutputStream openOutputStream(String key) throws StorageException
+    {
+        return delegate.openOutputStream(key);
+    }
+
+    /**
+     * Goes through {@link #openInputStream(String, long, long)}, the subclasses override that one only
+     */
+    public InputStream openInputStream(String key) throws StorageException
+    {
+        return openInputStream(key, 0, Long.MAX_VALUE);
+    }
+
+    public InputStream openInputStream(String key, long offset, long length) throws StorageException
+    {
+        return delegate.openInputStream(key, offset, length);
+    }
+
+    public void setDate(String key, Date date) throws StorageException
+    {
+        delegate.setDate(key, date);
+    }
+
+    public Date getDate(String key) throws StorageException
+    {
+        return delegate.getDate(key);
+    }
+
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        delegate.setDouble(key, value);
+    }
+
+    public BigDecimal getDouble(String key) throws StorageException
+    {
+        return delegate.getDouble(key);
+    }
+
+    public Collection<String> getKeys() throws StorageException
+    {
+        return delegate.getKeys();
+    }
+
+    public Collection<String> getKeys(String keyPrefix) throws StorageException
+    {
+        return delegate.getKeys(keyPrefix);
+    }
+
+    public int countKeys(String keyPrefix) throws StorageException
+    {
+        return delegate.countKeys(keyPrefix);
+    }
+
+    public Collection<String> getKeyRange(String fromKey, String toKey) throws StorageException
+    {
+        return delegate.getKeyRange(fromKey, toKey);
+    }
+
+    public CloseableIterator<String> keys(String keyPrefix, int pageSize) throws StorageException
+    {
+        return delegate.keys(keyPrefix, pageSize);
+    }
+
+    public void setLong(String key, Long value) throws StorageException
+    {
+        delegate.setLong(key, value);
+    }
+
+    public Long getLong(String key) throws StorageException
+    {
+        return delegate.getLong(key);
+    }
+
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        delegate.setObject(key, objectValue);
+    }
+
+    public Object getObject(String key) throws StorageException
+    {
+        return delegate.getObject(key);
+    }
+
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        delegate.setProperties(key, properties);
+    }
+
+    public Properties getProperties(String key) throws StorageException
+    {
+        return delegate.getProperties(key);
+    }
+
+    public void setString(String key, String string) throws StorageException
+    {
+        delegate.setString(key, string);
+    }
+
+    public String getString(String key) throws StorageException
+    {
+        return delegate.getString(key);
+    }
+
+    public void setText(String key, String text) throws StorageException
+    {
+        delegate.setText(key, text);
+    }
+
+    public String getText(String key) throws StorageException
+    {
+        return delegate.getText(key);
+    }
+
+    /**
+     * Typed key operations are forwarded as they are, so the wrapped facade reads and writes them its own way. The
+     * subclasses changing what the untyped getters or setters do override these as well, {@link TypedKeys} routes
+     * them through the untyped ones.
+     */
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        return delegate.get(key);
+    }
+
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        delegate.set(key, value);
+    }
+
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        return delegate.getAll(keys);
+    }
+
+    public boolean exists(String key) throws StorageException
+    {
+        return delegate.exists(key);
+    }
+
+    public boolean remove(String key) throws StorageException
+    {
+        return delegate.remove(key);
+    }
+
+    public void removeAll() throws StorageException
+    {
+        delegate.removeAll();
+    }
+
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        delegate.setAll(values);
+    }
+
+    public Map<String, Object> getAll(Collection<String> keys) throws StorageException
+    {
+        return delegate.getAll(keys);
+    }
+
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) throws StorageException
+    {
+        return delegate.getAll(keys, type);
+    }
+}
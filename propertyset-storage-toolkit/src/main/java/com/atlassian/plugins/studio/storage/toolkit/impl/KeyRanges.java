@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import java.util.NavigableSet;
+
+/**
+ * Prefix and range views over the sorted key sets.
+ */
+public final class KeyRanges
+{
+    private KeyRanges()
+    {
+    }
+
+    /**
+     * @param keys      sorted keys
+     * @param keyPrefix key prefix, <code>null</code> or empty for all the keys
+     * @return view of the keys starting with the prefix
+     */
+    public static NavigableSet<String> prefixed(NavigableSet<String> keys, String keyPrefix)
+    {
+        if (keyPrefix == null || keyPrefix.length() == 0) {
+            return keys;
+        }
+        // every key with the prefix sorts below the prefix followed by the highest character
+        return keys.subSet(keyPrefix, true, keyPrefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * @param keys    sorted keys
+     * @param fromKey lowest key, inclusive; <code>null</code> for unbounded
+     * @param toKey   highest key, exclusive; <code>null</code> for unbounded
+     * @return view of the keys in the range
+     */
+    public static NavigableSet<String> range(NavigableSet<String> keys, String fromKey, String toKey)
+    {
+        if (fromKey != null && toKey != null) {
+            return fromKey.compareTo(toKey) < 0 ? keys.subSet(fromKey, true, toKey, false) : keys.subSet(fromKey, true, fromKey, false);
+        } else if (fromKey != null) {
+            return keys.tailSet(fromKey, true);
+        } else if (toKey != null) {
+            return keys.headSet(toKey, false);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds and strips the instance key prefix of the stored keys.
+ * <p/>
+ * Prefixes are few (one per scope kind), so the instances are shared per prefix and keep the prefixed form of
+ * the keys used, the repeated reads and writes of the same key do not allocate.
+ */
+final class PrefixedKeys
+{
+    /**
+     * Keys cached per prefix, the keys used past the limit are prefixed on every call
+     */
+    static final int MAX_CACHED_KEYS = 1024;
+
+    private static final ConcurrentMap<String, PrefixedKeys> SHARED = new MapMaker().softValues().makeMap();
+
+    private final String prefix;
+    private final int prefixLength;
+    private final ConcurrentMap<String, String> prefixed = new MapMaker().makeMap();
+
+    private PrefixedKeys(String prefix)
+    {
+        this.prefix = prefix;
+        this.prefixLength = prefix.length();
+    }
+
+    /**
+     * @param prefix key prefix, might be <code>null</code>
+     * @return shared instance for the prefix
+     */
+    static PrefixedKeys forPrefix(String prefix)
+    {
+        String normalized = prefix == null ? "" : prefix;
+        PrefixedKeys keys = SHARED.get(normalized);
+        if (keys == null) {
+            PrefixedKeys created = new PrefixedKeys(normalized);
+            keys = SHARED.putIfAbsent(normalized, created);
+            if (keys == null) {
+                keys = created;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @param key scope key
+     * @return stored key
+     */
+    String prefix(String key)
+    {
+        if (key == null || prefixLength == 0) {
+            return prefixLength == 0 ? String.valueOf(key) : prefix + key;
+        }
+
+        String stored = prefixed.get(key);
+        if (stored == null) {
+            stored = prefix.concat(key);
+            if (prefixed.size() < MAX_CACHED_KEYS) {
+                prefixed.putIfAbsent(key, stored);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * @param storedKey stored key
+     * @return scope key
+     */
+    String strip(String storedKey)
+    {
+        if (storedKey != null && prefixLength > 0 && storedKey.startsWith(prefix)) {
+            return storedKey.substring(prefixLength);
+        }
+        return storedKey;
+    }
+
+    /**
+     * @param storedKeys stored keys, might be <code>null</code>
+     * @return scope keys
+     */
+    Collection<String> strip(Collection<String> storedKeys)
+    {
+        if (storedKeys == null) {
+            return null;
+        }
+
+        String[] keys = new String[storedKeys.size()];
+        int i = 0;
+        for (String storedKey : storedKeys) {
+            keys[i++] = strip(storedKey);
+        }
+        return ImmutableList.of(keys);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Read-only facade over the values loaded in bulk by {@link AbstractDefaultScopeImpl#loadAll}.
+ * <p/>
+ * Only the keys requested at load time could be read, key listing is not available.
+ */
+class PreloadedStorageFacade implements StorageFacade
+{
+    private final ScopeOperations bridge;
+    private final Set<String> keys;
+    private final Map<String, Object> values;
+
+    PreloadedStorageFacade(ScopeOperations bridge, Set<String> keys, Map<String, Object> values)
+    {
+        this.bridge = bridge;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    private <T> T get(String key, Class<T> type) throws StorageException
+    {
+        if (!keys.contains(key)) {
+            throw new StorageException("Key was not preloaded: " + key);
+        }
+        return StoredValues.convert(bridge, key, values.get(key), type);
+    }
+
+    private static UnsupportedOperationException readOnly()
+    {
+        return new UnsupportedOperationException("Preloaded storage is read-only");
+    }
+
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public boolean getBoolean(String key) throws StorageException
+    {
+        return Boolean.TRUE.equals(get(key, Boolean.class));
+    }
+
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public byte[] getData(String key) throws StorageException
+    {
+        byte[] data = get(key, byte[].class);
+        return data == null ? null : data.clone();
+    }
+
+    public OutputStream openOutputStream(String key) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public InputStream openInputStream(String key) throws StorageException
+    {
+        return openInputStream(key, 0, Long.MAX_VALUE);
+    }
+
+    public InputStream openInputStream(String key, long offset, long length) throws StorageException
+    {
+        throw new StorageException("Blob streams are not preloaded: " + key);
+    }
+
+    public void setDate(String key, Date date) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public Date getDate(String key) throws StorageException
+    {
+        Date date = get(key, Date.class);
+        return date == null ? null : (Date) date.clone();
+    }
+
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public BigDecimal getDouble(String key) throws StorageException
+    {
+        return get(key, BigDecimal.class);
+    }
+
+    public Collection<String> getKeys() throws StorageException
+    {
+        throw new StorageException("Key listing is not preloaded");
+    }
+
+    public Collection<String> getKeys(String keyPrefix) throws StorageException
+    {
+        throw new StorageException("Key listing is not preloaded");
+    }
+
+    public int countKeys(String keyPrefix) throws StorageException
+    {
+        throw new StorageException("Key listing is not preloaded");
+    }
+
+    public Collection<String> getKeyRange(String fromKey, String toKey) throws StorageException
+    {
+        throw new StorageException("Key listing is not preloaded");
+    }
+
+    public CloseableIterator<String> keys(String keyPrefix, int pageSize) throws StorageException
+    {
+        throw new StorageException("Key listing is not preloaded");
+    }
+
+    public void setLong(String key, Long value) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public Long getLong(String key) throws StorageException
+    {
+        return get(key, Long.class);
+    }
+
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public Object getObject(String key) throws StorageException
+    {
+        return get(key, Object.class);
+    }
+
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public Properties getProperties(String key) throws StorageException
+    {
+        return get(key, Properties.class);
+    }
+
+    public void setString(String key, String string) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public String getString(String key) throws StorageException
+    {
+        return get(key, String.class);
+    }
+
+    public void setText(String key, String text) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public String getText(String key) throws StorageException
+    {
+        return get(key, String.class);
+    }
+
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public Map<String, Object> getAll(Collection<String> keys) throws StorageException
+    {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (String key : keys) {
+            if (exists(key)) {
+                result.put(key, values.get(key));
+            }
+        }
+        return result;
+    }
+
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) throws StorageException
+    {
+        Map<String, T> result = new LinkedHashMap<String, T>();
+        for (String key : keys) {
+            if (exists(key)) {
+                result.put(key, get(key, type));
+            }
+        }
+        return result;
+    }
+
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        return TypedKeys.get(this, key);
+    }
+
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        return TypedKeys.getAll(this, keys);
+    }
+
+    public boolean exists(String key) throws StorageException
+    {
+        if (!keys.contains(key)) {
+            throw new StorageException("Key was not preloaded: " + key);
+        }
+        return values.containsKey(key);
+    }
+
+    public boolean remove(String key) throws StorageException
+    {
+        throw readOnly();
+    }
+
+    public void removeAll() throws StorageException
+    {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import java.util.Date;
+
+/**
+ * Row of <code>OSPropertyEntry</code> with its raw value, as stored in the value tables
+ */
+public final class PropertyEntry
+{
+    private final String entityName;
+    private final long entityId;
+    private final String propertyKey;
+    private final int type;
+    private final Object value;
+
+    /**
+     * @param entityName  entity name
+     * @param entityId    entity id
+     * @param propertyKey property key, with the instance key prefix
+     * @param type        PropertySet type
+     * @param value       Long (boolean, int and long types), Double, String, Date or byte[] (data, object and
+     *                    properties types); <code>null</code> if the value row is missing
+     */
+    public PropertyEntry(String entityName, long entityId, String propertyKey, int type, Object value)
+    {
+        this.entityName = entityName;
+        this.entityId = entityId;
+        this.propertyKey = propertyKey;
+        this.type = type;
+        this.value = value;
+    }
+
+    public String getEntityName()
+    {
+        return entityName;
+    }
+
+    public long getEntityId()
+    {
+        return entityId;
+    }
+
+    public String getPropertyKey()
+    {
+        return propertyKey;
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    public Object getValue()
+    {
+        return value instanceof Date ? new Date(((Date) value).getTime()) : value;
+    }
+
+    @Override
+    public String toString()
+    {
+        return entityName + "#" + entityId + " " + propertyKey + " (type " + type + ")";
+    }
+}
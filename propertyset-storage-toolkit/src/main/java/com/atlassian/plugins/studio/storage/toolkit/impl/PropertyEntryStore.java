@@ -0,0 +1,1137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.ofbiz.core.entity.ConnectionFactory;
+import org.ofbiz.core.entity.EntityConditionList;
+import org.ofbiz.core.entity.EntityExpr;
+import org.ofbiz.core.entity.EntityOperator;
+import org.ofbiz.core.entity.GenericDelegator;
+import org.ofbiz.core.entity.GenericEntityException;
+import org.ofbiz.core.entity.GenericValue;
+import org.ofbiz.core.entity.TransactionUtil;
+
+import javax.transaction.Status;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Works with the entries of the OfBiz PropertySet implementation directly, many keys per statement.
+ * <p/>
+ * Reads go as one query against <code>OSPropertyEntry</code> and one against every value table involved, instead
+ * of two lookups per key made by the PropertySet itself. Writes of the small values and inserts go as JDBC batches,
+ * removals are set-based JDBC deletes, chunked and committed chunk by chunk.
+ */
+public class PropertyEntryStore
+{
+    /**
+     * Value of the entries which are not kept in the value tables as is (object, xml and properties types),
+     * those should be read through the PropertySet
+     */
+    public static final Object UNRESOLVED = new Object();
+
+    static final String ENTRY_ENTITY = "OSPropertyEntry";
+    static final String VALUE_FIELD = "value";
+
+    /**
+     * Longest <code>IN</code> list sent in one query, keeps away from the database limits
+     */
+    static final int MAX_IN_SIZE = 500;
+
+    static final List<String> VALUE_ENTITIES = ImmutableList.of("OSPropertyNumber", "OSPropertyDecimal",
+            "OSPropertyString", "OSPropertyText", "OSPropertyDate", "OSPropertyData");
+
+    private static final char LIKE_ESCAPE = '!';
+
+    private final Supplier<GenericDelegator> delegator;
+
+    public PropertyEntryStore(Supplier<GenericDelegator> delegator)
+    {
+        this.delegator = delegator;
+    }
+
+    /**
+     * @param entityName   entity name
+     * @param entityIds    entity ids
+     * @param propertyKeys property keys to read
+     * @return values by property key by entity id, missing keys are absent; the values are Boolean, Integer, Long,
+     *         Double, String, Date, byte[] and {@link StoredText} or {@link #UNRESOLVED}
+     * @throws StorageException query failure
+     */
+    public Map<Long, Map<String, Object>> load(String entityName, Collection<Long> entityIds,
+                                               Collection<String> propertyKeys) throws StorageException
+    {
+        Map<Long, Map<String, Object>> values = new HashMap<Long, Map<String, Object>>();
+        for (Long entityId : entityIds) {
+            values.put(entityId, new HashMap<String, Object>());
+        }
+        if (values.isEmpty() || propertyKeys.isEmpty()) {
+            return values;
+        }
+
+        try {
+            // value table -> entry id -> entry
+            Map<String, Map<Long, GenericValue>> byTable = new HashMap<String, Map<Long, GenericValue>>();
+
+            List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(propertyKeys));
+            for (List<Long> ids : Lists.partition(new ArrayList<Long>(values.keySet()), MAX_IN_SIZE)) {
+                for (List<String> chunk : Lists.partition(keys, MAX_IN_SIZE)) {
+                    List<EntityExpr> expressions = Lists.newArrayList(
+                            new EntityExpr("entityName", EntityOperator.EQUALS, entityName),
+                            ids.size() == 1
+                                    ? new EntityExpr("entityId", EntityOperator.EQUALS, ids.get(0))
+                                    : new EntityExpr("entityId", EntityOperator.IN, ids),
+                            new EntityExpr("propertyKey", EntityOperator.IN, chunk));
+
+                    for (GenericValue entry : find(ENTRY_ENTITY, expressions)) {
+                        String table = valueTable(entry.getInteger("type"));
+                        if (table == null) {
+                            values.get(entry.getLong("entityId")).put(entry.getString("propertyKey"), UNRESOLVED);
+                            continue;
+                        }
+
+                        Map<Long, GenericValue> entries = byTable.get(table);
+                        if (entries == null) {
+                            entries = new HashMap<Long, GenericValue>();
+                            byTable.put(table, entries);
+                        }
+                        entries.put(entry.getLong("id"), entry);
+                    }
+                }
+            }
+
+            for (Map.Entry<String, Map<Long, GenericValue>> table : byTable.entrySet()) {
+                Map<Long, GenericValue> entries = table.getValue();
+                for (List<Long> chunk : Lists.partition(new ArrayList<Long>(entries.keySet()), MAX_IN_SIZE)) {
+                    List<EntityExpr> expressions = Lists.newArrayList(new EntityExpr("id", EntityOperator.IN, chunk));
+
+                    for (GenericValue value : find(table.getKey(), expressions)) {
+                        GenericValue entry = entries.get(value.getLong("id"));
+                        values.get(entry.getLong("entityId")).put(entry.getString("propertyKey"),
+                                decode(entry.getInteger("type"), value));
+                    }
+                }
+            }
+
+            return values;
+        } catch (GenericEntityException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Looks the stored keys up, the values are not read
+     *
+     * @param entityName   entity name
+     * @param entityIds    entity ids
+     * @param propertyKeys property keys to look up
+     * @return stored property keys by entity id, the entities storing none of the keys are absent
+     * @throws StorageException query failure
+     */
+    public Map<Long, Set<String>> storedKeys(String entityName, Collection<Long> entityIds,
+                                             Collection<String> propertyKeys) throws StorageException
+    {
+        Map<Long, Set<String>> stored = new HashMap<Long, Set<String>>();
+        if (entityIds.isEmpty() || propertyKeys.isEmpty()) {
+            return stored;
+        }
+
+        try {
+            Connection connection = getConnection();
+            try {
+                for (StoredEntry entry : storedEntries(connection, entityName, entityIds, propertyKeys)) {
+                    Set<String> keys = stored.get(entry.entityId);
+                    if (keys == null) {
+                        keys = new HashSet<String>();
+                        stored.put(entry.entityId, keys);
+                    }
+                    keys.add(entry.propertyKey);
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        } catch (GenericEntityException e) {
+            throw new StorageException(e);
+        }
+
+        return stored;
+    }
+
+    private List<StoredEntry> storedEntries(Connection connection, String entityName, Collection<Long> entityIds,
+                                            Collection<String> propertyKeys) throws SQLException
+    {
+        StringBuilder select = new StringBuilder("SELECT ").append(column(ENTRY_ENTITY, "id"))
+                .append(", ").append(column(ENTRY_ENTITY, "entityId"))
+                .append(", ").append(column(ENTRY_ENTITY, "propertyKey"))
+                .append(", ").append(column(ENTRY_ENTITY, "type"))
+                .append(" FROM ").append(table(ENTRY_ENTITY))
+                .append(" WHERE ").append(column(ENTRY_ENTITY, "entityName")).append(" = ?")
+                .append(" AND ").append(column(ENTRY_ENTITY, "entityId")).append(" IN ");
+        String keyColumn = column(ENTRY_ENTITY, "propertyKey");
+
+        List<StoredEntry> entries = new ArrayList<StoredEntry>();
+        List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(propertyKeys));
+        for (List<Long> ids : Lists.partition(new ArrayList<Long>(new LinkedHashSet<Long>(entityIds)), MAX_IN_SIZE)) {
+            for (List<String> chunk : Lists.partition(keys, MAX_IN_SIZE)) {
+                PreparedStatement statement = connection.prepareStatement(new StringBuilder(select)
+                        .append(placeholders(ids.size())).append(" AND ").append(keyColumn).append(" IN ")
+                        .append(placeholders(chunk.size())).toString());
+                try {
+                    int parameter = 1;
+                    statement.setString(parameter++, entityName);
+                    for (Long id : ids) {
+                        statement.setLong(parameter++, id);
+                    }
+                    for (String key : chunk) {
+                        statement.setString(parameter++, key);
+                    }
+
+                    ResultSet rows = statement.executeQuery();
+                    try {
+                        while (rows.next()) {
+                            entries.add(new StoredEntry(rows.getLong(1), rows.getLong(2), rows.getString(3), rows.getInt(4)));
+                        }
+                    } finally {
+                        rows.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Removes the entries and their values. Joins the transaction in progress, if any, and leaves the commit to it;
+     * otherwise every chunk of {@link #MAX_IN_SIZE} entries is committed on its own, so a failure leaves the chunks
+     * processed before removed.
+     *
+     * @param entityName entity name, <code>null</code> for any
+     * @param entityIds  entity ids, <code>null</code> for any
+     * @param keyPrefix  property key prefix, <code>null</code> for any
+     * @return number of entries removed
+     * @throws StorageException database failure
+     */
+    public int remove(String entityName, Collection<Long> entityIds, String keyPrefix) throws StorageException
+    {
+        if (entityIds != null && entityIds.isEmpty()) {
+            return 0;
+        }
+
+        int removed = 0;
+        try {
+            boolean joined = isTransactionActive();
+            Connection connection = getConnection();
+            try {
+                if (joined) {
+                    removed += remove(connection, entityName, entityIds, keyPrefix, false);
+                } else {
+                    boolean autoCommit = connection.getAutoCommit();
+                    connection.setAutoCommit(false);
+                    try {
+                        removed += remove(connection, entityName, entityIds, keyPrefix, true);
+                    } catch (SQLException e) {
+                        connection.rollback();
+                        throw e;
+                    } finally {
+                        connection.setAutoCommit(autoCommit);
+                    }
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        } catch (GenericEntityException e) {
+            throw new StorageException(e);
+        }
+
+        return removed;
+    }
+
+    private int remove(Connection connection, String entityName, Collection<Long> entityIds, String keyPrefix,
+                       boolean commitChunks) throws SQLException
+    {
+        if (entityIds == null) {
+            return remove(connection, entityName, (List<Long>) null, keyPrefix, commitChunks);
+        }
+
+        int removed = 0;
+        for (List<Long> chunk : Lists.partition(new ArrayList<Long>(new LinkedHashSet<Long>(entityIds)), MAX_IN_SIZE)) {
+            removed += remove(connection, entityName, chunk, keyPrefix, commitChunks);
+        }
+        return removed;
+    }
+
+    private int remove(Connection connection, String entityName, List<Long> entityIds, String keyPrefix,
+                       boolean commitChunks) throws SQLException
+    {
+        String idColumn = column(ENTRY_ENTITY, "id");
+        List<Object> parameters = new ArrayList<Object>();
+
+        StringBuilder select = new StringBuilder("SELECT ").append(idColumn).append(", ").append(column(ENTRY_ENTITY, "type"))
+                .append(" FROM ").append(table(ENTRY_ENTITY))
+                .append(" WHERE ").append(idColumn).append(" > ?");
+        if (entityName != null) {
+            select.append(" AND ").append(column(ENTRY_ENTITY, "entityName")).append(" = ?");
+            parameters.add(entityName);
+        }
+        if (entityIds != null) {
+            select.append(" AND ").append(column(ENTRY_ENTITY, "entityId")).append(" IN ").append(placeholders(entityIds.size()));
+            parameters.addAll(entityIds);
+        }
+        if (keyPrefix != null) {
+            select.append(" AND ").append(column(ENTRY_ENTITY, "propertyKey")).append(" LIKE ? ESCAPE '").append(LIKE_ESCAPE).append("'");
+            parameters.add(escapeLike(keyPrefix) + "%");
+        }
+        select.append(" ORDER BY ").append(idColumn);
+
+        int removed = 0;
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<Long> ids = new ArrayList<Long>(MAX_IN_SIZE);
+            Map<String, List<Long>> byTable = new HashMap<String, List<Long>>();
+
+            PreparedStatement statement = connection.prepareStatement(select.toString());
+            try {
+                statement.setMaxRows(MAX_IN_SIZE);
+                statement.setLong(1, lastId);
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setObject(i + 2, parameters.get(i));
+                }
+
+                ResultSet rows = statement.executeQuery();
+                try {
+                    while (rows.next()) {
+                        long id = rows.getLong(1);
+                        String valueEntity = valueTable(rows.getInt(2));
+                        // the values of the unknown types are looked for everywhere
+                        for (String entity : valueEntity == null ? VALUE_ENTITIES : Collections.singletonList(valueEntity)) {
+                            List<Long> tableIds = byTable.get(entity);
+                            if (tableIds == null) {
+                                tableIds = new ArrayList<Long>();
+                                byTable.put(entity, tableIds);
+                            }
+                            tableIds.add(id);
+                        }
+                        ids.add(id);
+                        lastId = Math.max(lastId, id);
+                    }
+                } finally {
+                    rows.close();
+                }
+            } finally {
+                statement.close();
+            }
+
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            for (Map.Entry<String, List<Long>> table : byTable.entrySet()) {
+                deleteByIds(connection, table.getKey(), table.getValue());
+            }
+            deleteByIds(connection, ENTRY_ENTITY, ids);
+            if (commitChunks) {
+                connection.commit();
+            }
+
+            removed += ids.size();
+            if (ids.size() < MAX_IN_SIZE) {
+                break;
+            }
+        }
+
+        return removed;
+    }
+
+    private void deleteByIds(Connection connection, String entity, List<Long> ids) throws SQLException
+    {
+        PreparedStatement statement = connection.prepareStatement(new StringBuilder("DELETE FROM ").append(table(entity))
+                .append(" WHERE ").append(column(entity, "id")).append(" IN ").append(placeholders(ids.size())).toString());
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setLong(i + 1, ids.get(i));
+            }
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Streams the property keys, every page is a separate keyset query so nothing is held open between the pages
+     *
+     * @param entityName  entity name
+     * @param entityId    entity id
+     * @param keyPrefix   property key prefix, matched by the database
+     * @param stripLength number of leading characters to cut off the keys returned
+     * @param pageSize    keys per query
+     * @return keys in the key order
+     */
+    public CloseableIterator<String> keys(String entityName, Long entityId, String keyPrefix, int stripLength, int pageSize)
+    {
+        Assertions.stateTrue("Page size should be positive", pageSize > 0);
+        return new KeyPages(entityName, entityId, keyPrefix, stripLength, pageSize);
+    }
+
+    private List<String> loadKeys(String entityName, Long entityId, String keyPrefix, String after, int pageSize)
+            throws StorageException
+    {
+        String keyColumn = column(ENTRY_ENTITY, "propertyKey");
+        StringBuilder select = new StringBuilder("SELECT ").append(keyColumn)
+                .append(" FROM ").append(table(ENTRY_ENTITY))
+                .append(" WHERE ").append(column(ENTRY_ENTITY, "entityName")).append(" = ?")
+                .append(" AND ").append(column(ENTRY_ENTITY, "entityId")).append(" = ?");
+        if (keyPrefix.length() > 0) {
+            select.append(" AND ").append(keyColumn).append(" LIKE ? ESCAPE '").append(LIKE_ESCAPE).append("'");
+        }
+        if (after != null) {
+            select.append(" AND ").append(keyColumn).append(" > ?");
+        }
+        select.append(" ORDER BY ").append(keyColumn);
+
+        try {
+            Connection connection = getConnection();
+            try {
+                PreparedStatement statement = connection.prepareStatement(select.toString());
+                try {
+                    statement.setMaxRows(pageSize);
+                    int parameter = 1;
+                    statement.setString(parameter++, entityName);
+                    statement.setLong(parameter++, entityId);
+                    if (keyPrefix.length() > 0) {
+                        statement.setString(parameter++, escapeLike(keyPrefix) + "%");
+                    }
+                    if (after != null) {
+                        statement.setString(parameter, after);
+                    }
+
+                    List<String> keys = new ArrayList<String>(pageSize);
+                    ResultSet rows = statement.executeQuery();
+                    try {
+                        while (rows.next() && keys.size() < pageSize) {
+                            keys.add(rows.getString(1));
+                        }
+                    } finally {
+                        rows.close();
+                    }
+                    return keys;
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        } catch (GenericEntityException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Streams the entries with their values, every page is a separate keyset query on the entry id, so the memory
+     * used does not depend on the number of entries and nothing is held open between the pages
+     *
+     * @param entityName entity name
+     * @param entityId   entity id, <code>null</code> for any
+     * @param keyPrefix  property key prefix, <code>null</code> for any
+     * @param pageSize   entries per query, up to {@link #MAX_IN_SIZE}
+     * @return entries in the entry id order
+     */
+    public CloseableIterator<PropertyEntry> entries(String entityName, Long entityId, String keyPrefix, int pageSize)
+    {
+        Assertions.notBlank("Entity name", entityName);
+        Assertions.stateTrue("Page size should be positive", pageSize > 0);
+        return new EntryPages(entityName, entityId, keyPrefix, Math.min(pageSize, MAX_IN_SIZE));
+    }
+
+    private EntryPage loadEntries(String entityName, Long entityId, String keyPrefix, long afterId, int pageSize)
+            throws StorageException
+    {
+        String idColumn = column(ENTRY_ENTITY, "id");
+        StringBuilder select = new StringBuilder("SELECT ").append(idColumn)
+                .append(", ").append(column(ENTRY_ENTITY, "entityId"))
+                .append(", ").append(column(ENTRY_ENTITY, "propertyKey"))
+                .append(", ").append(column(ENTRY_ENTITY, "type"))
+                .append(" FROM ").append(table(ENTRY_ENTITY))
+                .append(" WHERE ").append(column(ENTRY_ENTITY, "entityName")).append(" = ?");
+        if (entityId != null) {
+            select.append(" AND ").append(column(ENTRY_ENTITY, "entityId")).append(" = ?");
+        }
+        if (keyPrefix != null) {
+            select.append(" AND ").append(column(ENTRY_ENTITY, "propertyKey")).append(" LIKE ? ESCAPE '").append(LIKE_ESCAPE).append("'");
+        }
+        select.append(" AND ").append(idColumn).append(" > ?");
+        select.append(" ORDER BY ").append(idColumn);
+
+        try {
+            Connection connection = getConnection();
+            try {
+                EntryPage page = new EntryPage(afterId);
+                List<Long> ids = new ArrayList<Long>(pageSize);
+                List<Object[]> rowValues = new ArrayList<Object[]>(pageSize);
+                Map<String, List<Long>> byTable = new HashMap<String, List<Long>>();
+
+                PreparedStatement statement = connection.prepareStatement(select.toString());
+                try {
+                    statement.setMaxRows(pageSize);
+                    int parameter = 1;
+                    statement.setString(parameter++, entityName);
+                    if (entityId != null) {
+                        statement.setLong(parameter++, entityId);
+                    }
+                    if (keyPrefix != null) {
+                        statement.setString(parameter++, escapeLike(keyPrefix) + "%");
+                    }
+                    statement.setLong(parameter, afterId);
+
+                    ResultSet rows = statement.executeQuery();
+                    try {
+                        while (rows.next() && ids.size() < pageSize) {
+                            long id = rows.getLong(1);
+                            int type = rows.getInt(4);
+                            ids.add(id);
+                            rowValues.add(new Object[]{rows.getLong(2), rows.getString(3), type});
+
+                            String entity = rawValueTable(type);
+                            if (entity != null) {
+                                List<Long> tableIds = byTable.get(entity);
+                                if (tableIds == null) {
+                                    tableIds = new ArrayList<Long>();
+                                    byTable.put(entity, tableIds);
+                                }
+                                tableIds.add(id);
+                            }
+                            page.lastId = id;
+                        }
+                    } finally {
+                        rows.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+
+                Map<Long, Object> values = new HashMap<Long, Object>();
+                for (Map.Entry<String, List<Long>> table : byTable.entrySet()) {
+                    loadValues(connection, table.getKey(), table.getValue(), values);
+                }
+
+                for (int i = 0; i < ids.size(); i++) {
+                    Object[] row = rowValues.get(i);
+                    page.entries.add(new PropertyEntry(entityName, (Long) row[0], (String) row[1], (Integer) row[2],
+                            values.get(ids.get(i))));
+                }
+                return page;
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        } catch (GenericEntityException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private void loadValues(Connection connection, String entity, List<Long> ids, Map<Long, Object> values)
+            throws SQLException
+    {
+        PreparedStatement statement = connection.prepareStatement(new StringBuilder("SELECT ")
+                .append(column(entity, "id")).append(", ").append(column(entity, VALUE_FIELD))
+                .append(" FROM ").append(table(entity))
+                .append(" WHERE ").append(column(entity, "id")).append(" IN ").append(placeholders(ids.size())).toString());
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setLong(i + 1, ids.get(i));
+            }
+
+            ResultSet rows = statement.executeQuery();
+            try {
+                while (rows.next()) {
+                    values.put(rows.getLong(1), readValue(rows, 2, entity));
+                }
+            } finally {
+                rows.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Inserts the entries and their values, the statements are sent as JDBC batches. Joins the transaction in
+     * progress, if any, and leaves the commit to it; otherwise runs in a transaction of its own.
+     *
+     * @param entries entries, their keys must not be stored yet
+     * @throws StorageException database failure, nothing is inserted
+     */
+    public void insert(final List<PropertyEntry> entries) throws StorageException
+    {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        inTransaction(new ConnectionWork()
+        {
+            public void run(Connection connection) throws SQLException
+            {
+                insert(connection, entries);
+            }
+        });
+    }
+
+    /**
+     * Stores the values of the keys, the keys stored before are updated and the others inserted; the statements are
+     * sent as JDBC batches. Joins the transaction in progress, if any, and leaves the commit to it; otherwise runs
+     * in a transaction of its own.
+     *
+     * @param entityName entity name
+     * @param entries    entries of the entity with their values, of the boolean, long, date and string types
+     * @throws StorageException database failure, or a key stored with another type; nothing is stored
+     */
+    public void store(final String entityName, final List<PropertyEntry> entries) throws StorageException
+    {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        inTransaction(new ConnectionWork()
+        {
+            public void run(Connection connection) throws SQLException
+            {
+                Set<Long> entityIds = new HashSet<Long>();
+                Set<String> keys = new HashSet<String>();
+                for (PropertyEntry entry : entries) {
+                    entityIds.add(entry.getEntityId());
+                    keys.add(entry.getPropertyKey());
+                }
+
+                Map<List<Object>, StoredEntry> stored = new HashMap<List<Object>, StoredEntry>();
+                for (StoredEntry entry : storedEntries(connection, entityName, entityIds, keys)) {
+                    stored.put(Arrays.<Object>asList(entry.entityId, entry.propertyKey), entry);
+                }
+
+                List<PropertyEntry> inserted = new ArrayList<PropertyEntry>();
+                Map<String, Map<Long, Object>> updated = new HashMap<String, Map<Long, Object>>();
+                for (PropertyEntry entry : entries) {
+                    StoredEntry storedEntry = stored.get(Arrays.<Object>asList(entry.getEntityId(), entry.getPropertyKey()));
+                    if (storedEntry == null) {
+                        inserted.add(entry);
+                        continue;
+                    }
+                    if (storedEntry.type != entry.getType()) {
+                        throw new StorageException("Existing key '" + entry.getPropertyKey()
+                                + "' does not have matching type of " + entry.getType());
+                    }
+
+                    String entity = valueTable(entry.getType());
+                    Map<Long, Object> values = updated.get(entity);
+                    if (values == null) {
+                        values = new LinkedHashMap<Long, Object>();
+                        updated.put(entity, values);
+                    }
+                    values.put(storedEntry.id, entry.getValue());
+                }
+
+                for (Map.Entry<String, Map<Long, Object>> table : updated.entrySet()) {
+                    update(connection, table.getKey(), table.getValue());
+                }
+                if (!inserted.isEmpty()) {
+                    insert(connection, inserted);
+                }
+            }
+        });
+    }
+
+    private void update(Connection connection, String entity, Map<Long, Object> values) throws SQLException
+    {
+        PreparedStatement statement = connection.prepareStatement(new StringBuilder("UPDATE ").append(table(entity))
+                .append(" SET ").append(column(entity, VALUE_FIELD)).append(" = ?")
+                .append(" WHERE ").append(column(entity, "id")).append(" = ?").toString());
+        try {
+            for (Map.Entry<Long, Object> value : values.entrySet()) {
+                writeValue(statement, 1, entity, value.getValue());
+                statement.setLong(2, value.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Runs the work in the transaction in progress, if any, leaving the commit to it; otherwise in a transaction
+     * of its own, rolled back on failure
+     */
+    private void inTransaction(ConnectionWork work) throws StorageException
+    {
+        try {
+            boolean joined = isTransactionActive();
+            Connection connection = getConnection();
+            try {
+                if (joined) {
+                    work.run(connection);
+                    return;
+                }
+
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    work.run(connection);
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } catch (RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        } catch (GenericEntityException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private void insert(Connection connection, List<PropertyEntry> entries) throws SQLException
+    {
+        PreparedStatement entryStatement = connection.prepareStatement(new StringBuilder("INSERT INTO ")
+                .append(table(ENTRY_ENTITY)).append(" (")
+                .append(column(ENTRY_ENTITY, "id")).append(", ")
+                .append(column(ENTRY_ENTITY, "entityName")).append(", ")
+                .append(column(ENTRY_ENTITY, "entityId")).append(", ")
+                .append(column(ENTRY_ENTITY, "propertyKey")).append(", ")
+                .append(column(ENTRY_ENTITY, "type")).append(") VALUES (?, ?, ?, ?, ?)").toString());
+        Map<String, PreparedStatement> valueStatements = new HashMap<String, PreparedStatement>();
+        try {
+            for (PropertyEntry entry : entries) {
+                long id = nextId(ENTRY_ENTITY);
+                entryStatement.setLong(1, id);
+                entryStatement.setString(2, entry.getEntityName());
+                entryStatement.setLong(3, entry.getEntityId());
+                entryStatement.setString(4, entry.getPropertyKey());
+                entryStatement.setInt(5, entry.getType());
+                entryStatement.addBatch();
+
+                String entity = rawValueTable(entry.getType());
+                if (entity == null || entry.getValue() == null) {
+                    continue;
+                }
+                PreparedStatement valueStatement = valueStatements.get(entity);
+                if (valueStatement == null) {
+                    valueStatement = connection.prepareStatement(new StringBuilder("INSERT INTO ").append(table(entity))
+                            .append(" (").append(column(entity, "id")).append(", ").append(column(entity, VALUE_FIELD))
+                            .append(") VALUES (?, ?)").toString());
+                    valueStatements.put(entity, valueStatement);
+                }
+                valueStatement.setLong(1, id);
+                writeValue(valueStatement, 2, entity, entry.getValue());
+                valueStatement.addBatch();
+            }
+
+            entryStatement.executeBatch();
+            for (PreparedStatement valueStatement : valueStatements.values()) {
+                valueStatement.executeBatch();
+            }
+        } finally {
+            entryStatement.close();
+            for (PreparedStatement valueStatement : valueStatements.values()) {
+                valueStatement.close();
+            }
+        }
+    }
+
+    /**
+     * @param entity entity name
+     * @return next id of the entity sequence
+     * @throws StorageException sequence failure
+     */
+    protected long nextId(String entity) throws StorageException
+    {
+        Long id = delegator.get().getNextSeqId(entity);
+        if (id == null) {
+            throw new StorageException("No sequence id for " + entity);
+        }
+        return id;
+    }
+
+    /**
+     * @return JDBC connection of the PropertySet entity helper
+     * @throws SQLException           connection failure
+     * @throws GenericEntityException connection failure
+     */
+    protected Connection getConnection() throws SQLException, GenericEntityException
+    {
+        return ConnectionFactory.getConnection(delegator.get().getEntityHelperName(ENTRY_ENTITY));
+    }
+
+    /**
+     * @return whether a transaction is in progress, the connections taken meanwhile are enlisted in it
+     * @throws GenericEntityException transaction manager failure
+     */
+    protected boolean isTransactionActive() throws GenericEntityException
+    {
+        return TransactionUtil.getStatus() != Status.STATUS_NO_TRANSACTION;
+    }
+
+    /**
+     * @param entity entity name
+     * @return table of the entity
+     */
+    protected String table(String entity)
+    {
+        GenericDelegator genericDelegator = delegator.get();
+        return genericDelegator.getModelEntity(entity).getTableName(genericDelegator.getEntityHelperName(entity));
+    }
+
+    /**
+     * @param entity entity name
+     * @param field  entity field
+     * @return column of the entity field
+     */
+    protected String column(String entity, String field)
+    {
+        return delegator.get().getModelEntity(entity).getField(field).getColName();
+    }
+
+    private static String placeholders(int count)
+    {
+        StringBuilder placeholders = new StringBuilder(count * 2 + 1).append('(');
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        return placeholders.append(')').toString();
+    }
+
+    static String escapeLike(String value)
+    {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private interface ConnectionWork
+    {
+        void run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Entry row, without the value
+     */
+    private static final class StoredEntry
+    {
+        final long id;
+        final long entityId;
+        final String propertyKey;
+        final int type;
+
+        StoredEntry(long id, long entityId, String propertyKey, int type)
+        {
+            this.id = id;
+            this.entityId = entityId;
+            this.propertyKey = propertyKey;
+            this.type = type;
+        }
+    }
+
+    private class KeyPages implements CloseableIterator<String>
+    {
+        private final String entityName;
+        private final Long entityId;
+        private final String keyPrefix;
+        private final int stripLength;
+        private final int pageSize;
+
+        private List<String> page = Collections.emptyList();
+        private int index;
+        private boolean exhausted;
+
+        KeyPages(String entityName, Long entityId, String keyPrefix, int stripLength, int pageSize)
+        {
+            this.entityName = entityName;
+            this.entityId = entityId;
+            this.keyPrefix = keyPrefix;
+            this.stripLength = stripLength;
+            this.pageSize = pageSize;
+        }
+
+        public boolean hasNext()
+        {
+            if (index < page.size()) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+
+            String after = page.isEmpty() ? null : page.get(page.size() - 1);
+            page = loadKeys(entityName, entityId, keyPrefix, after, pageSize);
+            index = 0;
+            exhausted = page.size() < pageSize;
+            return !page.isEmpty();
+        }
+
+        public String next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // the prefix is cut lazily, one key at a time
+            return page.get(index++).substring(stripLength);
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close()
+        {
+            page = Collections.emptyList();
+            exhausted = true;
+        }
+    }
+
+    private static class EntryPage
+    {
+        private final List<PropertyEntry> entries = new ArrayList<PropertyEntry>();
+        private long lastId;
+
+        private EntryPage(long afterId)
+        {
+            this.lastId = afterId;
+        }
+    }
+
+    private class EntryPages implements CloseableIterator<PropertyEntry>
+    {
+        private final String entityName;
+        private final Long entityId;
+        private final String keyPrefix;
+        private final int pageSize;
+
+        private List<PropertyEntry> page = Collections.emptyList();
+        private long lastId = Long.MIN_VALUE;
+        private int index;
+        private boolean exhausted;
+
+        EntryPages(String entityName, Long entityId, String keyPrefix, int pageSize)
+        {
+            this.entityName = entityName;
+            this.entityId = entityId;
+            this.keyPrefix = keyPrefix;
+            this.pageSize = pageSize;
+        }
+
+        public boolean hasNext()
+        {
+            if (index < page.size()) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+
+            EntryPage loaded = loadEntries(entityName, entityId, keyPrefix, lastId, pageSize);
+            page = loaded.entries;
+            lastId = loaded.lastId;
+            index = 0;
+            exhausted = page.size() < pageSize;
+            return !page.isEmpty();
+        }
+
+        public PropertyEntry next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // the page is let go entry by entry
+            PropertyEntry entry = page.get(index);
+            page.set(index++, null);
+            return entry;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close()
+        {
+            page = Collections.emptyList();
+            exhausted = true;
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private List<GenericValue> find(String entity, List<EntityExpr> expressions) throws GenericEntityException
+    {
+        List<GenericValue> found = delegator.get().findByCondition(entity,
+                new EntityConditionList(expressions, EntityOperator.AND), null, null);
+        return found == null ? new ArrayList<GenericValue>() : found;
+    }
+
+    /**
+     * @param type PropertySet type
+     * @return value table of the OfBiz PropertySet implementation or <code>null</code>
+     */
+    static String valueTable(Integer type)
+    {
+        if (type == null) {
+            return null;
+        }
+
+        switch (type) {
+            case PropertySet.BOOLEAN:
+            case PropertySet.INT:
+            case PropertySet.LONG:
+                return "OSPropertyNumber";
+            case PropertySet.DOUBLE:
+                return "OSPropertyDecimal";
+            case PropertySet.STRING:
+                return "OSPropertyString";
+            case PropertySet.TEXT:
+                return "OSPropertyText";
+            case PropertySet.DATE:
+                return "OSPropertyDate";
+            case PropertySet.DATA:
+                return "OSPropertyData";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param type PropertySet type
+     * @return value table holding the value as is or serialized, <code>null</code> for the unknown types
+     */
+    static String rawValueTable(int type)
+    {
+        switch (type) {
+            case PropertySet.OBJECT:
+            case PropertySet.PROPERTIES:
+                return "OSPropertyData";
+            case PropertySet.XML:
+                return "OSPropertyText";
+            default:
+                return valueTable(type);
+        }
+    }
+
+    private static Object readValue(ResultSet rows, int column, String entity) throws SQLException
+    {
+        Object value;
+        if ("OSPropertyNumber".equals(entity)) {
+            value = rows.getLong(column);
+        } else if ("OSPropertyDecimal".equals(entity)) {
+            value = rows.getDouble(column);
+        } else if ("OSPropertyDate".equals(entity)) {
+            Timestamp timestamp = rows.getTimestamp(column);
+            value = timestamp == null ? null : new Date(timestamp.getTime());
+        } else if ("OSPropertyData".equals(entity)) {
+            value = rows.getBytes(column);
+        } else {
+            value = rows.getString(column);
+        }
+        return rows.wasNull() ? null : value;
+    }
+
+    private static void writeValue(PreparedStatement statement, int parameter, String entity, Object value)
+            throws SQLException
+    {
+        if ("OSPropertyNumber".equals(entity)) {
+            statement.setLong(parameter, ((Number) value).longValue());
+        } else if ("OSPropertyDecimal".equals(entity)) {
+            statement.setDouble(parameter, ((Number) value).doubleValue());
+        } else if ("OSPropertyDate".equals(entity)) {
+            statement.setTimestamp(parameter, new Timestamp(((Date) value).getTime()));
+        } else if ("OSPropertyData".equals(entity)) {
+            statement.setBytes(parameter, (byte[]) value);
+        } else if ("OSPropertyText".equals(entity)) {
+            statement.setCharacterStream(parameter, new StringReader((String) value), ((String) value).length());
+        } else {
+            statement.setString(parameter, (String) value);
+        }
+    }
+
+    private static Object decode(int type, GenericValue value)
+    {
+        switch (type) {
+            case PropertySet.BOOLEAN:
+                Long flag = value.getLong(VALUE_FIELD);
+                return flag != null && flag == 1L;
+            case PropertySet.INT:
+                return value.getInteger(VALUE_FIELD);
+            case PropertySet.LONG:
+                return value.getLong(VALUE_FIELD);
+            case PropertySet.DOUBLE:
+                return value.getDouble(VALUE_FIELD);
+            case PropertySet.STRING:
+                return value.getString(VALUE_FIELD);
+            case PropertySet.TEXT:
+                return new StoredText(value.getString(VALUE_FIELD));
+            case PropertySet.DATE:
+                Timestamp timestamp = value.getTimestamp(VALUE_FIELD);
+                return timestamp == null ? null : new Date(timestamp.getTime());
+            case PropertySet.DATA:
+                return value.getBytes(VALUE_FIELD);
+            default:
+                return UNRESOLVED;
+        }
+    }
+}
@@ -17,10 +17,14 @@
 
 package com.atlassian.plugins.studio.storage.toolkit.impl;
 
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
 import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
 import com.atlassian.plugins.studio.storage.toolkit.StorageException;
 import com.opensymphony.module.propertyset.PropertySet;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Scope Bridge
  * <p/>
@@ -40,11 +44,97 @@ public interface ScopeOperations
      */
     PropertySet loadDelegate(InstanceId descriptor) throws StorageException;
 
-    void remove(PropertySet underlyingStorage) throws StorageException;
+    /**
+     * Drops the delegate cached for the instance, if any
+     *
+     * @param descriptor scope descriptor
+     */
+    void invalidate(InstanceId descriptor);
+
+    /**
+     * Drops all the delegates cached
+     */
+    void invalidateAll();
+
+    /**
+     * Reads many properties of many instances at once
+     *
+     * @param descriptors scope descriptors
+     * @param keys        keys to read, without the instance key prefix
+     * @return values by key as stored by PropertySet, the texts as {@link StoredText}, see {@link #decodeText};
+     *         missing keys are absent; there is a map for every descriptor
+     * @throws StorageException storage failure
+     */
+    Map<InstanceId, Map<String, Object>> getValues(Collection<InstanceId> descriptors, Collection<String> keys)
+            throws StorageException;
+
+    /**
+     * Writes many small values of the instance at once
+     *
+     * @param descriptor scope descriptor
+     * @param values     Boolean, Long, Date or String values by key, without the instance key prefix
+     * @throws StorageException storage failure, or a key stored with another type
+     */
+    void setValues(InstanceId descriptor, Map<String, Object> values) throws StorageException;
+
+    /**
+     * Streams the instance keys page by page
+     *
+     * @param descriptor scope descriptor
+     * @param keyPrefix  key prefix (without the instance key prefix), <code>null</code> for all the keys
+     * @param pageSize   keys per query
+     * @return keys without the instance key prefix, in the key order
+     * @throws StorageException storage failure
+     */
+    CloseableIterator<String> keys(InstanceId descriptor, String keyPrefix, int pageSize) throws StorageException;
+
+    /**
+     * Runs the work in a single transaction, joins the transaction already in progress
+     *
+     * @param work work to run
+     * @throws StorageException work or transaction failure, the transaction is rolled back
+     */
+    void inTransaction(Runnable work) throws StorageException;
 
     void removeByFilter(Long entityId, String entityName, String keyPrefix) throws StorageException;
 
+    /**
+     * Removes all the data of the entities
+     *
+     * @param entityName entity name
+     * @param entityIds  entity ids
+     * @throws StorageException storage failure
+     */
+    void removeEntities(String entityName, Collection<Long> entityIds) throws StorageException;
+
     String serialize(Object instance) throws StorageException;
 
     Object deserialize(String input) throws StorageException;
+
+    /**
+     * Compresses the text about to be stored
+     *
+     * @param text escaped text or serialized value
+     * @return tagged compressed text, <code>null</code> to store the text as it is
+     * @throws StorageException compression failure
+     */
+    String compress(String text) throws StorageException;
+
+    /**
+     * Escapes the text value about to be stored, so it could not be taken for a compressed one
+     *
+     * @param text text value, <code>null</code> allowed
+     * @return text to store
+     */
+    String escape(String text);
+
+    /**
+     * Reads the stored text value back
+     *
+     * @param descriptor scope descriptor
+     * @param stored     stored text, <code>null</code> allowed
+     * @return text as written
+     * @throws StorageException corrupted stored text
+     */
+    String decodeText(InstanceId descriptor, String stored) throws StorageException;
 }
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+
+/**
+ * Decorator keeping state in the storage next to the instance data, e.g. a version marker, which it updates when
+ * the instance data is removed.
+ * <p/>
+ * The scope evicts it instead of invalidating it when the data is changed elsewhere, so the storage is left as it
+ * is, see {@link AbstractDefaultScopeImpl#evict}.
+ */
+public interface StoredStateDecorator extends FacadeDecorator
+{
+    /**
+     * Drops the local copy of the instance data, the instance data was changed by another cluster node
+     *
+     * @param instanceId storage instance id
+     */
+    void evict(InstanceId instanceId);
+
+    /**
+     * Drops the local copies of all the scope instances data
+     */
+    void evictAll();
+}
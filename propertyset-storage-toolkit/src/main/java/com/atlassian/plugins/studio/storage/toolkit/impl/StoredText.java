@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+/**
+ * Text value as stored, returned by {@link ScopeOperations#getValues} so the texts could be told from the strings;
+ * the texts are read back by {@link ScopeOperations#decodeText}, see {@link StoredValues#decodeTexts}.
+ */
+public final class StoredText
+{
+    private final String stored;
+
+    public StoredText(String stored)
+    {
+        this.stored = stored;
+    }
+
+    /**
+     * @return stored text, <code>null</code> allowed
+     */
+    public String getStored()
+    {
+        return stored;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StoredText)) {
+            return false;
+        }
+        StoredText that = (StoredText) o;
+        return stored == null ? that.stored == null : stored.equals(that.stored);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return stored == null ? 0 : stored.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StoredText{" + stored + '}';
+    }
+}
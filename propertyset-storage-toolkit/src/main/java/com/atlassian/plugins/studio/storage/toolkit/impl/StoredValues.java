@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.google.common.collect.ImmutableSet;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Conversions of the values read from PropertySet to the types exposed by the facades.
+ */
+public final class StoredValues
+{
+    /**
+     * Types stored by PropertySet as is, the other types are stored as strings
+     */
+    private static final Set<Class<?>> STORED_TYPES = ImmutableSet.<Class<?>>of(
+            Boolean.class, byte[].class, Date.class, Long.class, String.class);
+
+    private StoredValues()
+    {
+    }
+
+    public static Properties toProperties(Object deserialized)
+    {
+        @SuppressWarnings({"unchecked"})
+        Map<Object, Object> map = (Map) deserialized;
+
+        Properties properties = new Properties();
+        for (Map.Entry<Object, Object> entry : map.entrySet()) {
+            properties.put(entry.getKey(), entry.getValue());
+        }
+
+        return properties;
+    }
+
+    /**
+     * @param bridge     scope operations
+     * @param instanceId storage instance id
+     * @param values     values read by {@link ScopeOperations#getValues}
+     * @return values with the {@link StoredText stored texts} read back, the values themselves if there are none
+     * @throws StorageException corrupted stored text
+     */
+    public static Map<String, Object> decodeTexts(ScopeOperations bridge, InstanceId instanceId,
+                                                  Map<String, Object> values) throws StorageException
+    {
+        Map<String, Object> decoded = null;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() instanceof StoredText) {
+                if (decoded == null) {
+                    decoded = new HashMap<String, Object>(values);
+                }
+                decoded.put(entry.getKey(), bridge.decodeText(instanceId, ((StoredText) entry.getValue()).getStored()));
+            }
+        }
+        return decoded == null ? values : decoded;
+    }
+
+    static <T> T convert(ScopeOperations bridge, String key, Object value, Class<T> type) throws StorageException
+    {
+        if (value == null) {
+            return null;
+        }
+
+        Object converted = value;
+        if (type == Long.class && value instanceof Integer) {
+            converted = ((Integer) value).longValue();
+        } else if (type == BigDecimal.class && value instanceof String) {
+            converted = new BigDecimal((String) value);
+        } else if (type == Properties.class && value instanceof String) {
+            converted = toProperties(bridge.deserialize((String) value));
+        } else if (!STORED_TYPES.contains(type) && value instanceof String) {
+            converted = bridge.deserialize((String) value);
+        }
+
+        if (!type.isInstance(converted)) {
+            throw new StorageException("Value of " + key + " is not " + type.getName());
+        }
+        return type.cast(converted);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.KeyCodec;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed key operations expressed through the untyped facade getters and setters, for the facade decorators that
+ * handle the typed keys the way they handle the untyped calls.
+ */
+public final class TypedKeys
+{
+    private TypedKeys()
+    {
+    }
+
+    public static <T> T get(StorageFacade facade, StorageKey<T> key) throws StorageException
+    {
+        String name = key.getName();
+        Object stored;
+        switch (key.getCodec().getStorage()) {
+            case BOOLEAN:
+                stored = facade.getBoolean(name);
+                break;
+            case LONG:
+                stored = facade.getLong(name);
+                break;
+            case STRING:
+                stored = facade.getString(name);
+                break;
+            case TEXT:
+                stored = facade.getText(name);
+                break;
+            case DATE:
+                stored = facade.getDate(name);
+                break;
+            default:
+                stored = facade.getData(name);
+        }
+        return decode(key, stored);
+    }
+
+    public static <T> void set(StorageFacade facade, StorageKey<T> key, T value) throws StorageException
+    {
+        String name = key.getName();
+        if (value == null) {
+            facade.remove(name);
+            return;
+        }
+
+        Object stored = encode(key, value);
+        switch (key.getCodec().getStorage()) {
+            case BOOLEAN:
+                facade.setBoolean(name, (Boolean) stored);
+                break;
+            case LONG:
+                facade.setLong(name, (Long) stored);
+                break;
+            case STRING:
+                facade.setString(name, (String) stored);
+                break;
+            case TEXT:
+                facade.setText(name, (String) stored);
+                break;
+            case DATE:
+                facade.setDate(name, (Date) stored);
+                break;
+            default:
+                facade.setData(name, (byte[]) stored);
+        }
+    }
+
+    public static Map<StorageKey<?>, Object> getAll(StorageFacade facade, StorageKey<?>... keys)
+            throws StorageException
+    {
+        List<String> names = new ArrayList<String>(keys.length);
+        for (StorageKey<?> key : keys) {
+            names.add(key.getName());
+        }
+
+        Map<String, Object> stored = facade.getAll(names);
+        Map<StorageKey<?>, Object> values = new LinkedHashMap<StorageKey<?>, Object>();
+        for (StorageKey<?> key : keys) {
+            Object value = decode(key, stored.get(key.getName()));
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param key    key
+     * @param stored value as stored, <code>null</code> allowed
+     * @return decoded value
+     * @throws StorageException the value stored is not of the key storage type
+     */
+    public static <T> T decode(StorageKey<T> key, Object stored) throws StorageException
+    {
+        if (stored == null) {
+            return null;
+        }
+
+        KeyCodec<T> codec = key.getCodec();
+        if (!codec.getStorage().getStoredType().isInstance(stored)) {
+            throw new StorageException("Key " + key.getName() + " holds " + stored.getClass().getName()
+                    + ", expected " + codec.getStorage().getStoredType().getName());
+        }
+        return codec.decode(stored);
+    }
+
+    /**
+     * @param key   key
+     * @param value value, never <code>null</code>
+     * @return value to store
+     * @throws StorageException codec encoded the value to a type other than its storage type
+     */
+    public static <T> Object encode(StorageKey<T> key, T value) throws StorageException
+    {
+        KeyCodec<T> codec = key.getCodec();
+        Object stored = codec.encode(value);
+        if (!codec.getStorage().getStoredType().isInstance(stored)) {
+            throw new StorageException("Codec " + codec + " of key " + key.getName() + " encoded "
+                    + (stored == null ? "null" : stored.getClass().getName()));
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+
+/**
+ * Decorator holding the writes not stored yet rather than a copy of the stored data.
+ * <p/>
+ * The scope does not notify it when the cached data is evicted, see {@link AbstractDefaultScopeImpl#evict}.
+ */
+public interface WriteBufferingDecorator extends FacadeDecorator
+{
+    /**
+     * Stores the pending writes of the instance, called before the instance is read past the decorator
+     *
+     * @param instanceId storage instance id
+     */
+    void flush(InstanceId instanceId);
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Shared XStream serializer.
+ * <p/>
+ * XStream construction is expensive and every instance keeps its own reflection and converter caches, so the
+ * instances are created once and reused. A configured XStream is thread-safe, in that case the single shared
+ * instance serves all the calls. Configurations registering converters that are not thread-safe should use
+ * the pooled mode, where at most <code>poolSize</code> instances are created and each one is used by a single
+ * thread at a time.
+ * <p/>
+ * No aliases are registered by default, so the output stays byte-compatible with the XML already stored.
+ * Registered class aliases change the XML written, the XML using full class names is still read.
+ */
+public class XStreamSerializer
+{
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    private final Supplier<XStream> factory;
+    private final Map<String, Class<?>> aliases = Maps.newLinkedHashMap();
+
+    private final boolean threadSafe;
+    private volatile XStream shared;
+
+    private final Semaphore permits;
+    private final BlockingQueue<XStream> pool;
+
+    /**
+     * Creates serializer sharing single XStream instance
+     *
+     * @param factory creates configured XStream instances
+     */
+    public XStreamSerializer(Supplier<XStream> factory)
+    {
+        this(factory, true, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param factory    creates configured XStream instances
+     * @param threadSafe whether the instances created could be shared between threads
+     * @param poolSize   maximum number of instances in use, ignored for the thread-safe configurations
+     */
+    public XStreamSerializer(Supplier<XStream> factory, boolean threadSafe, int poolSize)
+    {
+        Assertions.notNull("XStream factory is null", factory);
+        Assertions.stateTrue("poolSize should be positive", poolSize > 0);
+
+        this.factory = factory;
+        this.threadSafe = threadSafe;
+        this.permits = new Semaphore(poolSize);
+        this.pool = new ArrayBlockingQueue<XStream>(poolSize);
+    }
+
+    /**
+     * Registers class alias for the instances created afterwards, should be called before the first use
+     *
+     * @param name  alias
+     * @param clazz aliased class
+     * @return this
+     */
+    public synchronized XStreamSerializer alias(String name, Class<?> clazz)
+    {
+        aliases.put(name, clazz);
+        return this;
+    }
+
+    public String toXML(Object instance) throws StorageException
+    {
+        XStream xstream = acquire();
+        try {
+            return xstream.toXML(instance);
+        } catch (XStreamException e) {
+            throw new StorageException(e);
+        } finally {
+            release(xstream);
+        }
+    }
+
+    public Object fromXML(String input) throws StorageException
+    {
+        XStream xstream = acquire();
+        try {
+            return xstream.fromXML(input);
+        } catch (XStreamException e) {
+            throw new StorageException(e);
+        } finally {
+            release(xstream);
+        }
+    }
+
+    /**
+     * Creates the instances and primes their reflection and converter caches with the commonly stored types,
+     * meant to be called on plugin start
+     */
+    public void warmUp()
+    {
+        Map<String, Object> sample = Maps.newHashMap();
+        sample.put("string", "value");
+        sample.put("long", 1L);
+        sample.put("integer", 1);
+        sample.put("boolean", Boolean.TRUE);
+        sample.put("double", 1.0d);
+        sample.put("decimal", BigDecimal.ONE);
+        sample.put("date", new Date(0));
+        sample.put("list", Lists.newArrayList("a", "b"));
+        sample.put("map", Maps.newHashMap(ImmutableMap.of("a", "b")));
+
+        fromXML(toXML(sample));
+    }
+
+    private XStream acquire()
+    {
+        if (threadSafe) {
+            XStream xstream = shared;
+            if (xstream == null) {
+                synchronized (this) {
+                    xstream = shared;
+                    if (xstream == null) {
+                        shared = xstream = create();
+                    }
+                }
+            }
+            return xstream;
+        }
+
+        permits.acquireUninterruptibly();
+        XStream xstream = null;
+        try {
+            xstream = pool.poll();
+            if (xstream == null) {
+                xstream = create();
+            }
+            return xstream;
+        } finally {
+            if (xstream == null) {
+                permits.release();
+            }
+        }
+    }
+
+    private void release(XStream xstream)
+    {
+        if (!threadSafe) {
+            pool.offer(xstream);
+            permits.release();
+        }
+    }
+
+    private synchronized XStream create()
+    {
+        XStream xstream = factory.get();
+        for (Map.Entry<String, Class<?>> alias : aliases.entrySet()) {
+            xstream.alias(alias.getKey(), alias.getValue());
+        }
+        return xstream;
+    }
+}
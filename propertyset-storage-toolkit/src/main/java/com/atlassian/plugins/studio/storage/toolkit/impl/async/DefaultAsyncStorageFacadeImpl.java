@@ -0,0 +1,386 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.async;
+
+import com.atlassian.plugins.studio.storage.toolkit.AsyncStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFuture;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the operations on the facade being loaded once the load completes; the load failure fails every operation
+ * with the same exception.
+ */
+public class DefaultAsyncStorageFacadeImpl implements AsyncStorageFacade
+{
+    private final StorageExecutor executor;
+    private final StorageFuture<StorageFacade> facade;
+
+    public DefaultAsyncStorageFacadeImpl(StorageExecutor executor, StorageFuture<StorageFacade> facade)
+    {
+        this.executor = executor;
+        this.facade = facade;
+    }
+
+    public StorageFuture<StorageFacade> facade()
+    {
+        return facade;
+    }
+
+    public StorageFuture<Void> setBoolean(final String key, final boolean value)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setBoolean(key, value);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<Boolean> getBoolean(final String key)
+    {
+        return submit(new Operation<Boolean>()
+        {
+            public Boolean call(StorageFacade facade) throws StorageException
+            {
+                return facade.getBoolean(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setData(final String key, final byte[] bytes)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setData(key, bytes);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<byte[]> getData(final String key)
+    {
+        return submit(new Operation<byte[]>()
+        {
+            public byte[] call(StorageFacade facade) throws StorageException
+            {
+                return facade.getData(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setDate(final String key, final Date date)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setDate(key, date);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<Date> getDate(final String key)
+    {
+        return submit(new Operation<Date>()
+        {
+            public Date call(StorageFacade facade) throws StorageException
+            {
+                return facade.getDate(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setDouble(final String key, final BigDecimal value)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setDouble(key, value);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<BigDecimal> getDouble(final String key)
+    {
+        return submit(new Operation<BigDecimal>()
+        {
+            public BigDecimal call(StorageFacade facade) throws StorageException
+            {
+                return facade.getDouble(key);
+            }
+        });
+    }
+
+    public StorageFuture<Collection<String>> getKeys()
+    {
+        return submit(new Operation<Collection<String>>()
+        {
+            public Collection<String> call(StorageFacade facade) throws StorageException
+            {
+                return facade.getKeys();
+            }
+        });
+    }
+
+    public StorageFuture<Collection<String>> getKeys(final String keyPrefix)
+    {
+        return submit(new Operation<Collection<String>>()
+        {
+            public Collection<String> call(StorageFacade facade) throws StorageException
+            {
+                return facade.getKeys(keyPrefix);
+            }
+        });
+    }
+
+    public StorageFuture<Integer> countKeys(final String keyPrefix)
+    {
+        return submit(new Operation<Integer>()
+        {
+            public Integer call(StorageFacade facade) throws StorageException
+            {
+                return facade.countKeys(keyPrefix);
+            }
+        });
+    }
+
+    public StorageFuture<Collection<String>> getKeyRange(final String fromKey, final String toKey)
+    {
+        return submit(new Operation<Collection<String>>()
+        {
+            public Collection<String> call(StorageFacade facade) throws StorageException
+            {
+                return facade.getKeyRange(fromKey, toKey);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setLong(final String key, final Long value)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setLong(key, value);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<Long> getLong(final String key)
+    {
+        return submit(new Operation<Long>()
+        {
+            public Long call(StorageFacade facade) throws StorageException
+            {
+                return facade.getLong(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setObject(final String key, final Object objectValue)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setObject(key, objectValue);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<Object> getObject(final String key)
+    {
+        return submit(new Operation<Object>()
+        {
+            public Object call(StorageFacade facade) throws StorageException
+            {
+                return facade.getObject(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setProperties(final String key, final Properties properties)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setProperties(key, properties);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<Properties> getProperties(final String key)
+    {
+        return submit(new Operation<Properties>()
+        {
+            public Properties call(StorageFacade facade) throws StorageException
+            {
+                return facade.getProperties(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setString(final String key, final String string)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setString(key, string);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<String> getString(final String key)
+    {
+        return submit(new Operation<String>()
+        {
+            public String call(StorageFacade facade) throws StorageException
+            {
+                return facade.getString(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setText(final String key, final String text)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setText(key, text);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<String> getText(final String key)
+    {
+        return submit(new Operation<String>()
+        {
+            public String call(StorageFacade facade) throws StorageException
+            {
+                return facade.getText(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> setAll(final Map<String, ?> values)
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.setAll(values);
+                return null;
+            }
+        });
+    }
+
+    public StorageFuture<Map<String, Object>> getAll(final Collection<String> keys)
+    {
+        return submit(new Operation<Map<String, Object>>()
+        {
+            public Map<String, Object> call(StorageFacade facade) throws StorageException
+            {
+                return facade.getAll(keys);
+            }
+        });
+    }
+
+    public <T> StorageFuture<Map<String, T>> getAll(final Collection<String> keys, final Class<T> type)
+    {
+        return submit(new Operation<Map<String, T>>()
+        {
+            public Map<String, T> call(StorageFacade facade) throws StorageException
+            {
+                return facade.getAll(keys, type);
+            }
+        });
+    }
+
+    public StorageFuture<Boolean> exists(final String key)
+    {
+        return submit(new Operation<Boolean>()
+        {
+            public Boolean call(StorageFacade facade) throws StorageException
+            {
+                return facade.exists(key);
+            }
+        });
+    }
+
+    public StorageFuture<Boolean> remove(final String key)
+    {
+        return submit(new Operation<Boolean>()
+        {
+            public Boolean call(StorageFacade facade) throws StorageException
+            {
+                return facade.remove(key);
+            }
+        });
+    }
+
+    public StorageFuture<Void> removeAll()
+    {
+        return submit(new Operation<Void>()
+        {
+            public Void call(StorageFacade facade) throws StorageException
+            {
+                facade.removeAll();
+                return null;
+            }
+        });
+    }
+
+    private <V> StorageFuture<V> submit(final Operation<V> operation)
+    {
+        return executor.submitAfter(facade, new Callable<V>()
+        {
+            public V call() throws Exception
+            {
+                return operation.call(facade.checkedGet());
+            }
+        });
+    }
+
+    private static interface Operation<V>
+    {
+        V call(StorageFacade facade) throws StorageException;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.async;
+
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.project.Project;
+import com.atlassian.plugins.studio.storage.toolkit.AsyncStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.AsyncStorageService;
+import com.atlassian.plugins.studio.storage.toolkit.Facades;
+import com.atlassian.plugins.studio.storage.toolkit.Scope;
+import com.atlassian.plugins.studio.storage.toolkit.Scopes;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFuture;
+import org.ofbiz.core.entity.GenericValue;
+import org.springframework.beans.factory.DisposableBean;
+import webwork.action.Action;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the storage operations on its own bounded {@link StorageExecutor}, shut down with the plugin
+ */
+public class DefaultAsyncStorageServiceImpl implements AsyncStorageService, DisposableBean
+{
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final StorageExecutor executor;
+
+    public DefaultAsyncStorageServiceImpl()
+    {
+        this(new StorageExecutor(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY));
+    }
+
+    DefaultAsyncStorageServiceImpl(StorageExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    public void destroy() throws Exception
+    {
+        executor.shutdown();
+    }
+
+    public AsyncStorageFacade projectStorage(Project project)
+    {
+        return storage(Scopes.projectScope(project), project);
+    }
+
+    public AsyncStorageFacade issueStorage(Issue issue)
+    {
+        return storage(Scopes.issueScope(issue), issue);
+    }
+
+    public StorageFuture<Map<Project, StorageFacade>> projectStorages(final Collection<Project> projects,
+                                                                      final Collection<String> keys)
+    {
+        return executor.submit(new Callable<Map<Project, StorageFacade>>()
+        {
+            public Map<Project, StorageFacade> call() throws Exception
+            {
+                return Facades.projectStorages(projects, keys);
+            }
+        });
+    }
+
+    public StorageFuture<Map<Issue, StorageFacade>> issueStorages(final Collection<Issue> issues,
+                                                                  final Collection<String> keys)
+    {
+        return executor.submit(new Callable<Map<Issue, StorageFacade>>()
+        {
+            public Map<Issue, StorageFacade> call() throws Exception
+            {
+                return Facades.issueStorages(issues, keys);
+            }
+        });
+    }
+
+    public AsyncStorageFacade gvStorage(GenericValue gv)
+    {
+        return storage(Scopes.gvScope(gv), gv);
+    }
+
+    public AsyncStorageFacade constantNameStorage(String name)
+    {
+        return storage(Scopes.constantName(name), name);
+    }
+
+    public AsyncStorageFacade actionStorage(Action action)
+    {
+        return storage(Scopes.actionConfiguration(action), action);
+    }
+
+    public <T extends Action> AsyncStorageFacade actionStorage(Class<T> actionClazz)
+    {
+        return storage(Scopes.actionConfiguration(actionClazz), actionClazz);
+    }
+
+    public <U> AsyncStorageFacade storage(final Scope<U> scope, final U context)
+    {
+        return new DefaultAsyncStorageFacadeImpl(executor, executor.submit(new Callable<StorageFacade>()
+        {
+            public StorageFacade call() throws Exception
+            {
+                return Facades.storage(scope, context);
+            }
+        }));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.async;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link FutureTask} running its listeners once done
+ *
+ * @param <V> result type
+ */
+public class ListenableStorageTask<V> extends FutureTask<V> implements StorageFuture<V>
+{
+    /**
+     * Guarded by itself, <code>null</code> once the listeners are run
+     */
+    private List<Runnable> listeners = new ArrayList<Runnable>(2);
+    private final Object lock = new Object();
+
+    public ListenableStorageTask(Callable<V> callable)
+    {
+        super(callable);
+    }
+
+    public void addListener(Runnable listener, Executor executor)
+    {
+        Runnable task = new ListenerTask(listener, executor);
+        synchronized (lock) {
+            if (listeners != null) {
+                listeners.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    public V checkedGet() throws StorageException
+    {
+        try {
+            return get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for the storage", e);
+        } catch (CancellationException e) {
+            throw new StorageException("Storage operation is cancelled", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    public V checkedGet(long timeout, TimeUnit unit) throws StorageException
+    {
+        try {
+            return get(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for the storage", e);
+        } catch (CancellationException e) {
+            throw new StorageException("Storage operation is cancelled", e);
+        } catch (TimeoutException e) {
+            throw new StorageException("Storage operation timed out", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Completes the task with the failure without running it
+     *
+     * @param failure failure
+     */
+    void fail(Throwable failure)
+    {
+        setException(failure);
+    }
+
+    @Override
+    protected void done()
+    {
+        List<Runnable> tasks;
+        synchronized (lock) {
+            tasks = listeners;
+            listeners = null;
+        }
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e)
+    {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new StorageException(cause);
+    }
+
+    private static class ListenerTask implements Runnable
+    {
+        private final Runnable listener;
+        private final Executor executor;
+
+        private ListenerTask(Runnable listener, Executor executor)
+        {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        public void run()
+        {
+            try {
+                executor.execute(listener);
+            } catch (RuntimeException ignored) {
+                // a failing listener must not break the others nor the task completion
+            }
+        }
+    }
+}
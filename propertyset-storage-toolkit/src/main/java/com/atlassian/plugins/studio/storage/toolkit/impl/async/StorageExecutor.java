@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.async;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFuture;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pool of the asynchronous storage operations.
+ * <p/>
+ * Once all the threads are busy and the queue is full the submitting thread runs the operation itself, which
+ * slows the submitters down to the pace of the storage instead of queueing without bound. Operations submitted
+ * after {@link #shutdown()} fail with {@link StorageException}.
+ */
+public class StorageExecutor
+{
+    private static final Executor DIRECT = new Executor()
+    {
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads       number of threads
+     * @param queueCapacity number of operations waiting for a thread before the submitters run them themselves
+     */
+    public StorageExecutor(int threads, int queueCapacity)
+    {
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new StorageThreadFactory("storage-async-" + POOLS.incrementAndGet() + "-"),
+                new CallerRunsUnlessShutdown());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public <V> StorageFuture<V> submit(Callable<V> operation)
+    {
+        ListenableStorageTask<V> task = new ListenableStorageTask<V>(operation);
+        execute(task);
+        return task;
+    }
+
+    /**
+     * Submits the operation once the other future is done, no thread waits for it in the meantime
+     *
+     * @param dependency future to wait for
+     * @param operation  operation
+     * @param <V>        result type
+     * @return operation result
+     */
+    public <V> StorageFuture<V> submitAfter(StorageFuture<?> dependency, Callable<V> operation)
+    {
+        final ListenableStorageTask<V> task = new ListenableStorageTask<V>(operation);
+        dependency.addListener(new Runnable()
+        {
+            public void run()
+            {
+                execute(task);
+            }
+        }, DIRECT);
+        return task;
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    public boolean isShutdown()
+    {
+        return executor.isShutdown();
+    }
+
+    /**
+     * @return number of operations waiting for a thread
+     */
+    public int getQueueSize()
+    {
+        return executor.getQueue().size();
+    }
+
+    private void execute(ListenableStorageTask<?> task)
+    {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.fail(new StorageException("Storage executor is shut down", e));
+        }
+    }
+
+    private static class CallerRunsUnlessShutdown implements RejectedExecutionHandler
+    {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+        {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+            r.run();
+        }
+    }
+
+    private static class StorageThreadFactory implements ThreadFactory
+    {
+        private final String namePrefix;
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private StorageThreadFactory(String namePrefix)
+        {
+            this.namePrefix = namePrefix;
+        }
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, namePrefix + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
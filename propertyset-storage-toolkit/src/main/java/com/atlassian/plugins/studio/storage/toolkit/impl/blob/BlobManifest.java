@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.blob;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+
+/**
+ * Manifest of a chunked blob, stored as a text under the hidden <code>key#chunk#manifest</code> key:
+ * <code>generation:length:chunkSize</code>.
+ * <p/>
+ * The manifest is looked up by its key, never by the stored text, so no text or string value, written through the
+ * facades or stored before the blobs, could be taken for a manifest.
+ * <p/>
+ * Every write of the blob stores its chunks under a new generation, so the readers of the previous manifest never
+ * see the chunks of the next one.
+ */
+final class BlobManifest
+{
+    private static final String MANIFEST = "manifest";
+
+    final String generation;
+    final long length;
+    final int chunkSize;
+
+    BlobManifest(String generation, long length, int chunkSize)
+    {
+        this.generation = generation;
+        this.length = length;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param storedKey stored blob key
+     * @return stored key of the manifest
+     */
+    static String manifestKey(String storedKey)
+    {
+        return storedKey + ChunkedBlobs.CHUNK_MARK + MANIFEST;
+    }
+
+    /**
+     * @param stored stored manifest
+     * @return manifest
+     * @throws StorageException corrupted manifest
+     */
+    static BlobManifest parse(String stored) throws StorageException
+    {
+        if (stored == null) {
+            throw new StorageException("Corrupted blob manifest: " + stored);
+        }
+
+        String[] parts = stored.split(":");
+        try {
+            if (parts.length == 3) {
+                BlobManifest manifest = new BlobManifest(parts[0], Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+                if (manifest.length >= 0 && manifest.chunkSize > 0) {
+                    return manifest;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new StorageException("Corrupted blob manifest: " + stored, e);
+        }
+        throw new StorageException("Corrupted blob manifest: " + stored);
+    }
+
+    int chunkCount()
+    {
+        return (int) ((length + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * @param storedKey stored blob key
+     * @param index     chunk index
+     * @return stored key of the chunk
+     */
+    String chunkKey(String storedKey, int index)
+    {
+        return chunkKey(storedKey, generation, index);
+    }
+
+    static String chunkKey(String storedKey, String generation, int index)
+    {
+        return storedKey + ChunkedBlobs.CHUNK_MARK + generation + '-' + index;
+    }
+
+    String format()
+    {
+        return generation + ":" + length + ':' + chunkSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return format();
+    }
+}
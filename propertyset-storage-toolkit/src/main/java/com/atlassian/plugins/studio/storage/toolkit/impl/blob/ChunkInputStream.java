@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.blob;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.opensymphony.module.propertyset.PropertyException;
+import com.opensymphony.module.propertyset.PropertySet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the range of the blob loading one chunk at a time, the chunks skipped are never loaded.
+ */
+class ChunkInputStream extends InputStream
+{
+    private final PropertySet delegate;
+    private final String storedKey;
+    private final BlobManifest manifest;
+    private final long end;
+
+    private long position;
+    private byte[] chunk; // chunk holding the position, null until loaded
+    private int chunkIndex = -1;
+    private boolean closed;
+
+    /**
+     * @param offset first byte read
+     * @param length bytes to read at most
+     */
+    ChunkInputStream(PropertySet delegate, String storedKey, BlobManifest manifest, long offset, long length)
+    {
+        this.delegate = delegate;
+        this.storedKey = storedKey;
+        this.manifest = manifest;
+        this.position = Math.min(offset, manifest.length);
+        this.end = position + Math.min(length, manifest.length - position);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        ensureOpen();
+        if (position >= end) {
+            return -1;
+        }
+
+        int at = seek();
+        position++;
+        return chunk[at] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int count) throws IOException
+    {
+        ensureOpen();
+        if (offset < 0 || count < 0 || offset + count > bytes.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (count == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+
+        int read = 0;
+        while (read < count && position < end) {
+            int at = seek();
+            int copied = (int) Math.min(Math.min(count - read, chunk.length - at), end - position);
+            System.arraycopy(chunk, at, bytes, offset + read, copied);
+            read += copied;
+            position += copied;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        ensureOpen();
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        ensureOpen();
+        if (chunk == null || position >= end || position / manifest.chunkSize != chunkIndex) {
+            return 0;
+        }
+        return (int) Math.min(chunk.length - position % manifest.chunkSize, end - position);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        chunk = null;
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (closed) {
+            throw new IOException("Blob stream is closed: " + storedKey);
+        }
+    }
+
+    /**
+     * Loads the chunk of the current position
+     *
+     * @return position in the chunk
+     */
+    private int seek()
+    {
+        int index = (int) (position / manifest.chunkSize);
+        if (index != chunkIndex) {
+            chunk = null;
+            byte[] loaded;
+            try {
+                loaded = delegate.getData(manifest.chunkKey(storedKey, index));
+            } catch (PropertyException e) {
+                throw new StorageException(e);
+            }
+
+            long expected = Math.min(manifest.chunkSize, manifest.length - (long) index * manifest.chunkSize);
+            if (loaded == null || loaded.length != expected) {
+                throw new StorageException("Blob " + storedKey + " was changed while being read, chunk " + index
+                        + " of " + manifest + " is missing");
+            }
+            chunk = loaded;
+            chunkIndex = index;
+        }
+        return (int) (position % manifest.chunkSize);
+    }
+}
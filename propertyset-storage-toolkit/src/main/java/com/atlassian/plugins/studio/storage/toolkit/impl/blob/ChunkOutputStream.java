@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.blob;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.opensymphony.module.propertyset.PropertyException;
+import com.opensymphony.module.propertyset.PropertySet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the blob chunk by chunk, only one chunk is kept in memory. The manifest is switched to the chunks written
+ * on close, the chunks of the previous value are removed in the same transaction. Nothing is visible to the readers
+ * until then; the stream failed or never closed leaves the chunks written unreachable
+ * until the blob is removed.
+ */
+class ChunkOutputStream extends OutputStream
+{
+    private final PropertySet delegate;
+    private final ScopeOperations bridge;
+    private final String storedKey;
+    private final String generation;
+    private final int chunkSize;
+
+    private byte[] chunk;
+    private int position;
+    private int chunks;
+    private long length;
+    private boolean closed;
+    private boolean failed;
+
+    ChunkOutputStream(PropertySet delegate, ScopeOperations bridge, String storedKey, String generation, int chunkSize)
+    {
+        this.delegate = delegate;
+        this.bridge = bridge;
+        this.storedKey = storedKey;
+        this.generation = generation;
+        this.chunkSize = chunkSize;
+        this.chunk = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        ensureOpen();
+        chunk[position++] = (byte) b;
+        length++;
+        if (position == chunkSize) {
+            storeChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException
+    {
+        ensureOpen();
+        if (offset < 0 || count < 0 || offset + count > bytes.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (count > 0) {
+            int copied = Math.min(count, chunkSize - position);
+            System.arraycopy(bytes, offset, chunk, position, copied);
+            position += copied;
+            length += copied;
+            offset += copied;
+            count -= copied;
+            if (position == chunkSize) {
+                storeChunk();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (failed) {
+            throw new IOException("Blob was not stored, chunk write failed: " + storedKey);
+        }
+        if (position > 0) {
+            storeChunk();
+        }
+        chunk = null;
+
+        final BlobManifest manifest = new BlobManifest(generation, length, chunkSize);
+        bridge.inTransaction(new Runnable()
+        {
+            public void run()
+            {
+                try {
+                    BlobManifest previous = ChunkedBlobs.readManifest(delegate, storedKey);
+                    if (delegate.exists(storedKey)) {
+                        delegate.remove(storedKey);
+                    }
+                    delegate.setText(storedKey, null);
+                    delegate.setText(BlobManifest.manifestKey(storedKey), manifest.format());
+                    if (previous != null) {
+                        ChunkedBlobs.removeChunks(delegate, storedKey, previous);
+                    }
+                } catch (PropertyException e) {
+                    throw new StorageException(e);
+                }
+            }
+        });
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (closed) {
+            throw new IOException("Blob stream is closed: " + storedKey);
+        }
+        if (failed) {
+            throw new IOException("Blob stream failed: " + storedKey);
+        }
+    }
+
+    private void storeChunk()
+    {
+        byte[] data = new byte[position];
+        System.arraycopy(chunk, 0, data, 0, position);
+        try {
+            delegate.setData(BlobManifest.chunkKey(storedKey, generation, chunks), data);
+        } catch (PropertyException e) {
+            failed = true;
+            throw new StorageException(e);
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        chunks++;
+        position = 0;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.blob;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.opensymphony.module.propertyset.PropertyException;
+import com.opensymphony.module.propertyset.PropertySet;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Chunked storage of the large binary values.
+ * <p/>
+ * The blob is split into {@link #CHUNK_SIZE} byte chunks stored as data values under the hidden
+ * <code>key#chunk#generation-index</code> keys, the manifest under the hidden <code>key#chunk#manifest</code> key,
+ * see {@link BlobManifest}. The blob key itself holds a <code>null</code> text, so it is listed and read as
+ * <code>null</code> by the text and bulk reads; the blob is read as a stream only. The chunk keys are left out of
+ * the key listings. Removing the blob key removes its chunks.
+ */
+public final class ChunkedBlobs
+{
+    /**
+     * Chunk size, fits the smallest BLOB column types
+     */
+    public static final int CHUNK_SIZE = 32 * 1024;
+
+    static final String CHUNK_MARK = "#chunk#";
+
+    private static final Random GENERATIONS = new SecureRandom();
+
+    private ChunkedBlobs()
+    {
+    }
+
+    /**
+     * @param delegate  instance PropertySet
+     * @param bridge    scope operations, the manifest is switched in a transaction
+     * @param storedKey stored blob key
+     * @return stream storing the blob on close
+     */
+    public static OutputStream openOutputStream(PropertySet delegate, ScopeOperations bridge, String storedKey)
+    {
+        Assertions.stateTrue("Blob key should not contain " + CHUNK_MARK, !isChunkKey(storedKey));
+        return new ChunkOutputStream(delegate, bridge, storedKey, newGeneration(), CHUNK_SIZE);
+    }
+
+    /**
+     * @param delegate  instance PropertySet
+     * @param storedKey stored blob key, a blob or a data value
+     * @param offset    first byte read
+     * @param length    bytes to read at most
+     * @return stream reading the range, <code>null</code> if the key does not exist
+     * @throws StorageException value is neither blob nor data
+     */
+    public static InputStream openInputStream(PropertySet delegate, String storedKey, long offset, long length)
+            throws StorageException
+    {
+        Assertions.stateTrue("offset should not be negative", offset >= 0);
+        Assertions.stateTrue("length should not be negative", length >= 0);
+
+        try {
+            if (!delegate.exists(storedKey)) {
+                return null;
+            }
+
+            int type = delegate.getType(storedKey);
+            if (type == PropertySet.DATA) {
+                byte[] data = delegate.getData(storedKey);
+                int from = (int) Math.min(offset, data.length);
+                return new ByteArrayInputStream(data, from, (int) Math.min(length, data.length - from));
+            }
+
+            BlobManifest manifest = type == PropertySet.TEXT && delegate.getText(storedKey) == null
+                    ? readManifest(delegate, storedKey) : null;
+            if (manifest == null) {
+                throw new StorageException("Not a blob or data value: " + storedKey);
+            }
+            return new ChunkInputStream(delegate, storedKey, manifest, offset, length);
+        } catch (PropertyException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Removes the chunks of the blob, all of them including the ones of the failed writes; the key itself is left
+     *
+     * @param delegate   instance PropertySet
+     * @param bridge     scope operations
+     * @param instanceId storage instance id
+     * @param storedKey  stored key holding a text value
+     * @return <code>true</code> if the key held a blob
+     */
+    public static boolean removeChunks(PropertySet delegate, ScopeOperations bridge, InstanceId instanceId,
+            String storedKey) throws StorageException
+    {
+        try {
+            if (!delegate.exists(BlobManifest.manifestKey(storedKey))) {
+                return false;
+            }
+        } catch (PropertyException e) {
+            throw new StorageException(e);
+        }
+        bridge.removeByFilter(instanceId.getEntityId(), instanceId.getEntityName(), storedKey + CHUNK_MARK);
+        return true;
+    }
+
+    public static boolean isChunkKey(String key)
+    {
+        return key != null && key.contains(CHUNK_MARK);
+    }
+
+    /**
+     * @param keys keys listed, might be <code>null</code>
+     * @return keys without the chunk keys
+     */
+    public static Collection<String> withoutChunkKeys(Collection<String> keys)
+    {
+        if (keys == null) {
+            return null;
+        }
+
+        boolean chunks = false;
+        for (String key : keys) {
+            if (isChunkKey(key)) {
+                chunks = true;
+                break;
+            }
+        }
+        if (!chunks) {
+            return keys;
+        }
+
+        ImmutableList.Builder<String> visible = ImmutableList.builder();
+        for (String key : keys) {
+            if (!isChunkKey(key)) {
+                visible.add(key);
+            }
+        }
+        return visible.build();
+    }
+
+    /**
+     * @param keys keys listed
+     * @return iterator skipping the chunk keys
+     */
+    public static CloseableIterator<String> withoutChunkKeys(CloseableIterator<String> keys)
+    {
+        return new VisibleKeys(keys);
+    }
+
+    /**
+     * @param delegate  instance PropertySet
+     * @param storedKey stored key
+     * @return manifest stored for the key, <code>null</code> if none
+     */
+    static BlobManifest readManifest(PropertySet delegate, String storedKey) throws StorageException
+    {
+        try {
+            String manifestKey = BlobManifest.manifestKey(storedKey);
+            return delegate.exists(manifestKey) ? BlobManifest.parse(delegate.getText(manifestKey)) : null;
+        } catch (PropertyException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Removes the chunks of the manifest one by one
+     */
+    static void removeChunks(PropertySet delegate, String storedKey, BlobManifest manifest)
+    {
+        for (int i = 0, count = manifest.chunkCount(); i < count; i++) {
+            String chunkKey = manifest.chunkKey(storedKey, i);
+            if (delegate.exists(chunkKey)) {
+                delegate.remove(chunkKey);
+            }
+        }
+    }
+
+    private static String newGeneration()
+    {
+        return Long.toString(GENERATIONS.nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    private static final class VisibleKeys extends AbstractIterator<String> implements CloseableIterator<String>
+    {
+        private final CloseableIterator<String> keys;
+
+        VisibleKeys(CloseableIterator<String> keys)
+        {
+            this.keys = keys;
+        }
+
+        @Override
+        protected String computeNext()
+        {
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (!isChunkKey(key)) {
+                    return key;
+                }
+            }
+            return endOfData();
+        }
+
+        public void close()
+        {
+            keys.close();
+        }
+    }
+}
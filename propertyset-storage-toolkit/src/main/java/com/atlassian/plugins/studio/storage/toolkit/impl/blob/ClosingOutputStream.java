@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.blob;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Runs the callback once the blob stream is closed and the blob stored; lets the facade decorators treat the
+ * stream as the write of its key. The blob is switched in a transaction, the failed close changes nothing.
+ */
+public class ClosingOutputStream extends FilterOutputStream
+{
+    private final Runnable closed;
+    private boolean done;
+
+    public ClosingOutputStream(OutputStream out, Runnable closed)
+    {
+        super(out);
+        this.closed = closed;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        out.write(bytes, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (done) {
+            return;
+        }
+        done = true;
+
+        out.close();
+        closed.run();
+    }
+}
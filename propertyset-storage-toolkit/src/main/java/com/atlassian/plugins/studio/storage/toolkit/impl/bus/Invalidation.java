@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.bus;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Message telling the other nodes the data of a scope has changed: a key of an instance, a whole instance or
+ * the whole scope.
+ * <p/>
+ * Versions are assigned by the origin node in the publishing order.
+ */
+public final class Invalidation
+{
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char MESSAGE_SEPARATOR = '\n';
+
+    private final String channel;
+    private final InstanceId instanceId;
+    private final String key;
+    private final String origin;
+    private final long version;
+
+    /**
+     * @param channel    scope channel name
+     * @param instanceId instance changed, <code>null</code> for the whole scope
+     * @param key        key changed, <code>null</code> for the whole instance
+     * @param origin     id of the node publishing the message
+     * @param version    message version assigned by the origin
+     */
+    public Invalidation(String channel, InstanceId instanceId, String key, String origin, long version)
+    {
+        this.channel = channel;
+        this.instanceId = instanceId;
+        this.key = instanceId == null ? null : key;
+        this.origin = origin;
+        this.version = version;
+    }
+
+    public String getChannel()
+    {
+        return channel;
+    }
+
+    public InstanceId getInstanceId()
+    {
+        return instanceId;
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public String getOrigin()
+    {
+        return origin;
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public boolean isScopeWide()
+    {
+        return instanceId == null;
+    }
+
+    /**
+     * @param other message
+     * @return <code>true</code> if this message evicts everything the other does
+     */
+    public boolean covers(Invalidation other)
+    {
+        if (!channel.equals(other.channel)) {
+            return false;
+        }
+        if (instanceId == null) {
+            return true;
+        }
+        return instanceId.equals(other.instanceId) && (key == null || key.equals(other.key));
+    }
+
+    /**
+     * @param batch messages
+     * @return text form of the messages, one per line
+     */
+    public static String encode(Collection<Invalidation> batch)
+    {
+        StringBuilder text = new StringBuilder(batch.size() * 64);
+        for (Invalidation invalidation : batch) {
+            if (text.length() > 0) {
+                text.append(MESSAGE_SEPARATOR);
+            }
+            invalidation.encode(text);
+        }
+        return text.toString();
+    }
+
+    /**
+     * @param text text form of the messages
+     * @return messages
+     * @throws StorageException malformed text
+     */
+    public static List<Invalidation> decode(String text) throws StorageException
+    {
+        List<Invalidation> batch = new ArrayList<Invalidation>();
+        if (text == null || text.length() == 0) {
+            return batch;
+        }
+
+        for (String line : text.split(String.valueOf(MESSAGE_SEPARATOR))) {
+            String[] fields = line.split(String.valueOf(FIELD_SEPARATOR), -1);
+            if (fields.length != 7) {
+                throw new StorageException("Malformed invalidation message: " + line);
+            }
+            try {
+                String entityName = field(fields[3]);
+                String entityId = field(fields[4]);
+                InstanceId instanceId = entityName == null ? null
+                        : new InstanceId(entityId == null ? null : Long.valueOf(entityId), entityName, field(fields[5]));
+                batch.add(new Invalidation(field(fields[0]), instanceId, field(fields[6]), field(fields[1]),
+                        Long.parseLong(fields[2])));
+            } catch (NumberFormatException e) {
+                throw new StorageException("Malformed invalidation message: " + line, e);
+            }
+        }
+        return batch;
+    }
+
+    private void encode(StringBuilder text)
+    {
+        field(text, channel).append(FIELD_SEPARATOR);
+        field(text, origin).append(FIELD_SEPARATOR);
+        text.append(version).append(FIELD_SEPARATOR);
+        field(text, instanceId == null ? null : instanceId.getEntityName()).append(FIELD_SEPARATOR);
+        field(text, instanceId == null || instanceId.getEntityId() == null ? null
+                : instanceId.getEntityId().toString()).append(FIELD_SEPARATOR);
+        field(text, instanceId == null ? null : instanceId.getKeyPrefix()).append(FIELD_SEPARATOR);
+        field(text, key);
+    }
+
+    /**
+     * Non-null values are prefixed with '=', the escaping keeps the separators out of the values
+     */
+    private static StringBuilder field(StringBuilder text, String value)
+    {
+        return value == null ? text : text.append('=').append(StringEscapeUtils.escapeJava(value));
+    }
+
+    private static String field(String encoded)
+    {
+        return encoded.length() == 0 ? null : StringEscapeUtils.unescapeJava(encoded.substring(1));
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Invalidation)) {
+            return false;
+        }
+
+        Invalidation that = (Invalidation) o;
+        return version == that.version && channel.equals(that.channel) && ObjectUtils.equals(origin, that.origin)
+                && ObjectUtils.equals(instanceId, that.instanceId) && ObjectUtils.equals(key, that.key);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = channel.hashCode();
+        result = 31 * result + ObjectUtils.hashCode(instanceId);
+        result = 31 * result + ObjectUtils.hashCode(key);
+        result = 31 * result + (int) (version ^ (version >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        encode(text);
+        return "Invalidation[" + text.toString().replace(FIELD_SEPARATOR, ' ') + "]";
+    }
+}
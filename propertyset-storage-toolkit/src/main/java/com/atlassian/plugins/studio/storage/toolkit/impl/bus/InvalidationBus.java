@@ -0,0 +1,424 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.bus;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.google.common.collect.MapMaker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the data cached by the scopes of this node consistent with the changes made on the other cluster nodes.
+ * <p/>
+ * Every write, removal and scope wipe of a scope joined to the bus is queued as an {@link Invalidation}; the
+ * queue is deduplicated (a message covering another replaces it) and published in batches by a background thread
+ * every flush interval. Messages received from the other nodes evict the matching instances, or the whole scope,
+ * from the scope caches ({@link com.atlassian.plugins.studio.storage.toolkit.impl.AbstractDefaultScopeImpl#evict});
+ * the decorators have no per key eviction, so a key message evicts its instance. Messages are matched to the
+ * scopes by the channel name, which has to be the same on all the nodes.
+ * <p/>
+ * The messages are published up to a flush interval after the write, so a node might keep serving the stale
+ * value for that long.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     private static final InvalidationBus BUS = new InvalidationBus(new PollingInvalidationTransport(messages));
+ *     ...
+ *     Scope&lt;Long&gt; scope = new Scopes.Builder&lt;Long&gt;(idProvider, deleteAll)
+ *             .withCache(CACHE)
+ *             .withInvalidationBus(BUS, "my-plugin-scope")
+ *             .build();
+ * </pre>
+ */
+public class InvalidationBus implements InvalidationListener
+{
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200L;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    /**
+     * Queue longer than that many batches is collapsed into a scope wide message per channel
+     */
+    private static final int MAX_QUEUED_BATCHES = 4;
+
+    private final InvalidationTransport transport;
+    private final String nodeId;
+    private final long flushIntervalMillis;
+    private final int maxBatch;
+
+    private final AtomicLong versions = new AtomicLong();
+    private final ConcurrentMap<String, InvalidationEndpoint> endpoints = new MapMaker().makeMap();
+    private final ThreadLocal<Boolean> receiving = new ThreadLocal<Boolean>();
+
+    /**
+     * Messages to publish in the version order, guarded by itself
+     */
+    private final List<Invalidation> outbox = new ArrayList<Invalidation>();
+
+    /**
+     * Highest version received by origin node, guarded by itself
+     */
+    private final Map<String, Long> received = new HashMap<String, Long>();
+
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Runnable flushTask = new Runnable()
+    {
+        public void run()
+        {
+            flushRequested.set(false);
+            try {
+                flush();
+            } catch (RuntimeException ignored) {
+                // failures are accounted by flush, the flusher must keep running
+            }
+        }
+    };
+
+    /**
+     * Guarded by this
+     */
+    private ScheduledExecutorService flusher;
+    private volatile boolean shutdown;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    public InvalidationBus(InvalidationTransport transport)
+    {
+        this(transport, UUID.randomUUID().toString(), DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * @param transport           message transport
+     * @param nodeId              id of this node, unique in the cluster
+     * @param flushIntervalMillis delay of the message publishing
+     * @param maxBatch            maximum number of messages published at once
+     */
+    public InvalidationBus(InvalidationTransport transport, String nodeId, long flushIntervalMillis, int maxBatch)
+    {
+        Assertions.notNull("Transport is null", transport);
+        Assertions.notBlank("Node id", nodeId);
+        Assertions.stateTrue("flushIntervalMillis should be positive", flushIntervalMillis > 0);
+        Assertions.stateTrue("maxBatch should be positive", maxBatch > 0);
+
+        this.transport = transport;
+        this.nodeId = nodeId;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Joins a scope to the bus, the scope built later has to be bound with
+     * {@link InvalidationEndpoint#bind(com.atlassian.plugins.studio.storage.toolkit.impl.AbstractDefaultScopeImpl)}
+     *
+     * @param channel scope channel name, the same on all the nodes; the scope joined last wins
+     * @return facade decorator publishing the scope changes
+     */
+    public InvalidationEndpoint join(String channel)
+    {
+        Assertions.notBlank("Channel", channel);
+
+        InvalidationEndpoint endpoint = new InvalidationEndpoint(this, channel);
+        endpoints.put(channel, endpoint);
+        ensureStarted();
+        return endpoint;
+    }
+
+    public String getNodeId()
+    {
+        return nodeId;
+    }
+
+    /**
+     * Publishes the queued messages now
+     */
+    public void flush()
+    {
+        synchronized (flushLock) {
+            List<Invalidation> batch;
+            synchronized (outbox) {
+                batch = new ArrayList<Invalidation>(outbox);
+                outbox.clear();
+            }
+
+            for (int from = 0; from < batch.size(); from += maxBatch) {
+                List<Invalidation> chunk = batch.subList(from, Math.min(batch.size(), from + maxBatch));
+                try {
+                    transport.publish(new ArrayList<Invalidation>(chunk));
+                    publishedCount.addAndGet(chunk.size());
+                } catch (RuntimeException e) {
+                    failureCount.incrementAndGet();
+                    synchronized (outbox) {
+                        // keeps the version order, published again by the next flush
+                        outbox.addAll(0, batch.subList(from, batch.size()));
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes the queued messages and stops the delivery
+     */
+    public void shutdown()
+    {
+        synchronized (this) {
+            shutdown = true;
+            if (flusher != null) {
+                flusher.shutdown();
+            }
+        }
+        try {
+            flush();
+        } finally {
+            transport.stop();
+        }
+    }
+
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    public void received(List<Invalidation> batch)
+    {
+        // the evictions are per instance, the key messages of an instance are applied once per batch
+        Map<String, Set<InstanceId>> evictions = new LinkedHashMap<String, Set<InstanceId>>();
+        for (Invalidation invalidation : batch) {
+            if (nodeId.equals(invalidation.getOrigin()) || !isNew(invalidation)) {
+                continue;
+            }
+
+            receivedCount.incrementAndGet();
+            Set<InstanceId> instances = evictions.get(invalidation.getChannel());
+            if (instances == null) {
+                instances = new LinkedHashSet<InstanceId>();
+                evictions.put(invalidation.getChannel(), instances);
+            }
+            instances.add(invalidation.getInstanceId());
+        }
+
+        for (Map.Entry<String, Set<InstanceId>> entry : evictions.entrySet()) {
+            InvalidationEndpoint endpoint = endpoints.get(entry.getKey());
+            if (endpoint == null) {
+                continue;
+            }
+
+            Set<InstanceId> instances = entry.getValue();
+            receiving.set(Boolean.TRUE);
+            try {
+                if (instances.contains(null)) {
+                    instances = Collections.singleton(null);
+                }
+                for (InstanceId instanceId : instances) {
+                    if (endpoint.evict(instanceId)) {
+                        evictionCount.incrementAndGet();
+                    }
+                }
+            } finally {
+                receiving.remove();
+            }
+        }
+    }
+
+    public int getQueueSize()
+    {
+        synchronized (outbox) {
+            return outbox.size();
+        }
+    }
+
+    /**
+     * @return number of the changes queued
+     */
+    public long getQueuedCount()
+    {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return number of the queued changes covered by another message before they were published
+     */
+    public long getCoalescedCount()
+    {
+        return coalescedCount.get();
+    }
+
+    public long getPublishedCount()
+    {
+        return publishedCount.get();
+    }
+
+    /**
+     * @return number of the messages received from the other nodes, duplicates excluded
+     */
+    public long getReceivedCount()
+    {
+        return receivedCount.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    public long getFailureCount()
+    {
+        return failureCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "InvalidationBus[node=" + nodeId + ", queued=" + getQueuedCount() + ", coalesced=" + getCoalescedCount()
+                + ", published=" + getPublishedCount() + ", received=" + getReceivedCount()
+                + ", evictions=" + getEvictionCount() + ", failures=" + getFailureCount() + "]";
+    }
+
+    /**
+     * @return <code>true</code> while the messages of the other nodes are being applied
+     */
+    boolean isReceiving()
+    {
+        return receiving.get() != null;
+    }
+
+    void publish(String channel, InstanceId instanceId, String key)
+    {
+        if (isReceiving()) {
+            return;
+        }
+
+        queuedCount.incrementAndGet();
+        boolean full;
+        synchronized (outbox) {
+            Invalidation invalidation = new Invalidation(channel, instanceId, key, nodeId, versions.incrementAndGet());
+            for (Iterator<Invalidation> it = outbox.iterator(); it.hasNext();) {
+                Invalidation queued = it.next();
+                if (queued.covers(invalidation)) {
+                    coalescedCount.incrementAndGet();
+                    return;
+                }
+                if (invalidation.covers(queued)) {
+                    coalescedCount.incrementAndGet();
+                    it.remove();
+                }
+            }
+            outbox.add(invalidation);
+
+            if (outbox.size() > maxBatch * MAX_QUEUED_BATCHES) {
+                collapse();
+            }
+            full = outbox.size() >= maxBatch;
+        }
+
+        if (full || shutdown) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Replaces the queue with a scope wide message per channel, guarded by the outbox
+     */
+    private void collapse()
+    {
+        Set<String> channels = new LinkedHashSet<String>();
+        for (Invalidation queued : outbox) {
+            channels.add(queued.getChannel());
+        }
+        coalescedCount.addAndGet(outbox.size());
+        outbox.clear();
+        for (String channel : channels) {
+            outbox.add(new Invalidation(channel, null, null, nodeId, versions.incrementAndGet()));
+        }
+        coalescedCount.addAndGet(-channels.size());
+    }
+
+    private boolean isNew(Invalidation invalidation)
+    {
+        synchronized (received) {
+            Long last = received.get(invalidation.getOrigin());
+            if (last != null && last >= invalidation.getVersion()) {
+                return false;
+            }
+            received.put(invalidation.getOrigin(), invalidation.getVersion());
+            return true;
+        }
+    }
+
+    private void requestFlush()
+    {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = flusher;
+        }
+        if (executor == null || shutdown) {
+            flush();
+            return;
+        }
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(flushTask);
+            } catch (RuntimeException e) {
+                flushRequested.set(false);
+                flush();
+            }
+        }
+    }
+
+    private synchronized void ensureStarted()
+    {
+        if (flusher != null || shutdown) {
+            return;
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "storage-invalidation-bus-" + nodeId);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(flushTask, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        transport.start(this);
+    }
+}
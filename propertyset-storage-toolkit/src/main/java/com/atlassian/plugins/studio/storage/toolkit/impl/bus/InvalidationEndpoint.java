@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.bus;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.AbstractDefaultScopeImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.FacadeDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+
+/**
+ * Scope side of the {@link InvalidationBus}: publishes the changes made through the scope facades and the scope
+ * removals, evicts the scope caches on the messages of the other nodes.
+ */
+public class InvalidationEndpoint implements FacadeDecorator
+{
+    private final InvalidationBus bus;
+    private final String channel;
+    private volatile AbstractDefaultScopeImpl<?> scope;
+
+    InvalidationEndpoint(InvalidationBus bus, String channel)
+    {
+        this.bus = bus;
+        this.channel = channel;
+    }
+
+    /**
+     * @param scope scope built with the endpoint, the target of the evictions
+     */
+    public void bind(AbstractDefaultScopeImpl<?> scope)
+    {
+        this.scope = scope;
+    }
+
+    public String getChannel()
+    {
+        return channel;
+    }
+
+    public StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade)
+    {
+        return new PublishingStorageFacadeImpl(facade, instanceId, this);
+    }
+
+    public void invalidate(InstanceId instanceId)
+    {
+        bus.publish(channel, instanceId, null);
+    }
+
+    public void invalidateAll()
+    {
+        bus.publish(channel, null, null);
+    }
+
+    void changed(InstanceId instanceId, String key)
+    {
+        bus.publish(channel, instanceId, key);
+    }
+
+    /**
+     * @param instanceId instance changed by another node, <code>null</code> for the whole scope
+     * @return <code>false</code> if there is no scope bound to evict from
+     */
+    boolean evict(InstanceId instanceId)
+    {
+        AbstractDefaultScopeImpl<?> target = scope;
+        if (target == null) {
+            return false;
+        }
+
+        if (instanceId == null) {
+            target.evictAll();
+        } else {
+            target.evict(instanceId);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.bus;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+
+import java.util.List;
+
+/**
+ * Channel delivering the {@link Invalidation} messages between the cluster nodes.
+ * <p/>
+ * Delivery is at least once and in the publishing order per origin, duplicates are dropped by the bus.
+ */
+public interface InvalidationTransport
+{
+    /**
+     * Starts delivering the messages published by the other nodes
+     *
+     * @param listener listener of this node
+     */
+    void start(InvalidationListener listener);
+
+    /**
+     * @param batch messages in the publishing order
+     * @throws StorageException delivery failure, the batch is published again later
+     */
+    void publish(List<Invalidation> batch) throws StorageException;
+
+    void stop();
+}
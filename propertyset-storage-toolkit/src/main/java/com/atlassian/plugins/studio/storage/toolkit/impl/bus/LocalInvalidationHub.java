@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.bus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-JVM message hub, every transport it creates delivers the messages to the listeners of all of them.
+ * <p/>
+ * Runs several "nodes" in one JVM, e.g. for tests; the messages are delivered synchronously by the publishing
+ * thread.
+ */
+public class LocalInvalidationHub
+{
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+
+    /**
+     * @return transport of a new node
+     */
+    public InvalidationTransport newTransport()
+    {
+        return new LocalTransport();
+    }
+
+    private void deliver(List<Invalidation> batch)
+    {
+        for (InvalidationListener listener : listeners) {
+            listener.received(batch);
+        }
+    }
+
+    private class LocalTransport implements InvalidationTransport
+    {
+        private volatile InvalidationListener listener;
+
+        public void start(InvalidationListener listener)
+        {
+            this.listener = listener;
+            listeners.add(listener);
+        }
+
+        public void publish(List<Invalidation> batch)
+        {
+            deliver(batch);
+        }
+
+        public void stop()
+        {
+            if (listener != null) {
+                listeners.remove(listener);
+            }
+        }
+    }
+}
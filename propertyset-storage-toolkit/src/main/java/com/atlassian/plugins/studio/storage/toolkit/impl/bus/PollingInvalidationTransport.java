@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.bus;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.Scope;
+import com.atlassian.plugins.studio.storage.toolkit.Scopes;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport exchanging the messages through the database shared by the nodes.
+ * <p/>
+ * Every published batch is stored as a text property of a storage instance, keyed by the publishing time, and
+ * read by the other nodes polling the keys of the last window. The keys seen are remembered for the window, so the
+ * messages committed late within the window are still delivered, those older than the window are deleted.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     InvalidationBus bus = new InvalidationBus(new PollingInvalidationTransport());
+ * </pre>
+ */
+public class PollingInvalidationTransport implements InvalidationTransport
+{
+    public static final String DEFAULT_NAME = "storage-invalidation-bus";
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000L;
+    public static final long DEFAULT_WINDOW_MILLIS = 60 * 1000L;
+
+    static final String KEY_PREFIX = "msg-";
+    private static final String KEY_LIMIT = KEY_PREFIX + "~";
+    private static final int TIME_DIGITS = 15;
+    private static final int SEQUENCE_DIGITS = 9;
+
+    private final Scope<String> scope;
+    private final String context;
+    private final long pollIntervalMillis;
+    private final long windowMillis;
+    private final String nodeId = Long.toString(UUID.randomUUID().getMostSignificantBits() >>> 1, 36);
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Message keys seen by the time seen, guarded by itself
+     */
+    private final Map<String, Long> seen = new HashMap<String, Long>();
+
+    private volatile InvalidationListener listener;
+
+    /**
+     * Guarded by this
+     */
+    private ScheduledExecutorService poller;
+
+    /**
+     * Exchanges the messages through the {@link #DEFAULT_NAME} constant name scope
+     */
+    public PollingInvalidationTransport()
+    {
+        this(Scopes.constantName(DEFAULT_NAME), DEFAULT_NAME, DEFAULT_POLL_INTERVAL_MILLIS, DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param scope              scope storing the messages, must not be joined to the bus itself
+     * @param context            scope context of the messages instance
+     * @param pollIntervalMillis delay between the polls
+     * @param windowMillis       time the messages are kept for, well above the poll interval and commit latency
+     */
+    public PollingInvalidationTransport(Scope<String> scope, String context, long pollIntervalMillis, long windowMillis)
+    {
+        Assertions.notNull("Scope is null", scope);
+        Assertions.stateTrue("pollIntervalMillis should be positive", pollIntervalMillis > 0);
+        Assertions.stateTrue("windowMillis should exceed pollIntervalMillis", windowMillis > pollIntervalMillis);
+
+        this.scope = scope;
+        this.context = context;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.windowMillis = windowMillis;
+    }
+
+    public synchronized void start(InvalidationListener listener)
+    {
+        Assertions.stateTrue("Transport is started already", poller == null);
+
+        // the messages published before the start are of no interest, nothing is cached yet
+        poll(System.currentTimeMillis(), false);
+        this.listener = listener;
+
+        poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "storage-invalidation-poller-" + nodeId);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        poller.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                try {
+                    poll();
+                } catch (RuntimeException ignored) {
+                    // the storage is polled again next time
+                }
+            }
+        }, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void publish(List<Invalidation> batch) throws StorageException
+    {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        String key = KEY_PREFIX + StringUtils.leftPad(String.valueOf(System.currentTimeMillis()), TIME_DIGITS, '0')
+                + '-' + nodeId + '-' + StringUtils.leftPad(String.valueOf(sequence.incrementAndGet()), SEQUENCE_DIGITS, '0');
+        scope.load(context).setText(key, Invalidation.encode(batch));
+    }
+
+    public synchronized void stop()
+    {
+        listener = null;
+        if (poller != null) {
+            poller.shutdown();
+            poller = null;
+        }
+    }
+
+    /**
+     * Delivers the messages published since the last poll, run by the background poller
+     *
+     * @throws StorageException storage failure
+     */
+    public void poll() throws StorageException
+    {
+        poll(System.currentTimeMillis(), true);
+    }
+
+    private void poll(long now, boolean deliver) throws StorageException
+    {
+        StorageFacade messages = scope.load(context);
+        String windowStart = KEY_PREFIX + StringUtils.leftPad(String.valueOf(now - windowMillis), TIME_DIGITS, '0');
+
+        List<String> fresh = new ArrayList<String>();
+        List<String> expired = new ArrayList<String>();
+        synchronized (seen) {
+            for (String key : messages.getKeyRange(KEY_PREFIX, KEY_LIMIT)) {
+                if (key.compareTo(windowStart) < 0) {
+                    expired.add(key);
+                } else if (!seen.containsKey(key)) {
+                    fresh.add(key);
+                    seen.put(key, now);
+                }
+            }
+            forget(now - 2 * windowMillis);
+        }
+
+        InvalidationListener target = listener;
+        if (deliver && target != null && !fresh.isEmpty()) {
+            List<Invalidation> batch = new ArrayList<Invalidation>();
+            for (String key : fresh) {
+                try {
+                    batch.addAll(Invalidation.decode(messages.getText(key)));
+                } catch (StorageException ignored) {
+                    // malformed or removed meanwhile, nothing to deliver
+                }
+            }
+            target.received(batch);
+        }
+
+        remove(messages, expired);
+    }
+
+    /**
+     * Forgets the keys seen before the time, guarded by {@link #seen}
+     */
+    private void forget(long before)
+    {
+        for (Iterator<Long> it = seen.values().iterator(); it.hasNext();) {
+            if (it.next() < before) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void remove(StorageFacade messages, Collection<String> keys)
+    {
+        for (String key : keys) {
+            try {
+                messages.remove(key);
+            } catch (StorageException ignored) {
+                // removed by another node
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.bus;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.blob.ClosingOutputStream;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * {@link StorageFacade} publishing its writes to the {@link InvalidationBus}
+ */
+class PublishingStorageFacadeImpl extends ForwardingStorageFacade
+{
+    private final InstanceId instanceId;
+    private final InvalidationEndpoint endpoint;
+
+    PublishingStorageFacadeImpl(StorageFacade delegate, InstanceId instanceId, InvalidationEndpoint endpoint)
+    {
+        super(delegate);
+        this.instanceId = instanceId;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        try {
+            super.setBoolean(key, value);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        try {
+            super.setData(key, bytes);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public OutputStream openOutputStream(final String key) throws StorageException
+    {
+        return new ClosingOutputStream(super.openOutputStream(key), new Runnable()
+        {
+            public void run()
+            {
+                endpoint.changed(instanceId, key);
+            }
+        });
+    }
+
+    @Override
+    public void setDate(String key, Date date) throws StorageException
+    {
+        try {
+            super.setDate(key, date);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        try {
+            super.setDouble(key, value);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public void setLong(String key, Long value) throws StorageException
+    {
+        try {
+            super.setLong(key, value);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        try {
+            super.setObject(key, objectValue);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        try {
+            super.setProperties(key, properties);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        try {
+            super.set(key, value);
+        } finally {
+            endpoint.changed(instanceId, key.getName());
+        }
+    }
+
+    @Override
+    public void setString(String key, String string) throws StorageException
+    {
+        try {
+            super.setString(key, string);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public void setText(String key, String text) throws StorageException
+    {
+        try {
+            super.setText(key, text);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        try {
+            super.setAll(values);
+        } finally {
+            if (values != null) {
+                for (String key : values.keySet()) {
+                    endpoint.changed(instanceId, key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws StorageException
+    {
+        try {
+            return super.remove(key);
+        } finally {
+            endpoint.changed(instanceId, key);
+        }
+    }
+
+    @Override
+    public void removeAll() throws StorageException
+    {
+        try {
+            super.removeAll();
+        } finally {
+            endpoint.changed(instanceId, null);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.cache;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+
+/**
+ * Cache entry key: storage entity plus the prefixed (raw) property key.
+ * <p/>
+ * <code>null</code> raw key stands for the entity key listing entry.
+ */
+final class CacheKey
+{
+    private final String entityName;
+    private final Long entityId;
+    private final String rawKey;
+    private final int hash;
+
+    CacheKey(String entityName, Long entityId, String rawKey)
+    {
+        this.entityName = entityName;
+        this.entityId = entityId;
+        this.rawKey = rawKey;
+
+        int h = entityName == null ? 0 : entityName.hashCode();
+        h = 31 * h + (entityId == null ? 0 : entityId.hashCode());
+        h = 31 * h + (rawKey == null ? 0 : rawKey.hashCode());
+        this.hash = h;
+    }
+
+    static CacheKey listing(InstanceId instanceId)
+    {
+        return new CacheKey(instanceId.getEntityName(), instanceId.getEntityId(), null);
+    }
+
+    String getRawKey()
+    {
+        return rawKey;
+    }
+
+    boolean isListing()
+    {
+        return rawKey == null;
+    }
+
+    /**
+     * @return key listing of the entity the key belongs to
+     */
+    CacheKey entity()
+    {
+        return rawKey == null ? this : new CacheKey(entityName, entityId, null);
+    }
+
+    /**
+     * @return approximate heap footprint of the key
+     */
+    int weight()
+    {
+        return 48 + (rawKey == null ? 0 : 2 * rawKey.length());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+
+        CacheKey other = (CacheKey) o;
+        return hash == other.hash
+                && eq(rawKey, other.rawKey)
+                && eq(entityId, other.entityId)
+                && eq(entityName, other.entityName);
+    }
+
+    private static boolean eq(Object a, Object b)
+    {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString()
+    {
+        return entityName + "[" + entityId + "]:" + (rawKey == null ? "<keys>" : rawKey);
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.cache;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.KeyCodec;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.StoredValues;
+import com.atlassian.plugins.studio.storage.toolkit.impl.blob.ClosingOutputStream;
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Read-through {@link StorageFacade} backed by {@link StorageCache}.
+ * <p/>
+ * Objects and properties are cached in their serialized (text) form and deserialized on every read,
+ * so the callers never share mutable instances.
+ */
+class CachingStorageFacadeImpl extends ForwardingStorageFacade
+{
+    private final InstanceId instanceId;
+    private final ScopeOperations bridge;
+    private final StorageCache cache;
+    private final String keyPrefix;
+    private final CacheKey listingKey;
+
+    CachingStorageFacadeImpl(InstanceId instanceId, ScopeOperations bridge, StorageFacade delegate, StorageCache cache)
+    {
+        super(delegate);
+        this.instanceId = instanceId;
+        this.bridge = bridge;
+        this.cache = cache;
+        this.keyPrefix = StringUtils.defaultString(instanceId.getKeyPrefix());
+        this.listingKey = CacheKey.listing(instanceId);
+    }
+
+    private CacheKey cacheKey(String key)
+    {
+        return new CacheKey(instanceId.getEntityName(), instanceId.getEntityId(), keyPrefix + key);
+    }
+
+    private void invalidate(String key)
+    {
+        cache.invalidate(cacheKey(key), listingKey);
+    }
+
+    private static Object unmask(Object cached)
+    {
+        return cached == StorageCache.NULL ? null : cached;
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        try {
+            super.setBoolean(key, value);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws StorageException
+    {
+        CacheKey cacheKey = cacheKey(key);
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.BOOLEAN);
+        if (cached != null) {
+            return (Boolean) cached;
+        }
+
+        boolean value = super.getBoolean(key);
+        cache.put(cacheKey, ValueKind.BOOLEAN, value, stamp);
+        return value;
+    }
+
+    @Override
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        try {
+            super.setData(key, bytes);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public byte[] getData(String key) throws StorageException
+    {
+        CacheKey cacheKey = cacheKey(key);
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.DATA);
+        if (cached == null) {
+            byte[] value = super.getData(key);
+            cache.put(cacheKey, ValueKind.DATA, value, stamp);
+            cached = value;
+        }
+
+        byte[] value = (byte[]) unmask(cached);
+        return value == null ? null : value.clone();
+    }
+
+    @Override
+    public OutputStream openOutputStream(final String key) throws StorageException
+    {
+        invalidate(key);
+        return new ClosingOutputStream(super.openOutputStream(key), new Runnable()
+        {
+            public void run()
+            {
+                invalidate(key);
+            }
+        });
+    }
+
+    @Override
+    public void setDate(String key, Date date) throws StorageException
+    {
+        try {
+            super.setDate(key, date);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public Date getDate(String key) throws StorageException
+    {
+        CacheKey cacheKey = cacheKey(key);
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.DATE);
+        if (cached == null) {
+            Date value = super.getDate(key);
+            cache.put(cacheKey, ValueKind.DATE, value, stamp);
+            cached = value;
+        }
+
+        Date value = (Date) unmask(cached);
+        return value == null ? null : (Date) value.clone();
+    }
+
+    @Override
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        try {
+            super.setDouble(key, value);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public BigDecimal getDouble(String key) throws StorageException
+    {
+        CacheKey cacheKey = cacheKey(key);
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.DOUBLE);
+        if (cached != null) {
+            return (BigDecimal) unmask(cached);
+        }
+
+        BigDecimal value = super.getDouble(key);
+        cache.put(cacheKey, ValueKind.DOUBLE, value, stamp);
+        return value;
+    }
+
+    /**
+     * Caches the values of the keys with the immutable values decoded, the values read later are not decoded again
+     */
+    @Override
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        KeyCodec<T> codec = key.getCodec();
+        if (!codec.isImmutable()) {
+            return super.get(key);
+        }
+
+        CacheKey cacheKey = cacheKey(key.getName());
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.DECODED);
+        if (DecodedValue.isDecodedBy(cached, codec)) {
+            return codec.getType().cast(((DecodedValue) cached).value);
+        }
+
+        T value = super.get(key);
+        cache.put(cacheKey, ValueKind.DECODED, new DecodedValue(codec, value), stamp);
+        return value;
+    }
+
+    @Override
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        try {
+            super.set(key, value);
+        } finally {
+            invalidate(key.getName());
+        }
+    }
+
+    @Override
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        long stamp = cache.generation();
+
+        Map<StorageKey<?>, Object> cached = new HashMap<StorageKey<?>, Object>();
+        List<StorageKey<?>> missing = new ArrayList<StorageKey<?>>();
+        for (StorageKey<?> key : keys) {
+            Object value = key.getCodec().isImmutable() ? cache.get(cacheKey(key.getName()), ValueKind.DECODED) : null;
+            if (DecodedValue.isDecodedBy(value, key.getCodec())) {
+                cached.put(key, ((DecodedValue) value).value);
+            } else {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<StorageKey<?>, Object> loaded = super.getAll(missing.toArray(new StorageKey<?>[missing.size()]));
+            for (StorageKey<?> key : missing) {
+                Object value = loaded.get(key);
+                // the absent boolean keys read false one by one, only the values found are cached
+                if (value != null && key.getCodec().isImmutable()) {
+                    cache.put(cacheKey(key.getName()), ValueKind.DECODED, new DecodedValue(key.getCodec(), value), stamp);
+                }
+                cached.put(key, value);
+            }
+        }
+
+        Map<StorageKey<?>, Object> values = new LinkedHashMap<StorageKey<?>, Object>();
+        for (StorageKey<?> key : keys) {
+            Object value = cached.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public Collection<String> getKeys() throws StorageException
+    {
+        long stamp = cache.generation();
+
+        Object cached = cache.get(listingKey, ValueKind.KEYS);
+        if (cached != null) {
+            return (Collection<String>) unmask(cached);
+        }
+
+        Collection<String> keys = super.getKeys();
+        Collection<String> value = keys == null ? null : ImmutableList.copyOf(keys);
+        cache.put(listingKey, ValueKind.KEYS, value, stamp);
+        return value;
+    }
+
+    @Override
+    public void setLong(String key, Long value) throws StorageException
+    {
+        try {
+            super.setLong(key, value);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public Long getLong(String key) throws StorageException
+    {
+        CacheKey cacheKey = cacheKey(key);
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.LONG);
+        if (cached != null) {
+            return (Long) unmask(cached);
+        }
+
+        Long value = super.getLong(key);
+        cache.put(cacheKey, ValueKind.LONG, value, stamp);
+        return value;
+    }
+
+    @Override
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        try {
+            super.setObject(key, objectValue);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public Object getObject(String key) throws StorageException
+    {
+        String text = getText(key);
+        return text == null ? null : bridge.deserialize(text);
+    }
+
+    @Override
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        try {
+            super.setProperties(key, properties);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public Properties getProperties(String key) throws StorageException
+    {
+        String text = getText(key);
+        return text == null ? null : StoredValues.toProperties(bridge.deserialize(text));
+    }
+
+    @Override
+    public void setString(String key, String string) throws StorageException
+    {
+        try {
+            super.setString(key, string);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public String getString(String key) throws StorageException
+    {
+        CacheKey cacheKey = cacheKey(key);
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.STRING);
+        if (cached != null) {
+            return (String) unmask(cached);
+        }
+
+        String value = super.getString(key);
+        cache.put(cacheKey, ValueKind.STRING, value, stamp);
+        return value;
+    }
+
+    @Override
+    public void setText(String key, String text) throws StorageException
+    {
+        try {
+            super.setText(key, text);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public String getText(String key) throws StorageException
+    {
+        CacheKey cacheKey = cacheKey(key);
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.TEXT);
+        if (cached != null) {
+            return (String) unmask(cached);
+        }
+
+        String value = super.getText(key);
+        cache.put(cacheKey, ValueKind.TEXT, value, stamp);
+        return value;
+    }
+
+    @Override
+    public boolean exists(String key) throws StorageException
+    {
+        CacheKey cacheKey = cacheKey(key);
+        long stamp = cache.generation();
+
+        Object cached = cache.get(cacheKey, ValueKind.EXISTS);
+        if (cached != null) {
+            return (Boolean) cached;
+        }
+
+        boolean value = super.exists(key);
+        cache.put(cacheKey, ValueKind.EXISTS, value, stamp);
+        return value;
+    }
+
+    @Override
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        try {
+            super.setAll(values);
+        } finally {
+            if (values != null) {
+                for (String key : values.keySet()) {
+                    invalidate(key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws StorageException
+    {
+        try {
+            return super.remove(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void removeAll() throws StorageException
+    {
+        try {
+            super.removeAll();
+        } finally {
+            cache.invalidate(instanceId);
+        }
+    }
+}
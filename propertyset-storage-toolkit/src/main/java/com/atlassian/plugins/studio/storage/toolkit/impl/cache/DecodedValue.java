@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.cache;
+
+import com.atlassian.plugins.studio.storage.toolkit.KeyCodec;
+
+/**
+ * Value decoded by the typed key codec, cached in the {@link ValueKind#DECODED} slot. The codec is kept along, the
+ * value is used only by the keys of the same codec.
+ */
+final class DecodedValue
+{
+    final KeyCodec<?> codec;
+    final Object value;
+
+    DecodedValue(KeyCodec<?> codec, Object value)
+    {
+        this.codec = codec;
+        this.value = value;
+    }
+
+    /**
+     * @param cached cached value, might be <code>null</code>
+     * @param codec  codec of the key read
+     * @return whether the value is cached for the codec
+     */
+    static boolean isDecodedBy(Object cached, KeyCodec<?> codec)
+    {
+        return cached instanceof DecodedValue && ((DecodedValue) cached).codec == codec;
+    }
+}
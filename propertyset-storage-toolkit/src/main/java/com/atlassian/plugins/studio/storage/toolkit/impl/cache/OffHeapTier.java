@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.cache;
+
+import com.atlassian.jira.util.dbc.Assertions;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second {@link StorageCache} tier keeping the large text and data values outside of the heap.
+ * <p/>
+ * The values are copied into direct {@link ByteBuffer} slabs of <code>slabSize</code> bytes, allocated lazily up to
+ * the memory budget. Every slab is cut into the chunks of one size class (powers of two from
+ * {@link #MIN_CHUNK_SIZE} to the slab size), the value takes the smallest chunk it fits. The heap holds the index
+ * from the cache key and value kind to the chunk only. Once the budget is used up, the least recently used value of
+ * the same size class is evicted, or the slab of the least recently used value is emptied and given to the size
+ * class needed.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     private static final StorageCache CACHE = new StorageCache(5000, 8 * 1024 * 1024,
+ *             new OffHeapTier(64 * 1024 * 1024));
+ * </pre>
+ */
+public class OffHeapTier
+{
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MIN_VALUE_SIZE = 512;
+
+    static final int MIN_CHUNK_SIZE = 64;
+    private static final int CHUNK_BITS = 16;
+
+    private final int slabSize;
+    private final int minValueSize;
+    private final int maxSlabs;
+
+    /**
+     * Guarded by this
+     */
+    private final ByteBuffer[] slabs;
+    private final int[] slabClasses;
+    private int slabCount;
+    private final IntStack[] freeChunks;
+    private final LinkedHashMap<TierKey, Block> index = new LinkedHashMap<TierKey, Block>(64, 0.75f, true);
+    private long storedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * @param budget off-heap memory budget in bytes, at least one slab
+     */
+    public OffHeapTier(long budget)
+    {
+        this(budget, DEFAULT_SLAB_SIZE, DEFAULT_MIN_VALUE_SIZE);
+    }
+
+    /**
+     * @param budget       off-heap memory budget in bytes, at least one slab
+     * @param slabSize     slab size, power of two between 4K and 64M; the values larger than the slab are not kept
+     * @param minValueSize values smaller than this stay on the heap
+     */
+    public OffHeapTier(long budget, int slabSize, int minValueSize)
+    {
+        Assertions.stateTrue("slabSize should be a power of two between 4K and 64M",
+                Integer.bitCount(slabSize) == 1 && slabSize >= 4096 && slabSize <= 64 * 1024 * 1024);
+        Assertions.stateTrue("budget should hold at least one slab", budget >= slabSize);
+        Assertions.stateTrue("minValueSize should not be negative", minValueSize >= 0);
+        Assertions.stateTrue("budget holds too many slabs", budget / slabSize < (1 << (31 - CHUNK_BITS)));
+        Assertions.stateTrue("slab holds too many chunks", slabSize / MIN_CHUNK_SIZE <= (1 << CHUNK_BITS));
+
+        this.slabSize = slabSize;
+        this.minValueSize = minValueSize;
+        this.maxSlabs = (int) (budget / slabSize);
+        this.slabs = new ByteBuffer[maxSlabs];
+        this.slabClasses = new int[maxSlabs];
+        this.freeChunks = new IntStack[sizeClass(slabSize) + 1];
+        for (int i = 0; i < freeChunks.length; i++) {
+            freeChunks[i] = new IntStack();
+        }
+    }
+
+    /**
+     * @param length value length in bytes
+     * @return whether the value belongs to the tier
+     */
+    boolean accepts(int length)
+    {
+        return length >= minValueSize && length <= slabSize;
+    }
+
+    /**
+     * @param key   cache key
+     * @param kind  value kind
+     * @param bytes encoded value
+     * @return whether the value is stored
+     */
+    synchronized boolean put(CacheKey key, ValueKind kind, byte[] bytes)
+    {
+        TierKey tierKey = new TierKey(key, kind);
+        release(index.remove(tierKey));
+
+        if (!accepts(bytes.length)) {
+            rejections.incrementAndGet();
+            return false;
+        }
+
+        int sizeClass = sizeClass(bytes.length);
+        int chunk = allocate(sizeClass);
+        if (chunk < 0) {
+            rejections.incrementAndGet();
+            return false;
+        }
+
+        ByteBuffer slab = slabs[chunk >>> CHUNK_BITS].duplicate();
+        slab.position(offset(chunk));
+        slab.put(bytes);
+
+        index.put(tierKey, new Block(chunk, bytes.length, sizeClass));
+        storedBytes += bytes.length;
+        return true;
+    }
+
+    /**
+     * @param key  cache key
+     * @param kind value kind
+     * @return copy of the stored value, <code>null</code> if not stored
+     */
+    synchronized byte[] get(CacheKey key, ValueKind kind)
+    {
+        Block block = index.get(new TierKey(key, kind));
+        if (block == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        byte[] bytes = new byte[block.length];
+        ByteBuffer slab = slabs[block.chunk >>> CHUNK_BITS].duplicate();
+        slab.position(offset(block.chunk));
+        slab.get(bytes);
+
+        hits.incrementAndGet();
+        return bytes;
+    }
+
+    /**
+     * Drops all the values of the key
+     *
+     * @param key cache key
+     */
+    synchronized void remove(CacheKey key)
+    {
+        for (ValueKind kind : ValueKind.values()) {
+            release(index.remove(new TierKey(key, kind)));
+        }
+    }
+
+    synchronized void remove(CacheKey key, ValueKind kind)
+    {
+        release(index.remove(new TierKey(key, kind)));
+    }
+
+    synchronized void clear()
+    {
+        for (Block block : index.values()) {
+            release(block);
+        }
+        index.clear();
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return values not stored, too large or no room left without evicting the values of other slabs
+     */
+    public long getRejectionCount()
+    {
+        return rejections.get();
+    }
+
+    public synchronized int size()
+    {
+        return index.size();
+    }
+
+    /**
+     * @return bytes of the values stored
+     */
+    public synchronized long getStoredBytes()
+    {
+        return storedBytes;
+    }
+
+    /**
+     * @return direct memory allocated for the slabs
+     */
+    public synchronized long getAllocatedBytes()
+    {
+        return (long) slabCount * slabSize;
+    }
+
+    public long getBudget()
+    {
+        return (long) maxSlabs * slabSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OffHeapTier[size=" + size() + ", stored=" + getStoredBytes() + ", allocated=" + getAllocatedBytes()
+                + ", budget=" + getBudget() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", rejections=" + getRejectionCount() + "]";
+    }
+
+    private int allocate(int sizeClass)
+    {
+        IntStack free = freeChunks[sizeClass];
+        if (free.isEmpty() && slabCount < maxSlabs) {
+            assign(slabCount++, sizeClass);
+        }
+        if (free.isEmpty()) {
+            evictFor(sizeClass);
+        }
+        return free.isEmpty() ? -1 : free.pop();
+    }
+
+    /**
+     * Evicts the least recently used value of the size class, or empties the slab of the least recently used
+     * value and gives it to the size class
+     *
+     * @param sizeClass size class short of chunks
+     */
+    private void evictFor(int sizeClass)
+    {
+        for (Iterator<Block> it = index.values().iterator(); it.hasNext();) {
+            Block block = it.next();
+            if (block.sizeClass == sizeClass) {
+                it.remove();
+                release(block);
+                evictions.incrementAndGet();
+                return;
+            }
+        }
+
+        Iterator<Block> eldest = index.values().iterator();
+        if (!eldest.hasNext()) {
+            return;
+        }
+
+        int slab = eldest.next().chunk >>> CHUNK_BITS;
+        for (Iterator<Block> it = index.values().iterator(); it.hasNext();) {
+            Block block = it.next();
+            if (block.chunk >>> CHUNK_BITS == slab) {
+                it.remove();
+                storedBytes -= block.length;
+                evictions.incrementAndGet();
+            }
+        }
+        freeChunks[slabClasses[slab]].removeSlab(slab);
+        assign(slab, sizeClass);
+    }
+
+    private void assign(int slab, int sizeClass)
+    {
+        if (slabs[slab] == null) {
+            slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+        }
+        slabClasses[slab] = sizeClass;
+
+        int chunks = slabSize / chunkSize(sizeClass);
+        IntStack free = freeChunks[sizeClass];
+        for (int i = chunks - 1; i >= 0; i--) {
+            free.push((slab << CHUNK_BITS) | i);
+        }
+    }
+
+    private void release(Block block)
+    {
+        if (block != null) {
+            freeChunks[block.sizeClass].push(block.chunk);
+            storedBytes -= block.length;
+        }
+    }
+
+    private int offset(int chunk)
+    {
+        return (chunk & ((1 << CHUNK_BITS) - 1)) * chunkSize(slabClasses[chunk >>> CHUNK_BITS]);
+    }
+
+    private static int chunkSize(int sizeClass)
+    {
+        return MIN_CHUNK_SIZE << sizeClass;
+    }
+
+    static int sizeClass(int length)
+    {
+        int sizeClass = 0;
+        while (chunkSize(sizeClass) < length) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    private static final class TierKey
+    {
+        final CacheKey key;
+        final ValueKind kind;
+
+        TierKey(CacheKey key, ValueKind kind)
+        {
+            this.key = key;
+            this.kind = kind;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * key.hashCode() + kind.ordinal();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof TierKey)) {
+                return false;
+            }
+            TierKey other = (TierKey) o;
+            return kind == other.kind && key.equals(other.key);
+        }
+    }
+
+    /**
+     * Chunk (slab index and chunk index in the slab) holding the value
+     */
+    private static final class Block
+    {
+        final int chunk;
+        final int length;
+        final int sizeClass;
+
+        Block(int chunk, int length, int sizeClass)
+        {
+            this.chunk = chunk;
+            this.length = length;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    /**
+     * Free chunks of one size class
+     */
+    private static final class IntStack
+    {
+        private int[] items = new int[16];
+        private int size;
+
+        boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        void push(int item)
+        {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        int pop()
+        {
+            return items[--size];
+        }
+
+        void removeSlab(int slab)
+        {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (items[i] >>> CHUNK_BITS != slab) {
+                    items[kept++] = items[i];
+                }
+            }
+            size = kept;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.cache;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.FacadeDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded read-through cache shared by the facades of one or more scopes.
+ * <p/>
+ * Entries are keyed by storage entity (name, id) plus prefixed property key and evicted in LRU order
+ * once either the entry count or the approximate weight (bytes) limit is exceeded. Every write through
+ * the cached facade invalidates the written key as well as the entity key listing.
+ * <p/>
+ * With the {@link OffHeapTier} the large text (including the serialized objects and properties) and data values
+ * are kept off the heap, the heap entry only marks them; the values evicted from the tier are loaded again.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     private static final StorageCache CACHE = new StorageCache(5000, 8 * 1024 * 1024);
+ *     ...
+ *     Scope&lt;String&gt; scope = new Scopes.Builder&lt;String&gt;(idProvider, deleteAll).withCache(CACHE).build();
+ * </pre>
+ */
+public class StorageCache implements FacadeDecorator
+{
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_MAX_WEIGHT = 16L * 1024 * 1024;
+
+    /**
+     * Marker for the cached <code>null</code> value
+     */
+    static final Object NULL = new Object();
+
+    /**
+     * Marker for the value kept by the off-heap tier
+     */
+    private static final Object OFF_HEAP = new Object();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final OffHeapTier offHeap;
+
+    private final LinkedHashMap<CacheKey, CacheEntry> entries = new LinkedHashMap<CacheKey, CacheEntry>(64, 0.75f, true);
+    private long weight;
+
+    /**
+     * Cached keys (the key listing included) per entity, keyed by the entity key listing
+     */
+    private final Map<CacheKey, Set<CacheKey>> entityKeys = new HashMap<CacheKey, Set<CacheKey>>();
+
+    /**
+     * Bumped on every invalidation. Guarded by this for writes.
+     */
+    private volatile long generation;
+
+    /**
+     * Generation of the latest invalidation per entity, keyed by the entity key listing and kept in the
+     * invalidation order. Values of the entity loaded before it was invalidated are not cached.
+     */
+    private final LinkedHashMap<CacheKey, Long> invalidations = new LinkedHashMap<CacheKey, Long>();
+
+    /**
+     * Latest generation forgotten from {@link #invalidations}, stands for the entities not tracked there
+     */
+    private long floor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public StorageCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+    }
+
+    public StorageCache(int maxEntries, long maxWeight)
+    {
+        this(maxEntries, maxWeight, null);
+    }
+
+    /**
+     * @param maxEntries max cached keys
+     * @param maxWeight  max approximate heap footprint in bytes
+     * @param offHeap    off-heap tier for the large text and data values, <code>null</code> for none
+     */
+    public StorageCache(int maxEntries, long maxWeight, OffHeapTier offHeap)
+    {
+        Assertions.stateTrue("maxEntries should be positive", maxEntries > 0);
+        Assertions.stateTrue("maxWeight should be positive", maxWeight > 0);
+
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.offHeap = offHeap;
+    }
+
+    public StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade)
+    {
+        return new CachingStorageFacadeImpl(instanceId, bridge, facade, this);
+    }
+
+    public synchronized void invalidate(InstanceId instanceId)
+    {
+        CacheKey entity = CacheKey.listing(instanceId);
+        invalidated(entity);
+
+        Set<CacheKey> keys = entityKeys.remove(entity);
+        if (keys != null) {
+            for (CacheKey key : keys) {
+                CacheEntry entry = entries.remove(key);
+                weight -= entry.weight;
+                release(key, entry);
+            }
+        }
+    }
+
+    public synchronized void invalidateAll()
+    {
+        floor = ++generation;
+        invalidations.clear();
+        entries.clear();
+        entityKeys.clear();
+        weight = 0;
+        if (offHeap != null) {
+            offHeap.clear();
+        }
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    public double getHitRate()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * @return off-heap tier, <code>null</code> if none
+     */
+    public OffHeapTier getOffHeapTier()
+    {
+        return offHeap;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StorageCache[size=" + size() + ", weight=" + getWeight() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + (offHeap == null ? "" : ", offHeap=" + offHeap) + "]";
+    }
+
+    /**
+     * @return generation to take before loading a value, see {@link #put(CacheKey, ValueKind, Object, long)}
+     */
+    long generation()
+    {
+        return generation;
+    }
+
+    /**
+     * @param key  cache key
+     * @param kind value kind
+     * @return cached value, {@link #NULL} for the cached <code>null</code> or <code>null</code> if not cached
+     */
+    synchronized Object get(CacheKey key, ValueKind kind)
+    {
+        CacheEntry entry = entries.get(key);
+        Object value = entry == null ? null : entry.values[kind.ordinal()];
+
+        if (value == OFF_HEAP) {
+            value = fromOffHeap(key, kind, entry);
+        }
+
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return value;
+    }
+
+    /**
+     * Caches the value unless its entity was invalidated since <code>stamp</code> was taken
+     *
+     * @param key   cache key
+     * @param kind  value kind
+     * @param value value loaded
+     * @param stamp {@link #generation()} taken before the value was loaded
+     */
+    synchronized void put(CacheKey key, ValueKind kind, Object value, long stamp)
+    {
+        CacheKey entity = key.entity();
+        Long invalidated = invalidations.get(entity);
+        if (stamp < (invalidated == null ? floor : invalidated)) {
+            return;
+        }
+
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            entry = new CacheEntry(key.weight());
+            entries.put(key, entry);
+            weight += entry.weight;
+
+            Set<CacheKey> keys = entityKeys.get(entity);
+            if (keys == null) {
+                keys = new HashSet<CacheKey>();
+                entityKeys.put(entity, keys);
+            }
+            keys.add(key);
+        }
+
+        int slot = kind.ordinal();
+        Object cached = value == null ? NULL : value;
+        if (offHeap != null && (kind == ValueKind.TEXT || kind == ValueKind.DATA) && value != null) {
+            byte[] bytes = kind == ValueKind.TEXT ? ((String) value).getBytes(UTF8) : (byte[]) value;
+            if (offHeap.accepts(bytes.length) && offHeap.put(key, kind, bytes)) {
+                cached = OFF_HEAP;
+            }
+        }
+
+        if (entry.values[slot] == OFF_HEAP && cached != OFF_HEAP) {
+            offHeap.remove(key, kind);
+        }
+
+        int delta = weigh(cached) - weigh(entry.values[slot]);
+        entry.values[slot] = cached;
+        entry.weight += delta;
+        weight += delta;
+
+        evict();
+    }
+
+    private Object fromOffHeap(CacheKey key, ValueKind kind, CacheEntry entry)
+    {
+        byte[] bytes = offHeap.get(key, kind);
+        if (bytes == null) {
+            // evicted by the tier
+            entry.values[kind.ordinal()] = null;
+            return null;
+        }
+        return kind == ValueKind.TEXT ? new String(bytes, UTF8) : bytes;
+    }
+
+    /**
+     * Drops the cached values of the key together with the entity key listing
+     *
+     * @param key     written key
+     * @param listing entity key listing
+     */
+    synchronized void invalidate(CacheKey key, CacheKey listing)
+    {
+        invalidated(listing);
+        discard(key);
+        discard(listing);
+    }
+
+    /**
+     * Records the invalidation of the entity, forgetting the least recently invalidated entity over the limit
+     *
+     * @param entity entity key listing
+     */
+    private void invalidated(CacheKey entity)
+    {
+        invalidations.remove(entity);
+        invalidations.put(entity, ++generation);
+
+        if (invalidations.size() > maxEntries) {
+            Iterator<Long> it = invalidations.values().iterator();
+            floor = Math.max(floor, it.next());
+            it.remove();
+        }
+    }
+
+    private void discard(CacheKey key)
+    {
+        CacheEntry entry = entries.remove(key);
+        if (entry != null) {
+            weight -= entry.weight;
+            unindex(key);
+            release(key, entry);
+        }
+    }
+
+    private void unindex(CacheKey key)
+    {
+        CacheKey entity = key.entity();
+        Set<CacheKey> keys = entityKeys.get(entity);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            entityKeys.remove(entity);
+        }
+    }
+
+    private void evict()
+    {
+        Iterator<Map.Entry<CacheKey, CacheEntry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            Map.Entry<CacheKey, CacheEntry> eldest = it.next();
+            weight -= eldest.getValue().weight;
+            it.remove();
+            unindex(eldest.getKey());
+            release(eldest.getKey(), eldest.getValue());
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void release(CacheKey key, CacheEntry entry)
+    {
+        if (offHeap != null && (entry.values[ValueKind.TEXT.ordinal()] == OFF_HEAP
+                || entry.values[ValueKind.DATA.ordinal()] == OFF_HEAP)) {
+            offHeap.remove(key);
+        }
+    }
+
+    /**
+     * @param value cached value
+     * @return approximate heap footprint in bytes
+     */
+    static int weigh(Object value)
+    {
+        if (value == null || value == NULL || value == OFF_HEAP) {
+            return 0;
+        }
+
+        if (value instanceof String) {
+            return 40 + 2 * ((String) value).length();
+        }
+
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+
+        if (value instanceof DecodedValue) {
+            return 16 + weigh(((DecodedValue) value).value);
+        }
+
+        if (value instanceof Collection) {
+            int w = 40;
+            for (Object o : (Collection) value) {
+                w += 8 + weigh(o);
+            }
+            return w;
+        }
+
+        return 32;
+    }
+
+    private static final class CacheEntry
+    {
+        final Object[] values = new Object[ValueKind.COUNT];
+        int weight;
+
+        CacheEntry(int weight)
+        {
+            this.weight = weight;
+        }
+    }
+}
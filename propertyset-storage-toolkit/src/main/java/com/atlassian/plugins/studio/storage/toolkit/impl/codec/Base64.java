@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.codec;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+
+/**
+ * Base64 (RFC 4648, padded, no line breaks), the encoded values end up in the text column.
+ */
+final class Base64
+{
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] INDEX = new int[128];
+
+    static {
+        java.util.Arrays.fill(INDEX, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            INDEX[ALPHABET[i]] = i;
+        }
+    }
+
+    private Base64()
+    {
+    }
+
+    static String encode(byte[] data, int offset, int length)
+    {
+        char[] out = new char[(length + 2) / 3 * 4];
+        int o = 0;
+        int end = offset + length;
+        int i = offset;
+
+        for (; i + 2 < end; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET[bits & 0x3f];
+        }
+
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : '=';
+            out[o] = '=';
+        }
+
+        return new String(out);
+    }
+
+    static byte[] decode(String text) throws StorageException
+    {
+        int length = text.length();
+        if (length % 4 != 0) {
+            throw new StorageException("Malformed base64 value");
+        }
+
+        int padding = length == 0 ? 0 : (text.charAt(length - 1) == '=' ? (text.charAt(length - 2) == '=' ? 2 : 1) : 0);
+        byte[] out = new byte[length / 4 * 3 - padding];
+        int o = 0;
+
+        for (int i = 0; i < length; i += 4) {
+            int bits = value(text, i) << 18 | value(text, i + 1) << 12 | value(text, i + 2) << 6 | value(text, i + 3);
+            out[o++] = (byte) (bits >>> 16);
+            if (o < out.length) {
+                out[o++] = (byte) (bits >>> 8);
+            }
+            if (o < out.length) {
+                out[o++] = (byte) bits;
+            }
+        }
+
+        return out;
+    }
+
+    private static int value(String text, int index) throws StorageException
+    {
+        char c = text.charAt(index);
+        if (c == '=') {
+            return 0;
+        }
+
+        int value = c < 128 ? INDEX[c] : -1;
+        if (value < 0) {
+            throw new StorageException("Malformed base64 value");
+        }
+        return value;
+    }
+}
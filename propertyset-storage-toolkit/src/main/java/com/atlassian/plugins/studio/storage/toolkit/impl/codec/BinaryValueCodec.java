@@ -0,0 +1,686 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.codec;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.XStreamSerializer;
+import com.google.common.base.Supplier;
+import com.thoughtworks.xstream.XStream;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact binary value format, base64 encoded to fit the text column.
+ * <p/>
+ * Covers the primitive wrappers, strings, dates, big numbers, enums, the standard <code>java.util</code>
+ * collections, {@link Properties} and the bean style DTOs (public no-arg constructor, every field exposed as
+ * read/write property). Anything else is embedded as XStream XML, so every value XStream handles is handled
+ * here as well.
+ * <p/>
+ * The payload starts with the format version byte. Collections, maps and beans met again within the value,
+ * cycles included, are written as back references, so the shared instances stay shared.
+ */
+public class BinaryValueCodec implements ValueCodec
+{
+    public static final String FORMAT_TAG = "bin";
+
+    static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int T_NULL = 0;
+    private static final int T_TRUE = 1;
+    private static final int T_FALSE = 2;
+    private static final int T_BYTE = 3;
+    private static final int T_SHORT = 4;
+    private static final int T_INT = 5;
+    private static final int T_LONG = 6;
+    private static final int T_FLOAT = 7;
+    private static final int T_DOUBLE = 8;
+    private static final int T_CHAR = 9;
+    private static final int T_STRING = 10;
+    private static final int T_BYTES = 11;
+    private static final int T_DATE = 12;
+    private static final int T_DECIMAL = 13;
+    private static final int T_BIG_INTEGER = 14;
+    private static final int T_LIST = 15;
+    private static final int T_SET = 16;
+    private static final int T_LINKED_SET = 17;
+    private static final int T_SORTED_SET = 18;
+    private static final int T_MAP = 19;
+    private static final int T_LINKED_MAP = 20;
+    private static final int T_SORTED_MAP = 21;
+    private static final int T_PROPERTIES = 22;
+    private static final int T_ENUM = 23;
+    private static final int T_BEAN = 24;
+    private static final int T_XSTREAM = 25;
+    private static final int T_REFERENCE = 26;
+
+    private static final BeanDescriptor NOT_A_BEAN = new BeanDescriptor(null, null, null);
+
+    private final ConcurrentMap<Class<?>, BeanDescriptor> beans = new ConcurrentHashMap<Class<?>, BeanDescriptor>();
+    private final XStreamSerializer fallback;
+    private final ClassLoader classLoader;
+
+    public BinaryValueCodec()
+    {
+        this(new XStreamSerializer(new Supplier<XStream>()
+        {
+            public XStream get()
+            {
+                return new XStream();
+            }
+        }), null);
+    }
+
+    /**
+     * @param fallback    serializer for the values which are not covered by the binary format
+     * @param classLoader class loader to resolve enums and beans, <code>null</code> for the context class loader
+     */
+    public BinaryValueCodec(XStreamSerializer fallback, ClassLoader classLoader)
+    {
+        this.fallback = fallback;
+        this.classLoader = classLoader;
+    }
+
+    public String getFormatTag()
+    {
+        return FORMAT_TAG;
+    }
+
+    public String encode(Object value) throws StorageException
+    {
+        Output out = new Output();
+        out.writeByte(VERSION);
+        write(out, value);
+        return Base64.encode(out.buffer, 0, out.size);
+    }
+
+    public Object decode(String encoded) throws StorageException
+    {
+        Input in = new Input(Base64.decode(encoded));
+        try {
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new StorageException("Unsupported binary value version: " + version);
+            }
+
+            return read(in);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new StorageException("Truncated binary value", e);
+        }
+    }
+
+    private void write(Output out, Object value) throws StorageException
+    {
+        if (value == null) {
+            out.writeByte(T_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(T_STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? T_TRUE : T_FALSE);
+        } else if (value instanceof Long) {
+            out.writeByte(T_LONG);
+            out.writeVarLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(T_INT);
+            out.writeVarLong((Integer) value);
+        } else if (value instanceof Short) {
+            out.writeByte(T_SHORT);
+            out.writeVarLong((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(T_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Double) {
+            out.writeByte(T_DOUBLE);
+            out.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Float) {
+            out.writeByte(T_FLOAT);
+            out.writeFixedLong(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Character) {
+            out.writeByte(T_CHAR);
+            out.writeVarLong((Character) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(T_BYTES);
+            out.writeBytes((byte[]) value);
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(T_DATE);
+            out.writeVarLong(((Date) value).getTime());
+        } else if (value.getClass() == BigDecimal.class) {
+            out.writeByte(T_DECIMAL);
+            out.writeVarLong(((BigDecimal) value).scale());
+            out.writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (value.getClass() == BigInteger.class) {
+            out.writeByte(T_BIG_INTEGER);
+            out.writeBytes(((BigInteger) value).toByteArray());
+        } else if (value.getClass() == ArrayList.class) {
+            writeCollection(out, T_LIST, (Collection<?>) value);
+        } else if (value.getClass() == HashSet.class) {
+            writeCollection(out, T_SET, (Collection<?>) value);
+        } else if (value.getClass() == LinkedHashSet.class) {
+            writeCollection(out, T_LINKED_SET, (Collection<?>) value);
+        } else if (value.getClass() == TreeSet.class && ((TreeSet<?>) value).comparator() == null) {
+            writeCollection(out, T_SORTED_SET, (Collection<?>) value);
+        } else if (value.getClass() == HashMap.class) {
+            writeMap(out, T_MAP, (Map<?, ?>) value);
+        } else if (value.getClass() == LinkedHashMap.class) {
+            writeMap(out, T_LINKED_MAP, (Map<?, ?>) value);
+        } else if (value.getClass() == TreeMap.class && ((TreeMap<?, ?>) value).comparator() == null) {
+            writeMap(out, T_SORTED_MAP, (Map<?, ?>) value);
+        } else if (value.getClass() == Properties.class
+                && ((Properties) value).stringPropertyNames().size() == ((Properties) value).size()) {
+            // no defaults and only string entries
+            writeMap(out, T_PROPERTIES, (Map<?, ?>) value);
+        } else if (value instanceof Enum) {
+            out.writeByte(T_ENUM);
+            out.writeClassName(((Enum<?>) value).getDeclaringClass().getName());
+            out.writeString(((Enum<?>) value).name());
+        } else {
+            BeanDescriptor bean = describe(value.getClass());
+            if (bean != NOT_A_BEAN) {
+                writeBean(out, bean, value);
+            } else {
+                out.writeByte(T_XSTREAM);
+                out.writeString(fallback.toXML(value));
+            }
+        }
+    }
+
+    private void writeCollection(Output out, int type, Collection<?> values) throws StorageException
+    {
+        if (out.writeReference(values)) {
+            return;
+        }
+        out.writeByte(type);
+        out.writeVarLong(values.size());
+        for (Object value : values) {
+            write(out, value);
+        }
+    }
+
+    private void writeMap(Output out, int type, Map<?, ?> values) throws StorageException
+    {
+        if (out.writeReference(values)) {
+            return;
+        }
+        out.writeByte(type);
+        out.writeVarLong(values.size());
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            write(out, entry.getKey());
+            write(out, entry.getValue());
+        }
+    }
+
+    private void writeBean(Output out, BeanDescriptor bean, Object value) throws StorageException
+    {
+        if (out.writeReference(value)) {
+            return;
+        }
+        out.writeByte(T_BEAN);
+        out.writeClassName(value.getClass().getName());
+        out.writeVarLong(bean.names.length);
+        for (int i = 0; i < bean.names.length; i++) {
+            out.writeString(bean.names[i]);
+            try {
+                write(out, bean.getters[i].invoke(value));
+            } catch (Exception e) {
+                throw new StorageException("Unable to read bean property " + bean.names[i], e);
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private Object read(Input in) throws StorageException
+    {
+        int type = in.readByte();
+        switch (type) {
+            case T_NULL:
+                return null;
+            case T_TRUE:
+                return Boolean.TRUE;
+            case T_FALSE:
+                return Boolean.FALSE;
+            case T_BYTE:
+                return (byte) in.readByte();
+            case T_SHORT:
+                return (short) in.readVarLong();
+            case T_INT:
+                return (int) in.readVarLong();
+            case T_LONG:
+                return in.readVarLong();
+            case T_FLOAT:
+                return Float.intBitsToFloat((int) in.readFixedLong());
+            case T_DOUBLE:
+                return Double.longBitsToDouble(in.readFixedLong());
+            case T_CHAR:
+                return (char) in.readVarLong();
+            case T_STRING:
+                return in.readString();
+            case T_BYTES:
+                return in.readBytes();
+            case T_DATE:
+                return new Date(in.readVarLong());
+            case T_DECIMAL:
+                int scale = (int) in.readVarLong();
+                return new BigDecimal(new BigInteger(in.readBytes()), scale);
+            case T_BIG_INTEGER:
+                return new BigInteger(in.readBytes());
+            case T_LIST:
+                return readCollection(in, new ArrayList<Object>());
+            case T_SET:
+                return readCollection(in, new HashSet<Object>());
+            case T_LINKED_SET:
+                return readCollection(in, new LinkedHashSet<Object>());
+            case T_SORTED_SET:
+                return readCollection(in, new TreeSet<Object>());
+            case T_MAP:
+                return readMap(in, new HashMap<Object, Object>());
+            case T_LINKED_MAP:
+                return readMap(in, new LinkedHashMap<Object, Object>());
+            case T_SORTED_MAP:
+                return readMap(in, new TreeMap<Object, Object>());
+            case T_PROPERTIES:
+                return readMap(in, new Properties());
+            case T_ENUM:
+                Class enumClass = resolve(in.readClassName());
+                return Enum.valueOf(enumClass, in.readString());
+            case T_BEAN:
+                return readBean(in);
+            case T_XSTREAM:
+                return fallback.fromXML(in.readString());
+            case T_REFERENCE:
+                return in.readReference();
+            default:
+                throw new StorageException("Unknown binary value type: " + type);
+        }
+    }
+
+    private Object readCollection(Input in, Collection<Object> values) throws StorageException
+    {
+        in.referenced(values);
+        for (long i = in.readVarLong(); i > 0; i--) {
+            values.add(read(in));
+        }
+        return values;
+    }
+
+    private Object readMap(Input in, Map<Object, Object> values) throws StorageException
+    {
+        in.referenced(values);
+        for (long i = in.readVarLong(); i > 0; i--) {
+            Object key = read(in);
+            values.put(key, read(in));
+        }
+        return values;
+    }
+
+    private Object readBean(Input in) throws StorageException
+    {
+        Class<?> clazz = resolve(in.readClassName());
+        BeanDescriptor bean = describe(clazz);
+        if (bean == NOT_A_BEAN) {
+            throw new StorageException("Class is not a bean anymore: " + clazz.getName());
+        }
+
+        Object instance;
+        try {
+            instance = bean.constructor.newInstance();
+        } catch (Exception e) {
+            throw new StorageException("Unable to instantiate " + clazz.getName(), e);
+        }
+        in.referenced(instance);
+
+        for (long i = in.readVarLong(); i > 0; i--) {
+            String name = in.readString();
+            Object value = read(in);
+            Method setter = bean.setter(name);
+            if (setter != null) { // properties removed since the value was written are skipped
+                try {
+                    setter.invoke(instance, value);
+                } catch (Exception e) {
+                    throw new StorageException("Unable to set bean property " + name, e);
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    private Class<?> resolve(String className) throws StorageException
+    {
+        ClassLoader loader = classLoader;
+        if (loader == null) {
+            loader = Thread.currentThread().getContextClassLoader();
+        }
+        if (loader == null) {
+            loader = BinaryValueCodec.class.getClassLoader();
+        }
+
+        try {
+            return Class.forName(className, true, loader);
+        } catch (ClassNotFoundException e) {
+            throw new StorageException("Unable to load class " + className, e);
+        }
+    }
+
+    private BeanDescriptor describe(Class<?> clazz)
+    {
+        BeanDescriptor bean = beans.get(clazz);
+        if (bean == null) {
+            bean = BeanDescriptor.of(clazz);
+            beans.putIfAbsent(clazz, bean);
+        }
+        return bean;
+    }
+
+    /**
+     * Introspection result, cached per class.
+     */
+    private static class BeanDescriptor
+    {
+        private final Constructor<?> constructor;
+        private final String[] names;
+        private final Method[] getters;
+        private final Map<String, Method> setters;
+
+        private BeanDescriptor(Constructor<?> constructor, List<PropertyDescriptor> properties, Map<String, Method> setters)
+        {
+            this.constructor = constructor;
+            this.setters = setters;
+            if (properties == null) {
+                this.names = null;
+                this.getters = null;
+            } else {
+                this.names = new String[properties.size()];
+                this.getters = new Method[properties.size()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = properties.get(i).getName();
+                    getters[i] = properties.get(i).getReadMethod();
+                }
+            }
+        }
+
+        Method setter(String name)
+        {
+            return setters.get(name);
+        }
+
+        static BeanDescriptor of(Class<?> clazz)
+        {
+            if (clazz.isArray() || clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())
+                    || clazz.getName().startsWith("java.") || clazz.getName().startsWith("javax.")) {
+                return NOT_A_BEAN;
+            }
+
+            try {
+                Constructor<?> constructor = clazz.getDeclaredConstructor();
+                constructor.setAccessible(true);
+
+                List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+                Map<String, Method> setters = new HashMap<String, Method>();
+                for (PropertyDescriptor property : Introspector.getBeanInfo(clazz, Object.class).getPropertyDescriptors()) {
+                    if (property.getReadMethod() != null && property.getWriteMethod() != null) {
+                        property.getReadMethod().setAccessible(true);
+                        property.getWriteMethod().setAccessible(true);
+                        properties.add(property);
+                        setters.put(property.getName(), property.getWriteMethod());
+                    }
+                }
+
+                // the state not reachable through the properties would be silently lost
+                for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()
+                                && !setters.containsKey(field.getName())) {
+                            return NOT_A_BEAN;
+                        }
+                    }
+                }
+
+                return new BeanDescriptor(constructor, properties, setters);
+            } catch (NoSuchMethodException e) {
+                return NOT_A_BEAN;
+            } catch (IntrospectionException e) {
+                return NOT_A_BEAN;
+            } catch (SecurityException e) {
+                return NOT_A_BEAN;
+            }
+        }
+    }
+
+    private static class Output
+    {
+        private byte[] buffer = new byte[64];
+        private int size;
+        private Map<String, Integer> classNames;
+        private Map<Object, Integer> references;
+
+        private void ensure(int extra)
+        {
+            if (size + extra > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length << 1, size + extra)];
+                System.arraycopy(buffer, 0, grown, 0, size);
+                buffer = grown;
+            }
+        }
+
+        void writeByte(int value)
+        {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value)
+        {
+            ensure(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[size++] = (byte) zigzag;
+        }
+
+        void writeFixedLong(long value)
+        {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeBytes(byte[] value)
+        {
+            writeVarLong(value.length);
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, size, value.length);
+            size += value.length;
+        }
+
+        void writeString(String value)
+        {
+            writeBytes(value.getBytes(UTF8));
+        }
+
+        /**
+         * Writes the back reference if the instance is written already, remembers it otherwise
+         *
+         * @param value collection, map or bean
+         * @return whether the back reference is written
+         */
+        boolean writeReference(Object value)
+        {
+            if (references == null) {
+                references = new IdentityHashMap<Object, Integer>();
+            }
+
+            Integer index = references.get(value);
+            if (index == null) {
+                references.put(value, references.size());
+                return false;
+            }
+            writeByte(T_REFERENCE);
+            writeVarLong(index);
+            return true;
+        }
+
+        /**
+         * Class names are written once per value, repeated ones are replaced by the back reference
+         */
+        void writeClassName(String className)
+        {
+            if (classNames == null) {
+                classNames = new HashMap<String, Integer>();
+            }
+
+            Integer index = classNames.get(className);
+            if (index == null) {
+                classNames.put(className, classNames.size() + 1);
+                writeVarLong(0);
+                writeString(className);
+            } else {
+                writeVarLong(index);
+            }
+        }
+    }
+
+    private static class Input
+    {
+        private final byte[] buffer;
+        private int position;
+        private List<String> classNames;
+        private List<Object> references;
+
+        Input(byte[] buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        int readByte()
+        {
+            return buffer[position++];
+        }
+
+        long readVarLong() throws StorageException
+        {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new StorageException("Malformed binary value");
+        }
+
+        long readFixedLong()
+        {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        byte[] readBytes() throws StorageException
+        {
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > buffer.length) {
+                throw new StorageException("Malformed binary value");
+            }
+            byte[] value = new byte[length];
+            System.arraycopy(buffer, position, value, 0, length);
+            position += length;
+            return value;
+        }
+
+        String readString() throws StorageException
+        {
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > buffer.length) {
+                throw new StorageException("Malformed binary value");
+            }
+            String value = new String(buffer, position, length, UTF8);
+            position += length;
+            return value;
+        }
+
+        void referenced(Object value)
+        {
+            if (references == null) {
+                references = new ArrayList<Object>();
+            }
+            references.add(value);
+        }
+
+        Object readReference() throws StorageException
+        {
+            int index = (int) readVarLong();
+            if (references == null || index < 0 || index >= references.size()) {
+                throw new StorageException("Malformed binary value");
+            }
+            return references.get(index);
+        }
+
+        String readClassName() throws StorageException
+        {
+            if (classNames == null) {
+                classNames = new ArrayList<String>();
+            }
+
+            int index = (int) readVarLong();
+            if (index == 0) {
+                String className = readString();
+                classNames.add(className);
+                return className;
+            }
+            if (index < 0 || index > classNames.size()) {
+                throw new StorageException("Malformed binary value");
+            }
+            return classNames.get(index - 1);
+        }
+    }
+}
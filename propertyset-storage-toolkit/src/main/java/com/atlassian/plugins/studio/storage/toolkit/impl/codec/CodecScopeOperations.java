@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.codec;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+
+/**
+ * Writes the objects using the given {@link ValueCodec}.
+ * <p/>
+ * Reads any registered tagged format, the untagged (XStream XML) values are handed to the wrapped operations.
+ */
+public class CodecScopeOperations extends ForwardingScopeOperations
+{
+    private final ValueCodec codec;
+
+    public CodecScopeOperations(ScopeOperations delegate, ValueCodec codec)
+    {
+        super(delegate);
+        this.codec = Assertions.notNull("Codec is null", codec);
+        if (ValueCodecs.getCodec(codec.getFormatTag()) == null) {
+            ValueCodecs.register(codec);
+        }
+    }
+
+    public ValueCodec getCodec()
+    {
+        return codec;
+    }
+
+    @Override
+    public String serialize(Object instance) throws StorageException
+    {
+        return ValueCodecs.encode(codec, instance);
+    }
+
+    @Override
+    public Object deserialize(String input) throws StorageException
+    {
+        if (ValueCodecs.isTagged(input)) {
+            return ValueCodecs.decodeTagged(input);
+        }
+        return super.deserialize(input);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.codec;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+
+import java.util.Arrays;
+
+/**
+ * LZF compression: byte oriented LZ77 with an 8K window, trading the ratio for the speed.
+ * <p/>
+ * The output is a sequence of the literal runs (control byte below 32, run length minus one) and the back
+ * references (3 bits of length minus two, or 7 followed by the extra length byte, and 13 bits of distance minus one).
+ */
+final class Lzf
+{
+    private static final int HASH_BITS = 14;
+    private static final int MAX_LITERAL = 32;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_REFERENCE = (1 << 8) + (1 << 3);
+
+    private Lzf()
+    {
+    }
+
+    /**
+     * @param input input
+     * @return compressed input, might be longer than the input
+     */
+    static byte[] compress(byte[] input)
+    {
+        int length = input.length;
+        byte[] output = new byte[length + length / MAX_LITERAL + 16];
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+
+        int in = 0;
+        int out = 0;
+        // position of the control byte of the current literal run
+        int control = out++;
+        int literals = 0;
+
+        while (in < length) {
+            int reference = -1;
+            int hash = 0;
+            if (in < length - 2) {
+                hash = hash(input, in);
+                reference = table[hash];
+                table[hash] = in;
+            }
+
+            int distance = in - reference - 1;
+            if (reference >= 0 && distance < MAX_OFFSET
+                    && input[reference] == input[in]
+                    && input[reference + 1] == input[in + 1]
+                    && input[reference + 2] == input[in + 2]) {
+                int max = Math.min(MAX_REFERENCE, length - in);
+                int matched = 3;
+                while (matched < max && input[reference + matched] == input[in + matched]) {
+                    matched++;
+                }
+
+                if (literals > 0) {
+                    output[control] = (byte) (literals - 1);
+                } else {
+                    out = control;
+                }
+
+                int encoded = matched - 2;
+                if (encoded < 7) {
+                    output[out++] = (byte) ((encoded << 5) | (distance >>> 8));
+                } else {
+                    output[out++] = (byte) ((7 << 5) | (distance >>> 8));
+                    output[out++] = (byte) (encoded - 7);
+                }
+                output[out++] = (byte) distance;
+
+                control = out++;
+                literals = 0;
+
+                int end = in + matched;
+                for (in++; in < end && in < length - 2; in++) {
+                    table[hash(input, in)] = in;
+                }
+                in = end;
+            } else {
+                output[out++] = input[in++];
+                if (++literals == MAX_LITERAL) {
+                    output[control] = (byte) (MAX_LITERAL - 1);
+                    control = out++;
+                    literals = 0;
+                }
+            }
+        }
+
+        if (literals > 0) {
+            output[control] = (byte) (literals - 1);
+        } else {
+            out = control;
+        }
+        return Arrays.copyOf(output, out);
+    }
+
+    /**
+     * @param input  compressed input
+     * @param length uncompressed length
+     * @return uncompressed input
+     * @throws StorageException corrupted input
+     */
+    static byte[] decompress(byte[] input, int length) throws StorageException
+    {
+        byte[] output = new byte[length];
+        int in = 0;
+        int out = 0;
+        try {
+            while (in < input.length) {
+                int control = input[in++] & 0xff;
+                if (control < MAX_LITERAL) {
+                    System.arraycopy(input, in, output, out, control + 1);
+                    in += control + 1;
+                    out += control + 1;
+                } else {
+                    int matched = control >>> 5;
+                    if (matched == 7) {
+                        matched += input[in++] & 0xff;
+                    }
+                    matched += 2;
+                    int reference = out - (((control & 0x1f) << 8) | (input[in++] & 0xff)) - 1;
+                    if (reference < 0) {
+                        throw new StorageException("Corrupted LZF input");
+                    }
+                    // overlapping copy repeats the bytes just written
+                    for (int i = 0; i < matched; i++) {
+                        output[out++] = output[reference + i];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new StorageException("Corrupted LZF input", e);
+        }
+
+        if (out != length) {
+            throw new StorageException("Corrupted LZF input, " + out + " bytes of " + length);
+        }
+        return output;
+    }
+
+    private static int hash(byte[] input, int in)
+    {
+        int value = ((input[in] & 0xff) << 16) | ((input[in + 1] & 0xff) << 8) | (input[in + 2] & 0xff);
+        return (value * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
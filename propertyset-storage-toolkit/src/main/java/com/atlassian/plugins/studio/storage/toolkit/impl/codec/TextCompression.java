@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.codec;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed text formats.
+ * <p/>
+ * Compressed text is stored as <code>#tag#</code> followed by the Base64 of the uncompressed UTF-8 length and the
+ * compressed bytes. The texts starting with the tag mark are stored {@link #escape(String) escaped}, so a text
+ * could never be taken for a compressed one; XStream XML and the codec formats never start with the reserved tags.
+ * The stored texts are read back by {@link #decode(String)}, the STRING values are neither escaped nor decoded.
+ * <p/>
+ * Only the scopes built with the compression escape and decode the texts. The texts stored before the scope
+ * compressed are read as stored unless they are well-formed compressed or escaped texts: the tagged texts which
+ * are not valid compressed payloads and the escape tag not followed by the tag mark are left as they are.
+ */
+public enum TextCompression
+{
+    /**
+     * LZF, fast with the moderate ratio
+     */
+    LZF("lzf")
+            {
+                byte[] compress(byte[] input)
+                {
+                    return Lzf.compress(input);
+                }
+
+                byte[] decompress(byte[] input, int length) throws StorageException
+                {
+                    return Lzf.decompress(input, length);
+                }
+            },
+
+    /**
+     * Deflate, better ratio for more CPU time
+     */
+    DEFLATE("zip")
+            {
+                byte[] compress(byte[] input)
+                {
+                    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                    try {
+                        deflater.setInput(input);
+                        deflater.finish();
+                        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 4 + 64);
+                        byte[] buffer = new byte[8192];
+                        while (!deflater.finished()) {
+                            output.write(buffer, 0, deflater.deflate(buffer));
+                        }
+                        return output.toByteArray();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+
+                byte[] decompress(byte[] input, int length) throws StorageException
+                {
+                    // nowrap streams need one extra byte to finish
+                    byte[] padded = new byte[input.length + 1];
+                    System.arraycopy(input, 0, padded, 0, input.length);
+
+                    Inflater inflater = new Inflater(true);
+                    try {
+                        inflater.setInput(padded);
+                        byte[] output = new byte[length];
+                        int inflated = 0;
+                        while (inflated < length && !inflater.finished()) {
+                            int count = inflater.inflate(output, inflated, length - inflated);
+                            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                                break;
+                            }
+                            inflated += count;
+                        }
+                        if (inflated != length) {
+                            throw new StorageException("Corrupted Deflate input, " + inflated + " bytes of " + length);
+                        }
+                        return output;
+                    } catch (DataFormatException e) {
+                        throw new StorageException("Corrupted Deflate input", e);
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String ESCAPE_TAG = "txt";
+    private static final String ESCAPE = ValueCodecs.TAG_MARK + ESCAPE_TAG + ValueCodecs.TAG_MARK;
+
+    /**
+     * Largest uncompressed to compressed size ratio of the formats, Deflate's
+     */
+    private static final int MAX_RATIO = 1032;
+
+    private final String prefix;
+
+    TextCompression(String tag)
+    {
+        this.prefix = ValueCodecs.TAG_MARK + tag + ValueCodecs.TAG_MARK;
+    }
+
+    abstract byte[] compress(byte[] input);
+
+    abstract byte[] decompress(byte[] input, int length) throws StorageException;
+
+    public String getFormatTag()
+    {
+        return prefix.substring(1, prefix.length() - 1);
+    }
+
+    /**
+     * @param text text to compress
+     * @return tagged compressed text, <code>null</code> if compression does not make it shorter
+     */
+    public String compress(String text)
+    {
+        byte[] bytes = text.getBytes(UTF8);
+        byte[] compressed = compress(bytes);
+
+        ByteBuffer payload = ByteBuffer.allocate(4 + compressed.length);
+        payload.putInt(bytes.length).put(compressed);
+        String encoded = Base64.encode(payload.array(), 0, payload.capacity());
+        if (prefix.length() + encoded.length() >= text.length()) {
+            return null;
+        }
+        return prefix + encoded;
+    }
+
+    /**
+     * @param text text to store, <code>null</code> allowed
+     * @return the text prefixed with the escape tag if it starts with the tag mark, the text itself otherwise
+     */
+    public static String escape(String text)
+    {
+        if (text == null || text.length() == 0 || text.charAt(0) != ValueCodecs.TAG_MARK) {
+            return text;
+        }
+        return ESCAPE + text;
+    }
+
+    /**
+     * Reads the stored text back, the stored text is expanded if compressed and unescaped
+     *
+     * @param stored stored text, <code>null</code> allowed
+     * @return text as written, the text as stored unless it is a well-formed compressed or escaped text
+     */
+    public static String decode(String stored)
+    {
+        String text = expand(stored);
+        if (text != null && text.length() > ESCAPE.length() && text.startsWith(ESCAPE)
+                && text.charAt(ESCAPE.length()) == ValueCodecs.TAG_MARK) {
+            return text.substring(ESCAPE.length());
+        }
+        return text;
+    }
+
+    /**
+     * @param formatTag format tag
+     * @return whether the tag is taken by the compression formats or the escape
+     */
+    public static boolean isReserved(String formatTag)
+    {
+        if (ESCAPE_TAG.equals(formatTag)) {
+            return true;
+        }
+        for (TextCompression compression : values()) {
+            if (compression.getFormatTag().equals(formatTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param stored stored text
+     * @return whether the text is compressed by any of the formats
+     */
+    public static boolean isCompressed(String stored)
+    {
+        return of(stored) != null;
+    }
+
+    /**
+     * @param stored stored text, <code>null</code> allowed
+     * @return uncompressed text, the text itself if it is not a valid compressed text
+     */
+    static String expand(String stored)
+    {
+        TextCompression compression = of(stored);
+        if (compression == null) {
+            return stored;
+        }
+
+        try {
+            byte[] payload = Base64.decode(stored.substring(compression.prefix.length()));
+            if (payload.length < 4) {
+                return stored;
+            }
+            int length = ByteBuffer.wrap(payload).getInt();
+            if (length < 0 || length > (long) (payload.length - 4) * MAX_RATIO) {
+                return stored;
+            }
+
+            byte[] compressed = new byte[payload.length - 4];
+            System.arraycopy(payload, 4, compressed, 0, compressed.length);
+            return new String(compression.decompress(compressed, length), UTF8);
+        } catch (StorageException e) {
+            // not a compressed text, stored before the scope compressed
+            return stored;
+        }
+    }
+
+    private static TextCompression of(String stored)
+    {
+        if (stored == null || stored.length() < 5 || stored.charAt(0) != ValueCodecs.TAG_MARK) {
+            return null;
+        }
+        for (TextCompression compression : values()) {
+            if (stored.startsWith(compression.prefix)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.codec;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+
+/**
+ * Value codec SPI, converts the objects to the text stored by <code>setObject</code>/<code>setProperties</code>
+ * and back.
+ * <p/>
+ * The encoded value is prefixed with the codec format tag (see {@link ValueCodecs}), which allows the values
+ * written by the different codecs, including the untagged XStream XML, to coexist in one scope.
+ */
+public interface ValueCodec
+{
+    /**
+     * @return format tag, unique among the registered codecs, letters and digits only
+     */
+    String getFormatTag();
+
+    /**
+     * @param value value to encode, never <code>null</code>
+     * @return encoded value, without the format tag
+     * @throws StorageException encoding failure
+     */
+    String encode(Object value) throws StorageException;
+
+    /**
+     * @param encoded encoded value, without the format tag
+     * @return decoded value
+     * @throws StorageException decoding failure
+     */
+    Object decode(String encoded) throws StorageException;
+}
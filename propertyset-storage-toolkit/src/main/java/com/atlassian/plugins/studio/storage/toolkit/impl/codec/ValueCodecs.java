@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.codec;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the tagged value formats.
+ * <p/>
+ * Tagged values are stored as <code>#tag#payload</code>. XStream XML always starts with <code>&lt;</code>, so
+ * the values written before the codecs were introduced are told apart and handled by the XStream fallback.
+ */
+public final class ValueCodecs
+{
+    static final char TAG_MARK = '#';
+
+    private static final ConcurrentMap<String, ValueCodec> CODECS = new ConcurrentHashMap<String, ValueCodec>();
+
+    static {
+        register(new BinaryValueCodec());
+    }
+
+    private ValueCodecs()
+    {
+    }
+
+    /**
+     * Registers codec, so the values written by it could be read by any scope
+     *
+     * @param codec value codec
+     */
+    public static void register(ValueCodec codec)
+    {
+        Assertions.notNull("Codec is null", codec);
+        Assertions.stateTrue("Codec format tag should be alphanumeric: " + codec.getFormatTag(),
+                StringUtils.isAlphanumeric(codec.getFormatTag()) && StringUtils.isNotEmpty(codec.getFormatTag()));
+        Assertions.stateTrue("Codec format tag is reserved by the text compression: " + codec.getFormatTag(),
+                !TextCompression.isReserved(codec.getFormatTag()));
+
+        CODECS.put(codec.getFormatTag(), codec);
+    }
+
+    public static ValueCodec getCodec(String formatTag)
+    {
+        return CODECS.get(formatTag);
+    }
+
+    /**
+     * @param codec codec to use
+     * @param value value to encode
+     * @return tagged encoded value, <code>null</code> for <code>null</code> value
+     * @throws StorageException encoding failure
+     */
+    public static String encode(ValueCodec codec, Object value) throws StorageException
+    {
+        if (value == null) {
+            return null;
+        }
+
+        String payload = codec.encode(value);
+        return new StringBuilder(payload.length() + codec.getFormatTag().length() + 2)
+                .append(TAG_MARK).append(codec.getFormatTag()).append(TAG_MARK)
+                .append(payload).toString();
+    }
+
+    /**
+     * @param stored stored text
+     * @return format tag or <code>null</code> for untagged (XStream XML) value
+     */
+    public static String getFormatTag(String stored)
+    {
+        int end = tagEnd(stored);
+        return end < 0 ? null : stored.substring(1, end);
+    }
+
+    public static boolean isTagged(String stored)
+    {
+        return tagEnd(stored) > 0;
+    }
+
+    /**
+     * @param stored tagged stored text
+     * @return decoded value
+     * @throws StorageException unknown format or decoding failure
+     */
+    public static Object decodeTagged(String stored) throws StorageException
+    {
+        int end = tagEnd(stored);
+        if (end < 0) {
+            throw new StorageException("Value is not tagged with the format");
+        }
+
+        String tag = stored.substring(1, end);
+        ValueCodec codec = CODECS.get(tag);
+        if (codec == null) {
+            throw new StorageException("Unsupported value format: " + tag);
+        }
+
+        return codec.decode(stored.substring(end + 1));
+    }
+
+    private static int tagEnd(String stored)
+    {
+        if (stored == null || stored.length() < 3 || stored.charAt(0) != TAG_MARK) {
+            return -1;
+        }
+
+        int end = stored.indexOf(TAG_MARK, 1);
+        return end > 1 ? end : -1;
+    }
+}
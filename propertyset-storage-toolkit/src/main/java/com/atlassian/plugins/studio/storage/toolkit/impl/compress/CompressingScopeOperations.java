@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.compress;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.TextCompression;
+
+/**
+ * Compresses the large texts, the serialized objects and properties included, as the scope facade stores them;
+ * escapes the texts written and decodes the texts read.
+ */
+class CompressingScopeOperations extends ForwardingScopeOperations
+{
+    private final ValueCompression compression;
+
+    CompressingScopeOperations(ScopeOperations delegate, ValueCompression compression)
+    {
+        super(delegate);
+        this.compression = compression;
+    }
+
+    @Override
+    public String compress(String text) throws StorageException
+    {
+        return compression.compress(text);
+    }
+
+    @Override
+    public String escape(String text)
+    {
+        return TextCompression.escape(text);
+    }
+
+    @Override
+    public String decodeText(InstanceId descriptor, String stored) throws StorageException
+    {
+        return compression.decode(stored);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.compress;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.TextCompression;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses the large text, object and properties values written through the scope facades.
+ * <p/>
+ * The values of at least <code>thresholdChars</code> characters are stored compressed, unless the compression does
+ * not make them shorter. The text reads of the scope detect the compressed values by their format tag, the values
+ * stored before the scope compressed stay readable, see {@link TextCompression}. The scopes built without the
+ * compression read the texts as stored: to stop compressing a scope keep reading its compressed values with the
+ * <code>Integer.MAX_VALUE</code> threshold. The values are compressed by the scope operations, below every
+ * decorator, so the decorators only see the uncompressed values. The scope metrics count the compressed texts read
+ * as the <code>bridge.expand</code> operation.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     Scope&lt;String&gt; scope = new Scopes.Builder&lt;String&gt;(idProvider, deleteAll).withCompression(new ValueCompression()).build();
+ * </pre>
+ */
+public class ValueCompression
+{
+    public static final int DEFAULT_THRESHOLD_CHARS = 4096;
+
+    private final TextCompression algorithm;
+    private final int thresholdChars;
+
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong charsIn = new AtomicLong();
+    private final AtomicLong charsOut = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong expanded = new AtomicLong();
+    private final AtomicLong expandNanos = new AtomicLong();
+
+    public ValueCompression()
+    {
+        this(TextCompression.LZF, DEFAULT_THRESHOLD_CHARS);
+    }
+
+    /**
+     * @param algorithm      compression format
+     * @param thresholdChars length of the smallest text compressed
+     */
+    public ValueCompression(TextCompression algorithm, int thresholdChars)
+    {
+        Assertions.notNull("Compression algorithm is null", algorithm);
+        Assertions.stateTrue("thresholdChars should be positive", thresholdChars > 0);
+        this.algorithm = algorithm;
+        this.thresholdChars = thresholdChars;
+    }
+
+    /**
+     * @param bridge scope operations
+     * @return scope operations compressing the large texts
+     */
+    public ScopeOperations instrument(ScopeOperations bridge)
+    {
+        return new CompressingScopeOperations(bridge, this);
+    }
+
+    /**
+     * @param text text to store, <code>null</code> allowed
+     * @return tagged compressed text, <code>null</code> if the text is small or not compressible
+     */
+    String compress(String text)
+    {
+        if (text == null || text.length() < thresholdChars) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        String result = algorithm.compress(text);
+        compressNanos.addAndGet(System.nanoTime() - start);
+
+        if (result == null) {
+            skipped.incrementAndGet();
+            return null;
+        }
+
+        compressed.incrementAndGet();
+        charsIn.addAndGet(text.length());
+        charsOut.addAndGet(result.length());
+        return result;
+    }
+
+    /**
+     * @param stored stored text, <code>null</code> allowed
+     * @return text as written, see {@link TextCompression#decode(String)}
+     */
+    String decode(String stored)
+    {
+        if (!TextCompression.isCompressed(stored)) {
+            return TextCompression.decode(stored);
+        }
+
+        long start = System.nanoTime();
+        String text = TextCompression.decode(stored);
+        expandNanos.addAndGet(System.nanoTime() - start);
+        expanded.incrementAndGet();
+        return text;
+    }
+
+    public TextCompression getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    public int getThresholdChars()
+    {
+        return thresholdChars;
+    }
+
+    /**
+     * @return values stored compressed
+     */
+    public long getCompressedCount()
+    {
+        return compressed.get();
+    }
+
+    /**
+     * @return values over the threshold stored as they are, since the compression did not make them shorter
+     */
+    public long getSkippedCount()
+    {
+        return skipped.get();
+    }
+
+    /**
+     * @return stored to original length ratio of the values stored compressed, 1 if none
+     */
+    public double getCompressionRatio()
+    {
+        long in = charsIn.get();
+        return in == 0 ? 1 : (double) charsOut.get() / in;
+    }
+
+    /**
+     * @return characters saved by the compression
+     */
+    public long getSavedChars()
+    {
+        return charsIn.get() - charsOut.get();
+    }
+
+    /**
+     * @return time spent compressing, including the values skipped, in nanoseconds
+     */
+    public long getCompressNanos()
+    {
+        return compressNanos.get();
+    }
+
+    /**
+     * @return compressed values read by the scopes sharing the compression
+     */
+    public long getExpandedCount()
+    {
+        return expanded.get();
+    }
+
+    /**
+     * @return time spent reading the compressed values by the scopes sharing the compression, in nanoseconds
+     */
+    public long getExpandNanos()
+    {
+        return expandNanos.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return new StringBuilder("ValueCompression{algorithm=").append(algorithm)
+                .append(", threshold=").append(thresholdChars)
+                .append(", compressed=").append(getCompressedCount())
+                .append(", skipped=").append(getSkippedCount())
+                .append(", ratio=").append(getCompressionRatio())
+                .append(", compressNanos=").append(getCompressNanos())
+                .append(", expanded=").append(getExpandedCount())
+                .append(", expandNanos=").append(getExpandNanos())
+                .append('}').toString();
+    }
+}
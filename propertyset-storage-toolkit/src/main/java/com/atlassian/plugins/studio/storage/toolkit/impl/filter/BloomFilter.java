@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the string keys, lock-free and thread safe. Keys could be added but never removed.
+ */
+final class BloomFilter
+{
+    private final AtomicLongArray words;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * @param capacity   keys expected, the false positive rate grows past it
+     * @param bitsPerKey bits per expected key
+     */
+    BloomFilter(int capacity, int bitsPerKey)
+    {
+        this.capacity = capacity;
+        this.words = new AtomicLongArray((int) ((Math.max(64L, (long) capacity * bitsPerKey) + 63) / 64));
+        this.bitCount = words.length() * 64;
+        // k = ln 2 * m / n minimizes the false positive rate
+        this.hashCount = Math.max(1, (int) Math.round(Math.log(2) * bitsPerKey));
+    }
+
+    void put(String key)
+    {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            long mask = 1L << bit;
+            int word = bit >>> 6;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+        count.incrementAndGet();
+    }
+
+    boolean mightContain(String key)
+    {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if more keys were added than the filter was sized for
+     */
+    boolean isSaturated()
+    {
+        return count.get() > capacity;
+    }
+
+    /**
+     * @return false positive rate expected for the keys added so far
+     */
+    double getExpectedFalsePositiveRate()
+    {
+        return Math.pow(1 - Math.exp(-(double) hashCount * count.get() / bitCount), hashCount);
+    }
+
+    int getSizeInBytes()
+    {
+        return bitCount / 8;
+    }
+
+    /**
+     * 64 bit FNV-1a, the halves serve as two independent hashes
+     */
+    private static long hash(String key)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // spreads the low bits of the keys differing by the last characters only
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.filter;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.TypedKeys;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Answers the reads of the keys the {@link KeyFilter} knows to be absent, marks the keys written before they are
+ * stored.
+ */
+class FilteredStorageFacadeImpl extends ForwardingStorageFacade
+{
+    private final KeyFilter.Membership membership;
+    private final KeyFilter stats;
+
+    FilteredStorageFacadeImpl(StorageFacade delegate, KeyFilter.Membership membership, KeyFilter stats)
+    {
+        super(delegate);
+        this.membership = membership;
+        this.stats = stats;
+    }
+
+    private BloomFilter filter() throws StorageException
+    {
+        BloomFilter loaded = membership.get();
+        if (loaded != null) {
+            return loaded;
+        }
+
+        long version = membership.version();
+        Collection<String> listing = super.getKeys();
+        return membership.publish(listing == null ? Collections.<String>emptyList() : listing, version);
+    }
+
+    /**
+     * @return <code>true</code> if the key is known to be absent
+     */
+    private boolean absent(String key) throws StorageException
+    {
+        if (key != null && !filter().mightContain(key)) {
+            stats.negative();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws StorageException
+    {
+        return !absent(key) && super.getBoolean(key);
+    }
+
+    @Override
+    public byte[] getData(String key) throws StorageException
+    {
+        return absent(key) ? null : super.getData(key);
+    }
+
+    @Override
+    public Date getDate(String key) throws StorageException
+    {
+        return absent(key) ? null : super.getDate(key);
+    }
+
+    @Override
+    public BigDecimal getDouble(String key) throws StorageException
+    {
+        return absent(key) ? null : super.getDouble(key);
+    }
+
+    @Override
+    public Long getLong(String key) throws StorageException
+    {
+        return absent(key) ? null : super.getLong(key);
+    }
+
+    @Override
+    public Object getObject(String key) throws StorageException
+    {
+        return absent(key) ? null : super.getObject(key);
+    }
+
+    @Override
+    public Properties getProperties(String key) throws StorageException
+    {
+        return absent(key) ? null : super.getProperties(key);
+    }
+
+    @Override
+    public String getString(String key) throws StorageException
+    {
+        return absent(key) ? null : super.getString(key);
+    }
+
+    @Override
+    public String getText(String key) throws StorageException
+    {
+        return absent(key) ? null : super.getText(key);
+    }
+
+    @Override
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        return TypedKeys.get(this, key);
+    }
+
+    @Override
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        TypedKeys.set(this, key, value);
+    }
+
+    @Override
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        return TypedKeys.getAll(this, keys);
+    }
+
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) throws StorageException
+    {
+        if (keys == null || keys.isEmpty()) {
+            return super.getAll(keys);
+        }
+
+        List<String> candidates = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (!absent(key)) {
+                candidates.add(key);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new LinkedHashMap<String, Object>();
+        }
+
+        Map<String, Object> values = super.getAll(candidates);
+        for (int i = values.size(); i < candidates.size(); i++) {
+            stats.falsePositive();
+        }
+        return values;
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) throws StorageException
+    {
+        if (keys == null || keys.isEmpty()) {
+            return super.getAll(keys, type);
+        }
+
+        List<String> candidates = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (!absent(key)) {
+                candidates.add(key);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new LinkedHashMap<String, T>();
+        }
+
+        Map<String, T> values = super.getAll(candidates, type);
+        for (int i = values.size(); i < candidates.size(); i++) {
+            stats.falsePositive();
+        }
+        return values;
+    }
+
+    @Override
+    public boolean exists(String key) throws StorageException
+    {
+        if (absent(key)) {
+            return false;
+        }
+
+        boolean exists = super.exists(key);
+        if (!exists) {
+            stats.falsePositive();
+        }
+        return exists;
+    }
+
+    @Override
+    public boolean remove(String key) throws StorageException
+    {
+        return !absent(key) && super.remove(key);
+    }
+
+    @Override
+    public void removeAll() throws StorageException
+    {
+        super.removeAll();
+        membership.cleared();
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        membership.adding(key);
+        super.setBoolean(key, value);
+    }
+
+    @Override
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        membership.adding(key);
+        super.setData(key, bytes);
+    }
+
+    @Override
+    public OutputStream openOutputStream(String key) throws StorageException
+    {
+        membership.adding(key);
+        return super.openOutputStream(key);
+    }
+
+    @Override
+    public InputStream openInputStream(String key, long offset, long length) throws StorageException
+    {
+        return absent(key) ? null : super.openInputStream(key, offset, length);
+    }
+
+    @Override
+    public void setDate(String key, Date date) throws StorageException
+    {
+        membership.adding(key);
+        super.setDate(key, date);
+    }
+
+    @Override
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        membership.adding(key);
+        super.setDouble(key, value);
+    }
+
+    @Override
+    public void setLong(String key, Long value) throws StorageException
+    {
+        membership.adding(key);
+        super.setLong(key, value);
+    }
+
+    @Override
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        membership.adding(key);
+        super.setObject(key, objectValue);
+    }
+
+    @Override
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        membership.adding(key);
+        super.setProperties(key, properties);
+    }
+
+    @Override
+    public void setString(String key, String string) throws StorageException
+    {
+        membership.adding(key);
+        super.setString(key, string);
+    }
+
+    @Override
+    public void setText(String key, String text) throws StorageException
+    {
+        membership.adding(key);
+        super.setText(key, text);
+    }
+
+    @Override
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        if (values != null) {
+            for (String key : values.keySet()) {
+                membership.adding(key);
+            }
+        }
+        super.setAll(values);
+    }
+}
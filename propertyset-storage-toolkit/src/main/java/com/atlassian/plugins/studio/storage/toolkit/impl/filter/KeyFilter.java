@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.filter;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.FacadeDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.MapMaker;
+import org.apache.commons.lang.ObjectUtils;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Negative lookup filter: a Bloom filter of the instance keys lets the reads of the keys never set return
+ * without a database round trip.
+ * <p/>
+ * The filter of an instance is built from one key scan on first use and updated by the writes made through the
+ * filtered facades; keys removed stay in the filter until it is rebuilt (the filter is rebuilt once it holds more
+ * keys than it was sized for). Writes bypassing the facades are not seen until the instance is invalidated.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     Scope&lt;String&gt; scope = new Scopes.Builder&lt;String&gt;(idProvider, deleteAll).withKeyFilter(new KeyFilter()).build();
+ * </pre>
+ */
+public class KeyFilter implements FacadeDecorator
+{
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+    static final int MIN_CAPACITY = 64;
+
+    private final int bitsPerKey;
+    private final ConcurrentMap<InstanceId, Membership> filters = new MapMaker().softValues().makeMap();
+
+    private volatile boolean enabled = true;
+
+    private final AtomicLong negatives = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public KeyFilter()
+    {
+        this(DEFAULT_BITS_PER_KEY);
+    }
+
+    /**
+     * @param bitsPerKey filter bits per key, 10 bits give about 1% false positives
+     */
+    public KeyFilter(int bitsPerKey)
+    {
+        Assertions.stateTrue("bitsPerKey should be positive", bitsPerKey > 0);
+        this.bitsPerKey = bitsPerKey;
+    }
+
+    public StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade)
+    {
+        if (!enabled) {
+            return facade;
+        }
+        return new FilteredStorageFacadeImpl(facade, membership(instanceId), this);
+    }
+
+    public void invalidate(InstanceId instanceId)
+    {
+        for (InstanceId filtered : filters.keySet()) {
+            if (ObjectUtils.equals(filtered.getEntityId(), instanceId.getEntityId())
+                    && ObjectUtils.equals(filtered.getEntityName(), instanceId.getEntityName())) {
+                filters.remove(filtered);
+            }
+        }
+    }
+
+    public void invalidateAll()
+    {
+        filters.clear();
+    }
+
+    /**
+     * Turns the filtering of the facades loaded from now on on or off
+     *
+     * @param enabled filtering enabled
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+        if (!enabled) {
+            filters.clear();
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @return reads answered by the filter without going to the storage
+     */
+    public long getNegativeCount()
+    {
+        return negatives.get();
+    }
+
+    /**
+     * @return reads the filter let through for the keys which do not exist
+     */
+    public long getFalsePositiveCount()
+    {
+        return falsePositives.get();
+    }
+
+    /**
+     * @return observed false positive rate, the share of the absent keys lookups the filter failed to answer
+     */
+    public double getFalsePositiveRate()
+    {
+        long fp = falsePositives.get();
+        long total = fp + negatives.get();
+        return total == 0 ? 0 : (double) fp / total;
+    }
+
+    /**
+     * @return memory taken by the filters, bytes
+     */
+    public long getSizeInBytes()
+    {
+        long size = 0;
+        for (Membership membership : filters.values()) {
+            BloomFilter filter = membership.get();
+            if (filter != null) {
+                size += filter.getSizeInBytes();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of instances filtered
+     */
+    public int size()
+    {
+        return filters.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return new StringBuilder("KeyFilter{instances=").append(size())
+                .append(", bytes=").append(getSizeInBytes())
+                .append(", negatives=").append(getNegativeCount())
+                .append(", falsePositiveRate=").append(getFalsePositiveRate())
+                .append('}').toString();
+    }
+
+    void negative()
+    {
+        negatives.incrementAndGet();
+    }
+
+    void falsePositive()
+    {
+        falsePositives.incrementAndGet();
+    }
+
+    Membership membership(InstanceId instanceId)
+    {
+        Membership membership = filters.get(instanceId);
+        if (membership == null) {
+            Membership created = new Membership(bitsPerKey);
+            membership = filters.putIfAbsent(instanceId, created);
+            if (membership == null) {
+                membership = created;
+            }
+        }
+        return membership;
+    }
+
+    /**
+     * Filter of one instance. Writes bump the version, so the filter built concurrently with a write is used once
+     * but not kept.
+     */
+    static class Membership
+    {
+        private final int bitsPerKey;
+        private BloomFilter filter; // null until built
+        private long version;
+
+        Membership(int bitsPerKey)
+        {
+            this.bitsPerKey = bitsPerKey;
+        }
+
+        synchronized long version()
+        {
+            return version;
+        }
+
+        synchronized BloomFilter get()
+        {
+            return filter;
+        }
+
+        synchronized BloomFilter publish(Collection<String> keys, long keysVersion)
+        {
+            if (filter != null) {
+                return filter;
+            }
+
+            BloomFilter built = new BloomFilter(Math.max(MIN_CAPACITY, keys.size() * 2), bitsPerKey);
+            for (String key : keys) {
+                built.put(key);
+            }
+            if (keysVersion == version) {
+                filter = built;
+            }
+            return built;
+        }
+
+        /**
+         * Called before the key is written, so the concurrent readers never miss it
+         */
+        synchronized void adding(String key)
+        {
+            version++;
+            if (filter != null) {
+                filter.put(key);
+                if (filter.isSaturated()) {
+                    filter = null;
+                }
+            }
+        }
+
+        synchronized void cleared()
+        {
+            version++;
+            filter = new BloomFilter(MIN_CAPACITY, bitsPerKey);
+        }
+    }
+}
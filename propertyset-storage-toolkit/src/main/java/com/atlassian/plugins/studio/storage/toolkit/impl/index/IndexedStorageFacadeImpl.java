@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.index;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.KeyRanges;
+import com.atlassian.plugins.studio.storage.toolkit.impl.TypedKeys;
+import com.atlassian.plugins.studio.storage.toolkit.impl.blob.ClosingOutputStream;
+import com.google.common.collect.ImmutableList;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+/**
+ * Answers the key queries from the {@link KeyIndex}, keeps it up to date on writes.
+ */
+class IndexedStorageFacadeImpl extends ForwardingStorageFacade
+{
+    private final KeyIndex.Keys keys;
+
+    IndexedStorageFacadeImpl(StorageFacade delegate, KeyIndex.Keys keys)
+    {
+        super(delegate);
+        this.keys = keys;
+    }
+
+    private NavigableSet<String> index() throws StorageException
+    {
+        NavigableSet<String> loaded = keys.get();
+        if (loaded != null) {
+            return loaded;
+        }
+
+        long version = keys.version();
+        Collection<String> listing = super.getKeys();
+        return keys.publish(listing == null ? Collections.<String>emptyList() : listing, version);
+    }
+
+    /**
+     * Writes of <code>null</code> remove the key
+     */
+    private void written(String key, Object value)
+    {
+        if (value != null) {
+            keys.added(key);
+        } else {
+            keys.removed(key);
+        }
+    }
+
+    /**
+     * PropertySet decides whether <code>null</code> value is stored or not
+     */
+    private void writtenNullable(String key, Object value) throws StorageException
+    {
+        if (value != null || super.exists(key)) {
+            keys.added(key);
+        } else {
+            keys.removed(key);
+        }
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        try {
+            super.setBoolean(key, value);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        keys.added(key);
+    }
+
+    @Override
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        try {
+            super.setData(key, bytes);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        writtenNullable(key, bytes);
+    }
+
+    @Override
+    public OutputStream openOutputStream(final String key) throws StorageException
+    {
+        return new ClosingOutputStream(super.openOutputStream(key), new Runnable()
+        {
+            public void run()
+            {
+                keys.added(key);
+            }
+        });
+    }
+
+    @Override
+    public void setDate(String key, Date date) throws StorageException
+    {
+        try {
+            super.setDate(key, date);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        writtenNullable(key, date);
+    }
+
+    @Override
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        try {
+            super.setDouble(key, value);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        written(key, value);
+    }
+
+    @Override
+    public void setLong(String key, Long value) throws StorageException
+    {
+        try {
+            super.setLong(key, value);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        written(key, value);
+    }
+
+    @Override
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        try {
+            super.setObject(key, objectValue);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        written(key, objectValue);
+    }
+
+    @Override
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        try {
+            super.setProperties(key, properties);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        written(key, properties);
+    }
+
+    @Override
+    public void setString(String key, String string) throws StorageException
+    {
+        try {
+            super.setString(key, string);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        writtenNullable(key, string);
+    }
+
+    @Override
+    public void setText(String key, String text) throws StorageException
+    {
+        try {
+            super.setText(key, text);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        writtenNullable(key, text);
+    }
+
+    @Override
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        try {
+            super.setAll(values);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        if (values != null) {
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                written(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        TypedKeys.set(this, key, value);
+    }
+
+    @Override
+    public boolean remove(String key) throws StorageException
+    {
+        boolean removed;
+        try {
+            removed = super.remove(key);
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        keys.removed(key);
+        return removed;
+    }
+
+    @Override
+    public void removeAll() throws StorageException
+    {
+        try {
+            super.removeAll();
+        } catch (RuntimeException e) {
+            keys.reset();
+            throw e;
+        }
+        keys.cleared();
+    }
+
+    @Override
+    public boolean exists(String key) throws StorageException
+    {
+        return index().contains(key);
+    }
+
+    @Override
+    public Collection<String> getKeys() throws StorageException
+    {
+        return ImmutableList.copyOf(index());
+    }
+
+    @Override
+    public Collection<String> getKeys(String keyPrefix) throws StorageException
+    {
+        return ImmutableList.copyOf(KeyRanges.prefixed(index(), keyPrefix));
+    }
+
+    @Override
+    public int countKeys(String keyPrefix) throws StorageException
+    {
+        return KeyRanges.prefixed(index(), keyPrefix).size();
+    }
+
+    @Override
+    public Collection<String> getKeyRange(String fromKey, String toKey) throws StorageException
+    {
+        return ImmutableList.copyOf(KeyRanges.range(index(), fromKey, toKey));
+    }
+
+    @Override
+    public CloseableIterator<String> keys(String keyPrefix, int pageSize) throws StorageException
+    {
+        final Iterator<String> iterator = KeyRanges.prefixed(index(), keyPrefix).iterator();
+        return new CloseableIterator<String>()
+        {
+            private boolean closed;
+
+            public boolean hasNext()
+            {
+                return !closed && iterator.hasNext();
+            }
+
+            public String next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return iterator.next();
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public void close()
+            {
+                closed = true;
+            }
+        };
+    }
+}
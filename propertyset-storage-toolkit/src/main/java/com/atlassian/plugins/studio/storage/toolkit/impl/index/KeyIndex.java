@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.index;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.FacadeDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.MapMaker;
+import org.apache.commons.lang.ObjectUtils;
+
+import java.util.Collection;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory sorted index of the instance keys, answers key listing, prefix counting and range queries
+ * without going to the database.
+ * <p/>
+ * The index of an instance is loaded on first use and kept up to date by the writes made through the indexed
+ * facades. Writes bypassing the facades (another node, direct PropertySet access) are not seen until the
+ * instance is invalidated. Indexes are softly referenced and dropped under memory pressure.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     Scope&lt;String&gt; scope = new Scopes.Builder&lt;String&gt;(idProvider, deleteAll).withKeyIndex(new KeyIndex()).build();
+ * </pre>
+ */
+public class KeyIndex implements FacadeDecorator
+{
+    private final ConcurrentMap<InstanceId, Keys> indexes = new MapMaker().softValues().makeMap();
+
+    public StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade)
+    {
+        return new IndexedStorageFacadeImpl(facade, keys(instanceId));
+    }
+
+    public void invalidate(InstanceId instanceId)
+    {
+        for (InstanceId indexed : indexes.keySet()) {
+            if (ObjectUtils.equals(indexed.getEntityId(), instanceId.getEntityId())
+                    && ObjectUtils.equals(indexed.getEntityName(), instanceId.getEntityName())) {
+                indexes.remove(indexed);
+            }
+        }
+    }
+
+    public void invalidateAll()
+    {
+        indexes.clear();
+    }
+
+    /**
+     * @return number of instances indexed
+     */
+    public int size()
+    {
+        return indexes.size();
+    }
+
+    Keys keys(InstanceId instanceId)
+    {
+        Keys keys = indexes.get(instanceId);
+        if (keys == null) {
+            Keys created = new Keys();
+            keys = indexes.putIfAbsent(instanceId, created);
+            if (keys == null) {
+                keys = created;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Keys of one instance. Writes bump the version, so the listing loaded concurrently with a write is used once
+     * but not kept.
+     */
+    static class Keys
+    {
+        private NavigableSet<String> keys; // null until loaded
+        private long version;
+
+        synchronized long version()
+        {
+            return version;
+        }
+
+        synchronized NavigableSet<String> get()
+        {
+            return keys;
+        }
+
+        synchronized NavigableSet<String> publish(Collection<String> loaded, long loadedVersion)
+        {
+            if (keys != null) {
+                return keys;
+            }
+
+            NavigableSet<String> sorted = new ConcurrentSkipListSet<String>(loaded);
+            if (loadedVersion == version) {
+                keys = sorted;
+            }
+            return sorted;
+        }
+
+        synchronized void added(String key)
+        {
+            version++;
+            if (keys != null) {
+                keys.add(key);
+            }
+        }
+
+        synchronized void removed(String key)
+        {
+            version++;
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+
+        synchronized void cleared()
+        {
+            version++;
+            keys = new ConcurrentSkipListSet<String>();
+        }
+
+        /**
+         * Outcome of the write is unknown, the keys are loaded again on next use
+         */
+        synchronized void reset()
+        {
+            version++;
+            keys = null;
+        }
+    }
+}
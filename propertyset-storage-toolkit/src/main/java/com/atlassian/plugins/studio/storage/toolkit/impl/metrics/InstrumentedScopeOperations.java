@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.metrics;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.TextCompression;
+import com.opensymphony.module.propertyset.PropertySet;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Records the scope operations calls into the {@link StorageMetrics}, operations are named
+ * <code>bridge.&lt;method&gt;</code>. The compressed texts read are recorded as <code>bridge.expand</code>, the
+ * other text reads are not recorded.
+ */
+class InstrumentedScopeOperations extends ForwardingScopeOperations
+{
+    private final StorageMetrics metrics;
+
+    InstrumentedScopeOperations(ScopeOperations delegate, StorageMetrics metrics)
+    {
+        super(delegate);
+        this.metrics = metrics;
+    }
+
+    private OperationStats stats(String entityName, String operation)
+    {
+        return metrics.scope(entityName).operation(operation);
+    }
+
+    @Override
+    public PropertySet loadDelegate(InstanceId descriptor) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+            PropertySet propertySet = super.loadDelegate(descriptor);
+            stats(descriptor.getEntityName(), "bridge.loadDelegate").succeeded(started, 0, 0);
+            return propertySet;
+        } catch (RuntimeException e) {
+            stats(descriptor.getEntityName(), "bridge.loadDelegate").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<InstanceId, Map<String, Object>> getValues(Collection<InstanceId> descriptors, Collection<String> keys)
+            throws StorageException
+    {
+        String entityName = descriptors.isEmpty() ? null : descriptors.iterator().next().getEntityName();
+        long started = System.nanoTime();
+        try {
+            Map<InstanceId, Map<String, Object>> values = super.getValues(descriptors, keys);
+            long bytesOut = 0;
+            for (Map<String, Object> instanceValues : values.values()) {
+                bytesOut += StorageMetrics.sizeOf(instanceValues);
+            }
+            stats(entityName, "bridge.getValues").succeeded(started, 0, bytesOut);
+            return values;
+        } catch (RuntimeException e) {
+            stats(entityName, "bridge.getValues").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setValues(InstanceId descriptor, Map<String, Object> values) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+            super.setValues(descriptor, values);
+            stats(descriptor.getEntityName(), "bridge.setValues").succeeded(started, StorageMetrics.sizeOf(values), 0);
+        } catch (RuntimeException e) {
+            stats(descriptor.getEntityName(), "bridge.setValues").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public CloseableIterator<String> keys(InstanceId descriptor, String keyPrefix, int pageSize) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+            CloseableIterator<String> keys = super.keys(descriptor, keyPrefix, pageSize);
+            stats(descriptor.getEntityName(), "bridge.keys").succeeded(started, 0, 0);
+            return keys;
+        } catch (RuntimeException e) {
+            stats(descriptor.getEntityName(), "bridge.keys").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void inTransaction(Runnable work) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+            super.inTransaction(work);
+            stats(null, "bridge.inTransaction").succeeded(started, 0, 0);
+        } catch (RuntimeException e) {
+            stats(null, "bridge.inTransaction").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeByFilter(Long entityId, String entityName, String keyPrefix) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+            super.removeByFilter(entityId, entityName, keyPrefix);
+            stats(entityName, "bridge.removeByFilter").succeeded(started, 0, 0);
+        } catch (RuntimeException e) {
+            stats(entityName, "bridge.removeByFilter").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeEntities(String entityName, Collection<Long> entityIds) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+            super.removeEntities(entityName, entityIds);
+            stats(entityName, "bridge.removeEntities").succeeded(started, 0, 0);
+        } catch (RuntimeException e) {
+            stats(entityName, "bridge.removeEntities").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public String serialize(Object instance) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+            String serialized = super.serialize(instance);
+            stats(null, "bridge.serialize").succeeded(started, StorageMetrics.sizeOf(serialized), 0);
+            return serialized;
+        } catch (RuntimeException e) {
+            stats(null, "bridge.serialize").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Object deserialize(String input) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+            Object instance = super.deserialize(input);
+            stats(null, "bridge.deserialize").succeeded(started, 0, StorageMetrics.sizeOf(input));
+            return instance;
+        } catch (RuntimeException e) {
+            stats(null, "bridge.deserialize").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public String decodeText(InstanceId descriptor, String stored) throws StorageException
+    {
+        if (!TextCompression.isCompressed(stored)) {
+            return super.decodeText(descriptor, stored);
+        }
+
+        long started = System.nanoTime();
+        try {
+            String text = super.decodeText(descriptor, stored);
+            if (!stored.equals(text)) {
+                // the tagged texts stored before the scope compressed are read as they are
+                stats(descriptor.getEntityName(), "bridge.expand").succeeded(started, StorageMetrics.sizeOf(stored),
+                        StorageMetrics.sizeOf(text));
+            }
+            return text;
+        } catch (RuntimeException e) {
+            stats(descriptor.getEntityName(), "bridge.expand").failed(started);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,544 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.metrics;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingStorageFacade;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Records every facade call into the scope {@link StorageMetrics}.
+ */
+class InstrumentedStorageFacadeImpl extends ForwardingStorageFacade
+{
+    private final StorageMetrics.ScopeStats stats;
+
+    InstrumentedStorageFacadeImpl(StorageFacade delegate, StorageMetrics.ScopeStats stats)
+    {
+        super(delegate);
+        this.stats = stats;
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setBoolean(key, value);
+            stats.operation("setBoolean").succeeded(started, 1, 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setBoolean").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            boolean value = super.getBoolean(key);
+            stats.operation("getBoolean").succeeded(started, 0, 1);
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getBoolean").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setData(key, bytes);
+            stats.operation("setData").succeeded(started, StorageMetrics.sizeOf(bytes), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setData").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] getData(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            byte[] value = super.getData(key);
+            stats.operation("getData").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getData").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setDate(String key, Date date) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setDate(key, date);
+            stats.operation("setDate").succeeded(started, StorageMetrics.sizeOf(date), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setDate").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Date getDate(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Date value = super.getDate(key);
+            stats.operation("getDate").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getDate").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setDouble(key, value);
+            stats.operation("setDouble").succeeded(started, StorageMetrics.sizeOf(value), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setDouble").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public BigDecimal getDouble(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            BigDecimal value = super.getDouble(key);
+            stats.operation("getDouble").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getDouble").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Collection<String> getKeys() throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Collection<String> value = super.getKeys();
+            stats.operation("getKeys").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getKeys").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Collection<String> getKeys(String keyPrefix) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Collection<String> value = super.getKeys(keyPrefix);
+            stats.operation("getKeys").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getKeys").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public int countKeys(String keyPrefix) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            int value = super.countKeys(keyPrefix);
+            stats.operation("countKeys").succeeded(started, 0, 0);
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("countKeys").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Collection<String> getKeyRange(String fromKey, String toKey) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Collection<String> value = super.getKeyRange(fromKey, toKey);
+            stats.operation("getKeyRange").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getKeyRange").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public CloseableIterator<String> keys(String keyPrefix, int pageSize) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            CloseableIterator<String> value = super.keys(keyPrefix, pageSize);
+            stats.operation("keys").succeeded(started, 0, 0);
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("keys").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setLong(String key, Long value) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setLong(key, value);
+            stats.operation("setLong").succeeded(started, StorageMetrics.sizeOf(value), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setLong").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Long getLong(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Long value = super.getLong(key);
+            stats.operation("getLong").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getLong").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setObject(key, objectValue);
+            stats.operation("setObject").succeeded(started, 0, 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setObject").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Object getObject(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Object value = super.getObject(key);
+            stats.operation("getObject").succeeded(started, 0, 0);
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getObject").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setProperties(key, properties);
+            stats.operation("setProperties").succeeded(started, StorageMetrics.sizeOf(properties), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setProperties").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Properties getProperties(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Properties value = super.getProperties(key);
+            stats.operation("getProperties").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getProperties").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setString(String key, String string) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setString(key, string);
+            stats.operation("setString").succeeded(started, StorageMetrics.sizeOf(string), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setString").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public String getString(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            String value = super.getString(key);
+            stats.operation("getString").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getString").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setText(String key, String text) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setText(key, text);
+            stats.operation("setText").succeeded(started, StorageMetrics.sizeOf(text), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setText").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public String getText(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            String value = super.getText(key);
+            stats.operation("getText").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getText").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.setAll(values);
+            stats.operation("setAll").succeeded(started, StorageMetrics.sizeOf(values), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("setAll").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Map<String, Object> value = super.getAll(keys);
+            stats.operation("getAll").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getAll").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Map<String, T> value = super.getAll(keys, type);
+            stats.operation("getAll").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getAll").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            T value = super.get(key);
+            stats.operation("get").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("get").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.set(key, value);
+            stats.operation("set").succeeded(started, StorageMetrics.sizeOf(value), 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("set").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            Map<StorageKey<?>, Object> value = super.getAll(keys);
+            stats.operation("getAll").succeeded(started, 0, StorageMetrics.sizeOf(value));
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("getAll").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean exists(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            boolean value = super.exists(key);
+            stats.operation("exists").succeeded(started, 0, 0);
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("exists").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            boolean value = super.remove(key);
+            stats.operation("remove").succeeded(started, 0, 0);
+            return value;
+
+        } catch (RuntimeException e) {
+            stats.operation("remove").failed(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeAll() throws StorageException
+    {
+        long started = System.nanoTime();
+        try {
+
+            super.removeAll();
+            stats.operation("removeAll").succeeded(started, 0, 0);
+
+        } catch (RuntimeException e) {
+            stats.operation("removeAll").failed(started);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.metrics;
+
+/**
+ * Call statistics of one storage operation of one scope. Recording takes no locks.
+ */
+public class OperationStats implements OperationStatsMBean
+{
+    private static final int CALLS = 0;
+    private static final int ERRORS = 1;
+    private static final int BYTES_IN = 2;
+    private static final int BYTES_OUT = 3;
+    private static final int NANOS = 4;
+
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final String scope;
+    private final String operation;
+    private final StripedCounters counters = new StripedCounters(5);
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    OperationStats(String scope, String operation)
+    {
+        this.scope = scope;
+        this.operation = operation;
+    }
+
+    /**
+     * @param started  call start, {@link System#nanoTime()}
+     * @param bytesIn  value bytes passed to the storage
+     * @param bytesOut value bytes returned by the storage
+     */
+    void succeeded(long started, long bytesIn, long bytesOut)
+    {
+        long elapsed = System.nanoTime() - started;
+        counters.add(CALLS, 1, NANOS, elapsed);
+        if (bytesIn != 0) {
+            counters.add(BYTES_IN, bytesIn);
+        }
+        if (bytesOut != 0) {
+            counters.add(BYTES_OUT, bytesOut);
+        }
+        latencies.record(elapsed);
+    }
+
+    /**
+     * @param started call start, {@link System#nanoTime()}
+     */
+    void failed(long started)
+    {
+        long elapsed = System.nanoTime() - started;
+        counters.add(CALLS, 1, NANOS, elapsed);
+        counters.add(ERRORS, 1);
+        latencies.record(elapsed);
+    }
+
+    public String getScope()
+    {
+        return scope;
+    }
+
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    public long getCalls()
+    {
+        return counters.sum(CALLS);
+    }
+
+    public long getErrors()
+    {
+        return counters.sum(ERRORS);
+    }
+
+    public long getBytesIn()
+    {
+        return counters.sum(BYTES_IN);
+    }
+
+    public long getBytesOut()
+    {
+        return counters.sum(BYTES_OUT);
+    }
+
+    public double getMeanMicros()
+    {
+        long calls = getCalls();
+        return calls == 0 ? 0 : counters.sum(NANOS) / NANOS_PER_MICRO / calls;
+    }
+
+    public double getP50Micros()
+    {
+        return latencies.percentile(0.5) / NANOS_PER_MICRO;
+    }
+
+    public double getP99Micros()
+    {
+        return latencies.percentile(0.99) / NANOS_PER_MICRO;
+    }
+
+    public double getP999Micros()
+    {
+        return latencies.percentile(0.999) / NANOS_PER_MICRO;
+    }
+
+    public double getMaxMicros()
+    {
+        return latencies.getMax() / NANOS_PER_MICRO;
+    }
+
+    public void reset()
+    {
+        counters.reset();
+        latencies.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return new StringBuilder(scope).append('.').append(operation)
+                .append("{calls=").append(getCalls())
+                .append(", errors=").append(getErrors())
+                .append(", p50=").append(getP50Micros())
+                .append("us, p99=").append(getP99Micros())
+                .append("us}").toString();
+    }
+}
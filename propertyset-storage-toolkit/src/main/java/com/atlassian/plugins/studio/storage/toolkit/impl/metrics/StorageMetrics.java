@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.metrics;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ObservingDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.MapMaker;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Call counts, errors, value bytes and latency histograms of the storage operations, broken down by scope
+ * (storage entity name) and operation.
+ * <p/>
+ * Facade operations are named as the facade methods, the scope operations are prefixed with
+ * <code>bridge.</code>; scope operations not bound to an entity are accounted to the <code>(shared)</code>
+ * scope. Every operation is published as MBean
+ * <code>com.atlassian.plugins.studio.storage.toolkit:type=StorageMetrics,scope=...,operation=...</code> once
+ * {@link #register(MBeanServer)} is called.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     Scope&lt;String&gt; scope = new Scopes.Builder&lt;String&gt;(idProvider, deleteAll).withMetrics(Scopes.metrics()).build();
+ * </pre>
+ */
+public class StorageMetrics implements ObservingDecorator
+{
+    public static final String DOMAIN = "com.atlassian.plugins.studio.storage.toolkit";
+    public static final String SHARED_SCOPE = "(shared)";
+
+    private final ConcurrentMap<String, ScopeStats> scopes = new MapMaker().makeMap();
+
+    /**
+     * Guarded by this for writes
+     */
+    private volatile MBeanServer server;
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    public StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade)
+    {
+        return new InstrumentedStorageFacadeImpl(facade, scope(instanceId.getEntityName()));
+    }
+
+    public void invalidate(InstanceId instanceId)
+    {
+    }
+
+    public void invalidateAll()
+    {
+    }
+
+    /**
+     * @param bridge scope operations
+     * @return scope operations recording the calls
+     */
+    public ScopeOperations instrument(ScopeOperations bridge)
+    {
+        return new InstrumentedScopeOperations(bridge, this);
+    }
+
+    /**
+     * @param scope     scope entity name
+     * @param operation operation name
+     * @return statistics, <code>null</code> if the operation was never called
+     */
+    public OperationStats getStats(String scope, String operation)
+    {
+        ScopeStats stats = scopes.get(scope);
+        return stats == null ? null : stats.operations.get(operation);
+    }
+
+    /**
+     * @return statistics of all the operations called so far
+     */
+    public Collection<OperationStats> getAllStats()
+    {
+        List<OperationStats> all = new ArrayList<OperationStats>();
+        for (ScopeStats stats : scopes.values()) {
+            all.addAll(stats.operations.values());
+        }
+        return all;
+    }
+
+    public void reset()
+    {
+        for (OperationStats stats : getAllStats()) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Publishes the statistics of the operations called so far and of those called later on
+     *
+     * @param server MBean server
+     * @throws StorageException registration failure
+     */
+    public synchronized void register(MBeanServer server) throws StorageException
+    {
+        unregister();
+        this.server = server;
+        for (OperationStats stats : getAllStats()) {
+            try {
+                publish(stats);
+            } catch (JMException e) {
+                throw new StorageException(e);
+            }
+        }
+    }
+
+    /**
+     * Removes all the MBeans registered
+     */
+    public synchronized void unregister()
+    {
+        if (server != null) {
+            for (ObjectName name : registered) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (JMException ignored) {
+                    // unregistered by someone else
+                }
+            }
+        }
+        registered.clear();
+        server = null;
+    }
+
+    static ObjectName objectName(OperationStats stats) throws JMException
+    {
+        return new ObjectName(DOMAIN + ":type=StorageMetrics,scope=" + ObjectName.quote(stats.getScope())
+                + ",operation=" + ObjectName.quote(stats.getOperation()));
+    }
+
+    private void publish(OperationStats stats) throws JMException
+    {
+        ObjectName name = objectName(stats);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(stats, name);
+        }
+        registered.add(name);
+    }
+
+    private synchronized void created(OperationStats stats)
+    {
+        if (server != null) {
+            try {
+                publish(stats);
+            } catch (JMException ignored) {
+                // statistics are still recorded, only not visible over JMX
+            }
+        }
+    }
+
+    ScopeStats scope(String entityName)
+    {
+        String name = entityName == null ? SHARED_SCOPE : entityName;
+        ScopeStats stats = scopes.get(name);
+        if (stats == null) {
+            ScopeStats created = new ScopeStats(name);
+            stats = scopes.putIfAbsent(name, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Value size as seen by the storage: bytes of binary data, characters of text, 8 bytes per number and date
+     *
+     * @param value value
+     * @return size estimation
+     */
+    static long sizeOf(Object value)
+    {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof Number || value instanceof Date) {
+            return 8;
+        }
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 0;
+            for (Object element : (Collection<?>) value) {
+                size += sizeOf(element);
+            }
+            return size;
+        }
+        // objects are measured when serialized
+        return 0;
+    }
+
+    /**
+     * Operations of one scope
+     */
+    final class ScopeStats
+    {
+        private final String name;
+        private final ConcurrentMap<String, OperationStats> operations = new MapMaker().makeMap();
+
+        ScopeStats(String name)
+        {
+            this.name = name;
+        }
+
+        OperationStats operation(String operation)
+        {
+            OperationStats stats = operations.get(operation);
+            if (stats == null) {
+                OperationStats created = new OperationStats(name, operation);
+                stats = operations.putIfAbsent(operation, created);
+                if (stats == null) {
+                    stats = created;
+                    created(created);
+                }
+            }
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of counters striped by thread, the updates of different threads mostly land on different cache lines
+ * and never block. Sums are not atomic snapshots.
+ */
+final class StripedCounters
+{
+    private static final int MAX_STRIPES = 16;
+    private static final int LINE = 8; // longs per cache line
+
+    private final AtomicLongArray cells;
+    private final int stride;
+    private final int mask;
+
+    StripedCounters(int counters)
+    {
+        int stripes = 1;
+        while (stripes < Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors() * 2)) {
+            stripes <<= 1;
+        }
+        this.stride = (counters + LINE - 1) / LINE * LINE;
+        this.mask = stripes - 1;
+        // one spare line in front, so the first stripe does not share the line with the array header
+        this.cells = new AtomicLongArray(LINE + stripes * stride);
+    }
+
+    private int stripe()
+    {
+        int h = (int) Thread.currentThread().getId();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return LINE + (h & mask) * stride;
+    }
+
+    void add(int counter, long delta)
+    {
+        cells.getAndAdd(stripe() + counter, delta);
+    }
+
+    /**
+     * Adds to two counters of the same stripe
+     */
+    void add(int counter, long delta, int other, long otherDelta)
+    {
+        int stripe = stripe();
+        cells.getAndAdd(stripe + counter, delta);
+        cells.getAndAdd(stripe + other, otherDelta);
+    }
+
+    long sum(int counter)
+    {
+        long sum = 0;
+        for (int stripe = LINE; stripe < cells.length(); stripe += stride) {
+            sum += cells.get(stripe + counter);
+        }
+        return sum;
+    }
+
+    void reset()
+    {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
+    }
+}
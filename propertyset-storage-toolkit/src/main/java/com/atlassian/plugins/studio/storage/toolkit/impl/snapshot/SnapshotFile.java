@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.snapshot;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of one scope instance, laid out as an open addressing hash table and read through
+ * {@link MappedByteBuffer}.
+ * <p/>
+ * The file holds the header (magic, format version, database version marker, flags, slot and entry counts), the
+ * slots (key hash and record offset, linear probing) and the records (key, value kind and value). The kind keeps the
+ * PropertySet type the value was read as, so the strings and the texts are told apart. Lookups read the mapping with
+ * absolute gets, so the instance is safe to share between threads and nothing is loaded on open.
+ */
+final class SnapshotFile
+{
+    static final int MAGIC = 0x5053534E;
+    static final int FORMAT = 2;
+    static final int HEADER_SIZE = 32;
+    static final int SLOT_SIZE = 8;
+
+    static final int FLAG_COMPLETE = 1;
+
+    static final byte KIND_BOOLEAN = 1;
+    static final byte KIND_LONG = 2;
+    static final byte KIND_STRING = 3;
+    static final byte KIND_DATE = 4;
+    static final byte KIND_DATA = 5;
+    static final byte KIND_TEXT = 6;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer buffer;
+    private final long version;
+    private final boolean complete;
+    private final int slots;
+    private final int size;
+
+    private SnapshotFile(MappedByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        this.version = buffer.getLong(8);
+        this.complete = (buffer.getInt(16) & FLAG_COMPLETE) != 0;
+        this.slots = buffer.getInt(20);
+        this.size = buffer.getInt(24);
+    }
+
+    /**
+     * @param file snapshot file
+     * @return mapped snapshot, <code>null</code> if the file is missing or is not a snapshot
+     * @throws IOException read failure
+     */
+    static SnapshotFile open(File file) throws IOException
+    {
+        if (!file.isFile() || file.length() < HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping outlives the channel
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+                return null;
+            }
+
+            int slots = buffer.getInt(20);
+            if (slots <= 0 || Integer.bitCount(slots) != 1 || HEADER_SIZE + (long) slots * SLOT_SIZE > buffer.capacity()) {
+                return null;
+            }
+            return new SnapshotFile(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the snapshot next to the file and moves it in place, the values of other types are left out and the
+     * snapshot is marked incomplete
+     *
+     * @param file    snapshot file
+     * @param version database version marker the values were read at
+     * @param values  values by key as stored: Boolean, Long, Integer, String, {@link Text}, Date or byte[]
+     * @throws IOException write failure
+     */
+    static void write(File file, long version, Map<String, ?> values) throws IOException
+    {
+        List<byte[]> keys = new ArrayList<byte[]>(values.size());
+        List<Object> stored = new ArrayList<Object>(values.size());
+        boolean complete = true;
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            if (kind(entry.getValue()) == 0) {
+                complete = false;
+            } else {
+                keys.add(entry.getKey().getBytes(UTF8));
+                stored.add(entry.getValue());
+            }
+        }
+
+        int slots = Integer.highestOneBit(Math.max(keys.size() * 2, 1) - 1) << 1;
+        slots = Math.max(slots, 2);
+
+        ByteBuffer records = ByteBuffer.allocate(recordsLength(keys, stored));
+        ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE + slots * SLOT_SIZE);
+        table.putInt(MAGIC).putInt(FORMAT).putLong(version).putInt(complete ? FLAG_COMPLETE : 0)
+                .putInt(slots).putInt(keys.size()).putInt(0);
+
+        int base = HEADER_SIZE + slots * SLOT_SIZE;
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            int hash = hash(key);
+            int slot = hash & (slots - 1);
+            while (table.getInt(HEADER_SIZE + slot * SLOT_SIZE + 4) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            table.putInt(HEADER_SIZE + slot * SLOT_SIZE, hash);
+            table.putInt(HEADER_SIZE + slot * SLOT_SIZE + 4, base + records.position());
+
+            putRecord(records, key, stored.get(i));
+        }
+        table.clear();
+        records.flip();
+
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            while (table.hasRemaining()) {
+                channel.write(table);
+            }
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(false);
+        } finally {
+            raf.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not move " + temp + " to " + file);
+            }
+        }
+    }
+
+    long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return whether all the instance values are in the snapshot, so the keys missing are missing in the database
+     */
+    boolean isComplete()
+    {
+        return complete;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param key key, without the instance key prefix
+     * @return Boolean, Long, String, {@link Text}, Date (copy) or byte[] (copy), <code>null</code> if the key is not in
+     *         the snapshot
+     */
+    Object get(String key)
+    {
+        byte[] bytes = key.getBytes(UTF8);
+        int hash = hash(bytes);
+        int slot = hash & (slots - 1);
+        try {
+            for (int probes = 0; probes < slots; probes++) {
+                int position = HEADER_SIZE + slot * SLOT_SIZE;
+                int offset = buffer.getInt(position + 4);
+                if (offset == 0) {
+                    return null;
+                }
+                if (buffer.getInt(position) == hash && keyEquals(offset, bytes)) {
+                    return value(offset + 4 + bytes.length);
+                }
+                slot = (slot + 1) & (slots - 1);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // damaged file, the database answers
+        }
+        return null;
+    }
+
+    /**
+     * @return keys in the snapshot, in no particular order
+     */
+    List<String> keys()
+    {
+        ImmutableList.Builder<String> keys = ImmutableList.builder();
+        ByteBuffer records = buffer.duplicate();
+        records.position(HEADER_SIZE + slots * SLOT_SIZE);
+        for (int i = 0; i < size; i++) {
+            byte[] key = new byte[records.getInt()];
+            records.get(key);
+            keys.add(new String(key, UTF8));
+            skipValue(records);
+        }
+        return keys.build();
+    }
+
+    private boolean keyEquals(int offset, byte[] key)
+    {
+        if (buffer.getInt(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object value(int offset)
+    {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        try {
+            byte kind = record.get();
+            switch (kind) {
+                case KIND_BOOLEAN:
+                    return record.get() != 0;
+                case KIND_LONG:
+                    return record.getLong();
+                case KIND_DATE:
+                    return new Date(record.getLong());
+                case KIND_STRING:
+                    return string(record);
+                case KIND_TEXT:
+                    return new Text(string(record));
+                case KIND_DATA:
+                    byte[] data = new byte[record.getInt()];
+                    record.get(data);
+                    return data;
+                default:
+                    return null;
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String string(ByteBuffer record)
+    {
+        byte[] string = new byte[record.getInt()];
+        record.get(string);
+        return new String(string, UTF8);
+    }
+
+    private static void skipValue(ByteBuffer records)
+    {
+        byte kind = records.get();
+        if (kind == KIND_BOOLEAN) {
+            records.position(records.position() + 1);
+        } else if (kind == KIND_LONG || kind == KIND_DATE) {
+            records.position(records.position() + 8);
+        } else {
+            records.position(records.position() + 4 + records.getInt(records.position()));
+        }
+    }
+
+    private static int recordsLength(List<byte[]> keys, List<Object> values)
+    {
+        long length = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            length += 4 + keys.get(i).length + 1 + valueLength(values.get(i));
+        }
+        if (length > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IllegalArgumentException("Snapshot is too large");
+        }
+        return (int) length;
+    }
+
+    private static int valueLength(Object value)
+    {
+        switch (kind(value)) {
+            case KIND_BOOLEAN:
+                return 1;
+            case KIND_LONG:
+            case KIND_DATE:
+                return 8;
+            case KIND_STRING:
+                return 4 + ((String) value).getBytes(UTF8).length;
+            case KIND_TEXT:
+                return 4 + ((Text) value).text.getBytes(UTF8).length;
+            default:
+                return 4 + ((byte[]) value).length;
+        }
+    }
+
+    private static void putRecord(ByteBuffer records, byte[] key, Object value)
+    {
+        records.putInt(key.length).put(key);
+        byte kind = kind(value);
+        records.put(kind);
+        switch (kind) {
+            case KIND_BOOLEAN:
+                records.put((byte) ((Boolean) value ? 1 : 0));
+                break;
+            case KIND_LONG:
+                records.putLong(((Number) value).longValue());
+                break;
+            case KIND_DATE:
+                records.putLong(((Date) value).getTime());
+                break;
+            case KIND_STRING:
+                byte[] string = ((String) value).getBytes(UTF8);
+                records.putInt(string.length).put(string);
+                break;
+            case KIND_TEXT:
+                byte[] text = ((Text) value).text.getBytes(UTF8);
+                records.putInt(text.length).put(text);
+                break;
+            default:
+                records.putInt(((byte[]) value).length).put((byte[]) value);
+        }
+    }
+
+    private static byte kind(Object value)
+    {
+        if (value instanceof Boolean) {
+            return KIND_BOOLEAN;
+        } else if (value instanceof Long || value instanceof Integer) {
+            return KIND_LONG;
+        } else if (value instanceof String) {
+            return KIND_STRING;
+        } else if (value instanceof Text && ((Text) value).text != null) {
+            return KIND_TEXT;
+        } else if (value instanceof Date) {
+            return KIND_DATE;
+        } else if (value instanceof byte[]) {
+            return KIND_DATA;
+        }
+        return 0;
+    }
+
+    private static int hash(byte[] key)
+    {
+        int hash = Arrays.hashCode(key);
+        // spreads the low bits used for the slot
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        return hash ^ (hash >>> 7) ^ (hash >>> 4);
+    }
+
+    /**
+     * Value stored as {@link com.opensymphony.module.propertyset.PropertySet#TEXT}, the other strings are
+     * {@link com.opensymphony.module.propertyset.PropertySet#STRING}
+     */
+    static final class Text
+    {
+        private final String text;
+
+        Text(String text)
+        {
+            this.text = text;
+        }
+
+        String getText()
+        {
+            return text;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Text && (text == null ? ((Text) o).text == null : text.equals(((Text) o).text));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return text == null ? 0 : text.hashCode();
+        }
+    }
+}
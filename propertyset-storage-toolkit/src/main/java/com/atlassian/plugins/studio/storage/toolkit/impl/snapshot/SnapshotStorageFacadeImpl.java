@@ -0,0 +1,429 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.snapshot;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.TypedKeys;
+import com.atlassian.plugins.studio.storage.toolkit.impl.blob.ClosingOutputStream;
+import com.google.common.collect.ImmutableList;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * {@link StorageFacade} answering the reads from the instance snapshot while it is valid, the values stored as other
+ * PropertySet types than the read expects and the keys not in an incomplete snapshot are read through. Every write renews the
+ * database version marker and drops the snapshot.
+ */
+class SnapshotStorageFacadeImpl extends ForwardingStorageFacade
+{
+    /**
+     * The snapshot can not answer, the read goes to the delegate
+     */
+    private static final Object MISS = new Object();
+
+    /**
+     * The key is not stored, according to the complete snapshot
+     */
+    private static final Object ABSENT = new Object();
+
+    private final SnapshotStore.Holder holder;
+    private final SnapshotStore store;
+
+    SnapshotStorageFacadeImpl(SnapshotStore.Holder holder, StorageFacade delegate, SnapshotStore store)
+    {
+        super(delegate);
+        this.holder = holder;
+        this.store = store;
+    }
+
+    private Object lookup(String key)
+    {
+        SnapshotFile snapshot = store.snapshot(holder);
+        if (snapshot == null) {
+            return MISS;
+        }
+
+        Object value = snapshot.get(key);
+        if (value == null) {
+            return snapshot.isComplete() ? ABSENT : MISS;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value instanceof Boolean) {
+            store.hit();
+            return (Boolean) value;
+        } else if (value == ABSENT) {
+            store.hit();
+            return false;
+        }
+        store.miss();
+        return super.getBoolean(key);
+    }
+
+    @Override
+    public Long getLong(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value instanceof Long || value == ABSENT) {
+            store.hit();
+            return value == ABSENT ? null : (Long) value;
+        }
+        store.miss();
+        return super.getLong(key);
+    }
+
+    @Override
+    public String getString(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value instanceof String || value == ABSENT) {
+            store.hit();
+            return value == ABSENT ? null : (String) value;
+        }
+        store.miss();
+        return super.getString(key);
+    }
+
+    @Override
+    public String getText(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value instanceof SnapshotFile.Text || value == ABSENT) {
+            store.hit();
+            return value == ABSENT ? null : ((SnapshotFile.Text) value).getText();
+        }
+        store.miss();
+        return super.getText(key);
+    }
+
+    @Override
+    public Date getDate(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value instanceof Date || value == ABSENT) {
+            store.hit();
+            return value == ABSENT ? null : (Date) value;
+        }
+        store.miss();
+        return super.getDate(key);
+    }
+
+    @Override
+    public byte[] getData(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value instanceof byte[] || value == ABSENT) {
+            store.hit();
+            return value == ABSENT ? null : (byte[]) value;
+        }
+        store.miss();
+        return super.getData(key);
+    }
+
+    @Override
+    public BigDecimal getDouble(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value == ABSENT) {
+            store.hit();
+            return null;
+        } else if (value instanceof String) {
+            try {
+                BigDecimal decimal = new BigDecimal((String) value);
+                store.hit();
+                return decimal;
+            } catch (NumberFormatException e) {
+                // not a double, the delegate reports it
+            }
+        }
+        store.miss();
+        return super.getDouble(key);
+    }
+
+    @Override
+    public Object getObject(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value instanceof SnapshotFile.Text || value == ABSENT) {
+            store.hit();
+            return value == ABSENT ? null : holder.bridge.deserialize(((SnapshotFile.Text) value).getText());
+        }
+        store.miss();
+        return super.getObject(key);
+    }
+
+    @Override
+    public Properties getProperties(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (!(value instanceof SnapshotFile.Text) && value != ABSENT) {
+            store.miss();
+            return super.getProperties(key);
+        }
+
+        store.hit();
+        if (value == ABSENT) {
+            return null;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        Map<Object, Object> map = (Map) holder.bridge.deserialize(((SnapshotFile.Text) value).getText());
+
+        Properties properties = new Properties();
+        for (Map.Entry<Object, Object> entry : map.entrySet()) {
+            properties.put(entry.getKey(), entry.getValue());
+        }
+
+        return properties;
+    }
+
+    @Override
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        return TypedKeys.get(this, key);
+    }
+
+    @Override
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        return TypedKeys.getAll(this, keys);
+    }
+
+    @Override
+    public boolean exists(String key) throws StorageException
+    {
+        Object value = lookup(key);
+        if (value != MISS) {
+            store.hit();
+            return value != ABSENT;
+        }
+        store.miss();
+        return super.exists(key);
+    }
+
+    @Override
+    public Collection<String> getKeys() throws StorageException
+    {
+        SnapshotFile snapshot = store.snapshot(holder);
+        if (snapshot != null && snapshot.isComplete()) {
+            store.hit();
+            return snapshot.keys();
+        }
+        store.miss();
+        return super.getKeys();
+    }
+
+    @Override
+    public Collection<String> getKeys(String keyPrefix) throws StorageException
+    {
+        SnapshotFile snapshot = store.snapshot(holder);
+        if (snapshot != null && snapshot.isComplete()) {
+            store.hit();
+            ImmutableList.Builder<String> keys = ImmutableList.builder();
+            for (String key : snapshot.keys()) {
+                if (keyPrefix == null || key.startsWith(keyPrefix)) {
+                    keys.add(key);
+                }
+            }
+            return keys.build();
+        }
+        store.miss();
+        return super.getKeys(keyPrefix);
+    }
+
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) throws StorageException
+    {
+        SnapshotFile snapshot = store.snapshot(holder);
+        if (snapshot == null || keys == null) {
+            store.miss();
+            return super.getAll(keys);
+        }
+
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (String key : keys) {
+            Object value = snapshot.get(key);
+            if (value instanceof SnapshotFile.Text) {
+                values.put(key, ((SnapshotFile.Text) value).getText());
+            } else if (value != null) {
+                values.put(key, value);
+            } else if (!snapshot.isComplete()) {
+                store.miss();
+                return super.getAll(keys);
+            }
+        }
+        store.hit();
+        return values;
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        try {
+            super.setBoolean(key, value);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        try {
+            super.set(key, value);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        try {
+            super.setData(key, bytes);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public OutputStream openOutputStream(String key) throws StorageException
+    {
+        return new ClosingOutputStream(super.openOutputStream(key), new Runnable()
+        {
+            public void run()
+            {
+                store.changed(holder);
+            }
+        });
+    }
+
+    @Override
+    public void setDate(String key, Date date) throws StorageException
+    {
+        try {
+            super.setDate(key, date);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        try {
+            super.setDouble(key, value);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void setLong(String key, Long value) throws StorageException
+    {
+        try {
+            super.setLong(key, value);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        try {
+            super.setObject(key, objectValue);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        try {
+            super.setProperties(key, properties);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void setString(String key, String string) throws StorageException
+    {
+        try {
+            super.setString(key, string);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void setText(String key, String text) throws StorageException
+    {
+        try {
+            super.setText(key, text);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        try {
+            super.setAll(values);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws StorageException
+    {
+        try {
+            return super.remove(key);
+        } finally {
+            store.changed(holder);
+        }
+    }
+
+    @Override
+    public void removeAll() throws StorageException
+    {
+        try {
+            super.removeAll();
+        } finally {
+            store.changed(holder);
+        }
+    }
+}
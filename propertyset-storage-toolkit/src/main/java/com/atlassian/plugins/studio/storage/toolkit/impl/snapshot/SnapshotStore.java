@@ -0,0 +1,549 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.snapshot;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.StoredStateDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.StoredText;
+import com.opensymphony.module.propertyset.PropertyException;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local memory-mapped snapshots of the read-mostly scope instances, serving the reads right after the restart.
+ * <p/>
+ * The database stays the source of truth: every write through the snapshot facade stores a new random version
+ * marker next to the instance data, the snapshot remembers the marker it was taken at and is used only while the
+ * markers match. The marker is read again once per <code>revalidateMillis</code>, so the writes of the other cluster
+ * nodes are seen within that interval. Stale or missing snapshots are rewritten in background, the facade reads
+ * through meanwhile. Writes bypassing the toolkit are not seen. The evictions of the instances changed by the other
+ * nodes drop the local snapshot and read the marker again, the marker is renewed by the local writes only.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     Scopes.enableSnapshots(new SnapshotStore(new File(jiraHome.getDataDirectory(), "storage-snapshots")), "settings");
+ * </pre>
+ */
+public class SnapshotStore implements StoredStateDecorator
+{
+    public static final long DEFAULT_REBUILD_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_REVALIDATE_MILLIS = 5000;
+
+    static final String MARKER_PREFIX = "snapshot-version-";
+    static final String FILE_SUFFIX = ".snapshot";
+
+    private static final AtomicInteger REBUILDERS = new AtomicInteger();
+
+    /**
+     * Value left out of the snapshot
+     */
+    private static final Object UNTYPED = new Object();
+
+    private final File directory;
+    private final long rebuildDelayMillis;
+    private final long revalidateNanos;
+    private final Random random = new SecureRandom();
+
+    private final ConcurrentMap<InstanceId, Holder> holders = new ConcurrentHashMap<InstanceId, Holder>();
+
+    /**
+     * Guarded by this
+     */
+    private ScheduledExecutorService rebuilder;
+    private volatile boolean shutdown;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public SnapshotStore(File directory)
+    {
+        this(directory, DEFAULT_REBUILD_DELAY_MILLIS);
+    }
+
+    /**
+     * @param directory          snapshot files directory, created if missing
+     * @param rebuildDelayMillis delay before rewriting the stale snapshot, writes made meanwhile are taken at once
+     */
+    public SnapshotStore(File directory, long rebuildDelayMillis)
+    {
+        this(directory, rebuildDelayMillis, DEFAULT_REVALIDATE_MILLIS);
+    }
+
+    /**
+     * @param directory          snapshot files directory, created if missing
+     * @param rebuildDelayMillis delay before rewriting the stale snapshot, writes made meanwhile are taken at once
+     * @param revalidateMillis   how long the version marker read is trusted, 0 reads it on every snapshot read
+     */
+    public SnapshotStore(File directory, long rebuildDelayMillis, long revalidateMillis)
+    {
+        Assertions.notNull("Snapshot directory is null", directory);
+        Assertions.stateTrue("rebuildDelayMillis should not be negative", rebuildDelayMillis >= 0);
+        Assertions.stateTrue("revalidateMillis should not be negative", revalidateMillis >= 0);
+
+        this.directory = directory;
+        this.rebuildDelayMillis = rebuildDelayMillis;
+        this.revalidateNanos = TimeUnit.MILLISECONDS.toNanos(revalidateMillis);
+    }
+
+    public StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade)
+    {
+        Holder holder = holders.get(instanceId);
+        if (holder == null) {
+            Holder created = new Holder(instanceId, bridge, facade);
+            holder = holders.putIfAbsent(instanceId, created);
+            if (holder == null) {
+                holder = created;
+            }
+        }
+        holder.bridge = bridge;
+        holder.source = facade;
+
+        return new SnapshotStorageFacadeImpl(holder, facade, this);
+    }
+
+    /**
+     * The instance data was removed bypassing the facade, here or on another node: the version marker is renewed
+     * and the local snapshot dropped
+     *
+     * @param instanceId storage instance id
+     */
+    public void invalidate(InstanceId instanceId)
+    {
+        Holder holder = holders.get(instanceId);
+        if (holder != null) {
+            changed(holder);
+        } else {
+            delete(file(instanceId));
+        }
+    }
+
+    public void invalidateAll()
+    {
+        for (Holder holder : holders.values()) {
+            changed(holder);
+        }
+    }
+
+    /**
+     * The instance data was changed by another node, which has renewed the version marker: the local snapshot is
+     * dropped and the marker read again on the next read
+     *
+     * @param instanceId storage instance id
+     */
+    public void evict(InstanceId instanceId)
+    {
+        Holder holder = holders.get(instanceId);
+        if (holder != null) {
+            evicted(holder);
+        }
+    }
+
+    public void evictAll()
+    {
+        for (Holder holder : holders.values()) {
+            evicted(holder);
+        }
+    }
+
+    /**
+     * Stops the background rewrites, the snapshots written stay for the next start
+     */
+    public synchronized void shutdown()
+    {
+        shutdown = true;
+        if (rebuilder != null) {
+            rebuilder.shutdown();
+        }
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return reads served by the snapshots
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return reads passed to the database, no valid snapshot or the value not in the snapshot
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public long getRebuildCount()
+    {
+        return rebuilds.get();
+    }
+
+    public long getFailureCount()
+    {
+        return failures.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SnapshotStore[directory=" + directory + ", instances=" + holders.size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", rebuilds=" + getRebuildCount() + ", failures="
+                + getFailureCount() + "]";
+    }
+
+    void hit()
+    {
+        hits.incrementAndGet();
+    }
+
+    void miss()
+    {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * @param holder instance state
+     * @return snapshot matching the database version marker, <code>null</code> if there is none yet
+     */
+    SnapshotFile snapshot(Holder holder)
+    {
+        if (isStale(holder)) {
+            synchronized (holder) {
+                if (isStale(holder)) {
+                    holder.snapshot = validate(holder);
+                    checked(holder);
+                }
+            }
+        }
+
+        SnapshotFile snapshot = holder.snapshot;
+        if (snapshot == null) {
+            scheduleRebuild(holder);
+        }
+        return snapshot;
+    }
+
+    /**
+     * The instance data was changed, the snapshot is dropped and the other snapshots are made stale
+     *
+     * @param holder instance state
+     */
+    void changed(Holder holder)
+    {
+        synchronized (holder) {
+            holder.generation++;
+            holder.snapshot = null;
+            checked(holder);
+        }
+
+        try {
+            writeMarker(holder, newMarker());
+        } catch (StorageException e) {
+            // the old marker stays, drop the file so that it is not trusted after the restart
+            failures.incrementAndGet();
+            delete(file(holder.instanceId));
+        }
+        scheduleRebuild(holder);
+    }
+
+    private static void evicted(Holder holder)
+    {
+        synchronized (holder) {
+            holder.generation++;
+            holder.snapshot = null;
+            holder.checked = false;
+        }
+    }
+
+    private boolean isStale(Holder holder)
+    {
+        return !holder.checked || System.nanoTime() - holder.checkedAt >= revalidateNanos;
+    }
+
+    private static void checked(Holder holder)
+    {
+        holder.checkedAt = System.nanoTime();
+        holder.checked = true;
+    }
+
+    /**
+     * @param holder instance state
+     * @return the snapshot in use or the snapshot file if either matches the database version marker
+     */
+    private SnapshotFile validate(Holder holder)
+    {
+        try {
+            long marker = readMarker(holder);
+            SnapshotFile snapshot = holder.snapshot;
+            if (snapshot == null || snapshot.getVersion() != marker) {
+                snapshot = SnapshotFile.open(file(holder.instanceId));
+            }
+            if (snapshot != null && snapshot.getVersion() != 0 && snapshot.getVersion() == marker) {
+                return snapshot;
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+        } catch (StorageException e) {
+            failures.incrementAndGet();
+        }
+        return null;
+    }
+
+    private void scheduleRebuild(final Holder holder)
+    {
+        if (!holder.rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+
+        ScheduledExecutorService executor = rebuilder();
+        if (executor == null) {
+            holder.rebuilding.set(false);
+            return;
+        }
+
+        executor.schedule(new Runnable()
+        {
+            public void run()
+            {
+                try {
+                    rebuild(holder);
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    holder.rebuilding.set(false);
+                }
+            }
+        }, rebuildDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the instance data between two reads of the version marker, the snapshot is written only if the marker
+     * did not change meanwhile
+     *
+     * @param holder instance state
+     */
+    void rebuild(Holder holder)
+    {
+        long generation = holder.generation;
+        try {
+            long marker = readMarker(holder);
+            if (marker == 0) {
+                marker = newMarker();
+                writeMarker(holder, marker);
+            }
+
+            StorageFacade source = holder.source;
+            Collection<String> keys = source.getKeys();
+            Map<String, Object> values = keys == null || keys.isEmpty()
+                    ? Collections.<String, Object>emptyMap()
+                    : source.getAll(keys);
+
+            values = typed(holder, values);
+
+            if (readMarker(holder) != marker || holder.generation != generation) {
+                // changed meanwhile, the change has scheduled another rewrite
+                return;
+            }
+
+            File file = file(holder.instanceId);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            SnapshotFile.write(file, marker, values);
+            SnapshotFile snapshot = SnapshotFile.open(file);
+
+            synchronized (holder) {
+                if (holder.generation == generation) {
+                    holder.snapshot = snapshot;
+                    checked(holder);
+                }
+            }
+            rebuilds.incrementAndGet();
+        } catch (StorageException e) {
+            failures.incrementAndGet();
+        } catch (IOException e) {
+            failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * The facade reads the strings and the texts alike, the stored values tell the PropertySet type apart
+     *
+     * @param holder instance state
+     * @param values values read through the facade
+     * @return values with the texts as {@link SnapshotFile.Text}, the strings of unknown type are left out
+     * @throws StorageException read failure
+     */
+    private static Map<String, Object> typed(Holder holder, Map<String, Object> values) throws StorageException
+    {
+        List<String> strings = new ArrayList<String>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() instanceof String) {
+                strings.add(entry.getKey());
+            }
+        }
+        if (strings.isEmpty()) {
+            return values;
+        }
+
+        Map<String, Object> stored = holder.bridge.getValues(Collections.singleton(holder.instanceId), strings)
+                .get(holder.instanceId);
+        Map<String, Object> typed = new HashMap<String, Object>(values);
+        for (String key : strings) {
+            Object value = stored == null ? null : stored.get(key);
+            if (value instanceof StoredText) {
+                typed.put(key, new SnapshotFile.Text((String) values.get(key)));
+            } else if (!(value instanceof String)) {
+                // changed meanwhile or not stored yet, the snapshot is incomplete
+                typed.put(key, UNTYPED);
+            }
+        }
+        return typed;
+    }
+
+    private long readMarker(Holder holder) throws StorageException
+    {
+        try {
+            PropertySet delegate = holder.bridge.loadDelegate(holder.instanceId);
+            String key = markerKey(holder.instanceId);
+            return delegate.exists(key) ? delegate.getLong(key) : 0;
+        } catch (PropertyException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private void writeMarker(Holder holder, long marker) throws StorageException
+    {
+        try {
+            holder.bridge.loadDelegate(holder.instanceId).setLong(markerKey(holder.instanceId), marker);
+        } catch (PropertyException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private long newMarker()
+    {
+        long marker;
+        do {
+            marker = random.nextLong();
+        } while (marker == 0);
+        return marker;
+    }
+
+    /**
+     * @param instanceId storage instance id
+     * @return marker key, outside of the instance key prefix so it is never listed as the instance data
+     */
+    static String markerKey(InstanceId instanceId)
+    {
+        return MARKER_PREFIX + StringUtils.defaultString(instanceId.getKeyPrefix());
+    }
+
+    File file(InstanceId instanceId)
+    {
+        String name = instanceId.getEntityName() + "-" + instanceId.getEntityId() + "-"
+                + StringUtils.defaultString(instanceId.getKeyPrefix());
+        StringBuilder safe = new StringBuilder(name.length() + 16);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            safe.append(Character.isLetterOrDigit(c) && c < 128 || c == '-' || c == '.' ? c : '_');
+        }
+        safe.append('-').append(Integer.toHexString(name.hashCode())).append(FILE_SUFFIX);
+        return new File(directory, safe.toString());
+    }
+
+    private static void delete(File file)
+    {
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    private synchronized ScheduledExecutorService rebuilder()
+    {
+        if (rebuilder == null && !shutdown) {
+            rebuilder = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "storage-snapshot-" + REBUILDERS.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return shutdown ? null : rebuilder;
+    }
+
+    /**
+     * Snapshot state of one scope instance
+     */
+    static final class Holder
+    {
+        final InstanceId instanceId;
+        final AtomicBoolean rebuilding = new AtomicBoolean();
+
+        volatile ScopeOperations bridge;
+        volatile StorageFacade source;
+
+        /**
+         * Guarded by this for writes
+         */
+        volatile SnapshotFile snapshot;
+        volatile boolean checked;
+        volatile long checkedAt;
+        volatile long generation;
+
+        Holder(InstanceId instanceId, ScopeOperations bridge, StorageFacade source)
+        {
+            this.instanceId = instanceId;
+            this.bridge = bridge;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.trace;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Storage calls made by one thread while handling one request, grouped by storage instance and key.
+ * <p/>
+ * Not thread safe, every recording belongs to the thread which started it. Details are kept for a bounded
+ * number of instances and keys, the calls past the limit are only counted.
+ */
+public class Recording
+{
+    static final int MAX_TRACKED = 1000;
+    private static final int MAX_REPORTED = 5;
+
+    private int loadCalls;
+    private int facadeCalls;
+    private int bridgeCalls;
+    private final Map<InstanceId, int[]> loads = new HashMap<InstanceId, int[]>();
+    private final Map<InstanceId, Map<String, int[]>> reads = new HashMap<InstanceId, Map<String, int[]>>();
+    private int trackedReads;
+
+    void loaded(InstanceId instanceId)
+    {
+        loadCalls++;
+        if (loads.size() < MAX_TRACKED || loads.containsKey(instanceId)) {
+            increment(loads, instanceId);
+        }
+    }
+
+    void called()
+    {
+        facadeCalls++;
+    }
+
+    /**
+     * Single key read
+     */
+    void read(InstanceId instanceId, String key)
+    {
+        called();
+
+        Map<String, int[]> keys = reads.get(instanceId);
+        if (keys == null) {
+            if (reads.size() >= MAX_TRACKED) {
+                return;
+            }
+            keys = new HashMap<String, int[]>();
+            reads.put(instanceId, keys);
+        }
+        if (keys.containsKey(key) || trackedReads < MAX_TRACKED) {
+            if (!keys.containsKey(key)) {
+                trackedReads++;
+            }
+            increment(keys, key);
+        }
+    }
+
+    /**
+     * Scope operations call, not bound to a facade
+     */
+    void bridgeCalled()
+    {
+        bridgeCalls++;
+    }
+
+    private static <K> void increment(Map<K, int[]> counts, K key)
+    {
+        int[] count = counts.get(key);
+        if (count == null) {
+            counts.put(key, new int[]{1});
+        } else {
+            count[0]++;
+        }
+    }
+
+    /**
+     * @return all the storage calls: facade loads, facade calls and scope operations calls
+     */
+    public int getCallCount()
+    {
+        return loadCalls + facadeCalls + bridgeCalls;
+    }
+
+    public int getFacadeCallCount()
+    {
+        return facadeCalls;
+    }
+
+    /**
+     * @return number of times the instance facade was loaded
+     */
+    public int getLoadCount(InstanceId instanceId)
+    {
+        int[] count = loads.get(instanceId);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * @return number of single key reads of the key
+     */
+    public int getReadCount(InstanceId instanceId, String key)
+    {
+        Map<String, int[]> keys = reads.get(instanceId);
+        int[] count = keys == null ? null : keys.get(key);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * @return facades loaded more than once
+     */
+    public List<Finding> getRepeatedLoads()
+    {
+        List<Finding> findings = new ArrayList<Finding>();
+        for (Map.Entry<InstanceId, int[]> load : loads.entrySet()) {
+            if (load.getValue()[0] > 1) {
+                findings.add(new Finding(describe(load.getKey()), null, load.getValue()[0]));
+            }
+        }
+        return sorted(findings);
+    }
+
+    /**
+     * @return keys read more than once from the same instance, cache candidates
+     */
+    public List<Finding> getRepeatedReads()
+    {
+        List<Finding> findings = new ArrayList<Finding>();
+        for (Map.Entry<InstanceId, Map<String, int[]>> instance : reads.entrySet()) {
+            for (Map.Entry<String, int[]> key : instance.getValue().entrySet()) {
+                if (key.getValue()[0] > 1) {
+                    findings.add(new Finding(describe(instance.getKey()), key.getKey(), key.getValue()[0]));
+                }
+            }
+        }
+        return sorted(findings);
+    }
+
+    /**
+     * @return instances with several keys read one by one, {@link com.atlassian.plugins.studio.storage.toolkit.StorageFacade#getAll}
+     *         candidates
+     */
+    public List<Finding> getBatchableReads()
+    {
+        List<Finding> findings = new ArrayList<Finding>();
+        for (Map.Entry<InstanceId, Map<String, int[]>> instance : reads.entrySet()) {
+            if (instance.getValue().size() > 1) {
+                findings.add(new Finding(describe(instance.getKey()), null, instance.getValue().size()));
+            }
+        }
+        return sorted(findings);
+    }
+
+    /**
+     * @return keys read from many instances of the same scope, one instance at a time (the N+1 pattern),
+     *         {@link com.atlassian.plugins.studio.storage.toolkit.Scope#loadAll} candidates
+     */
+    public List<Finding> getScatteredReads()
+    {
+        Map<List<String>, Set<InstanceId>> instances = new HashMap<List<String>, Set<InstanceId>>();
+        for (Map.Entry<InstanceId, Map<String, int[]>> instance : reads.entrySet()) {
+            for (String key : instance.getValue().keySet()) {
+                List<String> scopeKey = Arrays.asList(instance.getKey().getEntityName(), key);
+                Set<InstanceId> readFrom = instances.get(scopeKey);
+                if (readFrom == null) {
+                    readFrom = new HashSet<InstanceId>();
+                    instances.put(scopeKey, readFrom);
+                }
+                readFrom.add(instance.getKey());
+            }
+        }
+
+        List<Finding> findings = new ArrayList<Finding>();
+        for (Map.Entry<List<String>, Set<InstanceId>> scopeKey : instances.entrySet()) {
+            if (scopeKey.getValue().size() > 1) {
+                findings.add(new Finding(scopeKey.getKey().get(0), scopeKey.getKey().get(1), scopeKey.getValue().size()));
+            }
+        }
+        return sorted(findings);
+    }
+
+    /**
+     * @return one line summary of the calls and the suspicious patterns
+     */
+    public String summary()
+    {
+        StringBuilder summary = new StringBuilder("storage calls=").append(getCallCount())
+                .append(" (loads=").append(loadCalls)
+                .append(", facade=").append(facadeCalls)
+                .append(", bridge=").append(bridgeCalls).append(')');
+        append(summary, "repeated loads", getRepeatedLoads());
+        append(summary, "repeated reads", getRepeatedReads());
+        append(summary, "batchable reads (getAll)", getBatchableReads());
+        append(summary, "N+1 reads (Scope.loadAll)", getScatteredReads());
+        return summary.toString();
+    }
+
+    private static void append(StringBuilder summary, String title, List<Finding> findings)
+    {
+        if (findings.isEmpty()) {
+            return;
+        }
+
+        summary.append("; ").append(title).append(": ");
+        for (int i = 0; i < findings.size() && i < MAX_REPORTED; i++) {
+            summary.append(i == 0 ? "" : ", ").append(findings.get(i));
+        }
+        if (findings.size() > MAX_REPORTED) {
+            summary.append(", ... ").append(findings.size() - MAX_REPORTED).append(" more");
+        }
+    }
+
+    private static String describe(InstanceId instanceId)
+    {
+        return instanceId.getEntityName() + "#" + instanceId.getEntityId();
+    }
+
+    private static List<Finding> sorted(List<Finding> findings)
+    {
+        Collections.sort(findings, new Comparator<Finding>()
+        {
+            public int compare(Finding o1, Finding o2)
+            {
+                return o2.getCount() - o1.getCount();
+            }
+        });
+        return findings;
+    }
+
+    /**
+     * Suspicious access pattern
+     */
+    public static class Finding
+    {
+        private final String instance;
+        private final String key;
+        private final int count;
+
+        Finding(String instance, String key, int count)
+        {
+            this.instance = instance;
+            this.key = key;
+            this.count = count;
+        }
+
+        /**
+         * @return storage instance (entity name#id) or scope (entity name)
+         */
+        public String getInstance()
+        {
+            return instance;
+        }
+
+        /**
+         * @return key, <code>null</code> if the finding is not about one key
+         */
+        public String getKey()
+        {
+            return key;
+        }
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        @Override
+        public String toString()
+        {
+            return key == null ? instance + " x" + count : instance + " '" + key + "' x" + count;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.trace;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.opensymphony.module.propertyset.PropertySet;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Counts the scope operations calls into the {@link Recording} of the current thread.
+ */
+class RecordingScopeOperations extends ForwardingScopeOperations
+{
+    RecordingScopeOperations(ScopeOperations delegate)
+    {
+        super(delegate);
+    }
+
+    private static void called()
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.bridgeCalled();
+        }
+    }
+
+    @Override
+    public PropertySet loadDelegate(InstanceId descriptor) throws StorageException
+    {
+        called();
+        return super.loadDelegate(descriptor);
+    }
+
+    @Override
+    public Map<InstanceId, Map<String, Object>> getValues(Collection<InstanceId> descriptors, Collection<String> keys) throws StorageException
+    {
+        called();
+        return super.getValues(descriptors, keys);
+    }
+
+    @Override
+    public void setValues(InstanceId descriptor, Map<String, Object> values) throws StorageException
+    {
+        called();
+        super.setValues(descriptor, values);
+    }
+
+    @Override
+    public CloseableIterator<String> keys(InstanceId descriptor, String keyPrefix, int pageSize) throws StorageException
+    {
+        called();
+        return super.keys(descriptor, keyPrefix, pageSize);
+    }
+
+    @Override
+    public void inTransaction(Runnable work) throws StorageException
+    {
+        called();
+        super.inTransaction(work);
+    }
+
+    @Override
+    public void removeByFilter(Long entityId, String entityName, String keyPrefix) throws StorageException
+    {
+        called();
+        super.removeByFilter(entityId, entityName, keyPrefix);
+    }
+
+    @Override
+    public void removeEntities(String entityName, Collection<Long> entityIds) throws StorageException
+    {
+        called();
+        super.removeEntities(entityName, entityIds);
+    }
+
+    @Override
+    public String serialize(Object instance) throws StorageException
+    {
+        called();
+        return super.serialize(instance);
+    }
+
+    @Override
+    public Object deserialize(String input) throws StorageException
+    {
+        called();
+        return super.deserialize(input);
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.trace;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingStorageFacade;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Counts the facade calls into the {@link Recording} of the current thread, single key reads are tracked by key.
+ */
+class RecordingStorageFacadeImpl extends ForwardingStorageFacade
+{
+    private final InstanceId instanceId;
+
+    RecordingStorageFacadeImpl(StorageFacade delegate, InstanceId instanceId)
+    {
+        super(delegate);
+        this.instanceId = instanceId;
+    }
+
+    private static void called()
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.called();
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getBoolean(key);
+    }
+
+    @Override
+    public byte[] getData(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getData(key);
+    }
+
+    @Override
+    public InputStream openInputStream(String key, long offset, long length) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.openInputStream(key, offset, length);
+    }
+
+    @Override
+    public Date getDate(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getDate(key);
+    }
+
+    @Override
+    public BigDecimal getDouble(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getDouble(key);
+    }
+
+    @Override
+    public Long getLong(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getLong(key);
+    }
+
+    @Override
+    public Object getObject(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getObject(key);
+    }
+
+    @Override
+    public Properties getProperties(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getProperties(key);
+    }
+
+    @Override
+    public String getString(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getString(key);
+    }
+
+    @Override
+    public String getText(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.getText(key);
+    }
+
+    @Override
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key.getName());
+        }
+        return super.get(key);
+    }
+
+    @Override
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        called();
+        super.set(key, value);
+    }
+
+    @Override
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        called();
+        return super.getAll(keys);
+    }
+
+    @Override
+    public boolean exists(String key) throws StorageException
+    {
+        Recording recording = RequestRecorder.current();
+        if (recording != null) {
+            recording.read(instanceId, key);
+        }
+        return super.exists(key);
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        called();
+        super.setBoolean(key, value);
+    }
+
+    @Override
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        called();
+        super.setData(key, bytes);
+    }
+
+    @Override
+    public OutputStream openOutputStream(String key) throws StorageException
+    {
+        called();
+        return super.openOutputStream(key);
+    }
+
+    @Override
+    public void setDate(String key, Date date) throws StorageException
+    {
+        called();
+        super.setDate(key, date);
+    }
+
+    @Override
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        called();
+        super.setDouble(key, value);
+    }
+
+    @Override
+    public Collection<String> getKeys() throws StorageException
+    {
+        called();
+        return super.getKeys();
+    }
+
+    @Override
+    public Collection<String> getKeys(String keyPrefix) throws StorageException
+    {
+        called();
+        return super.getKeys(keyPrefix);
+    }
+
+    @Override
+    public int countKeys(String keyPrefix) throws StorageException
+    {
+        called();
+        return super.countKeys(keyPrefix);
+    }
+
+    @Override
+    public Collection<String> getKeyRange(String fromKey, String toKey) throws StorageException
+    {
+        called();
+        return super.getKeyRange(fromKey, toKey);
+    }
+
+    @Override
+    public CloseableIterator<String> keys(String keyPrefix, int pageSize) throws StorageException
+    {
+        called();
+        return super.keys(keyPrefix, pageSize);
+    }
+
+    @Override
+    public void setLong(String key, Long value) throws StorageException
+    {
+        called();
+        super.setLong(key, value);
+    }
+
+    @Override
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        called();
+        super.setObject(key, objectValue);
+    }
+
+    @Override
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        called();
+        super.setProperties(key, properties);
+    }
+
+    @Override
+    public void setString(String key, String string) throws StorageException
+    {
+        called();
+        super.setString(key, string);
+    }
+
+    @Override
+    public void setText(String key, String text) throws StorageException
+    {
+        called();
+        super.setText(key, text);
+    }
+
+    @Override
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        called();
+        super.setAll(values);
+    }
+
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) throws StorageException
+    {
+        called();
+        return super.getAll(keys);
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) throws StorageException
+    {
+        called();
+        return super.getAll(keys, type);
+    }
+
+    @Override
+    public boolean remove(String key) throws StorageException
+    {
+        called();
+        return super.remove(key);
+    }
+
+    @Override
+    public void removeAll() throws StorageException
+    {
+        called();
+        super.removeAll();
+    }
+}
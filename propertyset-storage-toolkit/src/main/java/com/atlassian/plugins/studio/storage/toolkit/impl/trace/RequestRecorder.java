@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.trace;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ObservingDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+
+/**
+ * Counts the storage calls made by the current thread between {@link #start()} and {@link #stop()}, meant to
+ * wrap the handling of one request (see the sample plugin servlet filter). Outside of a recording the decorated
+ * facades only pay for a thread local lookup.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     Recording recording = RequestRecorder.start();
+ *     try {
+ *         ... handle request ...
+ *     } finally {
+ *         RequestRecorder.stop();
+ *     }
+ *     if (recording.getCallCount() &gt; threshold) {
+ *         log.warn(recording.summary());
+ *     }
+ * </pre>
+ */
+public class RequestRecorder implements ObservingDecorator
+{
+    private static final ThreadLocal<Recording> CURRENT = new ThreadLocal<Recording>();
+
+    /**
+     * Starts recording the calls of the current thread, restarts the recording in progress if any
+     *
+     * @return recording
+     */
+    public static Recording start()
+    {
+        Recording recording = new Recording();
+        CURRENT.set(recording);
+        return recording;
+    }
+
+    /**
+     * @return recording in progress, <code>null</code> if none
+     */
+    public static Recording current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stops recording the calls of the current thread
+     *
+     * @return recording stopped, <code>null</code> if none was in progress
+     */
+    public static Recording stop()
+    {
+        Recording recording = CURRENT.get();
+        CURRENT.remove();
+        return recording;
+    }
+
+    public StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade)
+    {
+        Recording recording = current();
+        if (recording != null) {
+            recording.loaded(instanceId);
+        }
+        return new RecordingStorageFacadeImpl(facade, instanceId);
+    }
+
+    public void invalidate(InstanceId instanceId)
+    {
+    }
+
+    public void invalidateAll()
+    {
+    }
+
+    /**
+     * @param bridge scope operations
+     * @return scope operations counting the calls
+     */
+    public ScopeOperations instrument(ScopeOperations bridge)
+    {
+        return new RecordingScopeOperations(bridge);
+    }
+}
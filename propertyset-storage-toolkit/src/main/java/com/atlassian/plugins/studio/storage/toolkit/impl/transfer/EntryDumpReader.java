@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.transfer;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.PropertyEntry;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Date;
+
+/**
+ * Reads the dump written by {@link EntryDumpWriter}, record by record through one fixed direct buffer.
+ * A dump ending before its end marker is reported as {@link StorageException}.
+ */
+public class EntryDumpReader
+{
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(EntryDumpWriter.BUFFER_SIZE);
+
+    private String lastEntityName;
+    private long records;
+    private boolean finished;
+
+    /**
+     * @param channel channel to read from, left open
+     * @throws IOException      read failure
+     * @throws StorageException not a dump or unsupported format version
+     */
+    public EntryDumpReader(ReadableByteChannel channel) throws IOException, StorageException
+    {
+        this.channel = Assertions.notNull("Channel is null", channel);
+        buffer.flip();
+
+        fill(8);
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        if (magic != EntryDumpWriter.MAGIC) {
+            throw new StorageException("Not a storage dump");
+        }
+        if (version != EntryDumpWriter.VERSION) {
+            throw new StorageException("Unsupported storage dump version " + version);
+        }
+    }
+
+    /**
+     * @return next entry, <code>null</code> at the end of the dump
+     * @throws IOException      read failure
+     * @throws StorageException truncated or corrupted dump
+     */
+    public PropertyEntry read() throws IOException, StorageException
+    {
+        if (finished) {
+            return null;
+        }
+
+        fill(4);
+        int length = buffer.getInt();
+        if (length == EntryDumpWriter.END) {
+            fill(8);
+            long written = buffer.getLong();
+            if (written != records) {
+                throw new StorageException("Storage dump holds " + written + " records, " + records + " read");
+            }
+            finished = true;
+            return null;
+        }
+        if (length < 0) {
+            throw new StorageException("Corrupted storage dump record #" + records);
+        }
+
+        ByteBuffer record;
+        if (length > EntryDumpWriter.BUFFER_SIZE) {
+            // large value, read past the buffer into its own one
+            record = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining() && record.hasRemaining()) {
+                record.put(buffer.get());
+            }
+            while (record.hasRemaining()) {
+                if (channel.read(record) < 0) {
+                    throw truncated();
+                }
+            }
+            record.flip();
+        } else {
+            fill(length);
+            record = buffer;
+        }
+
+        int end = record.position() + length;
+        PropertyEntry entry;
+        try {
+            entry = decode(record);
+        } catch (BufferUnderflowException e) {
+            throw new StorageException("Corrupted storage dump record #" + records, e);
+        }
+        if (record.position() != end) {
+            throw new StorageException("Corrupted storage dump record #" + records);
+        }
+
+        records++;
+        return entry;
+    }
+
+    /**
+     * @param count records to skip
+     * @return records skipped, less than <code>count</code> at the end of the dump
+     * @throws IOException      read failure
+     * @throws StorageException truncated or corrupted dump
+     */
+    public long skip(long count) throws IOException, StorageException
+    {
+        long skipped = 0;
+        while (skipped < count && read() != null) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * @return records read so far
+     */
+    public long getRecords()
+    {
+        return records;
+    }
+
+    private PropertyEntry decode(ByteBuffer record) throws StorageException
+    {
+        byte flags = record.get();
+        if ((flags & EntryDumpWriter.FLAG_ENTITY_NAME) != 0) {
+            lastEntityName = string(record);
+        } else if (lastEntityName == null) {
+            throw new StorageException("Corrupted storage dump record #" + records + ", no entity name");
+        }
+
+        long entityId = record.getLong();
+        String propertyKey = string(record);
+        int type = record.get();
+
+        Object value;
+        byte tag = record.get();
+        switch (tag) {
+            case EntryDumpWriter.VALUE_NULL:
+                value = null;
+                break;
+            case EntryDumpWriter.VALUE_LONG:
+                value = record.getLong();
+                break;
+            case EntryDumpWriter.VALUE_DOUBLE:
+                value = Double.longBitsToDouble(record.getLong());
+                break;
+            case EntryDumpWriter.VALUE_STRING:
+                value = string(record);
+                break;
+            case EntryDumpWriter.VALUE_DATE:
+                value = new Date(record.getLong());
+                break;
+            case EntryDumpWriter.VALUE_BYTES:
+                byte[] bytes = new byte[record.getInt()];
+                record.get(bytes);
+                value = bytes;
+                break;
+            default:
+                throw new StorageException("Corrupted storage dump record #" + records + ", value tag " + tag);
+        }
+
+        return new PropertyEntry(lastEntityName, entityId, propertyKey, type, value);
+    }
+
+    private static String string(ByteBuffer record)
+    {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, EntryDumpWriter.UTF8);
+    }
+
+    private void fill(int bytes) throws IOException, StorageException
+    {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+
+        buffer.compact();
+        try {
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw truncated();
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private StorageException truncated()
+    {
+        return new StorageException("Storage dump is truncated after " + records + " records");
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.transfer;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.impl.PropertyEntry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * Writes the entries as the length-prefixed binary dump.
+ * <p/>
+ * The dump starts with the {@link #MAGIC} and the format version, every record is the payload length followed by
+ * the flags, the entity name (only when it differs from the previous record), the entity id, the property key, the
+ * PropertySet type and the tagged value. Length -1 and the record count end the dump. Records go through one
+ * fixed direct buffer, the values not fitting it are written to the channel as they are.
+ */
+public class EntryDumpWriter
+{
+    static final int MAGIC = 0x50535444;
+    static final int VERSION = 1;
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final int END = -1;
+
+    static final byte FLAG_ENTITY_NAME = 1;
+
+    static final byte VALUE_NULL = 0;
+    static final byte VALUE_LONG = 1;
+    static final byte VALUE_DOUBLE = 2;
+    static final byte VALUE_STRING = 3;
+    static final byte VALUE_DATE = 4;
+    static final byte VALUE_BYTES = 5;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private String lastEntityName;
+    private long records;
+    private boolean finished;
+
+    /**
+     * @param channel channel to write to, left open
+     * @throws IOException write failure
+     */
+    public EntryDumpWriter(WritableByteChannel channel) throws IOException
+    {
+        this.channel = Assertions.notNull("Channel is null", channel);
+        buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    /**
+     * @param entry entry to append
+     * @throws IOException write failure
+     */
+    public void write(PropertyEntry entry) throws IOException
+    {
+        Assertions.stateTrue("Dump is finished", !finished);
+
+        byte[] entityName = entry.getEntityName().equals(lastEntityName) ? null : entry.getEntityName().getBytes(UTF8);
+        byte[] key = entry.getPropertyKey().getBytes(UTF8);
+
+        Object value = entry.getValue();
+        byte tag = tag(value);
+        byte[] bytes = null;
+        int valueLength;
+        if (tag == VALUE_STRING) {
+            bytes = ((String) value).getBytes(UTF8);
+            valueLength = 4 + bytes.length;
+        } else if (tag == VALUE_BYTES) {
+            bytes = (byte[]) value;
+            valueLength = 4 + bytes.length;
+        } else {
+            valueLength = tag == VALUE_NULL ? 0 : 8;
+        }
+
+        int headLength = 1 + (entityName == null ? 0 : 4 + entityName.length) + 8 + 4 + key.length + 1 + 1;
+        int length = headLength + valueLength;
+
+        if (4 + length > BUFFER_SIZE) {
+            // the value bytes do not fit the buffer, those are written straight to the channel
+            ensure(4 + headLength + 4);
+            putHead(length, entityName, entry, key, tag);
+            buffer.putInt(bytes.length);
+            drain();
+            write(ByteBuffer.wrap(bytes));
+        } else {
+            ensure(4 + length);
+            putHead(length, entityName, entry, key, tag);
+            if (bytes != null) {
+                buffer.putInt(bytes.length).put(bytes);
+            } else if (tag == VALUE_LONG) {
+                buffer.putLong(((Long) value));
+            } else if (tag == VALUE_DOUBLE) {
+                buffer.putLong(Double.doubleToLongBits((Double) value));
+            } else if (tag == VALUE_DATE) {
+                buffer.putLong(((Date) value).getTime());
+            }
+        }
+
+        lastEntityName = entry.getEntityName();
+        records++;
+    }
+
+    /**
+     * Writes the end of the dump and flushes the buffer, the channel is left open
+     *
+     * @throws IOException write failure
+     */
+    public void finish() throws IOException
+    {
+        if (finished) {
+            return;
+        }
+        ensure(12);
+        buffer.putInt(END).putLong(records);
+        drain();
+        finished = true;
+    }
+
+    /**
+     * @return records written so far
+     */
+    public long getRecords()
+    {
+        return records;
+    }
+
+    private void putHead(int length, byte[] entityName, PropertyEntry entry, byte[] key, byte tag)
+    {
+        buffer.putInt(length);
+        buffer.put(entityName == null ? 0 : FLAG_ENTITY_NAME);
+        if (entityName != null) {
+            buffer.putInt(entityName.length).put(entityName);
+        }
+        buffer.putLong(entry.getEntityId());
+        buffer.putInt(key.length).put(key);
+        buffer.put((byte) entry.getType());
+        buffer.put(tag);
+    }
+
+    private static byte tag(Object value)
+    {
+        if (value == null) {
+            return VALUE_NULL;
+        } else if (value instanceof Long) {
+            return VALUE_LONG;
+        } else if (value instanceof Double) {
+            return VALUE_DOUBLE;
+        } else if (value instanceof String) {
+            return VALUE_STRING;
+        } else if (value instanceof Date) {
+            return VALUE_DATE;
+        } else if (value instanceof byte[]) {
+            return VALUE_BYTES;
+        }
+        throw new IllegalArgumentException("Unsupported raw value " + value.getClass().getName());
+    }
+
+    private void ensure(int bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer source) throws IOException
+    {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.transfer;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.PropertyEntry;
+import com.atlassian.plugins.studio.storage.toolkit.impl.PropertyEntryStore;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams the scope data between the PropertySet tables and the {@link EntryDumpWriter} dump.
+ * <p/>
+ * The export reads the entries page by page, the import inserts them in JDBC batches committed every
+ * <code>batchSize</code> records, so neither holds more than a page or a batch. The import reports every commit
+ * and may be resumed by skipping the records committed before. The import merges into the data already stored:
+ * the keys stored already are skipped and keep their values, so an import never duplicates an entry, whether it is
+ * resumed or the target already holds some of the keys. The scope caches are not aware of the imported data, evict
+ * them once done (<code>AbstractDefaultScopeImpl#evictAll()</code>).
+ */
+public class ScopeDataTransfer
+{
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    static final String PROGRESS_SUFFIX = ".progress";
+
+    /**
+     * Import checkpoint callback
+     */
+    public interface ImportProgress
+    {
+        /**
+         * @param records dump records committed so far, including the skipped ones
+         * @throws StorageException checkpoint failure, stops the import
+         */
+        void committed(long records) throws StorageException;
+    }
+
+    private final PropertyEntryStore store;
+    private final int pageSize;
+    private final int batchSize;
+
+    public ScopeDataTransfer(PropertyEntryStore store)
+    {
+        this(store, DEFAULT_PAGE_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    public ScopeDataTransfer(PropertyEntryStore store, int pageSize, int batchSize)
+    {
+        Assertions.notNull("Entry store is null", store);
+        Assertions.stateTrue("pageSize should be positive", pageSize > 0);
+        Assertions.stateTrue("batchSize should be positive", batchSize > 0);
+
+        this.store = store;
+        this.pageSize = pageSize;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param entityName entity name
+     * @param entityId   entity id, <code>null</code> for all the entities
+     * @param keyPrefix  property key prefix, <code>null</code> for all the keys
+     * @param channel    channel to write the dump to, left open
+     * @return records exported
+     * @throws StorageException database or write failure
+     */
+    public long export(String entityName, Long entityId, String keyPrefix, WritableByteChannel channel)
+            throws StorageException
+    {
+        CloseableIterator<PropertyEntry> entries = store.entries(entityName, entityId, keyPrefix, pageSize);
+        try {
+            EntryDumpWriter writer = new EntryDumpWriter(channel);
+            while (entries.hasNext()) {
+                writer.write(entries.next());
+            }
+            writer.finish();
+            return writer.getRecords();
+        } catch (IOException e) {
+            throw new StorageException(e);
+        } finally {
+            entries.close();
+        }
+    }
+
+    /**
+     * Imports the dump records whose keys are not stored yet
+     *
+     * @param channel     channel to read the dump from, left open
+     * @param skipRecords records committed by the interrupted import, <code>0</code> for a new one
+     * @param progress    commit callback, may be <code>null</code>
+     * @return dump records committed, including the skipped ones
+     * @throws StorageException database or read failure, truncated dump
+     */
+    public long importFrom(ReadableByteChannel channel, long skipRecords, ImportProgress progress)
+            throws StorageException
+    {
+        try {
+            EntryDumpReader reader = new EntryDumpReader(channel);
+            long committed = reader.skip(skipRecords);
+            if (committed < skipRecords) {
+                throw new StorageException("Storage dump holds " + committed + " records, " + skipRecords + " to skip");
+            }
+
+            List<PropertyEntry> batch = new ArrayList<PropertyEntry>(batchSize);
+            PropertyEntry entry;
+            while ((entry = reader.read()) != null) {
+                batch.add(entry);
+                if (batch.size() == batchSize) {
+                    committed = commit(batch, committed, progress);
+                    batch = new ArrayList<PropertyEntry>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                committed = commit(batch, committed, progress);
+            }
+            return committed;
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Exports into the file, replacing it
+     *
+     * @param file       dump file
+     * @param entityName entity name
+     * @param entityId   entity id, <code>null</code> for all the entities
+     * @param keyPrefix  property key prefix, <code>null</code> for all the keys
+     * @return records exported
+     * @throws StorageException database or write failure
+     */
+    public long exportFile(File file, String entityName, Long entityId, String keyPrefix) throws StorageException
+    {
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                return export(entityName, entityId, keyPrefix, out.getChannel());
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Imports the file, the progress is kept next to it in <code>&lt;file&gt;.progress</code> and the interrupted
+     * import continues from there. The progress file is removed once the import completes.
+     *
+     * @param file dump file
+     * @return dump records committed
+     * @throws StorageException database or read failure, truncated dump
+     */
+    public long importFile(File file) throws StorageException
+    {
+        final File checkpoint = new File(file.getPath() + PROGRESS_SUFFIX);
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                long committed = importFrom(in.getChannel(), readCheckpoint(checkpoint), new ImportProgress()
+                {
+                    public void committed(long records) throws StorageException
+                    {
+                        writeCheckpoint(checkpoint, records);
+                    }
+                });
+                if (checkpoint.exists() && !checkpoint.delete()) {
+                    throw new StorageException("Could not remove " + checkpoint);
+                }
+                return committed;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * The keys stored already are filtered out of every batch: the target might have held them before the import,
+     * and the batch after the checkpoint of an interrupted import might be stored already
+     */
+    private long commit(List<PropertyEntry> batch, long committed, ImportProgress progress)
+            throws StorageException
+    {
+        store.insert(absent(batch));
+        committed += batch.size();
+
+        if (progress != null) {
+            progress.committed(committed);
+        }
+        return committed;
+    }
+
+    private List<PropertyEntry> absent(List<PropertyEntry> batch) throws StorageException
+    {
+        Map<String, Set<Long>> entityIds = new HashMap<String, Set<Long>>();
+        Map<String, Set<String>> keys = new HashMap<String, Set<String>>();
+        for (PropertyEntry entry : batch) {
+            if (!entityIds.containsKey(entry.getEntityName())) {
+                entityIds.put(entry.getEntityName(), new HashSet<Long>());
+                keys.put(entry.getEntityName(), new HashSet<String>());
+            }
+            entityIds.get(entry.getEntityName()).add(entry.getEntityId());
+            keys.get(entry.getEntityName()).add(entry.getPropertyKey());
+        }
+
+        Map<String, Map<Long, Set<String>>> stored = new HashMap<String, Map<Long, Set<String>>>();
+        for (Map.Entry<String, Set<Long>> entity : entityIds.entrySet()) {
+            stored.put(entity.getKey(), store.storedKeys(entity.getKey(), entity.getValue(), keys.get(entity.getKey())));
+        }
+
+        List<PropertyEntry> absent = new ArrayList<PropertyEntry>(batch.size());
+        for (PropertyEntry entry : batch) {
+            Set<String> storedKeys = stored.get(entry.getEntityName()).get(entry.getEntityId());
+            if (storedKeys == null || !storedKeys.contains(entry.getPropertyKey())) {
+                absent.add(entry);
+            }
+        }
+        return absent;
+    }
+
+    private static long readCheckpoint(File checkpoint) throws IOException, StorageException
+    {
+        if (!checkpoint.exists()) {
+            return 0;
+        }
+
+        FileInputStream in = new FileInputStream(checkpoint);
+        try {
+            byte[] bytes = new byte[32];
+            int length = Math.max(in.read(bytes), 0);
+            String records = new String(bytes, 0, length, EntryDumpWriter.UTF8).trim();
+            if (!StringUtils.isNumeric(records) || records.length() == 0) {
+                throw new StorageException("Corrupted import progress " + checkpoint);
+            }
+            return Long.parseLong(records);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeCheckpoint(File checkpoint, long records) throws StorageException
+    {
+        try {
+            FileOutputStream out = new FileOutputStream(checkpoint);
+            try {
+                out.write(String.valueOf(records).getBytes(EntryDumpWriter.UTF8));
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.writebehind;
+
+import com.atlassian.jira.util.dbc.Assertions;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.WriteBufferingDecorator;
+import com.google.common.collect.MapMaker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer of a scope: the small values (booleans, dates, numbers and short strings) written through
+ * the facades are kept in memory, only the last value of every key, and stored by a background thread every
+ * flush interval or as soon as the number of pending keys reaches the limit.
+ * <p/>
+ * Each flush writes the pending values instance by instance with {@link StorageFacade#setAll(Map)}, which stores
+ * the small values of an instance as JDBC batches (see {@link ScopeOperations#setValues}); the instances
+ * of the same scope operations are grouped into transactions of up to the pending limit values. A failed
+ * transaction is retried value set by value set, the values failing {@link #MAX_ATTEMPTS} flushes are dropped.
+ * Reads through the facades see the pending values, the listings and the bulk reads flush the instance first.
+ * The other writes go to the storage right away and supersede the pending value of the key.
+ * <p/>
+ * The buffer must not be shared between the scopes ({@link com.atlassian.plugins.studio.storage.toolkit.Scope#removeAll()}
+ * drops all the pending values) and should be {@link #shutdown()} with the plugin, the writes made after the
+ * shutdown are not buffered.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     Scope&lt;Long&gt; scope = new Scopes.Builder&lt;Long&gt;(idProvider, deleteAll).withWriteBehind(new WriteBehindBuffer()).build();
+ * </pre>
+ */
+public class WriteBehindBuffer implements WriteBufferingDecorator
+{
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+    public static final int DEFAULT_MAX_PENDING = 500;
+    public static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Longer strings might need {@link StorageFacade#setText(String, String)}, those are never buffered
+     */
+    static final int MAX_STRING_LENGTH = 255;
+
+    private static final AtomicLong FLUSHERS = new AtomicLong();
+
+    private final long flushIntervalMillis;
+    private final int maxPending;
+
+    private final ConcurrentMap<PendingKey, PendingWrite> pending = new MapMaker().makeMap();
+
+    /**
+     * Held while flushing, the values are removed from {@link #pending} only after they are stored
+     */
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Runnable flushTask = new Runnable()
+    {
+        public void run()
+        {
+            flushRequested.set(false);
+            try {
+                flush();
+            } catch (RuntimeException ignored) {
+                // failures are accounted by flush, the flusher must keep running
+            }
+        }
+    };
+
+    /**
+     * Guarded by this
+     */
+    private ScheduledExecutorService flusher;
+    private volatile boolean shutdown;
+
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public WriteBehindBuffer()
+    {
+        this(DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_MAX_PENDING);
+    }
+
+    public WriteBehindBuffer(long flushIntervalMillis, int maxPending)
+    {
+        Assertions.stateTrue("flushIntervalMillis should be positive", flushIntervalMillis > 0);
+        Assertions.stateTrue("maxPending should be positive", maxPending > 0);
+
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxPending = maxPending;
+    }
+
+    public StorageFacade decorate(InstanceId instanceId, ScopeOperations bridge, StorageFacade facade)
+    {
+        return new WriteBehindStorageFacadeImpl(instanceId, bridge, facade, this);
+    }
+
+    public void invalidate(InstanceId instanceId)
+    {
+        discard(instanceId, null);
+    }
+
+    public void invalidateAll()
+    {
+        pending.clear();
+        awaitFlush();
+    }
+
+    /**
+     * Stores all the pending values now
+     */
+    public void flush()
+    {
+        flush(null);
+    }
+
+    /**
+     * Stops the background flusher and stores the pending values
+     */
+    public void shutdown()
+    {
+        synchronized (this) {
+            shutdown = true;
+            if (flusher != null) {
+                flusher.shutdown();
+            }
+        }
+        flush();
+    }
+
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    public int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    /**
+     * @return number of the writes buffered
+     */
+    public long getBufferedCount()
+    {
+        return buffered.get();
+    }
+
+    /**
+     * @return number of the buffered writes superseded by a later write before they were stored
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    /**
+     * @return number of the values stored by the flushes
+     */
+    public long getWrittenCount()
+    {
+        return written.get();
+    }
+
+    public long getFlushCount()
+    {
+        return flushes.get();
+    }
+
+    /**
+     * @return number of the values dropped after {@link #MAX_ATTEMPTS} failed flushes
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WriteBehindBuffer[pending=" + getPendingCount() + ", buffered=" + getBufferedCount()
+                + ", coalesced=" + getCoalescedCount() + ", written=" + getWrittenCount()
+                + ", flushes=" + getFlushCount() + ", dropped=" + getDroppedCount() + "]";
+    }
+
+    /**
+     * Buffers the value
+     *
+     * @param instanceId storage instance id
+     * @param key        property key
+     * @param value      value, non-null
+     * @param target     facade to store the value with
+     * @param bridge     scope operations of the facade
+     * @return <code>false</code> if the buffer is shut down and the value should be written right away
+     */
+    boolean put(InstanceId instanceId, String key, Object value, StorageFacade target, ScopeOperations bridge)
+    {
+        if (shutdown) {
+            return false;
+        }
+
+        buffered.incrementAndGet();
+        if (pending.put(new PendingKey(instanceId, key), new PendingWrite(value, target, bridge)) != null) {
+            coalesced.incrementAndGet();
+        }
+
+        if (pending.size() >= maxPending) {
+            requestFlush();
+        } else {
+            ensureStarted();
+        }
+        if (shutdown) {
+            // raced with the shutdown, nobody else is going to flush it
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * @param instanceId storage instance id
+     * @param key        property key
+     * @return pending value, <code>null</code> if none
+     */
+    Object get(InstanceId instanceId, String key)
+    {
+        PendingWrite write = pending.get(new PendingKey(instanceId, key));
+        return write == null ? null : write.value;
+    }
+
+    /**
+     * Drops the pending values about to be overwritten or removed bypassing the buffer, waits for the flush
+     * possibly storing them to complete
+     *
+     * @param instanceId storage instance id
+     * @param keys       property keys, <code>null</code> for all the instance keys
+     */
+    void discard(InstanceId instanceId, Collection<String> keys)
+    {
+        boolean discarded = false;
+        if (keys == null) {
+            Iterator<PendingKey> it = pending.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().instanceId.equals(instanceId)) {
+                    it.remove();
+                    discarded = true;
+                }
+            }
+        } else {
+            for (String key : keys) {
+                discarded |= pending.remove(new PendingKey(instanceId, key)) != null;
+            }
+        }
+
+        if (discarded) {
+            awaitFlush();
+        }
+    }
+
+    /**
+     * Stores the pending values of the instance, or all of them
+     *
+     * @param only storage instance id, <code>null</code> for all the instances
+     */
+    public void flush(InstanceId only)
+    {
+        synchronized (flushLock) {
+            Map<ScopeOperations, Map<InstanceId, Batch>> batches = collect(only);
+            if (batches.isEmpty()) {
+                return;
+            }
+
+            flushes.incrementAndGet();
+            for (Map.Entry<ScopeOperations, Map<InstanceId, Batch>> entry : batches.entrySet()) {
+                List<Batch> transaction = new ArrayList<Batch>();
+                int size = 0;
+                for (Batch batch : entry.getValue().values()) {
+                    transaction.add(batch);
+                    size += batch.values.size();
+                    if (size >= maxPending) {
+                        store(entry.getKey(), transaction);
+                        transaction = new ArrayList<Batch>();
+                        size = 0;
+                    }
+                }
+                if (!transaction.isEmpty()) {
+                    store(entry.getKey(), transaction);
+                }
+            }
+        }
+    }
+
+    private Map<ScopeOperations, Map<InstanceId, Batch>> collect(InstanceId only)
+    {
+        Map<ScopeOperations, Map<InstanceId, Batch>> batches = new LinkedHashMap<ScopeOperations, Map<InstanceId, Batch>>();
+        for (Map.Entry<PendingKey, PendingWrite> entry : pending.entrySet()) {
+            PendingKey key = entry.getKey();
+            if (only != null && !only.equals(key.instanceId)) {
+                continue;
+            }
+
+            PendingWrite write = entry.getValue();
+            Map<InstanceId, Batch> byInstance = batches.get(write.bridge);
+            if (byInstance == null) {
+                byInstance = new LinkedHashMap<InstanceId, Batch>();
+                batches.put(write.bridge, byInstance);
+            }
+            Batch batch = byInstance.get(key.instanceId);
+            if (batch == null) {
+                batch = new Batch(write.target);
+                byInstance.put(key.instanceId, batch);
+            }
+            batch.add(key, write);
+        }
+        return batches;
+    }
+
+    private void store(ScopeOperations bridge, final List<Batch> transaction)
+    {
+        try {
+            bridge.inTransaction(new Runnable()
+            {
+                public void run()
+                {
+                    for (Batch batch : transaction) {
+                        batch.target.setAll(batch.values);
+                    }
+                }
+            });
+            for (Batch batch : transaction) {
+                retire(batch);
+            }
+        } catch (RuntimeException e) {
+            if (transaction.size() == 1) {
+                failed(transaction.get(0));
+                return;
+            }
+            for (Batch batch : transaction) {
+                store(bridge, batch);
+            }
+        }
+    }
+
+    private void store(ScopeOperations bridge, Batch batch)
+    {
+        List<Batch> single = new ArrayList<Batch>(1);
+        single.add(batch);
+        store(bridge, single);
+    }
+
+    private void retire(Batch batch)
+    {
+        for (Map.Entry<PendingKey, PendingWrite> entry : batch.writes.entrySet()) {
+            pending.remove(entry.getKey(), entry.getValue());
+        }
+        written.addAndGet(batch.values.size());
+    }
+
+    private void failed(Batch batch)
+    {
+        for (Map.Entry<PendingKey, PendingWrite> entry : batch.writes.entrySet()) {
+            PendingWrite write = entry.getValue();
+            if (++write.attempts >= MAX_ATTEMPTS && pending.remove(entry.getKey(), write)) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void awaitFlush()
+    {
+        synchronized (flushLock) {
+            // the values of the flush in progress are stored once the lock is released
+        }
+    }
+
+    private void requestFlush()
+    {
+        ScheduledExecutorService executor = ensureStarted();
+        if (executor != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(flushTask);
+            } catch (RuntimeException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private synchronized ScheduledExecutorService ensureStarted()
+    {
+        if (flusher == null && !shutdown) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "storage-write-behind-" + FLUSHERS.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            flusher.scheduleWithFixedDelay(flushTask, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return shutdown ? null : flusher;
+    }
+
+    private static class PendingKey
+    {
+        private final InstanceId instanceId;
+        private final String key;
+
+        private PendingKey(InstanceId instanceId, String key)
+        {
+            this.instanceId = instanceId;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PendingKey)) {
+                return false;
+            }
+
+            PendingKey that = (PendingKey) o;
+            return key.equals(that.key) && instanceId.equals(that.instanceId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * instanceId.hashCode() + key.hashCode();
+        }
+    }
+
+    /**
+     * Compared by identity, so the flush retires only the values it has stored
+     */
+    private static class PendingWrite
+    {
+        private final Object value;
+        private final StorageFacade target;
+        private final ScopeOperations bridge;
+
+        /**
+         * Guarded by the flush lock
+         */
+        private int attempts;
+
+        private PendingWrite(Object value, StorageFacade target, ScopeOperations bridge)
+        {
+            this.value = value;
+            this.target = target;
+            this.bridge = bridge;
+        }
+    }
+
+    private static class Batch
+    {
+        private final StorageFacade target;
+        private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+        private final Map<PendingKey, PendingWrite> writes = new LinkedHashMap<PendingKey, PendingWrite>();
+
+        private Batch(StorageFacade target)
+        {
+            this.target = target;
+        }
+
+        private void add(PendingKey key, PendingWrite write)
+        {
+            values.put(key.key, write.value);
+            writes.put(key, write);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.writebehind;
+
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ForwardingStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.TypedKeys;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * {@link StorageFacade} buffering the small values in {@link WriteBehindBuffer}
+ */
+class WriteBehindStorageFacadeImpl extends ForwardingStorageFacade
+{
+    private final InstanceId instanceId;
+    private final ScopeOperations bridge;
+    private final WriteBehindBuffer buffer;
+
+    WriteBehindStorageFacadeImpl(InstanceId instanceId, ScopeOperations bridge, StorageFacade delegate,
+                                 WriteBehindBuffer buffer)
+    {
+        super(delegate);
+        this.instanceId = instanceId;
+        this.bridge = bridge;
+        this.buffer = buffer;
+    }
+
+    private boolean buffer(String key, Object value)
+    {
+        return buffer.put(instanceId, key, value, delegate(), bridge);
+    }
+
+    private void discard(String key)
+    {
+        buffer.discard(instanceId, Collections.singleton(key));
+    }
+
+    /**
+     * @param key  property key
+     * @param type value type expected
+     * @param <V>  value type
+     * @return pending value, <code>null</code> if none; the instance is flushed if the pending value is of another type
+     */
+    private <V> V pending(String key, Class<V> type)
+    {
+        Object value = buffer.get(instanceId, key);
+        if (value == null) {
+            return null;
+        }
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        }
+
+        buffer.flush(instanceId);
+        return null;
+    }
+
+    private void flushPending(String key)
+    {
+        if (buffer.get(instanceId, key) != null) {
+            buffer.flush(instanceId);
+        }
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) throws StorageException
+    {
+        if (!buffer(key, value)) {
+            super.setBoolean(key, value);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws StorageException
+    {
+        Boolean value = pending(key, Boolean.class);
+        return value != null ? value : super.getBoolean(key);
+    }
+
+    @Override
+    public void setData(String key, byte[] bytes) throws StorageException
+    {
+        discard(key);
+        super.setData(key, bytes);
+    }
+
+    @Override
+    public byte[] getData(String key) throws StorageException
+    {
+        flushPending(key);
+        return super.getData(key);
+    }
+
+    @Override
+    public OutputStream openOutputStream(String key) throws StorageException
+    {
+        discard(key);
+        return super.openOutputStream(key);
+    }
+
+    @Override
+    public InputStream openInputStream(String key, long offset, long length) throws StorageException
+    {
+        flushPending(key);
+        return super.openInputStream(key, offset, length);
+    }
+
+    @Override
+    public void setDate(String key, Date date) throws StorageException
+    {
+        if (date == null || !buffer(key, new Date(date.getTime()))) {
+            discard(key);
+            super.setDate(key, date);
+        }
+    }
+
+    @Override
+    public Date getDate(String key) throws StorageException
+    {
+        Date value = pending(key, Date.class);
+        return value != null ? new Date(value.getTime()) : super.getDate(key);
+    }
+
+    @Override
+    public void setDouble(String key, BigDecimal value) throws StorageException
+    {
+        if (value == null || !buffer(key, value)) {
+            discard(key);
+            super.setDouble(key, value);
+        }
+    }
+
+    @Override
+    public BigDecimal getDouble(String key) throws StorageException
+    {
+        BigDecimal value = pending(key, BigDecimal.class);
+        return value != null ? value : super.getDouble(key);
+    }
+
+    @Override
+    public Collection<String> getKeys() throws StorageException
+    {
+        buffer.flush(instanceId);
+        return super.getKeys();
+    }
+
+    @Override
+    public Collection<String> getKeys(String keyPrefix) throws StorageException
+    {
+        buffer.flush(instanceId);
+        return super.getKeys(keyPrefix);
+    }
+
+    @Override
+    public int countKeys(String keyPrefix) throws StorageException
+    {
+        buffer.flush(instanceId);
+        return super.countKeys(keyPrefix);
+    }
+
+    @Override
+    public Collection<String> getKeyRange(String fromKey, String toKey) throws StorageException
+    {
+        buffer.flush(instanceId);
+        return super.getKeyRange(fromKey, toKey);
+    }
+
+    @Override
+    public CloseableIterator<String> keys(String keyPrefix, int pageSize) throws StorageException
+    {
+        buffer.flush(instanceId);
+        return super.keys(keyPrefix, pageSize);
+    }
+
+    @Override
+    public void setLong(String key, Long value) throws StorageException
+    {
+        if (value == null || !buffer(key, value)) {
+            discard(key);
+            super.setLong(key, value);
+        }
+    }
+
+    @Override
+    public Long getLong(String key) throws StorageException
+    {
+        Long value = pending(key, Long.class);
+        return value != null ? value : super.getLong(key);
+    }
+
+    @Override
+    public void setObject(String key, Object objectValue) throws StorageException
+    {
+        discard(key);
+        super.setObject(key, objectValue);
+    }
+
+    @Override
+    public Object getObject(String key) throws StorageException
+    {
+        flushPending(key);
+        return super.getObject(key);
+    }
+
+    @Override
+    public void setProperties(String key, Properties properties) throws StorageException
+    {
+        discard(key);
+        super.setProperties(key, properties);
+    }
+
+    @Override
+    public Properties getProperties(String key) throws StorageException
+    {
+        flushPending(key);
+        return super.getProperties(key);
+    }
+
+    @Override
+    public void setString(String key, String string) throws StorageException
+    {
+        if (string == null || string.length() > WriteBehindBuffer.MAX_STRING_LENGTH || !buffer(key, string)) {
+            discard(key);
+            super.setString(key, string);
+        }
+    }
+
+    @Override
+    public String getString(String key) throws StorageException
+    {
+        String value = pending(key, String.class);
+        return value != null ? value : super.getString(key);
+    }
+
+    @Override
+    public void setText(String key, String text) throws StorageException
+    {
+        discard(key);
+        super.setText(key, text);
+    }
+
+    @Override
+    public String getText(String key) throws StorageException
+    {
+        flushPending(key);
+        return super.getText(key);
+    }
+
+    @Override
+    public void setAll(Map<String, ?> values) throws StorageException
+    {
+        if (values != null) {
+            buffer.discard(instanceId, values.keySet());
+        }
+        super.setAll(values);
+    }
+
+    @Override
+    public <T> T get(StorageKey<T> key) throws StorageException
+    {
+        return TypedKeys.get(this, key);
+    }
+
+    @Override
+    public <T> void set(StorageKey<T> key, T value) throws StorageException
+    {
+        TypedKeys.set(this, key, value);
+    }
+
+    @Override
+    public Map<StorageKey<?>, Object> getAll(StorageKey<?>... keys) throws StorageException
+    {
+        return TypedKeys.getAll(this, keys);
+    }
+
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) throws StorageException
+    {
+        buffer.flush(instanceId);
+        return super.getAll(keys);
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) throws StorageException
+    {
+        buffer.flush(instanceId);
+        return super.getAll(keys, type);
+    }
+
+    @Override
+    public boolean exists(String key) throws StorageException
+    {
+        return buffer.get(instanceId, key) != null || super.exists(key);
+    }
+
+    @Override
+    public boolean remove(String key) throws StorageException
+    {
+        boolean pendingValue = buffer.get(instanceId, key) != null;
+        discard(key);
+        return super.remove(key) || pendingValue;
+    }
+
+    @Override
+    public void removeAll() throws StorageException
+    {
+        buffer.discard(instanceId, null);
+        super.removeAll();
+    }
+}
@@ -22,6 +22,11 @@ import com.atlassian.jira.issue.Issue;
 import com.atlassian.jira.project.Project;
 import com.atlassian.jira.web.action.JiraWebActionSupport;
 import com.atlassian.plugins.studio.storage.toolkit.impl.AbstractDefaultScopeImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.WriteBufferingDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.metrics.StorageMetrics;
+import com.atlassian.plugins.studio.storage.toolkit.impl.snapshot.SnapshotStore;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.opensymphony.module.propertyset.PropertySet;
 import org.hamcrest.CoreMatchers;
@@ -30,7 +35,17 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyCollection;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -96,6 +111,104 @@ public class ScopesTest
         Assert.assertThat(id, isEq(3L, "FacadeStorageAction-com.atlassian.plugins.studio.storage.toolkit.ScopesTest$MyAction", "class-"));
     }
 
+    @Test
+    public void testScopesAreCanonical() throws Exception
+    {
+        Issue issue1 = mock(Issue.class);
+        when(issue1.getId()).thenReturn(571L);
+        Issue issue2 = mock(Issue.class);
+        when(issue2.getId()).thenReturn(571L);
+
+        Assert.assertSame(Scopes.issueScope(issue1), Scopes.issueScope(issue2));
+        Assert.assertSame(Scopes.constantName("cn.name"), Scopes.constantName("cn.name"));
+        Assert.assertSame(Scopes.actionConfiguration(MyAction.class), Scopes.actionConfiguration(MyAction.class));
+        Assert.assertSame(getId(Scopes.issueScope(issue1), issue1), getId(Scopes.issueScope(issue2), issue2));
+        Assert.assertSame(getId(Scopes.actionConfiguration(new MyAction()), new MyAction()),
+                getId(Scopes.actionConfiguration(MyAction.class), MyAction.class));
+    }
+
+    @Test
+    public void testSnapshotsAreEnabledBeforeTheScopeIsBuilt() throws Exception
+    {
+        Scope<String> built = Scopes.constantName("cn.built");
+        Scope<Class<MyAction>> action = Scopes.actionConfiguration(MyAction.class);
+        SnapshotStore store = new SnapshotStore(new File(System.getProperty("java.io.tmpdir"), "snapshots-test"));
+
+        try {
+            Scopes.enableSnapshots(store, "cn.snapshot", "cn.built");
+            Assert.fail("Snapshots are enabled for the scope built");
+        } catch (IllegalStateException expected) {
+            // built without the snapshots
+        }
+        try {
+            Scopes.enableActionSnapshots(store, ImmutableList.of(MyAction.class));
+            Assert.fail("Snapshots are enabled for the scope built");
+        } catch (IllegalStateException expected) {
+            // built without the snapshots
+        }
+        Assert.assertFalse(Scopes.snapshotStores().contains(store));
+        Assert.assertSame(built, Scopes.constantName("cn.built"));
+        Assert.assertSame(action, Scopes.actionConfiguration(MyAction.class));
+
+        Scopes.enableSnapshots(store, "cn.snapshot");
+        Assert.assertTrue(Scopes.snapshotStores().contains(store));
+        store.shutdown();
+    }
+
+    @Test
+    public void testLoadAllPreloadsReadOnlyFacades() throws Exception
+    {
+        ScopeOperations bridge = mock(ScopeOperations.class);
+        Scope<Long> scope = new Scopes.Builder<Long>(new Scopes.LongIdEntity("FacadeStorageTest", "test-"),
+                new Scopes.DeleteByNamePrefix("FacadeStorageTest", "test-")).withBridge(bridge).build();
+        InstanceId first = new InstanceId(1L, "FacadeStorageTest", "test-");
+        InstanceId second = new InstanceId(2L, "FacadeStorageTest", "test-");
+        when(bridge.getValues(anyCollection(), anyCollection())).thenReturn(ImmutableMap.<InstanceId, Map<String, Object>>of(
+                first, ImmutableMap.<String, Object>of("flag", true, "amount", "2.5"),
+                second, ImmutableMap.<String, Object>of()));
+
+        Map<Long, StorageFacade> facades = scope.loadAll(Arrays.asList(1L, 2L), Arrays.asList("flag", "amount"));
+
+        verify(bridge, times(1)).getValues(anyCollection(), anyCollection());
+        verify(bridge, never()).loadDelegate(any(InstanceId.class));
+        Assert.assertTrue(facades.get(1L).getBoolean("flag"));
+        Assert.assertEquals(new BigDecimal("2.5"), facades.get(1L).getDouble("amount"));
+        Assert.assertFalse(facades.get(2L).exists("flag"));
+        Assert.assertNull(facades.get(2L).getDouble("amount"));
+
+        try {
+            facades.get(1L).getString("other");
+            Assert.fail("Key was not preloaded");
+        } catch (StorageException expected) {
+        }
+        try {
+            facades.get(1L).setBoolean("flag", false);
+            Assert.fail("Facade is read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void testLoadAllStoresPendingWritesAndRecordsReads() throws Exception
+    {
+        ScopeOperations bridge = mock(ScopeOperations.class);
+        WriteBufferingDecorator buffer = mock(WriteBufferingDecorator.class);
+        StorageMetrics metrics = new StorageMetrics();
+        Scope<Long> scope = new Scopes.Builder<Long>(new Scopes.LongIdEntity("FacadeStorageTest", "test-"),
+                new Scopes.DeleteByNamePrefix("FacadeStorageTest", "test-")).withBridge(bridge)
+                .decorateWith(buffer).withMetrics(metrics).build();
+        InstanceId first = new InstanceId(1L, "FacadeStorageTest", "test-");
+        when(bridge.getValues(anyCollection(), anyCollection())).thenReturn(ImmutableMap.<InstanceId, Map<String, Object>>of(
+                first, ImmutableMap.<String, Object>of("flag", true)));
+
+        Map<Long, StorageFacade> facades = scope.loadAll(Arrays.asList(1L), Arrays.asList("flag"));
+
+        verify(buffer).flush(first);
+        verify(buffer, never()).decorate(any(InstanceId.class), any(ScopeOperations.class), any(StorageFacade.class));
+        Assert.assertTrue(facades.get(1L).getBoolean("flag"));
+        Assert.assertEquals(1, metrics.getStats("FacadeStorageTest", "getBoolean").getCalls());
+    }
+
     private Matcher<InstanceId> isEq(Long id, String name, String prefix)
     {
         return CoreMatchers.equalTo(new InstanceId(id, name, prefix));
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit;
+
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultStorageFacadeImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.ImmutableMap;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+public class StorageKeyTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    private static final StorageKey<Integer> COUNT = StorageKey.intKey("count");
+    private static final StorageKey<BigDecimal> AMOUNT = StorageKey.decimalKey("amount");
+    private static final StorageKey<TimeUnit> UNIT = StorageKey.enumKey("unit", TimeUnit.class);
+    private static final StorageKey<Boolean> ENABLED = StorageKey.booleanKey("enabled");
+
+    private PropertySet delegate;
+    private ScopeOperations bridge;
+    private StorageFacade facade;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        delegate = mock(PropertySet.class);
+        bridge = mock(ScopeOperations.class);
+        facade = new DefaultStorageFacadeImpl(ID, bridge, delegate);
+    }
+
+    @Test
+    public void testValuesAreStoredAsTheUntypedSettersDo() throws Exception
+    {
+        facade.set(COUNT, 5);
+        facade.set(AMOUNT, new BigDecimal("2.50"));
+        facade.set(UNIT, TimeUnit.SECONDS);
+        facade.set(ENABLED, true);
+
+        verify(delegate).setLong("test-count", 5L);
+        verify(delegate).setString("test-amount", "2.50");
+        verify(delegate).setString("test-unit", "SECONDS");
+        verify(delegate).setBoolean("test-enabled", true);
+
+        when(delegate.exists("test-count")).thenReturn(true);
+        when(delegate.getLong("test-count")).thenReturn(5L);
+        when(delegate.getString("test-amount")).thenReturn("2.50");
+        when(delegate.getString("test-unit")).thenReturn("SECONDS");
+
+        Assert.assertEquals(Integer.valueOf(5), facade.get(COUNT));
+        Assert.assertEquals(new BigDecimal("2.50"), facade.get(AMOUNT));
+        Assert.assertEquals(TimeUnit.SECONDS, facade.get(UNIT));
+        Assert.assertEquals(Boolean.FALSE, facade.get(ENABLED));
+
+        facade.set(COUNT, null);
+        verify(delegate).remove("test-count");
+    }
+
+    @Test
+    public void testMultiGetDecodesTheValues() throws Exception
+    {
+        when(bridge.getValues(Collections.singleton(ID), Arrays.asList("count", "amount", "unit")))
+                .thenReturn(Collections.<InstanceId, Map<String, Object>>singletonMap(ID,
+                        ImmutableMap.<String, Object>of("count", 7L, "amount", "1.5")));
+
+        Map<StorageKey<?>, Object> values = facade.getAll(COUNT, AMOUNT, UNIT);
+
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals(Integer.valueOf(7), COUNT.valueIn(values));
+        Assert.assertEquals(new BigDecimal("1.5"), AMOUNT.valueIn(values));
+        Assert.assertNull(UNIT.valueIn(values));
+    }
+
+    @Test(expected = StorageException.class)
+    public void testValueOfOtherTypeFails() throws Exception
+    {
+        when(delegate.getString("test-unit")).thenReturn("FORTNIGHTS");
+        facade.get(UNIT);
+    }
+
+    @Test
+    public void testPrefixedNameIsKept() throws Exception
+    {
+        String prefixed = COUNT.prefixedName("test-");
+
+        Assert.assertEquals("test-count", prefixed);
+        Assert.assertSame(prefixed, COUNT.prefixedName("test-"));
+        Assert.assertEquals("count", COUNT.prefixedName(null));
+        Assert.assertEquals(StorageKey.intKey("count"), COUNT);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.google.common.collect.ImmutableMap;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+public class DefaultStorageFacadeImplTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    private PropertySet delegate;
+    private ScopeOperations bridge;
+    private StorageFacade facade;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        delegate = mock(PropertySet.class);
+        bridge = mock(ScopeOperations.class);
+        doAnswer(new Answer<Void>()
+        {
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(bridge).inTransaction(any(Runnable.class));
+        when(bridge.serialize(any())).thenReturn("serialized");
+
+        facade = new DefaultStorageFacadeImpl(ID, bridge, delegate);
+    }
+
+    @Test
+    public void testSetAllBatchesSmallValuesInOneTransaction() throws Exception
+    {
+        Date date = new Date();
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put("bool", true);
+        values.put("data", new byte[]{1});
+        values.put("date", date);
+        values.put("double", new BigDecimal("1.5"));
+        values.put("int", 5);
+        values.put("string", "text");
+        values.put("object", new Object());
+        values.put("gone", null);
+        when(delegate.getType("test-gone")).thenReturn(PropertySet.LONG);
+
+        facade.setAll(values);
+
+        verify(bridge, times(1)).inTransaction(any(Runnable.class));
+        verify(bridge).setValues(ID, ImmutableMap.<String, Object>of("bool", true, "date", date, "double", "1.5",
+                "int", 5L, "string", "text"));
+        verify(delegate).setData(eq("test-data"), any(byte[].class));
+        verify(delegate).setText("test-object", "serialized");
+        verify(delegate).remove("test-gone");
+        verify(delegate, never()).setBoolean(anyString(), anyBoolean());
+        verify(delegate, never()).setString(anyString(), anyString());
+    }
+
+    @Test
+    public void testGetAllConverts() throws Exception
+    {
+        when(bridge.getValues(eq(Collections.singleton(ID)), anyCollection())).thenReturn(
+                ImmutableMap.<InstanceId, Map<String, Object>>of(ID, ImmutableMap.<String, Object>of("a", "1.5", "b", "<xml/>")));
+        when(bridge.deserialize("<xml/>")).thenReturn("object");
+
+        Map<String, Object> raw = facade.getAll(Arrays.asList("a", "b", "missing"));
+        Assert.assertEquals(ImmutableMap.of("a", "1.5", "b", "<xml/>"), raw);
+
+        Assert.assertEquals(new BigDecimal("1.5"),
+                facade.getAll(Arrays.asList("a"), BigDecimal.class).get("a"));
+        Assert.assertEquals("object", facade.getAll(Arrays.asList("b"), Object.class).get("b"));
+    }
+
+    @Test
+    public void testKeyPrefixIncludesInstancePrefix() throws Exception
+    {
+        when(delegate.getKeys("test-feature.")).thenReturn(Arrays.asList("test-feature.a", "test-feature.b"));
+
+        Assert.assertEquals(Arrays.asList("feature.a", "feature.b"), facade.getKeys("feature."));
+        Assert.assertEquals(2, facade.countKeys("feature."));
+    }
+
+    @Test
+    public void testPrefixedKeysAreReused() throws Exception
+    {
+        PrefixedKeys keys = PrefixedKeys.forPrefix("test-");
+
+        Assert.assertSame(keys, PrefixedKeys.forPrefix("test-"));
+        Assert.assertSame(keys.prefix("flag"), keys.prefix("flag"));
+        Assert.assertEquals("test-flag", keys.prefix("flag"));
+        Assert.assertEquals("flag", PrefixedKeys.forPrefix(null).prefix("flag"));
+        Assert.assertEquals(Arrays.asList("flag", "other-flag"), keys.strip(Arrays.asList("test-flag", "other-flag")));
+
+        facade.getBoolean("flag");
+        new DefaultStorageFacadeImpl(ID, bridge, delegate).getBoolean("flag");
+        verify(delegate, times(2)).getBoolean("test-flag");
+    }
+
+    @Test
+    public void testSetAllFailurePropagates() throws Exception
+    {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put("a", "text");
+        doThrow(new StorageException("boom")).when(bridge).inTransaction(any(Runnable.class));
+
+        try {
+            facade.setAll(values);
+            Assert.fail("Failure should be propagated");
+        } catch (StorageException expected) {
+            verifyZeroInteractions(delegate);
+        }
+    }
+}
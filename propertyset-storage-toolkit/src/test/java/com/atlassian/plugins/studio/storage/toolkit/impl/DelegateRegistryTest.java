@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.google.common.base.Function;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+
+public class DelegateRegistryTest
+{
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final Function<InstanceId, PropertySet> factory = new Function<InstanceId, PropertySet>()
+    {
+        public PropertySet apply(@Nullable InstanceId from)
+        {
+            created.incrementAndGet();
+            return mock(PropertySet.class);
+        }
+    };
+
+    @Test
+    public void testReusesDelegate() throws Exception
+    {
+        DelegateRegistry registry = new DelegateRegistry(factory);
+        InstanceId id = new InstanceId(1L, "FacadeStorageTest", "test-");
+
+        PropertySet first = registry.get(id);
+        Assert.assertSame(first, registry.get(new InstanceId(1L, "FacadeStorageTest", "test-")));
+        Assert.assertEquals(1, created.get());
+
+        registry.invalidate(id);
+        Assert.assertNotSame(first, registry.get(id));
+        Assert.assertEquals(2, created.get());
+    }
+
+    @Test
+    public void testInvalidateByEntity() throws Exception
+    {
+        DelegateRegistry registry = new DelegateRegistry(factory);
+        registry.get(new InstanceId(1L, "FacadeStorageTest", "test-"));
+        registry.get(new InstanceId(2L, "FacadeStorageTest", "test-"));
+        registry.get(new InstanceId(1L, "FacadeStorageOther", "other-"));
+
+        registry.invalidate(null, "FacadeStorageTest");
+
+        Assert.assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testInvalidateEntities() throws Exception
+    {
+        DelegateRegistry registry = new DelegateRegistry(factory);
+        registry.get(new InstanceId(1L, "FacadeStorageTest", "test-"));
+        registry.get(new InstanceId(2L, "FacadeStorageTest", "test-"));
+        registry.get(new InstanceId(3L, "FacadeStorageTest", "test-"));
+        registry.get(new InstanceId(1L, "FacadeStorageOther", "other-"));
+
+        registry.invalidate("FacadeStorageTest", Arrays.asList(1L, 3L));
+
+        Assert.assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testBoundedSize() throws Exception
+    {
+        DelegateRegistry registry = new DelegateRegistry(factory, 10, 60000);
+        for (long i = 0; i < 100; i++) {
+            registry.get(new InstanceId(i, "FacadeStorageTest", "test-"));
+        }
+
+        Assert.assertTrue("size " + registry.size(), registry.size() <= 10);
+    }
+
+    @Test
+    public void testOverflowEvictsDownToLowWater() throws Exception
+    {
+        DelegateRegistry registry = new DelegateRegistry(factory, 100, 60000);
+        for (long i = 0; i <= 100; i++) {
+            registry.get(new InstanceId(i, "FacadeStorageTest", "test-"));
+        }
+
+        Assert.assertEquals(75, registry.size());
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.atlassian.core.ofbiz.test.mock.MockGenericValue;
+import com.atlassian.plugins.studio.storage.toolkit.CloseableIterator;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ofbiz.core.entity.EntityCondition;
+import org.mockito.ArgumentCaptor;
+import org.ofbiz.core.entity.GenericDelegator;
+import org.ofbiz.core.entity.model.ModelEntity;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Mockito.*;
+
+public class PropertyEntryStoreTest
+{
+    private GenericDelegator delegator;
+    private PropertyEntryStore store;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        delegator = mock(GenericDelegator.class);
+        Supplier<GenericDelegator> supplier = Suppliers.ofInstance(delegator);
+        store = new PropertyEntryStore(supplier);
+    }
+
+    private static MockGenericValue entry(long id, long entityId, String key, int type)
+    {
+        return new MockGenericValue(PropertyEntryStore.ENTRY_ENTITY,
+                ImmutableMap.<String, Object>of("id", id, "entityId", entityId, "propertyKey", key, "type", type));
+    }
+
+    private static MockGenericValue value(long id, Object value)
+    {
+        return new MockGenericValue("value", ImmutableMap.<String, Object>of("id", id, "value", value));
+    }
+
+    @Test
+    public void testOneQueryPerTable() throws Exception
+    {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        when(delegator.findByCondition(eq(PropertyEntryStore.ENTRY_ENTITY), any(EntityCondition.class),
+                any(Collection.class), any(List.class))).thenReturn(Arrays.asList(
+                entry(1, 10L, "p-flag", PropertySet.BOOLEAN), entry(2, 10L, "p-count", PropertySet.LONG),
+                entry(3, 10L, "p-name", PropertySet.STRING), entry(4, 10L, "p-when", PropertySet.DATE),
+                entry(5, 10L, "p-props", PropertySet.PROPERTIES)));
+        when(delegator.findByCondition(eq("OSPropertyNumber"), any(EntityCondition.class),
+                any(Collection.class), any(List.class))).thenReturn(Arrays.asList(value(1, 1L), value(2, 42L)));
+        when(delegator.findByCondition(eq("OSPropertyString"), any(EntityCondition.class),
+                any(Collection.class), any(List.class))).thenReturn(Arrays.asList(value(3, "name")));
+        when(delegator.findByCondition(eq("OSPropertyDate"), any(EntityCondition.class),
+                any(Collection.class), any(List.class))).thenReturn(Arrays.asList(value(4, now)));
+
+        Map<String, Object> values = store.load("Entity", ImmutableList.of(10L),
+                ImmutableList.of("p-flag", "p-count", "p-name", "p-when", "p-props", "p-missing")).get(10L);
+
+        Assert.assertEquals(Boolean.TRUE, values.get("p-flag"));
+        Assert.assertEquals(42L, values.get("p-count"));
+        Assert.assertEquals("name", values.get("p-name"));
+        Assert.assertEquals(new Date(now.getTime()), values.get("p-when"));
+        Assert.assertSame(PropertyEntryStore.UNRESOLVED, values.get("p-props"));
+        Assert.assertFalse(values.containsKey("p-missing"));
+        verify(delegator, times(4)).findByCondition(anyString(), any(EntityCondition.class),
+                any(Collection.class), any(List.class));
+    }
+
+    @Test
+    public void testNullAndLegacyTextsAreLoadedAsStored() throws Exception
+    {
+        Map<String, Object> empty = new HashMap<String, Object>();
+        empty.put("id", 2L);
+        empty.put("value", null);
+        when(delegator.findByCondition(eq(PropertyEntryStore.ENTRY_ENTITY), any(EntityCondition.class),
+                any(Collection.class), any(List.class))).thenReturn(Arrays.asList(
+                entry(1, 10L, "p-legacy", PropertySet.TEXT), entry(2, 10L, "p-empty", PropertySet.TEXT)));
+        when(delegator.findByCondition(eq("OSPropertyText"), any(EntityCondition.class),
+                any(Collection.class), any(List.class))).thenReturn(Arrays.asList(
+                value(1, "#blob#x:1:1"), new MockGenericValue("value", empty)));
+
+        Map<String, Object> values = store.load("Entity", ImmutableList.of(10L),
+                ImmutableList.of("p-legacy", "p-empty")).get(10L);
+
+        Assert.assertEquals(new StoredText("#blob#x:1:1"), values.get("p-legacy"));
+        Assert.assertEquals(new StoredText(null), values.get("p-empty"));
+    }
+
+    @Test
+    public void testManyEntitiesAreReadTogether() throws Exception
+    {
+        when(delegator.findByCondition(eq(PropertyEntryStore.ENTRY_ENTITY), any(EntityCondition.class),
+                any(Collection.class), any(List.class))).thenReturn(Arrays.asList(
+                entry(1, 10L, "p-name", PropertySet.STRING), entry(2, 11L, "p-name", PropertySet.STRING)));
+        when(delegator.findByCondition(eq("OSPropertyString"), any(EntityCondition.class),
+                any(Collection.class), any(List.class))).thenReturn(Arrays.asList(value(1, "ten"), value(2, "eleven")));
+
+        Map<Long, Map<String, Object>> values = store.load("Entity", ImmutableList.of(10L, 11L, 12L),
+                ImmutableList.of("p-name"));
+
+        Assert.assertEquals("ten", values.get(10L).get("p-name"));
+        Assert.assertEquals("eleven", values.get(11L).get("p-name"));
+        Assert.assertTrue(values.get(12L).isEmpty());
+        verify(delegator, times(2)).findByCondition(anyString(), any(EntityCondition.class),
+                any(Collection.class), any(List.class));
+    }
+
+    @Test
+    public void testRemoveDeletesEntriesAndValuesByIds() throws Exception
+    {
+        Connection connection = removeConnection();
+
+        Assert.assertEquals(2, connectedStore(connection, false).remove("Entity", ImmutableList.of(10L, 11L), "p_"));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connection, times(4)).prepareStatement(sql.capture());
+        Assert.assertTrue(sql.getAllValues().get(0).contains("LIKE ? ESCAPE '!'"));
+        Assert.assertTrue(sql.getAllValues().get(3).startsWith("DELETE FROM"));
+        PreparedStatement statement = connection.prepareStatement("");
+        verify(statement).setObject(5, "p!_%");
+        verify(statement, times(3)).executeUpdate();
+        verify(connection).setAutoCommit(false);
+        verify(connection).setAutoCommit(true);
+        verify(connection, times(1)).commit();
+        verify(connection).close();
+    }
+
+    @Test
+    public void testRemoveJoinsTransactionInProgress() throws Exception
+    {
+        Connection connection = removeConnection();
+
+        Assert.assertEquals(2, connectedStore(connection, true).remove("Entity", ImmutableList.of(10L, 11L), null));
+
+        verify(connection.prepareStatement(""), times(3)).executeUpdate();
+        verify(connection, never()).setAutoCommit(anyBoolean());
+        verify(connection, never()).commit();
+        verify(connection, never()).rollback();
+        verify(connection).close();
+    }
+
+    private Connection removeConnection() throws Exception
+    {
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet rows = mock(ResultSet.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(rows);
+        when(rows.next()).thenReturn(true, true, false);
+        when(rows.getLong(1)).thenReturn(7L, 8L);
+        when(rows.getInt(2)).thenReturn(PropertySet.STRING, PropertySet.LONG);
+        ModelEntity model = mock(ModelEntity.class, RETURNS_MOCKS);
+        when(delegator.getModelEntity(anyString())).thenReturn(model);
+        return connection;
+    }
+
+    private PropertyEntryStore connectedStore(final Connection connection, final boolean transactionActive)
+    {
+        return new PropertyEntryStore(Suppliers.ofInstance(delegator))
+        {
+            @Override
+            protected Connection getConnection()
+            {
+                return connection;
+            }
+
+            @Override
+            protected boolean isTransactionActive()
+            {
+                return transactionActive;
+            }
+        };
+    }
+
+    @Test
+    public void testStoredKeysAreLookedUpWithoutValues() throws Exception
+    {
+        Connection connection = removeConnection();
+        ResultSet rows = connection.prepareStatement("").executeQuery();
+        when(rows.getLong(2)).thenReturn(10L, 11L);
+        when(rows.getString(3)).thenReturn("p-a", "p-b");
+
+        Map<Long, Set<String>> stored = connectedStore(connection, false).storedKeys("Entity",
+                ImmutableList.of(10L, 11L, 12L), ImmutableList.of("p-a", "p-b"));
+
+        Assert.assertEquals(ImmutableMap.of(10L, ImmutableSet.of("p-a"), 11L, ImmutableSet.of("p-b")), stored);
+        verify(connection, times(2)).prepareStatement(anyString());
+        verify(delegator, never()).findByCondition(anyString(), any(EntityCondition.class),
+                any(Collection.class), any(List.class));
+        verify(connection).close();
+    }
+
+    @Test
+    public void testInsertJoinsTransactionInProgress() throws Exception
+    {
+        Connection connection = removeConnection();
+        when(delegator.getNextSeqId(PropertyEntryStore.ENTRY_ENTITY)).thenReturn(7L);
+
+        connectedStore(connection, true).insert(ImmutableList.of(
+                new PropertyEntry("Entity", 10L, "p-name", PropertySet.STRING, "name")));
+
+        verify(connection.prepareStatement(""), times(2)).executeBatch();
+        verify(connection, never()).setAutoCommit(anyBoolean());
+        verify(connection, never()).commit();
+        verify(connection).close();
+    }
+
+    @Test
+    public void testStoreUpdatesStoredKeysAndInsertsOthersInBatches() throws Exception
+    {
+        Connection connection = storeConnection(PropertySet.LONG);
+        when(delegator.getNextSeqId(PropertyEntryStore.ENTRY_ENTITY)).thenReturn(9L);
+
+        connectedStore(connection, false).store("Entity", ImmutableList.of(
+                new PropertyEntry("Entity", 10L, "p-count", PropertySet.LONG, 2L),
+                new PropertyEntry("Entity", 10L, "p-name", PropertySet.STRING, "name")));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connection, times(5)).prepareStatement(sql.capture());
+        Assert.assertTrue(sql.getAllValues().get(2).startsWith("UPDATE"));
+        Assert.assertTrue(sql.getAllValues().get(3).startsWith("INSERT"));
+        PreparedStatement statement = connection.prepareStatement("");
+        verify(statement).setLong(2, 7L);
+        verify(statement, times(3)).executeBatch();
+        verify(statement, never()).executeUpdate();
+        verify(connection).commit();
+    }
+
+    @Test
+    public void testStoreRejectsKeyOfAnotherType() throws Exception
+    {
+        Connection connection = storeConnection(PropertySet.TEXT);
+
+        try {
+            connectedStore(connection, false).store("Entity", ImmutableList.of(
+                    new PropertyEntry("Entity", 10L, "p-count", PropertySet.LONG, 2L)));
+            Assert.fail("Type mismatch should be reported");
+        } catch (StorageException expected) {
+            verify(connection.prepareStatement(""), never()).executeBatch();
+            verify(connection).rollback();
+            verify(connection, never()).commit();
+        }
+    }
+
+    private Connection storeConnection(int storedType) throws Exception
+    {
+        Connection connection = removeConnection();
+        ResultSet rows = connection.prepareStatement("").executeQuery();
+        when(rows.next()).thenReturn(true, false);
+        when(rows.getLong(1)).thenReturn(7L);
+        when(rows.getLong(2)).thenReturn(10L);
+        when(rows.getString(3)).thenReturn("p-count");
+        when(rows.getInt(4)).thenReturn(storedType);
+        return connection;
+    }
+
+    @Test
+    public void testKeysAreReadPageByPage() throws Exception
+    {
+        final Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet rows = mock(ResultSet.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(rows);
+        when(rows.next()).thenReturn(true, true, false, true, false);
+        when(rows.getString(1)).thenReturn("test-a", "test-b", "test-c");
+        ModelEntity model = mock(ModelEntity.class, RETURNS_MOCKS);
+        when(delegator.getModelEntity(anyString())).thenReturn(model);
+
+        PropertyEntryStore store = new PropertyEntryStore(Suppliers.ofInstance(delegator))
+        {
+            @Override
+            protected Connection getConnection()
+            {
+                return connection;
+            }
+        };
+
+        CloseableIterator<String> keys = store.keys("Entity", 10L, "test-", 5, 2);
+        Assert.assertEquals(ImmutableList.of("a", "b", "c"), ImmutableList.copyOf(keys));
+        Assert.assertFalse(keys.hasNext());
+
+        verify(connection, times(2)).prepareStatement(anyString());
+        verify(statement, times(2)).setString(3, "test-%");
+        verify(statement).setString(4, "test-b");
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    public void testEscapeLike() throws Exception
+    {
+        Assert.assertEquals("a!%b!_c!!", PropertyEntryStore.escapeLike("a%b_c!"));
+    }
+
+    @Test
+    public void testEmptyKeysDoNotQuery() throws Exception
+    {
+        Assert.assertTrue(store.load("Entity", ImmutableList.of(10L), ImmutableList.<String>of()).get(10L).isEmpty());
+        verifyZeroInteractions(delegator);
+    }
+}
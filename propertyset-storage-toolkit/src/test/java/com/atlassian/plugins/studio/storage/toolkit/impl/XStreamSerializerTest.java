@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.thoughtworks.xstream.XStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class XStreamSerializerTest
+{
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final Supplier<XStream> factory = new Supplier<XStream>()
+    {
+        public XStream get()
+        {
+            created.incrementAndGet();
+            return new XStream();
+        }
+    };
+
+    @Test
+    public void testOutputIsCompatibleWithPlainXStream() throws Exception
+    {
+        Map<String, String> value = Maps.newHashMap(ImmutableMap.of("1", "data1", "sdsd", "data2"));
+        XStreamSerializer serializer = new XStreamSerializer(factory);
+
+        String xml = serializer.toXML(value);
+
+        Assert.assertEquals(new XStream().toXML(value), xml);
+        Assert.assertEquals(value, serializer.fromXML(new XStream().toXML(value)));
+    }
+
+    @Test
+    public void testSharedInstanceIsCreatedOnce() throws Exception
+    {
+        XStreamSerializer serializer = new XStreamSerializer(factory);
+        serializer.warmUp();
+        serializer.fromXML(serializer.toXML("value"));
+
+        Assert.assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testPoolIsBounded() throws Exception
+    {
+        final XStreamSerializer serializer = new XStreamSerializer(factory, false, 2);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 50; j++) {
+                        serializer.fromXML(serializer.toXML("value" + j));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertTrue("created " + created.get(), created.get() <= 2);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.async;
+
+import com.atlassian.plugins.studio.storage.toolkit.AsyncStorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.Scope;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFuture;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFutures;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+public class DefaultAsyncStorageServiceImplTest
+{
+    private final StorageExecutor executor = new StorageExecutor(2, 4);
+    private final DefaultAsyncStorageServiceImpl service = new DefaultAsyncStorageServiceImpl(executor);
+
+    @After
+    public void tearDown() throws Exception
+    {
+        service.destroy();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private AsyncStorageFacade storage(String name, StorageFacade facade)
+    {
+        Scope<String> scope = mock(Scope.class);
+        when(scope.load(name)).thenReturn(facade);
+        return service.storage(scope, name);
+    }
+
+    @Test
+    public void testOperationsRunOnLoadedFacade() throws Exception
+    {
+        StorageFacade facade = mock(StorageFacade.class);
+        when(facade.getString("title")).thenReturn("Title");
+        AsyncStorageFacade storage = storage("gadget", facade);
+
+        storage.setBoolean("enabled", true).checkedGet();
+
+        Assert.assertEquals("Title", storage.getString("title").checkedGet(1, TimeUnit.SECONDS));
+        Assert.assertSame(facade, storage.facade().checkedGet());
+        verify(facade).setBoolean("enabled", true);
+    }
+
+    @Test
+    public void testFailuresKeepStorageException() throws Exception
+    {
+        StorageException failure = new StorageException("broken");
+        StorageFacade facade = mock(StorageFacade.class);
+        when(facade.getLong("count")).thenThrow(failure);
+
+        StorageFuture<Long> count = storage("gadget", facade).getLong("count");
+        try {
+            count.get();
+            Assert.fail("Operation failed");
+        } catch (ExecutionException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+        try {
+            count.checkedGet();
+            Assert.fail("Operation failed");
+        } catch (StorageException e) {
+            Assert.assertSame(failure, e);
+        }
+
+        @SuppressWarnings({"unchecked"})
+        Scope<String> scope = mock(Scope.class);
+        when(scope.load("missing")).thenThrow(failure);
+        try {
+            service.storage(scope, "missing").getString("title").checkedGet();
+            Assert.fail("Load failed");
+        } catch (StorageException e) {
+            Assert.assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void testReadsFanOutInParallel() throws Exception
+    {
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        Answer<String> meet = new Answer<String>()
+        {
+            public String answer(InvocationOnMock invocation) throws Throwable
+            {
+                bothRunning.countDown();
+                Assert.assertTrue("Reads run one after another", bothRunning.await(5, TimeUnit.SECONDS));
+                return (String) invocation.getArguments()[0];
+            }
+        };
+        StorageFacade project = mock(StorageFacade.class);
+        when(project.getString(anyString())).thenAnswer(meet);
+        StorageFacade constant = mock(StorageFacade.class);
+        when(constant.getString(anyString())).thenAnswer(meet);
+
+        StorageFuture<List<String>> all = StorageFutures.allAsList(Arrays.asList(
+                storage("project", project).getString("first"),
+                storage("constant", constant).getString("second")));
+
+        Assert.assertEquals(Arrays.asList("first", "second"), all.checkedGet(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSaturatedExecutorRunsInCaller() throws Exception
+    {
+        StorageExecutor single = new StorageExecutor(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<String> blocked = new Callable<String>()
+        {
+            public String call() throws Exception
+            {
+                release.await(5, TimeUnit.SECONDS);
+                return Thread.currentThread().getName();
+            }
+        };
+        Callable<String> threadName = new Callable<String>()
+        {
+            public String call() throws Exception
+            {
+                return Thread.currentThread().getName();
+            }
+        };
+        try {
+            StorageFuture<String> running = single.submit(blocked);
+            StorageFuture<String> queued = single.submit(blocked);
+            StorageFuture<String> overflow = single.submit(threadName);
+
+            Assert.assertTrue(overflow.isDone());
+            Assert.assertEquals(Thread.currentThread().getName(), overflow.checkedGet());
+            release.countDown();
+            Assert.assertFalse(Thread.currentThread().getName().equals(running.checkedGet()));
+            Assert.assertFalse(Thread.currentThread().getName().equals(queued.checkedGet()));
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void testOperationsFailAfterShutdown() throws Exception
+    {
+        service.destroy();
+        try {
+            storage("gadget", mock(StorageFacade.class)).getString("title").checkedGet(1, TimeUnit.SECONDS);
+            Assert.fail("Executor is shut down");
+        } catch (StorageException expected) {
+        }
+    }
+}
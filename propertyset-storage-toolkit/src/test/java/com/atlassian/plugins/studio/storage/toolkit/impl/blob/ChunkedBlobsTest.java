@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.blob;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultScopeOperationsImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultStorageFacadeImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.ImmutableList;
+import com.opensymphony.module.propertyset.PropertySet;
+import com.opensymphony.module.propertyset.memory.MemoryPropertySet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.mockito.Mockito.*;
+
+public class ChunkedBlobsTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    private PropertySet delegate;
+    private ScopeOperations bridge;
+    private StorageFacade facade;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MemoryPropertySet memory = new MemoryPropertySet();
+        memory.init(new HashMap(), new HashMap());
+        delegate = spy(memory);
+
+        bridge = spy(new DefaultScopeOperationsImpl());
+        doAnswer(new Answer<Void>()
+        {
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(bridge).inTransaction(any(Runnable.class));
+        doAnswer(new Answer<Void>()
+        {
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                String keyPrefix = (String) invocation.getArguments()[2];
+                for (String key : storedKeys()) {
+                    if (key.startsWith(keyPrefix)) {
+                        delegate.remove(key);
+                    }
+                }
+                return null;
+            }
+        }).when(bridge).removeByFilter(anyLong(), anyString(), anyString());
+
+        facade = new DefaultStorageFacadeImpl(ID, bridge, delegate);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private Collection<String> storedKeys()
+    {
+        return new ArrayList<String>(delegate.getKeys());
+    }
+
+    private static byte[] payload(int length)
+    {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private void store(String key, byte[] bytes) throws IOException
+    {
+        OutputStream out = facade.openOutputStream(key);
+        out.write(bytes[0]);
+        out.write(bytes, 1, 999);
+        out.write(bytes, 1000, bytes.length - 1000);
+        out.close();
+    }
+
+    private static byte[] read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5000];
+        for (int count; (count = in.read(buffer)) != -1;) {
+            bytes.write(buffer, 0, count);
+        }
+        in.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testBlobIsStoredInHiddenChunks() throws Exception
+    {
+        byte[] bytes = payload(3 * ChunkedBlobs.CHUNK_SIZE + 100);
+        OutputStream out = facade.openOutputStream("blob");
+        out.write(bytes);
+
+        Assert.assertNull("not visible until closed", facade.openInputStream("blob"));
+        out.close();
+
+        Assert.assertTrue(Arrays.equals(bytes, read(facade.openInputStream("blob"))));
+        Assert.assertEquals(ImmutableList.of("blob"), facade.getKeys());
+        Assert.assertNull(facade.getText("blob"));
+        Assert.assertEquals(6, storedKeys().size());
+        Assert.assertNull(facade.openInputStream("missing"));
+    }
+
+    @Test
+    public void testRangeReadLoadsTheChunksOfTheRangeOnly() throws Exception
+    {
+        byte[] bytes = payload(4 * ChunkedBlobs.CHUNK_SIZE);
+        store("blob", bytes);
+        reset(delegate);
+
+        int offset = ChunkedBlobs.CHUNK_SIZE + 10;
+        byte[] range = read(facade.openInputStream("blob", offset, 1000));
+
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(bytes, offset, offset + 1000), range));
+        verify(delegate, times(1)).getData(anyString());
+
+        InputStream tail = facade.openInputStream("blob", bytes.length - 10, 100);
+        Assert.assertEquals(10, tail.skip(20));
+        Assert.assertEquals(-1, tail.read());
+    }
+
+    @Test
+    public void testRewriteAndRemoveDropTheChunks() throws Exception
+    {
+        store("blob", payload(3 * ChunkedBlobs.CHUNK_SIZE));
+        byte[] replaced = payload(ChunkedBlobs.CHUNK_SIZE + 1);
+        store("blob", replaced);
+
+        Assert.assertTrue(Arrays.equals(replaced, read(facade.openInputStream("blob"))));
+        Assert.assertEquals(4, storedKeys().size());
+
+        Assert.assertTrue(facade.remove("blob"));
+        Assert.assertTrue(storedKeys().isEmpty());
+    }
+
+    @Test
+    public void testUserValuesAreNeverTakenForManifests() throws Exception
+    {
+        store("blob", payload(ChunkedBlobs.CHUNK_SIZE + 1));
+        facade.setString("string", "#blob#x:1:1");
+        facade.setText("text", "#blob#x:1:1");
+        delegate.setText("test-legacy", "#blob#x:1:1");
+        delegate.setText("test-empty", null);
+        delegate.setData("test-string#chunk#x-0", new byte[]{1});
+
+        Assert.assertNull(facade.getText("blob"));
+        Assert.assertEquals("#blob#x:1:1", facade.getString("string"));
+        Assert.assertEquals("#blob#x:1:1", facade.getText("text"));
+        Assert.assertEquals("#blob#x:1:1", facade.getText("legacy"));
+        Assert.assertNull(facade.getText("empty"));
+        for (String key : Arrays.asList("string", "legacy", "empty")) {
+            try {
+                facade.openInputStream(key);
+                Assert.fail("Value is read as a blob: " + key);
+            } catch (StorageException expected) {
+                // not a blob
+            }
+        }
+
+        Assert.assertTrue(facade.remove("string"));
+        Assert.assertTrue(facade.remove("text"));
+        Assert.assertTrue(facade.remove("legacy"));
+        Assert.assertTrue(facade.remove("empty"));
+        Assert.assertTrue(delegate.exists("test-string#chunk#x-0"));
+        verify(bridge, never()).removeByFilter(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testDataValuesAreReadAsStreams() throws Exception
+    {
+        facade.setData("data", new byte[]{1, 2, 3, 4});
+
+        Assert.assertTrue(Arrays.equals(new byte[]{2, 3}, read(facade.openInputStream("data", 1, 2))));
+        Assert.assertTrue(facade.remove("data"));
+        verify(bridge, never()).removeByFilter(anyLong(), anyString(), anyString());
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.bus;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.Scope;
+import com.atlassian.plugins.studio.storage.toolkit.Scopes;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultScopeOperationsImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultStorageFacadeImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.FacadeDecorator;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.opensymphony.module.propertyset.PropertySet;
+import com.opensymphony.module.propertyset.memory.MemoryPropertySet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+public class InvalidationBusTest
+{
+    private static final InstanceId INSTANCE = new InstanceId(7L, "FacadeStorageTest", "test-");
+
+    private final LocalInvalidationHub hub = new LocalInvalidationHub();
+    private final InvalidationBus first = new InvalidationBus(hub.newTransport(), "first", 60 * 60 * 1000L, 100);
+    private final InvalidationBus second = new InvalidationBus(hub.newTransport(), "second", 60 * 60 * 1000L, 100);
+
+    @After
+    public void tearDown() throws Exception
+    {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    private Scope<Long> scope(InvalidationBus bus, ScopeOperations bridge, FacadeDecorator cache)
+    {
+        PropertySet delegate = mock(PropertySet.class);
+        when(bridge.loadDelegate(any(InstanceId.class))).thenReturn(delegate);
+        @SuppressWarnings({"unchecked"})
+        Scope<Long> scope = new Scopes.Builder<Long>(new Scopes.LongIdEntity("FacadeStorageTest", "test-"),
+                new Scopes.DeleteByNamePrefix("FacadeStorageTest", "test-"))
+                .decorateWith(cache)
+                .withInvalidationBus(bus, "test")
+                .withBridge(bridge)
+                .build();
+        return scope;
+    }
+
+    @Test
+    public void testWritesEvictOtherNodes() throws Exception
+    {
+        FacadeDecorator firstCache = mockCache();
+        FacadeDecorator secondCache = mockCache();
+        ScopeOperations secondBridge = mock(ScopeOperations.class);
+        Scope<Long> firstScope = scope(first, mock(ScopeOperations.class), firstCache);
+        scope(second, secondBridge, secondCache);
+
+        StorageFacade facade = firstScope.load(7L);
+        facade.setLong("count", 1L);
+        facade.setLong("count", 2L);
+        facade.setString("title", "Title");
+        Assert.assertEquals(2, first.getQueueSize());
+        verify(secondCache, never()).invalidate(any(InstanceId.class));
+
+        first.flush();
+
+        verify(secondCache, times(1)).invalidate(INSTANCE);
+        verify(secondBridge, times(1)).invalidate(INSTANCE);
+        verify(firstCache, never()).invalidate(any(InstanceId.class));
+        Assert.assertEquals(2, first.getPublishedCount());
+        Assert.assertEquals(1, first.getCoalescedCount());
+        Assert.assertEquals(1, second.getEvictionCount());
+        Assert.assertEquals(0, second.getQueueSize());
+    }
+
+    @Test
+    public void testScopeRemovalEvictsWholeScope() throws Exception
+    {
+        FacadeDecorator secondCache = mockCache();
+        ScopeOperations secondBridge = mock(ScopeOperations.class);
+        Scope<Long> firstScope = scope(first, mock(ScopeOperations.class), mockCache());
+        scope(second, secondBridge, secondCache);
+
+        firstScope.load(7L).setBoolean("flag", true);
+        firstScope.remove(7L);
+        firstScope.removeAll();
+        Assert.assertEquals(1, first.getQueueSize());
+
+        first.flush();
+
+        verify(secondCache).invalidateAll();
+        verify(secondBridge).invalidateAll();
+        verify(secondCache, never()).invalidate(any(InstanceId.class));
+    }
+
+    @Test
+    public void testFailedBatchIsPublishedAgain() throws Exception
+    {
+        InvalidationTransport transport = mock(InvalidationTransport.class);
+        InvalidationBus bus = new InvalidationBus(transport, "node", 60 * 60 * 1000L, 100);
+        Scope<Long> scope = scope(bus, mock(ScopeOperations.class), mockCache());
+        doThrow(new RuntimeException("down")).doNothing().when(transport).publish(anyListOf(Invalidation.class));
+
+        scope.load(7L).setLong("count", 1L);
+        bus.flush();
+        Assert.assertEquals(1, bus.getQueueSize());
+        Assert.assertEquals(1, bus.getFailureCount());
+
+        bus.flush();
+        Assert.assertEquals(0, bus.getQueueSize());
+        verify(transport, times(2)).publish(Arrays.asList(new Invalidation("test", INSTANCE, "count", "node", 1L)));
+        bus.shutdown();
+    }
+
+    @Test
+    public void testDuplicatesAreDropped() throws Exception
+    {
+        FacadeDecorator secondCache = mockCache();
+        scope(second, mock(ScopeOperations.class), secondCache);
+        List<Invalidation> batch = Arrays.asList(new Invalidation("test", INSTANCE, "count", "first", 1L));
+
+        second.received(batch);
+        second.received(batch);
+
+        verify(secondCache, times(1)).invalidate(INSTANCE);
+        Assert.assertEquals(1, second.getReceivedCount());
+    }
+
+    @Test
+    public void testEncoding() throws Exception
+    {
+        List<Invalidation> batch = Arrays.asList(
+                new Invalidation("test", INSTANCE, "key\twith\nseparators=", "node", 1L),
+                new Invalidation("test", INSTANCE, null, "node", 2L),
+                new Invalidation("other", null, null, "node", 3L));
+
+        Assert.assertEquals(batch, Invalidation.decode(Invalidation.encode(batch)));
+    }
+
+    @Test
+    public void testPollingTransportDeliversOnce() throws Exception
+    {
+        MemoryPropertySet propertySet = new MemoryPropertySet();
+        propertySet.init(new HashMap(), new HashMap());
+        InstanceId messagesId = new InstanceId(4L, "FacadeStorageBus", "bus-");
+        StorageFacade messages = new DefaultStorageFacadeImpl(messagesId, new DefaultScopeOperationsImpl(), propertySet);
+        @SuppressWarnings({"unchecked"})
+        Scope<String> messagesScope = mock(Scope.class);
+        when(messagesScope.load("bus")).thenReturn(messages);
+
+        PollingInvalidationTransport publisher = new PollingInvalidationTransport(messagesScope, "bus", 60 * 60 * 1000L, 2 * 60 * 60 * 1000L);
+        PollingInvalidationTransport subscriber = new PollingInvalidationTransport(messagesScope, "bus", 60 * 60 * 1000L, 2 * 60 * 60 * 1000L);
+        final List<Invalidation> received = new ArrayList<Invalidation>();
+        try {
+            publisher.publish(Arrays.asList(new Invalidation("test", INSTANCE, "before", "first", 1L)));
+            subscriber.start(new InvalidationListener()
+            {
+                public void received(List<Invalidation> batch)
+                {
+                    received.addAll(batch);
+                }
+            });
+
+            List<Invalidation> batch = Arrays.asList(new Invalidation("test", INSTANCE, "count", "first", 2L),
+                    new Invalidation("test", null, null, "first", 3L));
+            publisher.publish(batch);
+            subscriber.poll();
+            subscriber.poll();
+
+            Assert.assertEquals(batch, received);
+        } finally {
+            subscriber.stop();
+        }
+    }
+
+    private static FacadeDecorator mockCache()
+    {
+        FacadeDecorator cache = mock(FacadeDecorator.class);
+        when(cache.decorate(any(InstanceId.class), any(ScopeOperations.class), any(StorageFacade.class)))
+                .thenAnswer(new Answer<StorageFacade>()
+                {
+                    public StorageFacade answer(InvocationOnMock invocation) throws Throwable
+                    {
+                        return (StorageFacade) invocation.getArguments()[2];
+                    }
+                });
+        return cache;
+    }
+}
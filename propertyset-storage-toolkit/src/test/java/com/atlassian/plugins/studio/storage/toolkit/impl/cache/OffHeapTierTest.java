@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.cache;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
+
+public class OffHeapTierTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    @Test
+    public void testLeastRecentlyUsedValueOfSizeClassIsEvicted() throws Exception
+    {
+        // two slabs of four 1K chunks
+        OffHeapTier tier = new OffHeapTier(8192, 4096, 0);
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(tier.put(key(i), ValueKind.DATA, bytes(1000, i)));
+        }
+        Assert.assertArrayEquals(bytes(1000, 0), tier.get(key(0), ValueKind.DATA));
+
+        Assert.assertTrue(tier.put(key(8), ValueKind.DATA, bytes(1000, 8)));
+        Assert.assertNull(tier.get(key(1), ValueKind.DATA));
+        Assert.assertArrayEquals(bytes(1000, 0), tier.get(key(0), ValueKind.DATA));
+        Assert.assertArrayEquals(bytes(1000, 8), tier.get(key(8), ValueKind.DATA));
+        Assert.assertEquals(1, tier.getEvictionCount());
+        Assert.assertEquals(8, tier.size());
+        Assert.assertEquals(8192, tier.getAllocatedBytes());
+    }
+
+    @Test
+    public void testSlabIsReassignedToAnotherSizeClass() throws Exception
+    {
+        OffHeapTier tier = new OffHeapTier(8192, 4096, 0);
+        for (int i = 0; i < 8; i++) {
+            tier.put(key(i), ValueKind.DATA, bytes(1000, i));
+        }
+
+        Assert.assertTrue(tier.put(key(8), ValueKind.TEXT, bytes(3000, 8)));
+        Assert.assertEquals(4, tier.getEvictionCount());
+        Assert.assertNull(tier.get(key(0), ValueKind.DATA));
+        Assert.assertArrayEquals(bytes(1000, 7), tier.get(key(7), ValueKind.DATA));
+        Assert.assertArrayEquals(bytes(3000, 8), tier.get(key(8), ValueKind.TEXT));
+        Assert.assertEquals(4 * 1000 + 3000, tier.getStoredBytes());
+
+        Assert.assertFalse(tier.put(key(9), ValueKind.DATA, bytes(5000, 9)));
+        Assert.assertEquals(1, tier.getRejectionCount());
+    }
+
+    @Test
+    public void testCacheKeepsLargeTextOffHeap() throws Exception
+    {
+        OffHeapTier tier = new OffHeapTier(8192, 4096, 512);
+        StorageCache cache = new StorageCache(100, 1024 * 1024, tier);
+        StorageFacade delegate = mock(StorageFacade.class);
+        StorageFacade facade = cache.decorate(ID, mock(ScopeOperations.class), delegate);
+
+        String large = StringUtils.repeat("x", 2000);
+        when(delegate.getText("large")).thenReturn(large);
+        when(delegate.getText("small")).thenReturn("small");
+
+        Assert.assertEquals(large, facade.getText("large"));
+        Assert.assertEquals(large, facade.getText("large"));
+        Assert.assertEquals("small", facade.getText("small"));
+        Assert.assertEquals("small", facade.getText("small"));
+        verify(delegate, times(1)).getText("large");
+        verify(delegate, times(1)).getText("small");
+        Assert.assertEquals(1, tier.size());
+        Assert.assertTrue(cache.getWeight() < 2000);
+
+        facade.setText("large", "changed");
+        Assert.assertEquals(0, tier.size());
+    }
+
+    private static CacheKey key(int i)
+    {
+        return new CacheKey(ID.getEntityName(), ID.getEntityId(), "test-" + i);
+    }
+
+    private static byte[] bytes(int length, int fill)
+    {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) fill);
+        return bytes;
+    }
+}
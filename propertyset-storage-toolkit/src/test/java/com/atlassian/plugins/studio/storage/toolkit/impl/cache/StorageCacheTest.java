@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.cache;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.math.BigDecimal;
+
+import static org.mockito.Mockito.*;
+
+public class StorageCacheTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    private StorageFacade delegate;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        delegate = mock(StorageFacade.class);
+    }
+
+    private StorageFacade cached(StorageCache cache, InstanceId id)
+    {
+        return cache.decorate(id, mock(ScopeOperations.class), delegate);
+    }
+
+    @Test
+    public void testDecodedValuesAreCached() throws Exception
+    {
+        StorageKey<BigDecimal> amount = StorageKey.decimalKey("amount");
+        StorageFacade facade = cached(new StorageCache(), ID);
+        when(delegate.get(amount)).thenReturn(new BigDecimal("2.50"));
+
+        BigDecimal value = facade.get(amount);
+        Assert.assertEquals(new BigDecimal("2.50"), value);
+        Assert.assertSame(value, facade.get(amount));
+        Assert.assertSame(value, amount.valueIn(facade.getAll(amount)));
+        verify(delegate, times(1)).get(amount);
+
+        facade.setString("amount", "3");
+        when(delegate.get(amount)).thenReturn(new BigDecimal("3"));
+        Assert.assertEquals(new BigDecimal("3"), facade.get(amount));
+
+        facade.set(amount, new BigDecimal("4"));
+        verify(delegate).set(amount, new BigDecimal("4"));
+        when(delegate.get(amount)).thenReturn(new BigDecimal("4"));
+        Assert.assertEquals(new BigDecimal("4"), facade.get(amount));
+    }
+
+    @Test
+    public void testReadThrough() throws Exception
+    {
+        StorageCache cache = new StorageCache();
+        StorageFacade facade = cached(cache, ID);
+        when(delegate.getString("a")).thenReturn("value");
+        when(delegate.getLong("b")).thenReturn(null);
+
+        Assert.assertEquals("value", facade.getString("a"));
+        Assert.assertEquals("value", facade.getString("a"));
+        Assert.assertNull(facade.getLong("b"));
+        Assert.assertNull(facade.getLong("b"));
+
+        verify(delegate, times(1)).getString("a");
+        verify(delegate, times(1)).getLong("b");
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testWriteInvalidates() throws Exception
+    {
+        StorageCache cache = new StorageCache();
+        StorageFacade facade = cached(cache, ID);
+        when(delegate.getString("a")).thenReturn("old", "new");
+        when(delegate.getKeys()).thenReturn(ImmutableList.of("a"));
+
+        Assert.assertEquals("old", facade.getString("a"));
+        Assert.assertEquals(ImmutableList.of("a"), facade.getKeys());
+
+        facade.setString("a", "new");
+
+        Assert.assertEquals("new", facade.getString("a"));
+        facade.getKeys();
+        verify(delegate, times(2)).getString("a");
+        verify(delegate, times(2)).getKeys();
+    }
+
+    @Test
+    public void testLoadRacingWriteIsNotCached() throws Exception
+    {
+        StorageCache cache = new StorageCache();
+        final StorageFacade facade = cached(cache, ID);
+        final StorageFacade other = cached(cache, new InstanceId(11L, "FacadeStorageTest", "test-"));
+        when(delegate.getString("a")).thenAnswer(new Answer<String>()
+        {
+            public String answer(InvocationOnMock invocation) throws Throwable
+            {
+                facade.setString("b", "value");
+                return "old";
+            }
+        });
+        when(delegate.getString("c")).thenAnswer(new Answer<String>()
+        {
+            public String answer(InvocationOnMock invocation) throws Throwable
+            {
+                other.setString("b", "value");
+                return "value";
+            }
+        });
+
+        facade.getString("a");
+        facade.getString("a");
+        facade.getString("c");
+        facade.getString("c");
+
+        verify(delegate, times(2)).getString("a");
+        verify(delegate, times(1)).getString("c");
+    }
+
+    @Test
+    public void testRemoveAllInvalidatesEntity() throws Exception
+    {
+        StorageCache cache = new StorageCache();
+        StorageFacade facade = cached(cache, ID);
+        StorageFacade other = cached(cache, new InstanceId(11L, "FacadeStorageTest", "test-"));
+        when(delegate.getBoolean("a")).thenReturn(true);
+
+        facade.getBoolean("a");
+        other.getBoolean("a");
+        Assert.assertEquals(2, cache.size());
+
+        facade.removeAll();
+
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLruEvictionBySize() throws Exception
+    {
+        StorageCache cache = new StorageCache(2, Long.MAX_VALUE);
+        StorageFacade facade = cached(cache, ID);
+
+        facade.getString("a");
+        facade.getString("b");
+        facade.getString("a");
+        facade.getString("c");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+
+        facade.getString("a");
+        verify(delegate, times(1)).getString("a");
+        facade.getString("b");
+        verify(delegate, times(2)).getString("b");
+    }
+
+    @Test
+    public void testEvictionByWeight() throws Exception
+    {
+        StorageCache cache = new StorageCache(100, 1000);
+        StorageFacade facade = cached(cache, ID);
+        when(delegate.getText(anyString())).thenReturn(new String(new char[300]));
+
+        facade.getText("a");
+        facade.getText("b");
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.getWeight() <= 1000);
+    }
+}
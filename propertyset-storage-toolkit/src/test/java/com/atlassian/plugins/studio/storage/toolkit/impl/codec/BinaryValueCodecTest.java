@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.codec;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultScopeOperationsImpl;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.thoughtworks.xstream.XStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+public class BinaryValueCodecTest
+{
+    private final BinaryValueCodec codec = new BinaryValueCodec();
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("key", "value");
+
+        TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+        sorted.put("b", Lists.newArrayList(1L, "two", 3.0d, null, Boolean.TRUE));
+        sorted.put("a", Sets.newHashSet('x', (short) 2, (byte) 1, 2.5f));
+
+        Object[] values = new Object[]{
+                "", "text ąčę", Long.MIN_VALUE, -1, Integer.MAX_VALUE, new Date(1234567890L),
+                new BigDecimal("-12345.678"), TimeUnit.SECONDS, properties, sorted,
+                Maps.newHashMap(ImmutableMap.of("1", "data1", "sdsd", "data2")),
+                Maps.newLinkedHashMap(ImmutableMap.of("z", 1L, "a", 2L)),
+                Sets.newLinkedHashSet(Arrays.asList("z", "a")), Sets.newTreeSet(Arrays.asList("z", "a"))};
+
+        for (Object value : values) {
+            Object decoded = codec.decode(codec.encode(value));
+            Assert.assertEquals(value, decoded);
+            Assert.assertEquals(value.getClass(), decoded.getClass());
+        }
+
+        Assert.assertTrue(Arrays.equals(new byte[]{1, 2, 3}, (byte[]) codec.decode(codec.encode(new byte[]{1, 2, 3}))));
+    }
+
+    @Test
+    public void testBeanIsWrittenByProperties() throws Exception
+    {
+        Bean bean = new Bean();
+        bean.setName("name");
+        bean.setCount(42);
+        bean.setChild(new Bean());
+
+        String encoded = codec.encode(bean);
+        Bean decoded = (Bean) codec.decode(encoded);
+
+        Assert.assertEquals("name", decoded.getName());
+        Assert.assertEquals(42, decoded.getCount());
+        Assert.assertNotNull(decoded.getChild());
+        Assert.assertTrue(encoded.length() < new XStream().toXML(bean).length());
+    }
+
+    @Test
+    public void testSharedAndCyclicReferences() throws Exception
+    {
+        Bean bean = new Bean();
+        bean.setName("self");
+        bean.setChild(bean);
+        Bean decodedBean = (Bean) codec.decode(codec.encode(bean));
+        Assert.assertSame(decodedBean, decodedBean.getChild());
+
+        List<Object> shared = Lists.<Object>newArrayList("shared");
+        List<Object> list = Lists.<Object>newArrayList(shared, shared);
+        list.add(list);
+        List<?> decoded = (List<?>) codec.decode(codec.encode(list));
+        Assert.assertEquals(shared, decoded.get(0));
+        Assert.assertSame(decoded.get(0), decoded.get(1));
+        Assert.assertSame(decoded, decoded.get(2));
+    }
+
+    @Test
+    public void testTruncatedValueIsReported() throws Exception
+    {
+        String encoded = codec.encode(Lists.newArrayList("a", "b"));
+        for (String truncated : new String[]{"", encoded.substring(0, 4)}) {
+            try {
+                codec.decode(truncated);
+                Assert.fail("Truncated value is decoded: " + truncated);
+            } catch (StorageException expected) {
+                // reported
+            }
+        }
+    }
+
+    @Test
+    public void testNonBeanFallsBackToXStream() throws Exception
+    {
+        Immutable value = new Immutable("value");
+        Immutable decoded = (Immutable) codec.decode(codec.encode(value));
+        Assert.assertEquals("value", decoded.value);
+    }
+
+    @Test
+    public void testLegacyAndTaggedValuesAreReadable() throws Exception
+    {
+        DefaultScopeOperationsImpl legacy = new DefaultScopeOperationsImpl();
+        CodecScopeOperations binary = new CodecScopeOperations(legacy, codec);
+
+        String xml = legacy.serialize(Lists.newArrayList("a", "b"));
+        String tagged = binary.serialize(Lists.newArrayList("a", "b"));
+
+        Assert.assertEquals(BinaryValueCodec.FORMAT_TAG, ValueCodecs.getFormatTag(tagged));
+        Assert.assertNull(ValueCodecs.getFormatTag(xml));
+        Assert.assertEquals(Lists.newArrayList("a", "b"), binary.deserialize(xml));
+        Assert.assertEquals(Lists.newArrayList("a", "b"), legacy.deserialize(tagged));
+    }
+
+    @Test(expected = StorageException.class)
+    public void testUnknownFormatIsReported() throws Exception
+    {
+        ValueCodecs.decodeTagged("#nope#AAAA");
+    }
+
+    public static class Bean
+    {
+        private String name;
+        private int count;
+        private Bean child;
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void setName(String name)
+        {
+            this.name = name;
+        }
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        public void setCount(int count)
+        {
+            this.count = count;
+        }
+
+        public Bean getChild()
+        {
+            return child;
+        }
+
+        public void setChild(Bean child)
+        {
+            this.child = child;
+        }
+    }
+
+    public static class Immutable implements Serializable
+    {
+        private final String value;
+
+        public Immutable(String value)
+        {
+            this.value = value;
+        }
+    }
+}
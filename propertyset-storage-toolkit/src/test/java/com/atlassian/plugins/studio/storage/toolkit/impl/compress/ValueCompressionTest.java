@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.compress;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultScopeOperationsImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.DefaultStorageFacadeImpl;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.codec.TextCompression;
+import com.opensymphony.module.propertyset.PropertySet;
+import com.opensymphony.module.propertyset.memory.MemoryPropertySet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.mockito.Mockito.*;
+
+public class ValueCompressionTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    private PropertySet delegate;
+    private ScopeOperations bridge;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        delegate = new MemoryPropertySet();
+        delegate.init(new HashMap(), new HashMap());
+        bridge = mock(ScopeOperations.class);
+    }
+
+    private static String repetitive(int length)
+    {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append("<entry key=\"row-").append(text.length() % 97).append("\">Ünïcode value</entry>\n");
+        }
+        return text.substring(0, length);
+    }
+
+    private static String random(int length)
+    {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) (0x21 + random.nextInt(0x5e)));
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        String text = repetitive(20000);
+        for (TextCompression algorithm : TextCompression.values()) {
+            String compressed = algorithm.compress(text);
+
+            Assert.assertNotNull(compressed);
+            Assert.assertTrue(compressed.length() < text.length() / 4);
+            Assert.assertTrue(TextCompression.isCompressed(compressed));
+            Assert.assertEquals(text, TextCompression.decode(compressed));
+        }
+    }
+
+    @Test
+    public void testUncompressedValuesReadAsTheyAre() throws Exception
+    {
+        Assert.assertNull(TextCompression.decode(null));
+        Assert.assertEquals("plain text", TextCompression.decode("plain text"));
+        Assert.assertEquals("#bin#AAAA", TextCompression.decode("#bin#AAAA"));
+        Assert.assertEquals("<map/>", TextCompression.decode("<map/>"));
+        Assert.assertNull(TextCompression.LZF.compress(random(200)));
+    }
+
+    @Test
+    public void testLegacyTaggedTextsReadAsStored() throws Exception
+    {
+        String truncated = TextCompression.LZF.compress(repetitive(5000));
+        truncated = truncated.substring(0, truncated.length() / 2);
+
+        Assert.assertEquals(truncated, TextCompression.decode(truncated));
+        Assert.assertEquals("#lzf#plain text", TextCompression.decode("#lzf#plain text"));
+        Assert.assertEquals("#zip#AAAA", TextCompression.decode("#zip#AAAA"));
+        Assert.assertEquals("#zip#/////w==", TextCompression.decode("#zip#/////w=="));
+        Assert.assertEquals("#txt#legacy", TextCompression.decode("#txt#legacy"));
+        Assert.assertEquals("#lzf#AAAA", TextCompression.decode("#txt##lzf#AAAA"));
+    }
+
+    @Test
+    public void testScopesWithoutCompressionStoreTextsAsWritten() throws Exception
+    {
+        StorageFacade facade = new DefaultStorageFacadeImpl(ID, new DefaultScopeOperationsImpl(), delegate);
+        String compressed = TextCompression.LZF.compress(repetitive(5000));
+
+        facade.setText("tagged", "#lzf#AAAA");
+        delegate.setText("test-compressed", compressed);
+        delegate.setText("test-escaped", "#txt##lzf#AAAA");
+
+        Assert.assertEquals("#lzf#AAAA", delegate.getText("test-tagged"));
+        Assert.assertEquals("#lzf#AAAA", facade.getText("tagged"));
+        Assert.assertEquals(compressed, facade.getText("compressed"));
+        Assert.assertEquals("#txt##lzf#AAAA", facade.getText("escaped"));
+    }
+
+    @Test
+    public void testTaggedTextsAreEscaped() throws Exception
+    {
+        ValueCompression compression = new ValueCompression(TextCompression.LZF, 1000);
+        StorageFacade facade = new DefaultStorageFacadeImpl(ID, compression.instrument(bridge), delegate);
+        String tagged = "#lzf#" + repetitive(5000);
+
+        facade.setText("small", "#lzf#AAAA");
+        facade.setText("large", tagged);
+        facade.setString("string", "#lzf#AAAA");
+
+        Assert.assertEquals("#txt##lzf#AAAA", delegate.getText("test-small"));
+        Assert.assertTrue(TextCompression.isCompressed(delegate.getText("test-large")));
+        Assert.assertEquals("#lzf#AAAA", facade.getText("small"));
+        Assert.assertEquals(tagged, facade.getText("large"));
+        Assert.assertEquals("#lzf#AAAA", facade.getString("string"));
+    }
+
+    @Test
+    public void testLargeValuesAreStoredCompressed() throws Exception
+    {
+        ValueCompression compression = new ValueCompression(TextCompression.DEFLATE, 1000);
+        StorageFacade facade = new DefaultStorageFacadeImpl(ID, compression.instrument(bridge), delegate);
+        String large = repetitive(5000);
+        Object object = new Object();
+        when(bridge.serialize(object)).thenReturn(large);
+        when(bridge.deserialize(large)).thenReturn(object);
+
+        facade.setText("small", "short text");
+        facade.setText("random", random(2000));
+        facade.setText("large", large);
+        facade.setObject("object", object);
+
+        Assert.assertEquals("short text", delegate.getText("test-small"));
+        Assert.assertEquals(random(2000), delegate.getText("test-random"));
+        Assert.assertTrue(delegate.getText("test-large").startsWith("#zip#"));
+        Assert.assertTrue(delegate.getText("test-object").startsWith("#zip#"));
+
+        Assert.assertEquals(large, facade.getText("large"));
+        Assert.assertSame(object, facade.getObject("object"));
+        Assert.assertEquals("short text", facade.getText("small"));
+        Assert.assertEquals(2, compression.getExpandedCount());
+        verify(bridge).deserialize(large);
+
+        Assert.assertEquals(2, compression.getCompressedCount());
+        Assert.assertEquals(1, compression.getSkippedCount());
+        Assert.assertTrue(compression.getCompressionRatio() < 0.25);
+        Assert.assertTrue(compression.getCompressNanos() > 0);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.filter;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
+
+public class KeyFilterTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    private StorageFacade delegate;
+    private KeyFilter filter;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        delegate = mock(StorageFacade.class);
+        filter = new KeyFilter();
+        when(delegate.getKeys()).thenReturn(ImmutableList.of("flag", "amount"));
+        when(delegate.getString("amount")).thenReturn("2.5");
+    }
+
+    private StorageFacade filtered()
+    {
+        return filter.decorate(ID, mock(ScopeOperations.class), delegate);
+    }
+
+    @Test
+    public void testAbsentKeysAreNotLookedUp() throws Exception
+    {
+        StorageFacade facade = filtered();
+
+        Assert.assertEquals("2.5", facade.getString("amount"));
+        Assert.assertNull(facade.getString("missing"));
+        Assert.assertFalse(filtered().getBoolean("missing"));
+        Assert.assertFalse(facade.exists("missing"));
+        facade.getAll(Arrays.asList("flag", "missing"));
+
+        verify(delegate, times(1)).getKeys();
+        verify(delegate, never()).getString("missing");
+        verify(delegate, never()).getBoolean("missing");
+        verify(delegate, never()).exists("missing");
+        verify(delegate).getAll(ImmutableList.of("flag"));
+        Assert.assertEquals(4, filter.getNegativeCount());
+        Assert.assertTrue(filter.getSizeInBytes() > 0);
+    }
+
+    @Test
+    public void testWrittenKeysAreLookedUp() throws Exception
+    {
+        StorageFacade facade = filtered();
+        facade.exists("missing");
+
+        facade.setString("created", "value");
+        facade.setAll(ImmutableMap.of("batch", 1L));
+        facade.exists("created");
+        facade.exists("batch");
+
+        verify(delegate).exists("created");
+        verify(delegate).exists("batch");
+        Assert.assertEquals(2, filter.getFalsePositiveCount());
+        Assert.assertEquals(2.0 / 3, filter.getFalsePositiveRate(), 1e-9);
+    }
+
+    @Test
+    public void testRemoveAllClearsFilter() throws Exception
+    {
+        StorageFacade facade = filtered();
+        facade.removeAll();
+
+        Assert.assertNull(facade.getString("amount"));
+        verify(delegate, never()).getString("amount");
+    }
+
+    @Test
+    public void testDisabledFilterIsNotApplied() throws Exception
+    {
+        filter.setEnabled(false);
+        Assert.assertSame(delegate, filtered());
+
+        filter.setEnabled(true);
+        filtered().exists("missing");
+        filter.invalidate(new InstanceId(10L, "FacadeStorageTest", "other-"));
+        Assert.assertEquals(0, filter.size());
+    }
+
+    @Test
+    public void testBloomFilterHasNoFalseNegatives() throws Exception
+    {
+        BloomFilter bloom = new BloomFilter(1000, KeyFilter.DEFAULT_BITS_PER_KEY);
+        for (int i = 0; i < 1000; i++) {
+            bloom.put("key-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(bloom.mightContain("key-" + i));
+            if (bloom.mightContain("absent-" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives " + falsePositives, falsePositives < 30);
+        Assert.assertTrue(bloom.getExpectedFalsePositiveRate() < 0.02);
+    }
+}
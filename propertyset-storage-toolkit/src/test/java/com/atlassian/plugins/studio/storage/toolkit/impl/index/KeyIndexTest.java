@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.index;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.*;
+
+public class KeyIndexTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    private StorageFacade delegate;
+    private KeyIndex index;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        delegate = mock(StorageFacade.class);
+        index = new KeyIndex();
+        when(delegate.getKeys()).thenReturn(ImmutableList.of("feature.a.enabled", "feature.b.enabled", "other"));
+    }
+
+    private StorageFacade indexed()
+    {
+        return index.decorate(ID, mock(ScopeOperations.class), delegate);
+    }
+
+    @Test
+    public void testQueriesAreAnsweredFromIndex() throws Exception
+    {
+        StorageFacade facade = indexed();
+
+        Assert.assertEquals(ImmutableList.of("feature.a.enabled", "feature.b.enabled"), facade.getKeys("feature."));
+        Assert.assertEquals(2, facade.countKeys("feature."));
+        Assert.assertEquals(ImmutableList.of("feature.b.enabled", "other"), facade.getKeyRange("feature.b", null));
+        Assert.assertTrue(facade.exists("other"));
+        Assert.assertFalse(indexed().exists("missing"));
+
+        verify(delegate, times(1)).getKeys();
+        verify(delegate, never()).getKeys(anyString());
+        verify(delegate, never()).exists(anyString());
+    }
+
+    @Test
+    public void testWritesKeepIndexUpToDate() throws Exception
+    {
+        StorageFacade facade = indexed();
+        facade.getKeys();
+
+        facade.setBoolean("feature.c.enabled", true);
+        facade.setLong("other", null);
+        facade.setAll(ImmutableMap.of("z", "value"));
+
+        Assert.assertEquals(ImmutableList.of("feature.a.enabled", "feature.b.enabled", "feature.c.enabled", "z"),
+                indexed().getKeys());
+
+        facade.removeAll();
+        Assert.assertEquals(0, facade.countKeys(null));
+        verify(delegate, times(1)).getKeys();
+    }
+
+    @Test
+    public void testFailedWriteReloadsIndex() throws Exception
+    {
+        StorageFacade facade = indexed();
+        facade.getKeys();
+        doThrow(new IllegalStateException()).when(delegate).setString("x", "y");
+
+        try {
+            facade.setString("x", "y");
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        facade.getKeys();
+        verify(delegate, times(2)).getKeys();
+    }
+
+    @Test
+    public void testInvalidateDropsEntityIndexes() throws Exception
+    {
+        indexed().getKeys();
+        index.invalidate(new InstanceId(10L, "FacadeStorageTest", "other-"));
+        when(delegate.getKeys()).thenReturn(Collections.<String>emptyList());
+
+        Assert.assertEquals(0, indexed().countKeys(null));
+        Assert.assertEquals(1, index.size());
+    }
+}
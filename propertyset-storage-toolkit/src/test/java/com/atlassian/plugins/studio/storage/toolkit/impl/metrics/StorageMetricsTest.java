@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.metrics;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.StorageKey;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.mockito.Mockito.*;
+
+public class StorageMetricsTest
+{
+    private static final InstanceId ID = new InstanceId(10L, "FacadeStorageTest", "test-");
+
+    private StorageFacade delegate;
+    private StorageMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        delegate = mock(StorageFacade.class);
+        metrics = new StorageMetrics();
+    }
+
+    private StorageFacade instrumented()
+    {
+        return metrics.decorate(ID, mock(ScopeOperations.class), delegate);
+    }
+
+    @Test
+    public void testCallsAreRecordedByScopeAndOperation() throws Exception
+    {
+        when(delegate.getString("name")).thenReturn("value");
+        doThrow(new IllegalStateException()).when(delegate).setString("broken", "x");
+
+        StorageFacade facade = instrumented();
+        facade.setString("name", "value");
+        facade.getString("name");
+        facade.getString("name");
+        facade.setAll(ImmutableMap.of("a", "abc", "b", 1L));
+        try {
+            facade.setString("broken", "x");
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        OperationStats getString = metrics.getStats("FacadeStorageTest", "getString");
+        Assert.assertEquals(2, getString.getCalls());
+        Assert.assertEquals(10, getString.getBytesOut());
+        Assert.assertTrue(getString.getP999Micros() >= getString.getP50Micros());
+
+        OperationStats setString = metrics.getStats("FacadeStorageTest", "setString");
+        Assert.assertEquals(2, setString.getCalls());
+        Assert.assertEquals(1, setString.getErrors());
+        Assert.assertEquals(5, setString.getBytesIn());
+        Assert.assertEquals(1 + 1 + 3 + 8, metrics.getStats("FacadeStorageTest", "setAll").getBytesIn());
+        Assert.assertNull(metrics.getStats("FacadeStorageOther", "getString"));
+    }
+
+    @Test
+    public void testTypedCallsReachTheDelegateTyped() throws Exception
+    {
+        StorageKey<String> name = StorageKey.stringKey("name");
+        when(delegate.get(name)).thenReturn("value");
+
+        StorageFacade facade = instrumented();
+        Assert.assertEquals("value", facade.get(name));
+        facade.set(name, "other");
+        facade.getAll(name);
+
+        verify(delegate).get(name);
+        verify(delegate).set(name, "other");
+        verify(delegate).getAll(name);
+        verify(delegate, never()).getString("name");
+        verify(delegate, never()).setString("name", "other");
+        Assert.assertEquals(5, metrics.getStats("FacadeStorageTest", "get").getBytesOut());
+        Assert.assertEquals(5, metrics.getStats("FacadeStorageTest", "set").getBytesIn());
+        Assert.assertEquals(1, metrics.getStats("FacadeStorageTest", "getAll").getCalls());
+    }
+
+    @Test
+    public void testBridgeCallsAreRecorded() throws Exception
+    {
+        ScopeOperations bridge = mock(ScopeOperations.class);
+        when(bridge.serialize("object")).thenReturn("<string>object</string>");
+
+        metrics.instrument(bridge).serialize("object");
+        metrics.instrument(bridge).removeByFilter(null, "FacadeStorageTest", "test-");
+
+        Assert.assertEquals(23, metrics.getStats(StorageMetrics.SHARED_SCOPE, "bridge.serialize").getBytesIn());
+        Assert.assertEquals(1, metrics.getStats("FacadeStorageTest", "bridge.removeByFilter").getCalls());
+    }
+
+    @Test
+    public void testCompressedTextReadsAreRecordedPerScope() throws Exception
+    {
+        ScopeOperations bridge = mock(ScopeOperations.class);
+        when(bridge.decodeText(ID, "#lzf#AAAA")).thenReturn("expanded text");
+        when(bridge.decodeText(ID, "#zip#legacy")).thenReturn("#zip#legacy");
+        when(bridge.decodeText(ID, "plain")).thenReturn("plain");
+
+        ScopeOperations instrumented = metrics.instrument(bridge);
+        Assert.assertEquals("expanded text", instrumented.decodeText(ID, "#lzf#AAAA"));
+        Assert.assertEquals("#zip#legacy", instrumented.decodeText(ID, "#zip#legacy"));
+        Assert.assertEquals("plain", instrumented.decodeText(ID, "plain"));
+
+        OperationStats expand = metrics.getStats("FacadeStorageTest", "bridge.expand");
+        Assert.assertEquals(1, expand.getCalls());
+        Assert.assertEquals(9, expand.getBytesIn());
+        Assert.assertEquals(13, expand.getBytesOut());
+    }
+
+    @Test
+    public void testStatsArePublishedOverJmx() throws Exception
+    {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        instrumented().exists("name");
+        metrics.register(server);
+        instrumented().getLong("name");
+
+        ObjectName exists = StorageMetrics.objectName(metrics.getStats("FacadeStorageTest", "exists"));
+        ObjectName getLong = StorageMetrics.objectName(metrics.getStats("FacadeStorageTest", "getLong"));
+        Assert.assertEquals(1L, server.getAttribute(exists, "Calls"));
+        Assert.assertTrue(server.isRegistered(getLong));
+
+        metrics.unregister();
+        Assert.assertFalse(server.isRegistered(exists));
+        Assert.assertFalse(server.isRegistered(getLong));
+    }
+
+    @Test
+    public void testHistogramBuckets() throws Exception
+    {
+        for (long value : new long[]{0, 7, 8, 15, 16, 1000, 123456789L, 1L << 40}) {
+            int index = LatencyHistogram.index(value);
+            Assert.assertTrue(value + " within bucket " + index, LatencyHistogram.upperBound(index) >= value);
+            Assert.assertTrue(value + " bucket precision", LatencyHistogram.upperBound(index) <= value + value / 8);
+        }
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assert.assertEquals(500000, histogram.percentile(0.5), 500000 / 8);
+        Assert.assertEquals(990000, histogram.percentile(0.99), 990000 / 8);
+        Assert.assertEquals(1000000, histogram.percentile(1.0));
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.snapshot;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.atlassian.plugins.studio.storage.toolkit.impl.StoredText;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+public class SnapshotStoreTest
+{
+    private static final InstanceId INSTANCE = new InstanceId(2L, "FacadeStorageConstant-test", "constant-");
+
+    private final Map<String, Long> markers = new HashMap<String, Long>();
+    private final PropertySet propertySet = mock(PropertySet.class);
+    private final ScopeOperations bridge = mock(ScopeOperations.class);
+
+    private File directory;
+    private SnapshotStore store;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = File.createTempFile("snapshots", "");
+        directory.delete();
+
+        when(bridge.loadDelegate(INSTANCE)).thenReturn(propertySet);
+        when(propertySet.exists(anyString())).thenAnswer(new Answer<Boolean>()
+        {
+            public Boolean answer(InvocationOnMock invocation) throws Throwable
+            {
+                return markers.containsKey((String) invocation.getArguments()[0]);
+            }
+        });
+        when(propertySet.getLong(anyString())).thenAnswer(new Answer<Long>()
+        {
+            public Long answer(InvocationOnMock invocation) throws Throwable
+            {
+                return markers.get((String) invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>()
+        {
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                markers.put((String) invocation.getArguments()[0], (Long) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(propertySet).setLong(anyString(), anyLong());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (store != null) {
+            store.shutdown();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testSnapshotFileLookups() throws Exception
+    {
+        File file = new File(directory.getParentFile(), directory.getName() + ".snapshot");
+        try {
+            Date date = new Date(1000L);
+            SnapshotFile.write(file, 42L, ImmutableMap.<String, Object>builder().put("flag", true).put("count", 7)
+                    .put("name", "value").put("text", new SnapshotFile.Text("value")).put("date", date)
+                    .put("data", new byte[]{1, 2}).build());
+
+            SnapshotFile snapshot = SnapshotFile.open(file);
+            Assert.assertEquals(42L, snapshot.getVersion());
+            Assert.assertTrue(snapshot.isComplete());
+            Assert.assertEquals(6, snapshot.size());
+            Assert.assertEquals(Boolean.TRUE, snapshot.get("flag"));
+            Assert.assertEquals(7L, snapshot.get("count"));
+            Assert.assertEquals("value", snapshot.get("name"));
+            Assert.assertEquals(new SnapshotFile.Text("value"), snapshot.get("text"));
+            Assert.assertEquals(date, snapshot.get("date"));
+            Assert.assertArrayEquals(new byte[]{1, 2}, (byte[]) snapshot.get("data"));
+            Assert.assertNull(snapshot.get("missing"));
+            Assert.assertEquals(6, snapshot.keys().size());
+
+            SnapshotFile.write(file, 43L, ImmutableMap.<String, Object>of("name", "value", "other", new Object()));
+            snapshot = SnapshotFile.open(file);
+            Assert.assertFalse(snapshot.isComplete());
+            Assert.assertEquals(ImmutableList.of("name"), snapshot.keys());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSnapshotServesReadsAfterRestartUntilChanged() throws Exception
+    {
+        StorageFacade source = source();
+        store = new SnapshotStore(directory, 0);
+        StorageFacade facade = store.decorate(INSTANCE, bridge, source);
+
+        Assert.assertEquals("value", facade.getString("name"));
+        verify(source).getString("name");
+        awaitRebuilds(store, 1);
+
+        // restart
+        store.shutdown();
+        store = new SnapshotStore(directory, 0);
+        StorageFacade restarted = source();
+        facade = store.decorate(INSTANCE, bridge, restarted);
+
+        Assert.assertEquals("value", facade.getString("name"));
+        Assert.assertEquals(Long.valueOf(7L), facade.getLong("count"));
+        Assert.assertFalse(facade.exists("missing"));
+        Assert.assertFalse(facade.getBoolean("missing"));
+        verifyZeroInteractions(restarted);
+        Assert.assertEquals(4, store.getHitCount());
+
+        facade.setString("name", "changed");
+        verify(restarted).setString("name", "changed");
+        awaitRebuilds(store, 1);
+
+        // a write elsewhere renews the marker, the snapshot on disk is stale
+        markers.put(SnapshotStore.markerKey(INSTANCE), 1L);
+        store.shutdown();
+        store = new SnapshotStore(directory, 0);
+        StorageFacade stale = source();
+        facade = store.decorate(INSTANCE, bridge, stale);
+
+        Assert.assertEquals("value", facade.getString("name"));
+        verify(stale).getString("name");
+    }
+
+    @Test
+    public void testOtherNodesWritesAreSeenOnRevalidation() throws Exception
+    {
+        StorageFacade source = source();
+        store = new SnapshotStore(directory, 0, 0);
+        StorageFacade facade = store.decorate(INSTANCE, bridge, source);
+
+        Assert.assertEquals("value", facade.getString("name"));
+        awaitRebuilds(store, 1);
+        Assert.assertEquals("value", facade.getString("name"));
+        verify(source, times(1)).getString("name");
+
+        // another node writes, the marker is renewed
+        markers.put(SnapshotStore.markerKey(INSTANCE), 1L);
+
+        Assert.assertEquals("value", facade.getString("name"));
+        verify(source, times(2)).getString("name");
+    }
+
+    @Test
+    public void testEvictionDropsTheSnapshotOnly() throws Exception
+    {
+        StorageFacade source = source();
+        store = new SnapshotStore(directory, 0);
+        StorageFacade facade = store.decorate(INSTANCE, bridge, source);
+
+        Assert.assertEquals("value", facade.getString("name"));
+        awaitRebuilds(store, 1);
+        Assert.assertEquals("value", facade.getString("name"));
+        verify(source, times(1)).getString("name");
+
+        // another node writes and renews the marker, its invalidation message evicts the instance here
+        markers.put(SnapshotStore.markerKey(INSTANCE), 1L);
+        store.evict(INSTANCE);
+
+        Assert.assertEquals("value", facade.getString("name"));
+        verify(source, times(2)).getString("name");
+        awaitRebuilds(store, 2);
+        Assert.assertEquals(Long.valueOf(1L), markers.get(SnapshotStore.markerKey(INSTANCE)));
+        verify(propertySet, times(1)).setLong(anyString(), anyLong());
+    }
+
+    @Test
+    public void testValuesOfOtherTypesAreReadThrough() throws Exception
+    {
+        StorageFacade source = mock(StorageFacade.class);
+        when(source.getKeys()).thenReturn(ImmutableList.of("name", "text", "amount"));
+        when(source.getAll(anyCollection())).thenReturn(ImmutableMap.<String, Object>of("name", "value",
+                "text", "value", "amount", "1.5"));
+        when(bridge.getValues(anyCollection(), anyCollection())).thenReturn(
+                ImmutableMap.<InstanceId, Map<String, Object>>of(INSTANCE,
+                ImmutableMap.<String, Object>of("name", "value", "text", new StoredText("value"), "amount", "1.5")));
+        store = new SnapshotStore(directory, 0);
+        StorageFacade facade = store.decorate(INSTANCE, bridge, source);
+
+        facade.getString("name");
+        awaitRebuilds(store, 1);
+
+        Assert.assertEquals("value", facade.getString("name"));
+        Assert.assertEquals("value", facade.getText("text"));
+        Assert.assertEquals(new BigDecimal("1.5"), facade.getDouble("amount"));
+        Assert.assertEquals(ImmutableMap.<String, Object>of("name", "value", "text", "value"),
+                facade.getAll(ImmutableList.of("name", "text")));
+        Assert.assertEquals(4, store.getHitCount());
+
+        facade.getText("name");
+        facade.getString("text");
+        facade.getObject("name");
+        facade.getProperties("amount");
+        facade.getDouble("text");
+        verify(source).getText("name");
+        verify(source).getString("text");
+        verify(source).getObject("name");
+        verify(source).getProperties("amount");
+        verify(source).getDouble("text");
+        Assert.assertEquals(4, store.getHitCount());
+    }
+
+    private StorageFacade source()
+    {
+        StorageFacade source = mock(StorageFacade.class);
+        when(source.getKeys()).thenReturn(ImmutableList.of("name", "count"));
+        when(source.getAll(anyCollection())).thenReturn(ImmutableMap.<String, Object>of("name", "value", "count", 7L));
+        when(source.getString("name")).thenReturn("value");
+        when(bridge.getValues(anyCollection(), anyCollection())).thenReturn(
+                ImmutableMap.<InstanceId, Map<String, Object>>of(INSTANCE,
+                ImmutableMap.<String, Object>of("name", "value")));
+        return source;
+    }
+
+    private static void awaitRebuilds(SnapshotStore store, long rebuilds) throws InterruptedException
+    {
+        for (int i = 0; i < 200 && store.getRebuildCount() < rebuilds; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Snapshot is not rewritten", rebuilds, store.getRebuildCount());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.trace;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
+
+public class RequestRecorderTest
+{
+    private final RequestRecorder recorder = new RequestRecorder();
+    private final StorageFacade delegate = mock(StorageFacade.class);
+
+    @After
+    public void tearDown() throws Exception
+    {
+        RequestRecorder.stop();
+    }
+
+    private StorageFacade load(long id)
+    {
+        return recorder.decorate(new InstanceId(id, "FacadeStorageIssue", "issue-"), mock(ScopeOperations.class), delegate);
+    }
+
+    @Test
+    public void testNothingIsRecordedOutsideOfRecording() throws Exception
+    {
+        load(1L).getString("flag");
+
+        Assert.assertNull(RequestRecorder.current());
+        verify(delegate).getString("flag");
+    }
+
+    @Test
+    public void testPatternsAreDetected() throws Exception
+    {
+        Recording recording = RequestRecorder.start();
+
+        for (long id = 1; id <= 3; id++) {
+            load(id).getString("flag");
+        }
+        load(1L).getString("flag");
+        load(1L).getBoolean("enabled");
+        load(2L).getAll(Arrays.asList("flag", "enabled"));
+        recorder.instrument(mock(ScopeOperations.class)).removeByFilter(null, "FacadeStorageIssue", "issue-");
+
+        Assert.assertSame(recording, RequestRecorder.stop());
+        Assert.assertEquals(6 + 6 + 1, recording.getCallCount());
+        Assert.assertEquals(3, recording.getLoadCount(new InstanceId(1L, "FacadeStorageIssue", "issue-")));
+        Assert.assertEquals(2, recording.getReadCount(new InstanceId(1L, "FacadeStorageIssue", "issue-"), "flag"));
+
+        Assert.assertEquals("FacadeStorageIssue#1 x3", recording.getRepeatedLoads().get(0).toString());
+        Assert.assertEquals("FacadeStorageIssue#1 'flag' x2", recording.getRepeatedReads().get(0).toString());
+        Assert.assertEquals("FacadeStorageIssue#1 x2", recording.getBatchableReads().get(0).toString());
+        Assert.assertEquals("FacadeStorageIssue 'flag' x3", recording.getScatteredReads().get(0).toString());
+        Assert.assertTrue(recording.summary(), recording.summary().startsWith("storage calls=13 (loads=6, facade=6, bridge=1)"));
+    }
+}
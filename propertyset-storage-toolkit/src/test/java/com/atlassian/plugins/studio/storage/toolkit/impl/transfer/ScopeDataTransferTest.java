@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.transfer;
+
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.impl.PropertyEntry;
+import com.atlassian.plugins.studio.storage.toolkit.impl.PropertyEntryStore;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.opensymphony.module.propertyset.PropertySet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.Mockito.*;
+
+public class ScopeDataTransferTest
+{
+    private static final String ENTITY = "FacadeStorageTest";
+
+    @Test
+    public void testDumpRoundTrip() throws Exception
+    {
+        byte[] large = new byte[3 * EntryDumpWriter.BUFFER_SIZE];
+        Arrays.fill(large, (byte) 7);
+        List<PropertyEntry> entries = ImmutableList.of(
+                new PropertyEntry(ENTITY, 1L, "test-long", PropertySet.LONG, 42L),
+                new PropertyEntry(ENTITY, 1L, "test-double", PropertySet.DOUBLE, 0.5d),
+                new PropertyEntry(ENTITY, 2L, "test-string", PropertySet.STRING, "рус"),
+                new PropertyEntry(ENTITY, 2L, "test-date", PropertySet.DATE, new Date(1000L)),
+                new PropertyEntry(ENTITY, 2L, "test-large", PropertySet.DATA, large),
+                new PropertyEntry("OtherEntity", 3L, "test-missing", PropertySet.TEXT, null));
+
+        EntryDumpReader reader = reader(dump(entries));
+        for (PropertyEntry expected : entries) {
+            assertSameEntry(expected, reader.read());
+        }
+        Assert.assertNull(reader.read());
+        Assert.assertEquals(entries.size(), reader.getRecords());
+    }
+
+    @Test
+    public void testTruncatedDumpFails() throws Exception
+    {
+        byte[] dump = dump(ImmutableList.of(
+                new PropertyEntry(ENTITY, 1L, "test-first", PropertySet.LONG, 1L),
+                new PropertyEntry(ENTITY, 1L, "test-second", PropertySet.LONG, 2L)));
+
+        EntryDumpReader reader = reader(Arrays.copyOf(dump, dump.length - 12));
+        Assert.assertEquals(2, reader.skip(2));
+        try {
+            reader.read();
+            Assert.fail("End of the dump is missing");
+        } catch (StorageException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testImportCommitsBatchesAndResumes() throws Exception
+    {
+        List<PropertyEntry> entries = new ArrayList<PropertyEntry>();
+        for (long i = 0; i < 5; i++) {
+            entries.add(new PropertyEntry(ENTITY, 1L, "test-" + i, PropertySet.LONG, i));
+        }
+
+        // the batch after the checkpoint was committed partially before the interruption
+        PropertyEntryStore store = mock(PropertyEntryStore.class);
+        Set<String> stored = ImmutableSet.of("test-2");
+        when(store.storedKeys(eq(ENTITY), anyCollection(), anyCollection()))
+                .thenReturn(Collections.<Long, Set<String>>singletonMap(1L, stored));
+
+        ScopeDataTransfer.ImportProgress progress = mock(ScopeDataTransfer.ImportProgress.class);
+        long committed = new ScopeDataTransfer(store, 10, 2)
+                .importFrom(Channels.newChannel(new ByteArrayInputStream(dump(entries))), 2, progress);
+
+        Assert.assertEquals(5, committed);
+        ArgumentCaptor<List> inserted = ArgumentCaptor.forClass(List.class);
+        verify(store, times(2)).insert(inserted.capture());
+        Assert.assertEquals(2, inserted.getAllValues().size());
+        assertSameEntries(entries.subList(3, 4), inserted.getAllValues().get(0));
+        assertSameEntries(entries.subList(4, 5), inserted.getAllValues().get(1));
+        verify(store, times(2)).storedKeys(eq(ENTITY), anyCollection(), anyCollection());
+        verify(store, never()).load(eq(ENTITY), anyCollection(), anyCollection());
+        verify(progress).committed(4);
+        verify(progress).committed(5);
+    }
+
+    @Test
+    public void testImportKeepsKeysStoredBefore() throws Exception
+    {
+        List<PropertyEntry> entries = new ArrayList<PropertyEntry>();
+        for (long i = 0; i < 5; i++) {
+            entries.add(new PropertyEntry(ENTITY, 1L, "test-" + i, PropertySet.LONG, i));
+        }
+
+        PropertyEntryStore store = mock(PropertyEntryStore.class);
+        Set<String> stored = ImmutableSet.of("test-1", "test-4");
+        when(store.storedKeys(eq(ENTITY), anyCollection(), anyCollection()))
+                .thenReturn(Collections.<Long, Set<String>>singletonMap(1L, stored));
+
+        long committed = new ScopeDataTransfer(store, 10, 2)
+                .importFrom(Channels.newChannel(new ByteArrayInputStream(dump(entries))), 0, null);
+
+        Assert.assertEquals(5, committed);
+        ArgumentCaptor<List> inserted = ArgumentCaptor.forClass(List.class);
+        verify(store, times(3)).insert(inserted.capture());
+        assertSameEntries(entries.subList(0, 1), inserted.getAllValues().get(0));
+        assertSameEntries(entries.subList(2, 4), inserted.getAllValues().get(1));
+        Assert.assertTrue(inserted.getAllValues().get(2).isEmpty());
+    }
+
+    private static byte[] dump(Collection<PropertyEntry> entries) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EntryDumpWriter writer = new EntryDumpWriter(Channels.newChannel(out));
+        for (PropertyEntry entry : entries) {
+            writer.write(entry);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    private static EntryDumpReader reader(byte[] dump) throws Exception
+    {
+        return new EntryDumpReader(Channels.newChannel(new ByteArrayInputStream(dump)));
+    }
+
+    private static void assertSameEntries(List<PropertyEntry> expected, List<?> actual)
+    {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameEntry(expected.get(i), (PropertyEntry) actual.get(i));
+        }
+    }
+
+    private static void assertSameEntry(PropertyEntry expected, PropertyEntry actual)
+    {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getEntityName(), actual.getEntityName());
+        Assert.assertEquals(expected.getEntityId(), actual.getEntityId());
+        Assert.assertEquals(expected.getPropertyKey(), actual.getPropertyKey());
+        Assert.assertEquals(expected.getType(), actual.getType());
+        if (expected.getValue() instanceof byte[]) {
+            Assert.assertArrayEquals((byte[]) expected.getValue(), (byte[]) actual.getValue());
+        } else {
+            Assert.assertEquals(expected.getValue(), actual.getValue());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.plugins.studio.storage.toolkit.impl.writebehind;
+
+import com.atlassian.plugins.studio.storage.toolkit.InstanceId;
+import com.atlassian.plugins.studio.storage.toolkit.StorageException;
+import com.atlassian.plugins.studio.storage.toolkit.StorageFacade;
+import com.atlassian.plugins.studio.storage.toolkit.impl.ScopeOperations;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Date;
+
+import static org.mockito.Mockito.*;
+
+public class WriteBehindBufferTest
+{
+    private static final InstanceId FIRST = new InstanceId(1L, "FacadeStorageTest", "test-");
+    private static final InstanceId SECOND = new InstanceId(2L, "FacadeStorageTest", "test-");
+
+    private final ScopeOperations bridge = mock(ScopeOperations.class);
+    private final StorageFacade first = mock(StorageFacade.class);
+    private final StorageFacade second = mock(StorageFacade.class);
+
+    private WriteBehindBuffer buffer = new WriteBehindBuffer(60 * 60 * 1000L, 100);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        doAnswer(new Answer<Void>()
+        {
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(bridge).inTransaction(any(Runnable.class));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        buffer.shutdown();
+    }
+
+    @Test
+    public void testWritesAreCoalescedAndFlushedInOneTransaction() throws Exception
+    {
+        StorageFacade firstFacade = buffer.decorate(FIRST, bridge, first);
+        StorageFacade secondFacade = buffer.decorate(SECOND, bridge, second);
+        Date seen = new Date(1000L);
+
+        firstFacade.setLong("count", 1L);
+        firstFacade.setLong("count", 2L);
+        firstFacade.setDate("seen", seen);
+        secondFacade.setBoolean("flag", true);
+
+        verifyZeroInteractions(first, second);
+        Assert.assertEquals(Long.valueOf(2L), firstFacade.getLong("count"));
+        Assert.assertEquals(seen, firstFacade.getDate("seen"));
+        Assert.assertTrue(secondFacade.exists("flag"));
+        Assert.assertEquals(3, buffer.getPendingCount());
+        Assert.assertEquals(1, buffer.getCoalescedCount());
+
+        buffer.flush();
+
+        verify(bridge, times(1)).inTransaction(any(Runnable.class));
+        verify(first).setAll(ImmutableMap.of("count", 2L, "seen", seen));
+        verify(second).setAll(ImmutableMap.of("flag", true));
+        Assert.assertEquals(0, buffer.getPendingCount());
+        Assert.assertEquals(3, buffer.getWrittenCount());
+
+        when(first.getLong("count")).thenReturn(2L);
+        Assert.assertEquals(Long.valueOf(2L), firstFacade.getLong("count"));
+        verify(first).getLong("count");
+    }
+
+    @Test
+    public void testOtherWritesSupersedePendingValue() throws Exception
+    {
+        StorageFacade facade = buffer.decorate(FIRST, bridge, first);
+
+        facade.setString("title", "short");
+        facade.setText("title", "long");
+        facade.setLong("count", 1L);
+        Assert.assertTrue(facade.remove("count"));
+
+        buffer.flush();
+
+        verify(first).setText("title", "long");
+        verify(first).remove("count");
+        verify(first, never()).setAll(anyMap());
+    }
+
+    @Test
+    public void testListingAndMismatchedReadsFlushFirst() throws Exception
+    {
+        StorageFacade facade = buffer.decorate(FIRST, bridge, first);
+
+        facade.setLong("count", 1L);
+        facade.getString("count");
+
+        verify(first).setAll(ImmutableMap.of("count", 1L));
+        verify(first).getString("count");
+
+        facade.setBoolean("flag", true);
+        facade.getKeys();
+
+        verify(first).setAll(ImmutableMap.of("flag", true));
+    }
+
+    @Test
+    public void testFailedValuesAreRetriedThenDropped() throws Exception
+    {
+        StorageFacade facade = buffer.decorate(FIRST, bridge, first);
+        doThrow(new StorageException("broken")).when(first).setAll(anyMap());
+
+        facade.setLong("count", 1L);
+        for (int i = 0; i < WriteBehindBuffer.MAX_ATTEMPTS; i++) {
+            Assert.assertEquals(1, buffer.getPendingCount());
+            buffer.flush();
+        }
+
+        Assert.assertEquals(0, buffer.getPendingCount());
+        Assert.assertEquals(1, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void testShutdownFlushesAndStopsBuffering() throws Exception
+    {
+        StorageFacade facade = buffer.decorate(FIRST, bridge, first);
+
+        facade.setLong("count", 1L);
+        buffer.shutdown();
+
+        verify(first).setAll(ImmutableMap.of("count", 1L));
+
+        facade.setLong("count", 2L);
+        verify(first).setLong("count", 2L);
+        Assert.assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testPendingLimitTriggersFlush() throws Exception
+    {
+        buffer = new WriteBehindBuffer(60 * 60 * 1000L, 2);
+        StorageFacade facade = buffer.decorate(FIRST, bridge, first);
+
+        facade.setLong("first", 1L);
+        facade.setLong("second", 2L);
+
+        verify(first, timeout(5000)).setAll(ImmutableMap.<String, Object>of("first", 1L, "second", 2L));
+    }
+}